@@ -0,0 +1,183 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the results of a benchmark run against a stored baseline.  Both are 
+ * files in the CSV format written by JMH with {@code -rf csv}.  A result is a regression 
+ * if it is worse than its baseline by more than a given tolerance:  that is, if a per-operation 
+ * score (such as ms/op or the B/op reported by {@code -prof gc}) has grown, or if a throughput 
+ * score (ops per unit of time) has dropped, by more than the tolerance.  Other scores, 
+ * such as allocation rates per unit of time, are printed but not compared.
+ * 
+ * <p>Usage: java kodkod.bench.Baseline &lt;baseline.csv&gt; &lt;results.csv&gt; [tolerance]</p>
+ * 
+ * <p>If the baseline file does not exist, the results are recorded as the new baseline.  
+ * Otherwise, the results are compared against the baseline, and the program exits with status 1
+ * if there are any regressions.  The baseline is never updated, so every run is compared against 
+ * the first recorded one rather than the previous one.  A per-operation score whose baseline is 
+ * zero regresses if it grows at all.  The default tolerance is 0.1 (10%).  To rebase, delete the 
+ * baseline file.</p>
+ * 
+ * @author agent
+ */
+public final class Baseline {
+	private Baseline() {}
+	
+	/**
+	 * A score from a CSV file written by JMH.
+	 * @specfield value: double
+	 * @specfield unit: String
+	 */
+	private static final class Score { 
+		final double value;
+		final String unit;
+		Score(double value, String unit) { 
+			this.value = value;
+			this.unit = unit;
+		}
+		/** Returns true if higher values of this score are better. */
+		boolean higherIsBetter() { return unit.startsWith("ops/"); }
+		/** Returns true if this score should be compared against a baseline. */
+		boolean comparable() { return higherIsBetter() || unit.endsWith("/op"); }
+	}
+	
+	/**
+	 * Splits the given line from a CSV file into fields, removing quotes.
+	 * @return the fields in the given CSV line
+	 */
+	private static List<String> fields(String line) { 
+		final List<String> fields = new ArrayList<String>();
+		final StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0, max = line.length(); i < max; i++) { 
+			final char c = line.charAt(i);
+			if (c=='"') { 
+				if (quoted && i+1 < max && line.charAt(i+1)=='"') { 
+					field.append(c);
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c==',' && !quoted) { 
+				fields.add(field.toString());
+				field.setLength(0);
+			} else { 
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+	
+	/**
+	 * Reads the scores from the given CSV file.  Each score is keyed by the name 
+	 * of its benchmark and the values of the benchmark parameters.
+	 * @return a map from benchmark keys to their scores in the given file
+	 * @throws IOException  the file could not be read
+	 * @throws IllegalArgumentException  the file is not in the expected format
+	 */
+	private static Map<String, Score> read(File file) throws IOException { 
+		final Map<String, Score> scores = new LinkedHashMap<String, Score>();
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) { 
+			final List<String> header = fields(in.readLine());
+			final int bench = header.indexOf("Benchmark"), score = header.indexOf("Score"), unit = header.indexOf("Unit");
+			if (bench < 0 || score < 0 || unit < 0) 
+				throw new IllegalArgumentException("not a JMH results file: " + file);
+			for(String line = in.readLine(); line != null; line = in.readLine()) { 
+				if (line.isEmpty()) continue;
+				final List<String> row = fields(line);
+				final StringBuilder key = new StringBuilder(row.get(bench));
+				for(int i = 0; i < header.size(); i++) { 
+					if (header.get(i).startsWith("Param: ") && i < row.size() && !row.get(i).isEmpty()) 
+						key.append(' ').append(header.get(i).substring(7)).append('=').append(row.get(i));
+				}
+				try { 
+					scores.put(key.toString(), new Score(Double.parseDouble(row.get(score)), row.get(unit)));
+				} catch (NumberFormatException e) { 
+					// skip scores that JMH could not compute
+				}
+			}
+		}
+		return scores;
+	}
+	
+	private static void usage() { 
+		System.out.println("Usage: java kodkod.bench.Baseline <baseline.csv> <results.csv> [tolerance]");
+		System.exit(1);
+	}
+	
+	/**
+	 * Usage: java kodkod.bench.Baseline &lt;baseline.csv&gt; &lt;results.csv&gt; [tolerance]
+	 */
+	public static void main(String[] args) throws IOException { 
+		if (args.length < 2 || args.length > 3) 
+			usage();
+		final File baseline = new File(args[0]), results = new File(args[1]);
+		double tolerance = 0.1;
+		if (args.length==3) { 
+			try { 
+				tolerance = Double.parseDouble(args[2]);
+			} catch (NumberFormatException e) { 
+				usage();
+			}
+		}
+		
+		if (!baseline.exists()) { 
+			Files.copy(results.toPath(), baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("recorded baseline: " + baseline);
+			return;
+		}
+		
+		final Map<String, Score> old = read(baseline), cur = read(results);
+		int regressions = 0;
+		for(Map.Entry<String, Score> entry : cur.entrySet()) { 
+			final Score now = entry.getValue(), then = old.get(entry.getKey());
+			if (then==null || !then.unit.equals(now.unit)) { 
+				System.out.println(String.format("%-80s %12.3f %-10s (new)", entry.getKey(), now.value, now.unit));
+				continue;
+			}
+			// any growth from a zero baseline, such as an allocation-free benchmark that starts allocating, is infinite
+			final double change = then.value==0 ? (now.value==0 ? 0 : Double.POSITIVE_INFINITY) 
+					: (now.value - then.value) / then.value;
+			final boolean regressed = now.comparable() && (now.higherIsBetter() ? -change : change) > tolerance;
+			if (regressed) regressions++;
+			System.out.println(String.format("%-80s %12.3f %-10s %+7.1f%%%s", entry.getKey(), now.value, now.unit, 
+					100*change, regressed ? "  REGRESSION" : ""));
+		}
+		if (regressions > 0) { 
+			System.out.println(regressions + " regression(s) against " + baseline);
+			System.exit(1);
+		}
+	}
+}
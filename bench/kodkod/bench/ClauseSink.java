@@ -0,0 +1,139 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+
+/**
+ * A SATSolver that counts the variables and clauses added to it, 
+ * without storing or solving them.  It is used to measure the cost of 
+ * CNF generation separately from the cost of loading clauses into a 
+ * real solver.
+ * 
+ * @specfield variables: int
+ * @specfield clauses: int
+ * @specfield literals: long
+ * @author agent
+ */
+public final class ClauseSink implements SATSolver {
+	/**
+	 * The factory that produces instances of ClauseSink.
+	 */
+	public static final SATFactory FACTORY = new SATFactory() {
+		public SATSolver instance() { 
+			return new ClauseSink(); 
+		}
+		public String toString() { return "ClauseSink"; }
+	};
+	
+	private int variables, clauses;
+	private long literals;
+	
+	/**
+	 * Constructs an empty clause sink.
+	 * @ensures this.variables' = 0 && this.clauses' = 0 && this.literals' = 0
+	 */
+	public ClauseSink() {}
+	
+	/**
+	 * Returns the total number of literals in the clauses added to this sink.
+	 * @return this.literals
+	 */
+	public long numberOfLiterals() { return literals; }
+	
+	/**
+	 * @see kodkod.engine.satlab.SATSolver#numberOfVariables()
+	 */
+	public int numberOfVariables() { return variables; }
+
+	/**
+	 * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
+	 */
+	public int numberOfClauses() { return clauses; }
+
+	/**
+	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
+	 */
+	public void addVariables(int numVars) {
+		if (numVars < 0)
+			throw new IllegalArgumentException("numVars < 0: " + numVars);
+		variables += numVars;
+	}
+
+	/**
+	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 */
+	public boolean addClause(int[] lits) {
+		clauses++;
+		literals += lits.length;
+		return true;
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve() {
+		throw new UnsupportedOperationException("ClauseSink does not solve");
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 */
+	public boolean solve(int[] assumptions) {
+		throw new UnsupportedOperationException("ClauseSink does not solve");
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public int[] failedAssumptions() {
+		throw new UnsupportedOperationException("ClauseSink does not solve");
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 * @see kodkod.engine.satlab.SATSolver#valueOf(int)
+	 */
+	public boolean valueOf(int variable) {
+		throw new UnsupportedOperationException("ClauseSink does not solve");
+	}
+
+	/**
+	 * @see kodkod.engine.satlab.SATSolver#free()
+	 */
+	public void free() {}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() { 
+		return "ClauseSink(" + variables + " vars, " + clauses + " clauses)";
+	}
+}
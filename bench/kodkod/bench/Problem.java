@@ -0,0 +1,227 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import kodkod.ast.Formula;
+import kodkod.engine.config.Options;
+import kodkod.examples.alloy.Dijkstra;
+import kodkod.examples.alloy.FileSystem;
+import kodkod.examples.alloy.Hotel;
+import kodkod.examples.alloy.Lists;
+import kodkod.examples.alloy.Pigeonhole;
+import kodkod.examples.alloy.RingElection;
+import kodkod.examples.csp.LatinSquare;
+import kodkod.examples.csp.MagicSeries;
+import kodkod.examples.csp.SocialGolfer;
+import kodkod.examples.sudoku.Sudoku;
+import kodkod.examples.tptp.ALG195;
+import kodkod.examples.tptp.COM008;
+import kodkod.examples.tptp.GEO091;
+import kodkod.examples.tptp.MED007;
+import kodkod.examples.tptp.NUM374;
+import kodkod.examples.tptp.SET948;
+import kodkod.examples.tptp.TOP020;
+import kodkod.instance.Bounds;
+
+/**
+ * A benchmark problem drawn from the bundled examples.  Problems are identified by 
+ * strings of the form "name" or "name:scope", where name is the simple name of an example 
+ * class and scope is a list of positive integers separated by 'x'.  For example, "Hotel:5" 
+ * denotes Hotel.checkNoBadEntry for 5, and "RingElection:5x10" denotes 
+ * RingElection.checkAtMostOneElected for 5 processes and 10 times.
+ * 
+ * @specfield name: String
+ * @specfield formula: Formula
+ * @specfield bounds: Bounds
+ * @specfield bitwidth: int // bitwidth required by the problem
+ * @specfield symmetryBreaking: int // symmetry breaking setting used by the problem
+ * @author agent
+ */
+public final class Problem {
+	private final String name;
+	private final Formula formula;
+	private final Bounds bounds;
+	private final int bitwidth, symmetryBreaking;
+	
+	/**
+	 * Constructs a new problem.
+	 */
+	private Problem(String name, Formula formula, Bounds bounds, int bitwidth, int symmetryBreaking) { 
+		this.name = name;
+		this.formula = formula;
+		this.bounds = bounds;
+		this.bitwidth = bitwidth;
+		this.symmetryBreaking = symmetryBreaking;
+	}
+	
+	/**
+	 * Constructs a new problem with default bitwidth and symmetry breaking settings.
+	 */
+	private Problem(String name, Formula formula, Bounds bounds) { 
+		this(name, formula, bounds, new Options().bitwidth(), new Options().symmetryBreaking());
+	}
+	
+	/**
+	 * Returns the problem identified by the given string.
+	 * @return the problem identified by the given string
+	 * @throws IllegalArgumentException  the given string does not identify a problem
+	 */
+	public static Problem named(String id) { 
+		final int colon = id.indexOf(':');
+		final String name = colon < 0 ? id : id.substring(0, colon);
+		final int[] scope;
+		try { 
+			final String[] parts = colon < 0 ? new String[0] : id.substring(colon+1).split("x");
+			scope = new int[parts.length];
+			for(int i = 0; i < parts.length; i++) { 
+				scope[i] = Integer.parseInt(parts[i]);
+				if (scope[i] < 1) throw new IllegalArgumentException("non-positive scope: " + id);
+			}
+		} catch (NumberFormatException e) { 
+			throw new IllegalArgumentException("malformed scope: " + id, e);
+		}
+		
+		switch(name) { 
+		// alloy
+		case "Hotel"        : 
+			checkScope(id, scope, 1);
+			final Hotel hotel = new Hotel();
+			return new Problem(id, hotel.checkNoBadEntry(), hotel.bounds(scope[0]));
+		case "RingElection" : 
+			checkScope(id, scope, 2);
+			final RingElection ring = new RingElection();
+			return new Problem(id, ring.checkAtMostOneElected(), ring.bounds(scope[0], scope[1]));
+		case "Pigeonhole"   : 
+			checkScope(id, scope, 2);
+			final Pigeonhole pigeons = new Pigeonhole();
+			return new Problem(id, pigeons.declarations().and(pigeons.pigeonPerHole()), pigeons.bounds(scope[0], scope[1]));
+		case "Lists"        : 
+			checkScope(id, scope, 1);
+			final Lists lists = new Lists();
+			return new Problem(id, lists.checkReflexive(), lists.bounds(scope[0]));
+		case "Dijkstra"     : 
+			checkScope(id, scope, 1);
+			final Dijkstra dijkstra = new Dijkstra();
+			return new Problem(id, dijkstra.checkDijkstraPreventsDeadlocks(), dijkstra.bounds(scope[0]));
+		case "FileSystem"   : 
+			checkScope(id, scope, 1);
+			final FileSystem fs = new FileSystem();
+			return new Problem(id, fs.checkNoDirAliases(), fs.bounds(scope[0]));
+		// tptp
+		case "ALG195"       : 
+			checkScope(id, scope, 0);
+			final ALG195 alg195 = new ALG195();
+			return new Problem(id, alg195.checkCO1(), alg195.bounds());
+		case "COM008"       : 
+			checkScope(id, scope, 1);
+			final COM008 com008 = new COM008();
+			return new Problem(id, com008.checkGoalToBeProved(), com008.bounds(scope[0]));
+		case "GEO091"       : 
+			checkScope(id, scope, 1);
+			final GEO091 geo091 = new GEO091();
+			return new Problem(id, geo091.checkTheorem_2_13(), geo091.bounds(scope[0]));
+		case "MED007"       : 
+			checkScope(id, scope, 1);
+			final MED007 med007 = new MED007();
+			return new Problem(id, med007.checkTranssls2_qilt27(), med007.bounds(scope[0]));
+		case "NUM374"       : 
+			checkScope(id, scope, 1);
+			final NUM374 num374 = new NUM374();
+			return new Problem(id, num374.checkWilkie(), num374.bounds(scope[0]));
+		case "SET948"       : 
+			checkScope(id, scope, 1);
+			final SET948 set948 = new SET948();
+			return new Problem(id, set948.checkT101_zfmisc_1(), set948.bounds(scope[0]));
+		case "TOP020"       : 
+			checkScope(id, scope, 1);
+			final TOP020 top020 = new TOP020();
+			return new Problem(id, top020.checkChallenge_AMR_1_4_4(), top020.bounds(scope[0]));
+		// csp
+		case "LatinSquare"  : 
+			checkScope(id, scope, 1);
+			final LatinSquare latin = new LatinSquare();
+			return new Problem(id, latin.latin().and(latin.qg5()).and(latin.idempotent()), latin.bounds(scope[0]), 
+					new Options().bitwidth(), scope[0]*scope[0]*scope[0]);
+		case "MagicSeries"  : 
+			checkScope(id, scope, 1);
+			final MagicSeries magic = new MagicSeries();
+			return new Problem(id, magic.magic(), magic.bounds(scope[0]), 
+					33-Integer.numberOfLeadingZeros(scope[0]), new Options().symmetryBreaking());
+		case "SocialGolfer" : 
+			checkScope(id, scope, 4);
+			final SocialGolfer golfer = new SocialGolfer();
+			return new Problem(id, golfer.schedule(), golfer.bounds(scope[0], scope[1], scope[2], scope[3]), 
+					32-Integer.numberOfLeadingZeros(scope[1]*scope[2]), 1000);
+		// sudoku
+		case "Sudoku"       : 
+			checkScope(id, scope, 0);
+			final Sudoku sudoku = new Sudoku(3);
+			return new Problem(id, sudoku.rules(), sudoku.bounds(Sudoku.defaultPuzzle()));
+		default : 
+			throw new IllegalArgumentException("unknown problem: " + id);
+		}
+	}
+	
+	/**
+	 * Throws an IllegalArgumentException if the given scope does not have the given length.
+	 * @throws IllegalArgumentException  scope.length != length
+	 */
+	private static void checkScope(String id, int[] scope, int length) { 
+		if (scope.length != length)
+			throw new IllegalArgumentException("expected a scope of length " + length + ": " + id);
+	}
+	
+	/**
+	 * Returns the identifier of this problem.
+	 * @return this.name
+	 */
+	public String name() { return name; }
+	
+	/**
+	 * Returns the formula to be solved.
+	 * @return this.formula
+	 */
+	public Formula formula() { return formula; }
+	
+	/**
+	 * Returns a copy of the bounds on the formula to be solved.
+	 * @return this.bounds.clone()
+	 */
+	public Bounds bounds() { return bounds.clone(); }
+	
+	/**
+	 * Returns fresh options for solving this problem, with 
+	 * the bitwidth and symmetry breaking settings that it requires.
+	 * @return some o: Options | o.bitwidth = this.bitwidth && o.symmetryBreaking = this.symmetryBreaking 
+	 */
+	public Options options() { 
+		final Options options = new Options();
+		options.setBitwidth(bitwidth);
+		options.setSymmetryBreaking(symmetryBreaking);
+		return options;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() { return name; }
+}
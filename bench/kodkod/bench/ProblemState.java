@@ -0,0 +1,91 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import kodkod.ast.Formula;
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.instance.Bounds;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark state that holds a {@linkplain Problem} from the bundled examples.  
+ * By default, the benchmarks that use this state are run on problems at several 
+ * scopes from the alloy, tptp, csp and sudoku examples.  Each of the default problems 
+ * translates in at most a few seconds.  A different set of problems can be selected on 
+ * the JMH command line, e.g. {@code -p problem=Hotel:6,Pigeonhole:10x9}.
+ * 
+ * @specfield problem: Problem
+ * @author agent
+ */
+@State(Scope.Benchmark)
+public class ProblemState {
+	@Param({ 
+		// alloy
+		"Hotel:4", "Hotel:5", "RingElection:5x10", "Pigeonhole:8x7", "Lists:5", "Dijkstra:6", "FileSystem:5",
+		// tptp
+		"ALG195", "COM008:5", "GEO091:6", "MED007:6", "NUM374:3", "SET948:3", "TOP020:6",
+		// csp
+		"LatinSquare:5", "MagicSeries:7", "SocialGolfer:12x3x3x4",
+		// sudoku
+		"Sudoku"
+	})
+	public String problem;
+	
+	private Problem instance;
+	
+	/**
+	 * Constructs this.problem from its identifier.
+	 * @ensures this.problem' = Problem.named(problem)
+	 */
+	@Setup
+	public void setup() { 
+		instance = Problem.named(problem);
+	}
+	
+	/**
+	 * Returns the formula of this.problem.
+	 * @return this.problem.formula
+	 */
+	public Formula formula() { return instance.formula(); }
+	
+	/**
+	 * Returns a copy of the bounds of this.problem.
+	 * @return this.problem.bounds.clone()
+	 */
+	public Bounds bounds() { return instance.bounds(); }
+	
+	/**
+	 * Returns fresh options for this.problem that direct the generated 
+	 * clauses to the given SAT factory.
+	 * @return some o: Options | o = this.problem.options() && o.solver = solver
+	 */
+	public Options options(SATFactory solver) { 
+		final Options options = instance.options();
+		options.setSolver(solver);
+		return options;
+	}
+}
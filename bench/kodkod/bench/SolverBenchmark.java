@@ -0,0 +1,108 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.engine.satlab.SATFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time it takes each SAT backend to solve the CNF translations of the 
+ * {@linkplain ProblemState benchmark problems}.  The translation is done before each
+ * invocation of the benchmark method, so the measurements include only the solving time.
+ * The backends are named by the {@linkplain SATFactory} constants that produce them, and 
+ * a backend that is not available on this platform fails during setup.  Note that the 
+ * allocations reported by the JMH gc profiler include those made by the per-invocation translation.
+ * 
+ * @specfield solver: String // name of a SATFactory constant
+ * @author agent
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SolverBenchmark {
+	@Param({ "DefaultSAT4J", "LightSAT4J", "MiniSat", "Glucose", "Lingeling" })
+	public String solver;
+	
+	private SATFactory factory;
+	private Translation.Whole translation;
+	
+	/**
+	 * Looks up the SATFactory named by this.solver.
+	 * @throws IllegalArgumentException  this.solver does not name a SATFactory
+	 * @throws IllegalStateException  this.solver is not available on this platform
+	 */
+	@Setup(Level.Trial)
+	public void setupFactory() throws ReflectiveOperationException { 
+		final Object value = SATFactory.class.getField(solver).get(null);
+		if (!(value instanceof SATFactory)) 
+			throw new IllegalArgumentException("not a SATFactory: " + solver);
+		factory = (SATFactory) value;
+		if (!SATFactory.available(factory))
+			throw new IllegalStateException(solver + " is not available on this platform");
+	}
+	
+	/**
+	 * Translates the given problem to CNF, using this.solver as the backend.
+	 */
+	@Setup(Level.Invocation)
+	public void setupTranslation(ProblemState state) { 
+		translation = Translator.translate(state.formula(), state.bounds(), state.options(factory));
+	}
+	
+	/**
+	 * Releases the resources held by the last translation.
+	 */
+	@TearDown(Level.Invocation)
+	public void tearDownTranslation() { 
+		translation.cnf().free();
+		translation = null;
+	}
+	
+	/**
+	 * Measures {@linkplain kodkod.engine.satlab.SATSolver#solve()} on the translation of the given problem.
+	 * @return the outcome of solving
+	 */
+	@Benchmark
+	public boolean solve() { 
+		return translation.cnf().solve();
+	}
+}
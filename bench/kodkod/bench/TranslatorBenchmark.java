@@ -0,0 +1,72 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import kodkod.engine.fol2sat.SymmetryDetector;
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.util.ints.IntSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the end-to-end translation of the {@linkplain ProblemState benchmark problems} 
+ * to CNF, and the detection of symmetries in their bounds.  The generated clauses are 
+ * sent to a {@linkplain ClauseSink}, so the measurements do not include the cost of loading
+ * them into a SAT solver.
+ * 
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TranslatorBenchmark {
+	
+	/**
+	 * Measures {@linkplain Translator#translate(kodkod.ast.Formula, kodkod.instance.Bounds, kodkod.engine.config.Options)}.
+	 * @return the translation of the given problem
+	 */
+	@Benchmark
+	public Translation.Whole translate(ProblemState state) { 
+		return Translator.translate(state.formula(), state.bounds(), state.options(ClauseSink.FACTORY));
+	}
+	
+	/**
+	 * Measures {@linkplain SymmetryDetector#partition(kodkod.instance.Bounds)}.
+	 * @return the symmetry classes of the given problem's bounds
+	 */
+	@Benchmark
+	public Set<IntSet> detectSymmetries(ProblemState state) { 
+		return SymmetryDetector.partition(state.bounds());
+	}
+}
@@ -0,0 +1,125 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.util.concurrent.TimeUnit;
+
+import kodkod.ast.Formula;
+import kodkod.bench.ClauseSink;
+import kodkod.bench.ProblemState;
+import kodkod.engine.bool.BooleanConstant;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.BooleanValue;
+import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.util.nodes.AnnotatedNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the two main phases of the translation of the {@linkplain ProblemState benchmark problems} 
+ * separately:  the translation of a formula to a boolean circuit by {@linkplain FOL2BoolTranslator}, 
+ * and the translation of the circuit to CNF by {@linkplain Bool2CNFTranslator}.  The inputs to 
+ * both phases are recorded, during setup, from a full run of the {@linkplain Translator}.  
+ * In particular, the first phase is applied to the skolemized formula and the bounds 
+ * on which the translator invokes it, and the second phase is applied to the resulting 
+ * circuit after preprocessing and conjunction with the symmetry breaking predicate.  
+ * This class belongs to the same package as the translators so that it can invoke them 
+ * directly.
+ * 
+ * @specfield formula: Formula // input to FOL2BoolTranslator
+ * @specfield bounds: Bounds // bounds for this.formula
+ * @specfield circuit: BooleanFormula // input to Bool2CNFTranslator
+ * @specfield maxPrimaryVar: int // largest primary variable in this.circuit
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PhaseBenchmark {
+	private Options options;
+	private Formula formula;
+	private Bounds bounds;
+	private BooleanFormula circuit;
+	private int maxPrimaryVar;
+	
+	/**
+	 * Translates the given problem and records the inputs to each translation phase.
+	 */
+	@Setup(Level.Trial)
+	public void setup(ProblemState state) { 
+		options = state.options(ClauseSink.FACTORY);
+		options.setReporter(new AbstractReporter() {
+			@Override
+			public void translatingToBoolean(Formula f, Bounds b) {
+				formula = f;
+				bounds = b.clone();
+			}
+			@Override
+			public void translatingToCNF(BooleanFormula c) {
+				circuit = c;
+			}
+		});
+		maxPrimaryVar = Translator.translate(state.formula(), state.bounds(), options).numPrimaryVariables();
+		options.setReporter(new AbstractReporter() {});
+		if (formula==null) { // the formula was simplified to a constant before translation to a circuit
+			formula = state.formula();
+			bounds = state.bounds();
+		}
+	}
+	
+	/**
+	 * Measures the translation of this.formula to a boolean circuit.
+	 * @return the translation of this.formula with respect to this.bounds
+	 */
+	@Benchmark
+	public BooleanValue fol2bool() { 
+		final LeafInterpreter interpreter = LeafInterpreter.exact(bounds, options, false);
+		return FOL2BoolTranslator.translate(AnnotatedNode.annotateRoots(formula), interpreter, options);
+	}
+	
+	/**
+	 * Measures the translation of this.circuit to CNF.
+	 * @return a clause sink that holds the CNF translation of this.circuit 
+	 */
+	@Benchmark
+	public SATSolver bool2cnf() { 
+		if (circuit==null) // the circuit was simplified to a constant
+			return Bool2CNFTranslator.translate(BooleanConstant.TRUE, ClauseSink.FACTORY);
+		return Bool2CNFTranslator.translate(circuit, maxPrimaryVar, ClauseSink.FACTORY, options.cnfEncoding());
+	}
+}
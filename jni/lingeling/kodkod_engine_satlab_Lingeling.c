@@ -62,6 +62,26 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_addClause
 	return JNI_TRUE;
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Lingeling_addClauses
+  (JNIEnv * env, jobject obj, jlong lgl, jintArray batch, jint length) {
+	jint* buf = (*env)->GetIntArrayElements(env, batch, JNI_FALSE);
+	LGL* lglPtr = (LGL*)lgl;
+	jint added = 0;
+	int i;
+	for(i = 0; i < length; i++) {
+		int lit = *(buf+i);
+		lgladd (lglPtr, lit);
+		if (lit == 0) added++;
+	}
+	(*env)->ReleaseIntArrayElements(env, batch, buf, JNI_ABORT);
+	return added;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    solve
@@ -73,6 +93,34 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solve
 	return lglsat(lglPtr)==10;
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_solveAssuming
+  (JNIEnv * env, jobject obj, jlong lgl, jintArray assumptions) {
+	jsize length = (*env)->GetArrayLength(env, assumptions);
+	jint* buf = (*env)->GetIntArrayElements(env, assumptions, JNI_FALSE);
+	LGL* lglPtr = (LGL*)lgl;
+	int i;
+	for(i = 0; i < length; i++) {
+		lglassume(lglPtr, *(buf+i));
+	}
+	(*env)->ReleaseIntArrayElements(env, assumptions, buf, JNI_ABORT);
+	return lglsat(lglPtr)==10;
+}
+
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    failed
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_failed
+  (JNIEnv * env, jobject obj, jlong lgl, jint lit) {
+	return lglfailed((LGL*)lgl, lit);
+}
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    valueOf
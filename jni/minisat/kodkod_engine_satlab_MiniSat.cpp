@@ -73,6 +73,31 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_addClause
     return solverPtr->okay();
  }
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_MiniSat_addClauses
+  (JNIEnv * env, jobject, jlong solver, jintArray batch, jint length) {
+    jint* buf = env->GetIntArrayElements(batch, JNI_FALSE);
+    Solver* solverPtr = ((Solver*)solver);
+    vec<Lit> lits;
+    jint added = 0;
+    for(int i = 0; i < length; ++i) {
+        int var = *(buf+i);
+        if (var == 0) {
+            solverPtr->addClause(lits);
+            if (solverPtr->okay()) ++added;
+            lits.clear();
+        } else {
+            lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+        }
+    }
+    env->ReleaseIntArrayElements(batch, buf, JNI_ABORT);
+    return added;
+ }
+
 /*
  * Class:     kodkod_engine_satlab_MiniSat
  * Method:    solve
@@ -83,6 +108,36 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solve
    return ((Solver*)solver)->solve();
   }
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solveAssuming
+  (JNIEnv * env, jobject, jlong solver, jintArray assumptions) {
+    jsize length = env->GetArrayLength(assumptions);
+    jint* buf = env->GetIntArrayElements(assumptions, JNI_FALSE);
+    vec<Lit> lits;
+    for(int i = 0; i < length; ++i) {
+        int var = *(buf+i);
+        lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+    }
+    env->ReleaseIntArrayElements(assumptions, buf, JNI_ABORT);
+    return ((Solver*)solver)->solve(lits);
+  }
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    failed
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_failed
+  (JNIEnv *, jobject, jlong solver, jint lit) {
+  // the conflict set contains the negations of the failed assumptions
+  Lit p = (lit > 0) ?  mkLit(lit-1) : ~mkLit(-lit-1);
+  return ((Solver*)solver)->conflict.has(~p);
+ }
+
 /*
  * Class:     kodkod_engine_satlab_MiniSat
  * Method:    valueOf
@@ -90,6 +90,40 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_solve
    return ((Solver*)solver)->solve();
   }
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSatProver
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_solveAssuming
+  (JNIEnv * env, jobject, jlong solver, jintArray assumptions) {
+    jsize length = env->GetArrayLength(assumptions);
+    jint* buf = env->GetIntArrayElements(assumptions, JNI_FALSE);
+    vec<Lit> lits;
+    for(int i = 0; i < length; ++i) {
+        int var = *(buf+i);
+        lits.push((var > 0) ? Lit(var-1) : ~Lit(-var-1));
+    }
+    env->ReleaseIntArrayElements(assumptions, buf, JNI_ABORT);
+    return ((Solver*)solver)->solve(lits);
+  }
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSatProver
+ * Method:    failed
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_failed
+  (JNIEnv *, jobject, jlong solver, jint lit) {
+  // the conflict clause contains the negations of the failed assumptions
+  Lit p = (lit > 0) ? Lit(lit-1) : ~Lit(-lit-1);
+  vec<Lit>& conflict = ((Solver*)solver)->conflict;
+  for(int i = 0; i < conflict.size(); ++i) {
+    if (conflict[i] == ~p) return JNI_TRUE;
+  }
+  return JNI_FALSE;
+ }
+
 /*
  * Class:     kodkod_engine_satlab_MiniSatProver
  * Method:    valueOf
@@ -47,6 +47,22 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_addClause
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_solve
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSatProver
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_solveAssuming
+  (JNIEnv *, jobject, jlong, jintArray);
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSatProver
+ * Method:    failed
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSatProver_failed
+  (JNIEnv *, jobject, jlong, jint);
+
 /*
  * Class:     kodkod_engine_satlab_MiniSatProver
  * Method:    valueOf
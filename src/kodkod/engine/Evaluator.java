@@ -21,6 +21,8 @@
  */
 package kodkod.engine;
 
+import java.math.BigInteger;
+
 import kodkod.ast.Expression;
 import kodkod.ast.Formula;
 import kodkod.ast.IntExpression;
@@ -133,6 +135,22 @@ public final class Evaluator {
 		return sol.value();
 	}
 	
+	/**
+	 * Evaluates the specified int expression with respect to the relation-tuple mappings
+	 * given by this.instance and using this.options, and returns its exact value.  Unlike 
+	 * {@link #evaluate(IntExpression)}, the result is not truncated to 32 bits when 
+	 * this.options.bitwidth is greater than 32.
+	 * @return  the integer to which the expression evaluates given the
+	 * mappings in this.instance and the options in this.options.
+	 * @throws kodkod.engine.fol2sat.HigherOrderDeclException  intExpr contains a higher order declaration
+	 * @throws kodkod.engine.fol2sat.UnboundLeafException  intExpr contains an undeclared variable or
+	 * a relation not mapped by this.instance
+	 */
+	public BigInteger evaluateBig(IntExpression intExpr) {
+		if (intExpr == null) throw new NullPointerException("intexpression");
+		return Translator.evaluate(intExpr, instance, options).bigValue();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see java.lang.Object#toString()
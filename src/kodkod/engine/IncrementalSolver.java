@@ -21,6 +21,12 @@
  */
 package kodkod.engine;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import kodkod.ast.Formula;
 import kodkod.engine.config.Options;
 import kodkod.engine.fol2sat.HigherOrderDeclException;
@@ -87,10 +93,27 @@ import kodkod.instance.Universe;
  * to specify an {@linkplain SATFactory#incremental() incremental} SAT solver.  Note that these 
  * restrictions prevent unsat core extraction.</p>
  * 
+ * <p>
+ * Formulas may also be added to the solver as <i>retractable</i> assumptions, via the {@link #assume(Formula, Bounds) assume} 
+ * method.  The translation of each retractable formula is guarded by a fresh selector variable, which is passed to the 
+ * underlying SAT solver as an {@linkplain SATSolver#solve(int[]) assumption} whenever the formula is active.  
+ * An active assumption can be {@linkplain #retract(Formula) retracted} and later {@linkplain #activate(Formula) re-activated}, 
+ * and the current problem can be {@linkplain #solve() re-solved} without adding any new formulas.  Unlike a  
+ * problem that is unsatisfiable on its own, a problem that is unsatisfiable only under the active assumptions 
+ * does not make the solver unusable; the {@linkplain #failedAssumptions() failed assumptions} identify the active 
+ * formulas that were responsible for the UNSAT outcome, and retracting any one of them may make the problem satisfiable again.  
+ * Since the bounds on the relations in a retractable formula remain in effect after the formula is retracted, 
+ * the top-level predicates of a retractable formula are not used for symmetry breaking.
+ * </p>
+ * 
  * @specfield options: {@link Options} 
  * @specfield bounds: lone {@link Bounds}
  * @specfield formulas: set {@link Formula}
- * @invariant formulas.*components & Relation in bounds.relations
+ * @specfield assumptions: set {@link Formula}
+ * @specfield active: set {@link Formula}
+ * @invariant no formulas & assumptions
+ * @invariant active in assumptions
+ * @invariant (formulas + assumptions).*components & Relation in bounds.relations
  * @invariant some formulas iff some bounds 
  * @invariant options.solver.incremental() && options.logTranslation = 0   
  * 
@@ -105,15 +128,21 @@ public final class IncrementalSolver implements KodkodSolver {
 	private final Options options;
 	private Translation.Incremental translation;
 	private Boolean outcome;
+	/** maps each assumption to the label of its selector variable, or to 0 if its translation is trivially true */
+	private final Map<Formula, Integer> selectors;
+	private final Set<Formula> active, failed;
 	
 	/**
 	 * Initializes the solver with the given options.
-	 * @ensures no this.solution' && no this.formulas' && 
+	 * @ensures no this.solution' && no this.formulas' && no this.assumptions' &&
 	 *          no this.bounds'&& this.options' = options
 	 */
 	private IncrementalSolver(Options options) { 
 		this.options = options;
 		this.outcome = null;
+		this.selectors = new LinkedHashMap<Formula, Integer>();
+		this.active = new LinkedHashSet<Formula>();
+		this.failed = new LinkedHashSet<Formula>();
 	}
 	
 	/**
@@ -147,8 +176,8 @@ public final class IncrementalSolver implements KodkodSolver {
 	 *             this.bounds.lowerBound' = this.bounds.lowerBound + b.lowerBound) else
 	 *            (this.bounds' = bounds)
 	 * @return some sol: Solution | sol.instance() = null => 
-	 *              UNSAT(this.formulas', this.bounds', this.options) else 
-	 *              sol.instance() in MODELS(Formula.and(this.formulas'), this.bounds', this.options)
+	 *              UNSAT(this.formulas' + this.active, this.bounds', this.options) else 
+	 *              sol.instance() in MODELS(Formula.and(this.formulas' + this.active), this.bounds', this.options)
 	 * @throws IllegalStateException a prior call returned an UNSAT solution or resulted in an exception
 	 * @throws NullPointerException  any of the arguments are null
 	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by this.bounds + b
@@ -157,40 +186,130 @@ public final class IncrementalSolver implements KodkodSolver {
 	 * @throws AbortedException this solving task has been aborted
 	 */
 	public Solution solve(Formula f, Bounds b) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
-		if (outcome==Boolean.FALSE)
-			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) produced an UNSAT solution.");
-
-		if (outcome != null && translation==null) 
-			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) resulted in an exception.");
+		return solve(f, b, false);
+	}
+	
+	/**
+	 * Adds the specified formula to the solver's state as an active retractable assumption, 
+	 * adds the given bounds to the solver's state, and returns the solution to the updated problem.  
+	 * The assumption remains active until it is {@linkplain #retract(Formula) retracted}.
+	 * This solver should not be used again if a call to this method results in an exception.
+	 * @requires this.{@link #usable() usable}()
+	 * @requires f !in this.formulas + this.assumptions
+	 * @requires f.*components & Relation in (this.bounds + b).relations
+	 * @requires some this.bounds => this.bounds.universe = b.universe && no b.intBound && no (this.bounds.relations & b.relations)
+	 * @requires some this.bounds => 
+	 *            all s: {@link SymmetryDetector#partition(Bounds) partition}(this.bounds) |  
+	 * 				some p: {@link SymmetryDetector#partition(Bounds) partition}(b) | 
+	 * 				   s.elements in p.elements
+	 * @ensures this.assumptions' = this.assumptions + f && this.active' = this.active + f
+	 * @ensures some this.bounds =>
+	 *            (this.bounds.relations' = this.bounds.relations + b.relations &&
+	 *             this.bounds.upperBound' = this.bounds.upperBound + b.upperBound &&
+	 *             this.bounds.lowerBound' = this.bounds.lowerBound + b.lowerBound) else
+	 *            (this.bounds' = bounds)
+	 * @return some sol: Solution | sol.instance() = null => 
+	 *              UNSAT(this.formulas + this.active', this.bounds', this.options) else 
+	 *              sol.instance() in MODELS(Formula.and(this.formulas + this.active'), this.bounds', this.options)
+	 * @throws IllegalStateException a prior call returned an UNSAT solution or resulted in an exception
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by this.bounds + b
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
+	 * @throws IllegalArgumentException any of the remaining preconditions on {@code f} and {@code b} are violated
+	 * @throws AbortedException this solving task has been aborted
+	 */
+	public Solution assume(Formula f, Bounds b) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		if (selectors.containsKey(f))
+			throw new IllegalArgumentException("Formula has already been added as an assumption: " + f);
+		return solve(f, b, true);
+	}
+	
+	/**
+	 * Retracts the given assumption.  The retracted formula no longer constrains the solutions 
+	 * returned by this solver until it is {@linkplain #activate(Formula) re-activated}.
+	 * @requires f in this.assumptions
+	 * @ensures this.active' = this.active - f
+	 * @throws IllegalArgumentException f !in this.assumptions
+	 */
+	public void retract(Formula f) {
+		checkAssumption(f);
+		active.remove(f);
+	}
+	
+	/**
+	 * Re-activates the given assumption.  
+	 * @requires f in this.assumptions
+	 * @ensures this.active' = this.active + f
+	 * @throws IllegalArgumentException f !in this.assumptions
+	 */
+	public void activate(Formula f) {
+		checkAssumption(f);
+		active.add(f);
+	}
+	
+	/**
+	 * Returns the solution to the problem formed by this.formulas, this.active and this.bounds.
+	 * This method can be used to re-solve the current problem after some assumptions 
+	 * have been retracted or re-activated.  This solver should not be used again if a call 
+	 * to this method results in an exception.
+	 * @requires this.{@link #usable() usable}()
+	 * @requires some this.bounds 
+	 * @return some sol: Solution | sol.instance() = null => 
+	 *              UNSAT(this.formulas + this.active, this.bounds, this.options) else 
+	 *              sol.instance() in MODELS(Formula.and(this.formulas + this.active), this.bounds, this.options)
+	 * @throws IllegalStateException a prior call returned an UNSAT solution or resulted in an exception,
+	 * or no formulas have been added to this solver
+	 * @throws AbortedException this solving task has been aborted
+	 */
+	public Solution solve() throws AbortedException {
+		checkUsable();
+		if (translation==null) 
+			throw new IllegalStateException("Cannot solve an empty problem.");
+		try {
+			return solve(translation, 0);
+		} catch (SATAbortedException sae) {
+			free();
+			throw new AbortedException(sae);		
+		} catch (RuntimeException e) {
+			free();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the active assumptions that were responsible for the UNSAT outcome of the most recent 
+	 * call to a solving method.  The returned set is empty if the last call produced a SAT solution,
+	 * or if the problem formed by this.formulas and this.bounds is unsatisfiable regardless of assumptions.
+	 * @return an unmodifiable view of the subset of this.active that was used to prove the 
+	 * most recent UNSAT outcome, if any
+	 */
+	public Set<Formula> failedAssumptions() {
+		return Collections.unmodifiableSet(failed);
+	}
+	
+	/**
+	 * Adds the given formula and bounds to this solver's state, as a retractable assumption if so specified, 
+	 * and solves the resulting problem.
+	 * @see #solve(Formula, Bounds)
+	 * @see #assume(Formula, Bounds)
+	 */
+	private Solution solve(Formula f, Bounds b, boolean retractable) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		checkUsable();
 		
 		final Solution solution;
 		try {			
 			final long startTransl = System.currentTimeMillis();
-			translation = translation==null ? Translator.translateIncremental(f, b, options) : Translator.translateIncremental(f, b, translation);
+			translation = translation==null ? 
+					Translator.translateIncremental(f, b, options, retractable) : 
+					Translator.translateIncremental(f, b, translation, retractable);
 			final long endTransl = System.currentTimeMillis();
 			
-			if (translation.trivial()) {
-				final Statistics stats = new Statistics(translation, endTransl - startTransl, 0);
-				if (translation.cnf().solve()) {
-					solution = Solution.triviallySatisfiable(stats, translation.interpret());
-				} else {
-					solution = Solution.triviallyUnsatisfiable(stats, null);
-				}	
-			} else {
-				final SATSolver cnf = translation.cnf();
-				
-				translation.options().reporter().solvingCNF(translation.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
-				final long startSolve = System.currentTimeMillis();
-				final boolean sat = cnf.solve();
-				final long endSolve = System.currentTimeMillis();
-
-				final Statistics stats = new Statistics(translation, endTransl - startTransl, endSolve - startSolve);
-				if (sat) {
-					solution = Solution.satisfiable(stats, translation.interpret());
-				} else { 
-					solution = Solution.unsatisfiable(stats, null);
-				}
+			if (retractable) {
+				selectors.put(f, translation.selector());
+				active.add(f);
 			}
+			
+			solution = solve(translation, endTransl - startTransl);
 		} catch (SATAbortedException sae) {
 			free();
 			throw new AbortedException(sae);		
@@ -199,7 +318,45 @@ public final class IncrementalSolver implements KodkodSolver {
 			throw e;
 		}
 		
-		if (solution.sat()) {
+		return solution;
+	}
+	
+	/**
+	 * Solves the given translation under the selectors of this.active, 
+	 * and updates this.outcome and this.failed accordingly. 
+	 * @requires transl = this.translation
+	 * @return the solution to the given translation under this.active
+	 */
+	private Solution solve(Translation.Incremental transl, long translTime) throws SATAbortedException {
+		failed.clear();
+		final Solution solution;
+		if (transl.trivial()) {
+			final Statistics stats = new Statistics(transl, translTime, 0);
+			if (transl.cnf().solve()) {
+				solution = Solution.triviallySatisfiable(stats, Solver.interpret(transl));
+			} else {
+				solution = Solution.triviallyUnsatisfiable(stats, null);
+			}	
+		} else {
+			final SATSolver cnf = transl.cnf();
+			final int[] assumptions = activeSelectors();
+			
+			transl.options().reporter().solvingCNF(transl.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
+			final long startSolve = System.currentTimeMillis();
+			final boolean sat = assumptions.length==0 ? cnf.solve() : cnf.solve(assumptions);
+			final long endSolve = System.currentTimeMillis();
+
+			final Statistics stats = new Statistics(transl, translTime, endSolve - startSolve);
+			if (sat) {
+				solution = Solution.satisfiable(stats, Solver.interpret(transl));
+			} else { 
+				solution = Solution.unsatisfiable(stats, null);
+				if (assumptions.length > 0) 
+					collectFailed(cnf.failedAssumptions());
+			}
+		}
+		
+		if (solution.sat() || !failed.isEmpty()) {
 			outcome = Boolean.TRUE;
 		} else {
 			outcome = Boolean.FALSE;
@@ -208,10 +365,64 @@ public final class IncrementalSolver implements KodkodSolver {
 		
 		return solution;
 	}
+	
+	/**
+	 * Returns the labels of the selectors for all formulas in this.active, 
+	 * excluding those whose translation is trivially true.
+	 * @return labels of the selectors for this.active
+	 */
+	private int[] activeSelectors() {
+		int size = 0;
+		final int[] sel = new int[active.size()];
+		for(Formula f : active) {
+			final int label = selectors.get(f);
+			if (label != 0) 
+				sel[size++] = label;
+		}
+		if (size==sel.length) return sel;
+		final int[] trimmed = new int[size];
+		System.arraycopy(sel, 0, trimmed, 0, size);
+		return trimmed;
+	}
+	
+	/**
+	 * Adds to this.failed the active formulas whose selectors are in the given array.
+	 * @ensures this.failed' = this.failed + { f: this.active | this.selectors.get(f) in lits }
+	 */
+	private void collectFailed(int[] lits) {
+		for(int lit : lits) {
+			for(Formula f : active) {
+				if (selectors.get(f)==lit) {
+					failed.add(f);
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @throws IllegalStateException !this.usable()
+	 */
+	private void checkUsable() {
+		if (outcome==Boolean.FALSE)
+			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) produced an UNSAT solution.");
+
+		if (outcome != null && translation==null) 
+			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) resulted in an exception.");
+	}
+	
+	/**
+	 * @throws IllegalArgumentException f !in this.assumptions
+	 */
+	private void checkAssumption(Formula f) {
+		if (!selectors.containsKey(f))
+			throw new IllegalArgumentException("Not an assumption: " + f);
+	}
 
 	/**
 	 * Returns true iff this solver has neither returned an UNSAT solution so far
-	 * nor thrown an exception during solving.
+	 * nor thrown an exception during solving.  A solution that is unsatisfiable only
+	 * under the active assumptions does not make this solver unusable.
 	 * @return  true iff this solver has neither returned an UNSAT solution so far
 	 * nor thrown an exception during solving
 	 */
@@ -23,8 +23,10 @@ package kodkod.engine;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import kodkod.ast.Formula;
 import kodkod.ast.IntExpression;
@@ -41,6 +43,8 @@ import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntBitSet;
+import kodkod.util.ints.IntSet;
 
 
 /** 
@@ -163,6 +167,9 @@ public final class Solver implements KodkodSolver {
 	 * Additionally, the CNF variables in the proof can be related back to the nodes in the given formula 
 	 * iff this.options has variable tracking enabled.  Translation logging also requires that 
 	 * there are no subnodes in the given formula that are both syntactically shared and contain free variables.  
+	 * If {@linkplain Options#minimizeBlockingClauses() this.options.minimizeBlockingClauses} is set, 
+	 * each non-trivial solution is blocked by a clause over an implicant of its CNF model rather than over all primary 
+	 * variables, so every returned solution stands for all solutions that agree with it on that implicant.
 	 * 
 	 * @return an iterator over all the Solutions to the formula with respect to the given bounds
 	 * @throws NullPointerException  formula = null || bounds = null
@@ -182,7 +189,41 @@ public final class Solver implements KodkodSolver {
 		if (!options.solver().incremental())
 			throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
 		
-		return new SolutionIterator(formula, bounds, options);
+		return new SolutionIterator(formula, bounds, options, null);
+		
+	}
+	
+	/**
+	 * Attempts to find all solutions to the given formula with respect to the specified bounds that 
+	 * are distinct on the given projection relations, or to prove the formula's unsatisfiability.  
+	 * This method behaves like {@linkplain #solveAll(Formula, Bounds)}, except that each solution is 
+	 * blocked by a clause over the primary variables of the projection relations only.  As a result, 
+	 * no two returned solutions agree on the values of all relations in the projection, and 
+	 * solutions that differ only in the values of other relations (including those introduced by 
+	 * skolemization) are not enumerated separately.  
+	 * 
+	 * @requires projection in bounds.relations
+	 * @return an iterator over the Solutions to the formula with respect to the given bounds, 
+	 * such that no two solutions agree on all relations in the projection 
+	 * @throws NullPointerException  formula = null || bounds = null || projection = null
+	 * @throws IllegalArgumentException  projection !in bounds.relations
+	 * @throws kodkod.engine.fol2sat.UnboundLeafException  the formula contains an undeclared variable or
+	 * a relation not mapped by the given bounds
+	 * @throws kodkod.engine.fol2sat.HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but this.options.skolemize is false.
+	 * @throws AbortedException  this solving task was interrupted with a call to Thread.interrupt on this thread
+	 * @throws IllegalStateException  !this.options.solver().incremental()
+	 * @see #solveAll(Formula, Bounds)
+	 */
+	public Iterator<Solution> solveAll(final Formula formula, final Bounds bounds, final Set<Relation> projection) 
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		
+		if (!options.solver().incremental())
+			throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
+		if (!bounds.relations().containsAll(projection))
+			throw new IllegalArgumentException("projection relations must be bound: " + projection);
+		
+		return new SolutionIterator(formula, bounds, options, new LinkedHashSet<Relation>(projection));
 		
 	}
 
@@ -194,6 +235,17 @@ public final class Solver implements KodkodSolver {
 		return options.toString();
 	}
 	
+	/**
+	 * Returns the instance encoded by the current model of the given translation, 
+	 * {@linkplain Translation#interpretLazily() interpreted lazily} if 
+	 * {@code translation.options.lazyInterpretation} is set.
+	 * @requires translation.cnf.solve() has been called and the outcome of the last call was true
+	 * @return translation.options.lazyInterpretation() ? translation.interpretLazily() : translation.interpret()
+	 */
+	static Instance interpret(Translation translation) {
+		return translation.options().lazyInterpretation() ? translation.interpretLazily() : translation.interpret();
+	}
+	
 	/**
 	 * Returns the result of solving a sat formula.
 	 * @param bounds Bounds with which  solve() was called
@@ -202,7 +254,7 @@ public final class Solver implements KodkodSolver {
 	 * @return the result of solving a sat formula.
 	 */
 	private static Solution sat(Translation.Whole translation, Statistics stats) {
-		final Solution sol = Solution.satisfiable(stats, translation.interpret());
+		final Solution sol = Solution.satisfiable(stats, interpret(translation));
 		translation.cnf().free();
 		return sol;
 	}
@@ -236,7 +288,7 @@ public final class Solver implements KodkodSolver {
 		final Statistics stats = new Statistics(0, 0, 0, translTime, 0);
 		final Solution sol;
 		if (translation.cnf().solve()) {
-			sol = Solution.triviallySatisfiable(stats, translation.interpret());
+			sol = Solution.triviallySatisfiable(stats, interpret(translation));
 		} else {
 			sol = Solution.triviallyUnsatisfiable(stats, trivialProof(translation.log()));
 		}
@@ -263,15 +315,22 @@ public final class Solver implements KodkodSolver {
 		private Translation.Whole translation;
 		private long translTime;
 		private int trivial;
+		/** relations on which solutions must be distinct, or null if solutions must be distinct on all relations */
+		private final Set<Relation> projection;
+		/** primary variables of this.projection in this.translation, computed lazily */
+		private IntSet projectionVars;
 		
 		/**
-		 * Constructs a solution iterator for the given formula, bounds, and options.
+		 * Constructs a solution iterator for the given formula, bounds, options, and projection.
+		 * @requires projection = null || projection in bounds.relations
 		 */
-		SolutionIterator(Formula formula, Bounds bounds, Options options) {
+		SolutionIterator(Formula formula, Bounds bounds, Options options, Set<Relation> projection) {
 			this.translTime = System.currentTimeMillis();
 			this.translation = Translator.translate(formula, bounds, options);
 			this.translTime = System.currentTimeMillis() - translTime;
 			this.trivial = 0;
+			this.projection = projection;
+			this.projectionVars = null;
 		}
 		
 		/**
@@ -325,11 +384,11 @@ public final class Solver implements KodkodSolver {
 			
 			if (isSat) {			
 				// extract the current solution; can't use the sat(..) method because it frees the sat solver
-				sol = Solution.satisfiable(stats, transl.interpret());
-				// add the negation of the current model to the solver
-				final int[] notModel = new int[primaryVars];
-				for(int i = 1; i <= primaryVars; i++) {
-					notModel[i-1] = cnf.valueOf(i) ? -i : i;
+				sol = Solution.satisfiable(stats, interpret(transl));
+				// add the negation of the current model (or of its implicant, if minimizing blocking clauses) to the solver
+				final int[] notModel = project(transl.implicant());
+				for(int i = 0; i < notModel.length; i++) {
+					notModel[i] = -notModel[i];
 				}
 				cnf.addClause(notModel);
 			} else {
@@ -339,6 +398,31 @@ public final class Solver implements KodkodSolver {
 			return sol;
 		}
 		
+		/**
+		 * Returns the literals in the given array whose variables encode the contents of the relations 
+		 * in this.projection, or the given array itself if this.projection is null.  
+		 * @requires this.translation != null
+		 * @return this.projection = null => lits else { lit: lits | |lit| in this.translation.primaryVariables(this.projection) }
+		 */
+		private int[] project(int[] lits) {
+			if (projection==null) return lits;
+			if (projectionVars==null) { 
+				projectionVars = new IntBitSet(translation.numPrimaryVariables()+1);
+				for(Relation r : projection) { 
+					projectionVars.addAll(translation.primaryVariables(r));
+				}
+			}
+			int size = 0;
+			for(int lit : lits) { 
+				if (projectionVars.contains(StrictMath.abs(lit))) { 
+					lits[size++] = lit;
+				}
+			}
+			final int[] projected = new int[size];
+			System.arraycopy(lits, 0, projected, 0, size);
+			return projected;
+		}
+		
 		/**
 		 * Returns the trivial solution corresponding to the trivial translation stored in {@code this.translation},
 		 * and if {@code this.translation.cnf.solve()} is true, sets {@code this.translation} to a new translation 
@@ -364,6 +448,7 @@ public final class Solver implements KodkodSolver {
 				final List<Formula> changes = new ArrayList<Formula>();
 
 				for(Relation r : bounds.relations()) {
+					if (projection != null && !projection.contains(r)) continue;
 					final TupleSet lower = bounds.lowerBound(r); 
 					
 					if (lower != bounds.upperBound(r)) { // r may change
@@ -386,6 +471,7 @@ public final class Solver implements KodkodSolver {
 				
 				final long startTransl = System.currentTimeMillis();
 				translation = Translator.translate(formula, newBounds, transl.options());
+				projectionVars = null;
 				translTime += System.currentTimeMillis() - startTransl;
 			} 
 			return sol;
@@ -24,10 +24,13 @@ package kodkod.engine.bool;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 
 import kodkod.engine.config.Options;
+import kodkod.engine.config.Options.CardinalityEncoding;
+import kodkod.engine.config.Options.ClosureEncoding;
 import kodkod.engine.config.Options.IntEncoding;
 import kodkod.util.ints.IntSet;
 
@@ -39,7 +42,10 @@ import kodkod.util.ints.IntSet;
  * @specfield comparisonDepth: int // the depth to which circuits should be checked for equality 
  * @specfield intEncoding: {@link IntEncoding} // the encoding used for generating integers ({@link #integer(int)}
  * @specfield bitwidth: int // the bitwidth used for integer computations
+ * @specfield closureEncoding: {@link ClosureEncoding} // the encoding used for computing closures of matrices ({@link BooleanMatrix#closure()})
+ * @specfield cardinalityEncoding: {@link CardinalityEncoding} // the encoding used for counting in unary ({@link #count(Collection, int)})
  * @specfield components: set {@link BooleanValue}
+ * @specfield concurrent: boolean // true if components can be created by several threads at once
  * @invariant {@link BooleanConstant} in components
  * @invariant no f1, f2: BooleanFactory | f1 != f2 => f1.components & f2.components = {@link BooleanConstant}
  * @invariant let formulas = (components & {@link BooleanFormula}) - {@link NotGate} | 
@@ -54,9 +60,19 @@ public abstract class BooleanFactory {
 	
 	private int numVars;
 	
+	/** True if this factory was created by {@link #constantFactory(Options)} and has no variables; 
+	 * the matrices created by such a factory are packed into bit vectors when possible. */
+	boolean constant;
+	
 	/** The bitwidth used for integer computations */
 	final int bitwidth;
 	
+	/** The encoding used for computing transitive closures of matrices created by this factory */
+	ClosureEncoding closureEncoding = ClosureEncoding.SQUARING;
+	
+	/** The encoding used for counting true values in unary */
+	private CardinalityEncoding cardinalityEncoding = CardinalityEncoding.ADDERS;
+	
 	/**
 	 * Constructs a boolean factory with the given number of input variables.  Gates are
 	 * checked for semantic equality down to the given depth.  Integers are represented
@@ -66,9 +82,10 @@ public abstract class BooleanFactory {
 	 * @ensures #this.components' = numInputVariables && this.components' in BooleanVariable 
 	 * @ensures this.bitwidth' = bitwidth
 	 * @ensures this.comparisonDepth' = comparisonDepth
+	 * @ensures this.concurrent' = concurrent
 	 */
-	private BooleanFactory(int numVars, int comparisonDepth, int bitwidth) {
-		this.circuits = new CBCFactory(numVars, 1<<comparisonDepth);
+	private BooleanFactory(int numVars, int comparisonDepth, int bitwidth, boolean concurrent) {
+		this.circuits = new CBCFactory(numVars, 1<<comparisonDepth, concurrent);
 		this.bitwidth = bitwidth;
 		this.numVars = numVars;
 	}
@@ -85,18 +102,61 @@ public abstract class BooleanFactory {
 	 * @return {f: BooleanFactory | #(f.components & BooleanVariable) = numVars &&
 	 *                              BooleanConstant in f.components && f.components in BooleanVariable + BooleanConstant &&
 	 *                              f.comparisonDepth = options.sharing && 
-	 *                              f.bitwidth = options.bitwidth && f.intEncoding = options.intEncoding && 
+	 *                              f.bitwidth = options.bitwidth && f.intEncoding = options.intEncoding && f.closureEncoding = options.closureEncoding && 
 	 *                              (all i: [1..numVars] | one f.components.label & i }}
 	 * @throws IllegalArgumentException  numVars < 0 || numVars = Integer.MAX_VALUE
 	 * @throws NullPointerException  options = null
 	 */
 	public static BooleanFactory factory(int numVars, Options options) {
+		return factory(numVars, options, false);
+	}
+	
+	/**
+	 * Returns a concurrent boolean factory, initialized to contain the given number
+	 * of boolean variables.  The returned factory behaves like {@link #factory(int, Options) factory(numVars, options)},
+	 * except that its gates, matrices and ints can be created by several threads at once.  
+	 * The circuits created concurrently are shared just as they would be if they were created 
+	 * sequentially, but the labels of their gates depend on thread scheduling.  
+	 * <p>Note that {@link #addVariables(int)} and {@link #setComparisonDepth(int)} are not 
+	 * thread-safe:  they must not be called while the factory is being used by other threads.</p>
+	 * @return {f: BooleanFactory | #(f.components & BooleanVariable) = numVars &&
+	 *                              BooleanConstant in f.components && f.components in BooleanVariable + BooleanConstant &&
+	 *                              f.comparisonDepth = options.sharing && 
+	 *                              f.bitwidth = options.bitwidth && f.intEncoding = options.intEncoding && f.closureEncoding = options.closureEncoding && 
+	 *                              f.concurrent && (all i: [1..numVars] | one f.components.label & i }}
+	 * @throws IllegalArgumentException  numVars < 0 || numVars = Integer.MAX_VALUE
+	 * @throws NullPointerException  options = null
+	 */
+	public static BooleanFactory concurrentFactory(int numVars, Options options) {
+		return factory(numVars, options, true);
+	}
+	
+	/**
+	 * Returns a boolean factory, initialized to contain the given number of boolean variables, 
+	 * which is concurrent if the given flag is true.
+	 * @return {f: BooleanFactory | #(f.components & BooleanVariable) = numVars &&
+	 *                              BooleanConstant in f.components && f.components in BooleanVariable + BooleanConstant &&
+	 *                              f.comparisonDepth = options.sharing && 
+	 *                              f.bitwidth = options.bitwidth && f.intEncoding = options.intEncoding && f.closureEncoding = options.closureEncoding && 
+	 *                              f.concurrent = concurrent && (all i: [1..numVars] | one f.components.label & i }}
+	 * @throws IllegalArgumentException  numVars < 0 || numVars = Integer.MAX_VALUE
+	 * @throws NullPointerException  options = null
+	 */
+	private static BooleanFactory factory(int numVars, Options options, boolean concurrent) {
+		final BooleanFactory f;
 		switch(options.intEncoding()) {
 		case TWOSCOMPLEMENT : 
-			return new TwosComplementFactory(numVars, options.sharing(), options.bitwidth()); 
+			f = new TwosComplementFactory(numVars, options.sharing(), options.bitwidth(), concurrent); 
+			break;
+		case UNARY : 
+			f = new UnaryFactory(numVars, options.sharing(), options.bitwidth(), concurrent); 
+			break;
 		default :
 			throw new IllegalArgumentException("unknown encoding: " + options.intEncoding());
 		}
+		f.closureEncoding = options.closureEncoding();
+		f.cardinalityEncoding = options.cardinalityEncoding();
+		return f;
 	}
 	
 	/**
@@ -104,11 +164,13 @@ public abstract class BooleanFactory {
 	 * can manipulate only constants.  
 	 * @return {f: BooleanFactory | f.components = BooleanConstant &&
 	 *                              f.comparisonDepth = options.sharing && 
-	 *                              f.bitwidth = options.bitwidth && f.intEncoding = options.intEncoding }
+	 *                              f.bitwidth = options.bitwidth && f.intEncoding = options.intEncoding && f.closureEncoding = options.closureEncoding }
 	 * @throws NullPointerException  options = null
 	 */
 	public static BooleanFactory constantFactory(Options options) {
-		return factory(0, options);
+		final BooleanFactory f = factory(0, options);
+		f.constant = true;
+		return f;
 	}
 	
 	/**
@@ -118,6 +180,12 @@ public abstract class BooleanFactory {
 	 */
 	public final int comparisonDepth() { return Integer.numberOfTrailingZeros(circuits.cmpMax()); }
 	
+	/**
+	 * Returns true if this factory allows its components to be created by several threads at once.
+	 * @return this.concurrent
+	 */
+	public final boolean isConcurrent() { return circuits.isConcurrent(); }
+	
 	/**
 	 * Sets the comparison depth to the given value.  Setting the
 	 * comparison depth to a high value will result in more 
@@ -188,6 +256,7 @@ public abstract class BooleanFactory {
 		} else if (numVars > 0) {
 			circuits.addVariables(numVars);
 			this.numVars += numVars;
+			this.constant = false;
 		} // else do nothing
 	}
 	
@@ -367,6 +436,121 @@ public abstract class BooleanFactory {
 		return sum(bits.iterator(), 0, bits.size()-1);
 	}
 	
+	/**
+	 * Returns the encoding used by this factory for counting in unary.
+	 * @return this.cardinalityEncoding
+	 */
+	public final CardinalityEncoding cardinalityEncoding() { 
+		return cardinalityEncoding;
+	}
+	
+	/**
+	 * Returns the unary representation of the number of true values in the given collection, 
+	 * truncated at the given bound and computed using this.cardinalityEncoding.  That is, the 
+	 * j-th element of the returned array is true iff at least j+1 values in the collection are true.
+	 * If this.cardinalityEncoding is ADDERS, the elements of the returned array are obtained by 
+	 * comparing {@link #sum(Collection) sum(bits)} with the constants 1, ..., bound.
+	 * The behavior of this method is unspecified if the given values are not components of this factory.
+	 * @requires bits in this.components
+	 * @return { u: BooleanValue[] | u.length = bound && 
+	 *             all j: [0..bound) | [[u[j]]] <=> #{ v: bits | [[v]] } > j }
+	 * @throws IllegalArgumentException  bound < 0
+	 */
+	public final BooleanValue[] count(Collection<BooleanValue> bits, int bound) {
+		if (bound < 0) throw new IllegalArgumentException("bound < 0: " + bound);
+		final BooleanValue[] inputs = bits.toArray(new BooleanValue[bits.size()]);
+		final BooleanValue[] ret = new BooleanValue[bound];
+		final int max = StrictMath.min(bound, inputs.length);
+		switch(cardinalityEncoding) { 
+		case ADDERS : 
+			final Int sum = sum(bits);
+			for(int j = 0; j < max; j++) { ret[j] = sum.gte(integer(j+1)); }
+			break;
+		case SEQUENTIAL : 
+			sequentialCount(inputs, ret, max); 
+			break;
+		case TOTALIZER : 
+			System.arraycopy(totalize(inputs, 0, inputs.length, max), 0, ret, 0, max); 
+			break;
+		case SORTING : 
+			System.arraycopy(sort(inputs), 0, ret, 0, max);
+			break;
+		default : 
+			throw new IllegalArgumentException("unknown encoding: " + cardinalityEncoding);
+		}
+		Arrays.fill(ret, max, bound, BooleanConstant.FALSE);
+		return ret;
+	}
+	
+	/**
+	 * Fills the first max elements of the given array with the outputs of a sequential counter over the given inputs:  
+	 * after the i-th input is counted, out[j] is true iff at least j+1 of the first i inputs are true.
+	 * @requires max <= out.length
+	 * @ensures all j: [0..max) | [[out'[j]]] <=> #{ v: inputs[int] | [[v]] } > j 
+	 */
+	private void sequentialCount(BooleanValue[] inputs, BooleanValue[] out, int max) { 
+		Arrays.fill(out, 0, max, BooleanConstant.FALSE);
+		for(BooleanValue in : inputs) { 
+			for(int j = max-1; j > 0; j--) { 
+				out[j] = or(out[j], and(in, out[j-1]));
+			}
+			if (max > 0) out[0] = or(out[0], in);
+		}
+	}
+	
+	/**
+	 * Returns the outputs of a totalizer over inputs[from..to), truncated at the given bound:  
+	 * the j-th output is true iff at least j+1 of the given inputs are true.
+	 * @requires 0 <= from <= to <= inputs.length
+	 * @return { u: BooleanValue[] | u.length = min(max, to - from) && 
+	 *             all j: [0..u.length) | [[u[j]]] <=> #{ v: inputs[from..to) | [[v]] } > j }
+	 */
+	private BooleanValue[] totalize(BooleanValue[] inputs, int from, int to, int max) { 
+		if (to - from <= 1) 
+			return to==from || max==0 ? new BooleanValue[0] : new BooleanValue[]{ inputs[from] };
+		final int mid = (from + to) >>> 1;
+		final BooleanValue[] a = totalize(inputs, from, mid, max), b = totalize(inputs, mid, to, max);
+		final BooleanValue[] ret = new BooleanValue[StrictMath.min(max, a.length + b.length)];
+		for(int j = 1; j <= ret.length; j++) { 
+			// at least j inputs are true iff at least i are true in a and at least j-i in b, for some i
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
+			for(int i = StrictMath.max(0, j - b.length), imax = StrictMath.min(j, a.length); i <= imax; i++) { 
+				final BooleanValue ai = i==0 ? BooleanConstant.TRUE : a[i-1];
+				final BooleanValue bi = i==j ? BooleanConstant.TRUE : b[j-i-1];
+				if (acc.add(and(ai, bi))==BooleanConstant.TRUE) break;
+			}
+			ret[j-1] = accumulate(acc);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the outputs of Batcher's odd-even merge sorting network over the given inputs, 
+	 * which sorts them in decreasing order:  the j-th output is true iff at least j+1 of the inputs are true.
+	 * @return { u: BooleanValue[] | u.length >= inputs.length && 
+	 *             all j: [0..u.length) | [[u[j]]] <=> #{ v: inputs[int] | [[v]] } > j }
+	 */
+	private BooleanValue[] sort(BooleanValue[] inputs) { 
+		final int n = inputs.length < 2 ? inputs.length : Integer.highestOneBit(inputs.length - 1) << 1;
+		final BooleanValue[] v = Arrays.copyOf(inputs, n);
+		Arrays.fill(v, inputs.length, n, BooleanConstant.FALSE);
+		for(int p = 1; p < n; p <<= 1) { 
+			for(int k = p; k >= 1; k >>= 1) { 
+				for(int j = k % p; j + k < n; j += 2*k) { 
+					for(int i = 0, max = StrictMath.min(k, n - j - k); i < max; i++) { 
+						final int lo = i + j, hi = i + j + k;
+						if (lo / (2*p) == hi / (2*p)) { 
+							final BooleanValue vlo = v[lo], vhi = v[hi];
+							v[lo] = or(vlo, vhi);
+							v[hi] = and(vlo, vhi);
+						}
+					}
+				}
+			}
+		}
+		return v;
+	}
+	
 	/**
 	 * Returns a BooleanMatrix with the given dimensions and this 
 	 * as the factory for its non-FALSE components.  The returned matrix 
@@ -436,9 +620,10 @@ public abstract class BooleanFactory {
 		 * @ensures this.bitwidth' = bitwidth
 		 * @ensures this.comparisonDepth' = comparisonDepth
 		 * @ensures this.intEncoding' = BINARY
+		 * @ensures this.concurrent' = concurrent
 		 */
-		TwosComplementFactory(int numVars, int comparisonDepth, int bitwidth) {
-			super(numVars, comparisonDepth, bitwidth);
+		TwosComplementFactory(int numVars, int comparisonDepth, int bitwidth, boolean concurrent) {
+			super(numVars, comparisonDepth, bitwidth, concurrent);
 		}
 		/**
 		 * Returns TWOSCOMPLEMENT.
@@ -469,5 +654,57 @@ public abstract class BooleanFactory {
 		}
 		
 	}
-}
+	
+	/**
+	 * BooleanFactory that produces UnaryInts.
+	 * @invariant encoding = UNARY
+	 * @author agent
+	 */
+	private static final class UnaryFactory extends BooleanFactory {
 
+		/**
+		 * Constructs a boolean factory with the given number of input variables.  Gates are
+		 * checked for semantic equality down to the given depth.  Integers are represented
+		 * using the given number of bits.
+		 * @requires 0 <= numVars < Integer.MAX_VALUE
+		 * @requires checkToDepth >= 0 && bitwidth > 0
+		 * @ensures #this.components' = numInputVariables && this.components' in BooleanVariable 
+		 * @ensures this.bitwidth' = bitwidth
+		 * @ensures this.comparisonDepth' = comparisonDepth
+		 * @ensures this.intEncoding' = UNARY
+		 * @ensures this.concurrent' = concurrent
+		 */
+		UnaryFactory(int numVars, int comparisonDepth, int bitwidth, boolean concurrent) {
+			super(numVars, comparisonDepth, bitwidth, concurrent);
+		}
+		
+		/**
+		 * Returns UNARY.
+		 * @return UNARY
+		 * @see kodkod.engine.bool.BooleanFactory#intEncoding()
+		 */
+		@Override
+		public IntEncoding intEncoding() {
+			return IntEncoding.UNARY;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see kodkod.engine.bool.BooleanFactory#integer(int)
+		 */
+		@Override
+		public Int integer(int number) {
+			return new UnaryInt(this, number, BooleanConstant.TRUE);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see kodkod.engine.bool.BooleanFactory#integer(int, kodkod.engine.bool.BooleanValue)
+		 */
+		@Override
+		public Int integer(int number, BooleanValue bit) {
+			return new UnaryInt(this, number, bit);
+		}
+		
+	}
+}
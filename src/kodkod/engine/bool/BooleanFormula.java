@@ -23,6 +23,7 @@ package kodkod.engine.bool;
 
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 
 
@@ -35,7 +36,9 @@ import java.util.Set;
  * @author Emina Torlak
  */
 public abstract class BooleanFormula extends BooleanValue implements Iterable<BooleanFormula> {
-	private BooleanFormula negation;
+	private volatile BooleanFormula negation;
+	private static final AtomicReferenceFieldUpdater<BooleanFormula, BooleanFormula> NEGATION = 
+		AtomicReferenceFieldUpdater.newUpdater(BooleanFormula.class, BooleanFormula.class, "negation");
 	
 	/**
 	 * Constructs a boolean formula with the given negation.
@@ -88,14 +91,17 @@ public abstract class BooleanFormula extends BooleanValue implements Iterable<Bo
 	/**
 	 * Returns the negation of this formula if it has already been computed.
 	 * Otherwise, computes, caches and returns the negation of this formula.
+	 * The negation is installed atomically, so all threads that negate 
+	 * this formula obtain the same NotGate.
 	 * @return !this
 	 * @see kodkod.engine.bool.BooleanValue#negation()
 	 */
 	final BooleanFormula negation() {
-		if (negation==null) {
-			negation = new NotGate(this);
-		}
-		return negation;
+		final BooleanFormula neg = negation;
+		if (neg!=null) 
+			return neg;
+		final BooleanFormula fresh = new NotGate(this);
+		return NEGATION.compareAndSet(this, null, fresh) ? fresh : negation;
 	}
 	
 	/**
@@ -26,16 +26,22 @@ import static kodkod.engine.bool.BooleanConstant.TRUE;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
+import kodkod.engine.config.Options.ClosureEncoding;
 import kodkod.util.collections.Containers;
 import kodkod.util.ints.ArraySequence;
 import kodkod.util.ints.HomogenousSequence;
 import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntBitSet;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
 import kodkod.util.ints.Ints;
 import kodkod.util.ints.RangeSequence;
+import kodkod.util.ints.SortedArraySequence;
 import kodkod.util.ints.SparseSequence;
 import kodkod.util.ints.TreeSequence;
 
@@ -56,6 +62,11 @@ import kodkod.util.ints.TreeSequence;
  * If this is the case, an attempt to call {@link #set(int, BooleanValue) }
  * with invalid parameters will cause an IllegalArgumentException or an IndexOutOfBoundsException. </p>
  * 
+ * <p>Matrices created by a {@linkplain BooleanFactory#constantFactory(kodkod.engine.config.Options) constant factory} 
+ * store only constants.  Unless their capacity is very large, such matrices are packed into bit vectors, 
+ * and the operations on them (conjunction, disjunction, difference, multiplication, closure, etc.) 
+ * are performed 64 entries at a time.</p>
+ * 
  * @specfield dimensions: Dimensions
  * @specfield factory: BooleanFactory
  * @specfield elements: [0..dimensions.capacity) -> one factory.components
@@ -64,9 +75,48 @@ import kodkod.util.ints.TreeSequence;
  */
 public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>, Cloneable {
 	
+	/**
+	 * Maximum capacity of a matrix that is packed into a bit vector.
+	 */
+	private static final int PACKED_CUTOFF = 1<<20;
+	
 	private final Dimensions dims;
 	private final BooleanFactory factory;
 	private final SparseSequence<BooleanValue> cells;
+	/* Bit vector that backs the cells of a packed constant matrix; null if this matrix is not packed.  
+	 * @invariant some bits => cells = new HomogenousSequence(TRUE, new IntBitSet(dims.capacity(), bits)) */
+	private final long[] bits;
+	
+	/**
+	 * Returns true if matrices with the given dimensions and factory should be packed into bit vectors.
+	 * @return f.constant && d.capacity() <= PACKED_CUTOFF
+	 */
+	private static boolean packed(Dimensions d, BooleanFactory f) {
+		return f.constant && d.capacity() <= PACKED_CUTOFF;
+	}
+	
+	/**
+	 * Returns an empty bit vector for a packed matrix with the given dimensions.
+	 * @return new long[(d.capacity() >>> 6) + 1]
+	 */
+	private static long[] words(Dimensions d) {
+		return new long[(d.capacity() >>> 6) + 1];
+	}
+	
+	/**
+	 * Constructs a new packed matrix with the given dimensions and factory, 
+	 * backed by the given bit vector.
+	 * @requires bits.length = (dimensions.capacity() >>> 6) + 1 && no bits at or above dimensions.capacity() are set
+	 * @ensures this.dimensions' = dimensions && this.factory' = factory && 
+	 *          this.elements' = [0..dimensions.capacity)->one FALSE ++ 
+	 *            { i: [0..dimensions.capacity) | bits[i>>>6] & (1L<<i) != 0 } -> one TRUE
+	 */
+	private BooleanMatrix(Dimensions dimensions, BooleanFactory factory, long[] bits) {
+		this.dims = dimensions;
+		this.factory = factory;
+		this.bits = bits;
+		this.cells = new HomogenousSequence<BooleanValue>(TRUE, new IntBitSet(dimensions.capacity(), bits));
+	}
 	
 
 	/**  
@@ -81,6 +131,7 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		this.dims = dimensions;
 		this.factory = factory;
 		this.cells = seq;
+		this.bits = null;
 	}
 	
 	/**
@@ -91,15 +142,47 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 *          this.elements' = [0..dimensions.capacity)->one FALSE 
 	 */
 	private BooleanMatrix(Dimensions d, BooleanFactory f, SparseSequence<BooleanValue> s0, SparseSequence<BooleanValue> s1) {
+		this(d, f, s0.getClass(), s1.getClass(), false);
+	}
+	
+	/**
+	 * Constructs a new matrix with the given dimensions and factory, 
+	 * backed by a sparse sequence which can most efficiently hold
+	 * the elements storable in the sparse sequences s0 and s1.  If 
+	 * the ordered flag is set, the caller promises to fill the returned 
+	 * matrix (mostly) in the ascending order of indices.
+	 * @ensures this.dimensions' = dimensions && this.factory' = factory && 
+	 *          this.elements' = [0..dimensions.capacity)->one FALSE 
+	 */
+	private BooleanMatrix(Dimensions d, BooleanFactory f, SparseSequence<BooleanValue> s0, SparseSequence<BooleanValue> s1, boolean ordered) {
+		this(d, f, s0.getClass(), s1.getClass(), ordered);
+	}
+	
+	/**
+	 * Constructs a new matrix with the given dimensions and factory, 
+	 * backed by a sparse sequence which can most efficiently hold
+	 * the elements storable in sparse sequences of classes c0 and c1.
+	 * Matrices that can hold arbitrary values are backed by a {@linkplain SortedArraySequence} 
+	 * if the ordered flag is set, since the caller promises to fill them (mostly) in the ascending order
+	 * of indices.  Otherwise, they are backed by a {@linkplain RangeSequence}.
+	 * @ensures this.dimensions' = dimensions && this.factory' = factory && 
+	 *          this.elements' = [0..dimensions.capacity)->one FALSE 
+	 */
+	private BooleanMatrix(Dimensions d, BooleanFactory f, Class<?> c0, Class<?> c1, boolean ordered) {
 		this.dims = d;
 		this.factory = f;
-		final Class<?> c0 = s0.getClass(), c1 = s1.getClass();
-		if (c0!=c1 || c0==RangeSequence.class) 
-			this.cells = new RangeSequence<BooleanValue>();
-		else if (c0==HomogenousSequence.class) 
-			this.cells = new HomogenousSequence<BooleanValue>(TRUE, Ints.bestSet(d.capacity())); 
-		else 
-			this.cells = new TreeSequence<BooleanValue>();	
+		if (packed(d, f)) { 
+			this.bits = words(d);
+			this.cells = new HomogenousSequence<BooleanValue>(TRUE, new IntBitSet(d.capacity(), bits));
+		} else { 
+			this.bits = null;
+			if (c0==c1 && c0==HomogenousSequence.class) 
+				this.cells = new HomogenousSequence<BooleanValue>(TRUE, Ints.bestSet(d.capacity())); 
+			else if (c0==c1 && c0==TreeSequence.class) 
+				this.cells = new TreeSequence<BooleanValue>();	
+			else
+				this.cells = ordered ? new SortedArraySequence<BooleanValue>() : new RangeSequence<BooleanValue>();
+		}
 	}
 	
 	/**
@@ -115,6 +198,24 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 * @throws IllegalArgumentException !(d.equals(m.dims) => d.equals(rest[int].dims))
 	 */
 	private BooleanMatrix(Dimensions d, BooleanMatrix m, BooleanMatrix...rest) {
+		this(d, false, m, rest);
+	}
+	
+	/**
+	 * Constructs a new matrix with the given dimensions and factory, 
+	 * backed by a sparse sequence which can most efficiently hold
+	 * the elements storable in the matrices m and rest.  If the ordered
+	 * flag is set, the caller promises to fill the returned matrix 
+	 * (mostly) in the ascending order of indices.
+	 * @requires null !in d + m + rest[int]
+	 * @requires m.factory = rest[int].factory
+	 * @requires d.equals(m.dims) => d.equals(rest[int].dims)
+	 * @ensures this.dimensions' = dimensions && this.factory' = m.factory && 
+	 *          this.elements' = [0..dimensions.capacity)->one FALSE 
+	 * @throws IllegalArgumentException m.factory != rest[int].factory
+	 * @throws IllegalArgumentException !(d.equals(m.dims) => d.equals(rest[int].dims))
+	 */
+	private BooleanMatrix(Dimensions d, boolean ordered, BooleanMatrix m, BooleanMatrix...rest) {
 		this.dims = d;
 		this.factory = m.factory;
 		
@@ -132,10 +233,16 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 			cId |= c==h ? 1 : c==t ? 2 : 4;
 		}
 		
-		switch(cId) { 
-		case 1 : this.cells = new HomogenousSequence<BooleanValue>(TRUE, Ints.bestSet(d.capacity())); break;
-		case 2 : this.cells = new TreeSequence<BooleanValue>(); break;
-		default : this.cells = new RangeSequence<BooleanValue>(); 
+		if (packed(d, factory)) { 
+			this.bits = words(d);
+			this.cells = new HomogenousSequence<BooleanValue>(TRUE, new IntBitSet(d.capacity(), bits));
+		} else { 
+			this.bits = null;
+			switch(cId) { 
+			case 1 : this.cells = new HomogenousSequence<BooleanValue>(TRUE, Ints.bestSet(d.capacity())); break;
+			case 2 : this.cells = new TreeSequence<BooleanValue>(); break;
+			default : this.cells = ordered ? new SortedArraySequence<BooleanValue>() : new RangeSequence<BooleanValue>(); 
+			}
 		}
 	}
 	
@@ -148,9 +255,7 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 *          this.elements' = [0..dimensions.capacity)->one FALSE 
 	 */
 	BooleanMatrix(Dimensions dims, BooleanFactory factory) {
-		this.dims = dims;
-		this.factory = factory;
-		this.cells = new RangeSequence<BooleanValue>();
+		this(dims, factory, RangeSequence.class, RangeSequence.class, false);
 	}
 	
 	/**  
@@ -172,6 +277,13 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		this.dims = dims;
 		this.factory = factory;
 		final int tsize = trueIndices.size(), asize = allIndices.size();
+		if (packed(dims, factory)) { 
+			this.bits = words(dims);
+			this.cells = new HomogenousSequence<BooleanValue>(TRUE, new IntBitSet(dims.capacity(), bits));
+			cells.indices().addAll(trueIndices);
+			return;
+		} 
+		this.bits = null;
 		if (tsize==asize)
 			this.cells = new HomogenousSequence<BooleanValue>(TRUE, trueIndices);
 		else {
@@ -259,7 +371,13 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
      *                              all i: [0..m.dimensions.capacity) | m.elements[i] = !this.elements[i] }
      */
 	public final BooleanMatrix not() {
-		final BooleanMatrix negation = new BooleanMatrix(dims, factory, cells, cells);
+		if (bits != null) { 
+			final long[] r = new long[bits.length];
+			for(int i = 0; i < r.length; i++) { r[i] = ~bits[i]; }
+			r[r.length-1] &= (1L << (dims.capacity() & 63)) - 1;
+			return new BooleanMatrix(dims, factory, r);
+		}
+		final BooleanMatrix negation = new BooleanMatrix(dims, factory, cells, cells, true);
 		
 		for (int i = 0, max = dims.capacity(); i < max; i++) {
 			BooleanValue v = cells.get(i);
@@ -286,6 +404,51 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		if (!d0.equals(d1)) throw new IllegalArgumentException("Incompatible dimensions: " + d0 + " and " + d1);
 	}
 	
+	/**
+	 * Returns true if this and all the given matrices are packed.
+	 * @return some this.bits && some others[int].bits
+	 * @throws IllegalArgumentException  some m: others[int] | !m.dimensions.equals(this.dimensions) || m.factory != this.factory
+	 */
+	private final boolean allPacked(BooleanMatrix... others) { 
+		if (bits==null) return false;
+		for(BooleanMatrix other : others) { 
+			checkFactory(factory, other.factory);
+			checkDimensions(dims, other.dims);
+			if (other.bits==null) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the 64 bits of the given bit vector that start at the given position.
+	 * Bits past the end of the vector are read as zeros.
+	 * @requires 0 <= pos < src.length*64
+	 * @return the 64 bits of src that start at pos
+	 */
+	private static long word(long[] src, int pos) { 
+		final int w = pos >>> 6, shift = pos & 63;
+		if (shift==0) return src[w];
+		final long lo = src[w] >>> shift;
+		return w+1 < src.length ? lo | (src[w+1] << (64-shift)) : lo;
+	}
+	
+	/**
+	 * Sets dst[dstPos..dstPos+len) to dst[dstPos..dstPos+len) | src[srcPos..srcPos+len), 
+	 * where the bit vectors are indexed by bits.
+	 * @requires the given ranges are either disjoint or identical 
+	 * @ensures dst[dstPos..dstPos+len)' = dst[dstPos..dstPos+len) | src[srcPos..srcPos+len)
+	 */
+	private static void orRange(long[] src, int srcPos, long[] dst, int dstPos, int len) { 
+		while(len > 0) { 
+			final int shift = dstPos & 63, n = StrictMath.min(len, 64 - shift);
+			final long mask = n==64 ? -1L : (1L << n) - 1;
+			dst[dstPos >>> 6] |= (word(src, srcPos) & mask) << shift;
+			srcPos += n;
+			dstPos += n;
+			len -= n;
+		}
+	}
+	
 	/**
 	 * Returns a new matrix such that an entry in the returned matrix represents a 
 	 * conjunction of the corresponding entries in this and other matrix.  The effect 
@@ -300,7 +463,12 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	public final BooleanMatrix and(BooleanMatrix  other) {
 		checkFactory(this.factory, other.factory); 
 		checkDimensions(this.dims, other.dims);
-		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells);
+		if (bits != null && other.bits != null) { 
+			final long[] r = new long[bits.length];
+			for(int i = 0; i < r.length; i++) { r[i] = bits[i] & other.bits[i]; }
+			return new BooleanMatrix(dims, factory, r);
+		}
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells, true);
 		final SparseSequence<BooleanValue> s1 = other.cells;
 		if (cells.isEmpty() || s1.isEmpty()) return ret;
 		for(IndexedEntry<BooleanValue> e0 : cells) {
@@ -323,7 +491,14 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 * @throws IllegalArgumentException  some m: others[int] | !m.dimensions.equals(this.dimensions) || m.factory != this.factory
 	 */
 	public final BooleanMatrix and(final BooleanMatrix...others) {
-		final BooleanMatrix ret = new BooleanMatrix(dims, this, others);
+		if (allPacked(others)) { 
+			final long[] r = bits.clone();
+			for(BooleanMatrix other : others) { 
+				for(int i = 0; i < r.length; i++) { r[i] &= other.bits[i]; }
+			}
+			return new BooleanMatrix(dims, factory, r);
+		}
+		final BooleanMatrix ret = new BooleanMatrix(dims, true, this, others);
 		
 		for(IndexedEntry<BooleanValue> cell : cells) {
 			final BooleanAccumulator acc = BooleanAccumulator.treeGate(AND, cell.value());
@@ -350,22 +525,34 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	public final BooleanMatrix or(BooleanMatrix  other) {
 		checkFactory(this.factory, other.factory); 
 		checkDimensions(this.dims, other.dims);
+		if (bits != null && other.bits != null) { 
+			final long[] r = new long[bits.length];
+			for(int i = 0; i < r.length; i++) { r[i] = bits[i] | other.bits[i]; }
+			return new BooleanMatrix(dims, factory, r);
+		}
 		if (this.cells.isEmpty())
 			return other.clone();
 		else if (other.cells.isEmpty())
 			return this.clone();
-		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells);
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells, true);
 		final SparseSequence<BooleanValue> retSeq = ret.cells;
+		// merge the two sequences, so that ret is filled in the ascending order of indices
+		final Iterator<IndexedEntry<BooleanValue>> itr1 = other.cells.iterator();
+		IndexedEntry<BooleanValue> e1 = itr1.next();
 		for(IndexedEntry<BooleanValue> e0 : cells) {
-			BooleanValue v1 = other.cells.get(e0.index());
-			if (v1==null)
-				retSeq.put(e0.index(), e0.value());
-			else
-				retSeq.put(e0.index(), factory.or(e0.value(), v1));
-		}
-		for(IndexedEntry<BooleanValue> e1 : other.cells) {
-			if (!cells.containsIndex(e1.index()))
+			final int i0 = e0.index();
+			for(; e1 != null && e1.index() < i0; e1 = itr1.hasNext() ? itr1.next() : null) { 
 				retSeq.put(e1.index(), e1.value());
+			}
+			if (e1 != null && e1.index()==i0) { 
+				retSeq.put(i0, factory.or(e0.value(), e1.value()));
+				e1 = itr1.hasNext() ? itr1.next() : null;
+			} else {
+				retSeq.put(i0, e0.value());
+			}
+		}
+		for(; e1 != null; e1 = itr1.hasNext() ? itr1.next() : null) { 
+			retSeq.put(e1.index(), e1.value());
 		}
 
 		return ret;
@@ -383,6 +570,13 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 * @throws IllegalArgumentException  some m: others[int] | !m.dimensions.equals(this.dimensions) || m.factory != this.factory
 	 */
 	public final BooleanMatrix or(final BooleanMatrix... others) {
+		if (allPacked(others)) { 
+			final long[] r = bits.clone();
+			for(BooleanMatrix other : others) { 
+				for(int i = 0; i < r.length; i++) { r[i] |= other.bits[i]; }
+			}
+			return new BooleanMatrix(dims, factory, r);
+		}
 		final BooleanMatrix ret = new BooleanMatrix(dims, this, others);
 			
 		for(IndexedEntry<BooleanValue> cell : cells) {
@@ -420,7 +614,7 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	public final BooleanMatrix cross(final BooleanMatrix other) {
 		checkFactory(this.factory, other.factory);
 		
-		final BooleanMatrix ret =  new BooleanMatrix(dims.cross(other.dims), factory, cells, other.cells);
+		final BooleanMatrix ret =  new BooleanMatrix(dims.cross(other.dims), factory, cells, other.cells, true);
 		if (cells.isEmpty() || other.cells.isEmpty()) return ret;
 		
 		final int ocap = other.dims.capacity();
@@ -500,7 +694,7 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 			empty = empty || other.cells.isEmpty();
 		}
 		
-		final BooleanMatrix ret = new BooleanMatrix(retDims, this, others);
+		final BooleanMatrix ret = new BooleanMatrix(retDims, true, this, others);
 		if (empty) return ret;
 		
 		final IntIterator[] itrs = new IntIterator[others.length];
@@ -548,13 +742,26 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	public final BooleanMatrix dot(final BooleanMatrix other) {  
 		checkFactory(this.factory, other.factory);
 		
-		final BooleanMatrix ret =  new BooleanMatrix(dims.dot(other.dims), factory, cells, other.cells);
+		final BooleanMatrix ret =  new BooleanMatrix(dims.dot(other.dims), factory, cells, other.cells, true);
 		if (cells.isEmpty() || other.cells.isEmpty()) return ret;
 		
-		final SparseSequence<BooleanValue> mutableCells = ret.clone().cells;
 		final int b = other.dims.dimension(0); 
 		final int c = other.dims.capacity() / b; 
 		
+		if (bits != null && other.bits != null && ret.bits != null) { 
+			// ret's row (i / b) is the disjunction of other's rows (i % b), for each set bit i of this
+			final long[] r = ret.bits.clone();
+			for(int w = 0; w < bits.length; w++) { 
+				for(long word = bits[w]; word != 0; word &= word - 1) { 
+					final int i = (w << 6) + Long.numberOfTrailingZeros(word);
+					orRange(other.bits, (i % b)*c, r, (i / b)*c, c);
+				}
+			}
+			return new BooleanMatrix(ret.dims, factory, r);
+		}
+		
+		final SparseSequence<BooleanValue> mutableCells = ret.clone().cells;
+		
 		for(IndexedEntry<BooleanValue> e0 : cells) {
 			int i = e0.index();
 			BooleanValue iVal = e0.value();
@@ -601,6 +808,12 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 */
 	public final BooleanValue subset(BooleanMatrix other) {
 		checkFactory(this.factory, other.factory); checkDimensions(this.dims, other.dims);
+		if (bits != null && other.bits != null) { 
+			for(int i = 0; i < bits.length; i++) { 
+				if ((bits[i] & ~other.bits[i]) != 0) return FALSE;
+			}
+			return TRUE;
+		}
 		final BooleanAccumulator a = BooleanAccumulator.treeGate(AND);
 		for(IndexedEntry<BooleanValue> e0: cells) {
 			if (a.add(factory.or(e0.value().negation(), other.fastGet(e0.index())))==FALSE)
@@ -621,6 +834,10 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 * @throws IllegalArgumentException  !other.dimensions.equals(this.dimensions) || this.factory != other.factory           
 	 */
 	public final BooleanValue eq(BooleanMatrix other) {
+		if (bits != null && other.bits != null) { 
+			checkFactory(this.factory, other.factory); checkDimensions(this.dims, other.dims);
+			return BooleanConstant.constant(Arrays.equals(bits, other.bits));
+		}
 		return factory.and(this.subset(other), other.subset(this));
 	}
 	
@@ -640,7 +857,12 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		checkFactory(this.factory, other.factory); 
 		checkDimensions(this.dims, other.dims);
 		if (this.cells.isEmpty() || other.cells.isEmpty()) return this.clone();
-		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells);
+		if (bits != null && other.bits != null) { 
+			final long[] r = new long[bits.length];
+			for(int i = 0; i < r.length; i++) { r[i] = bits[i] & ~other.bits[i]; }
+			return new BooleanMatrix(dims, factory, r);
+		}
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells, true);
 		for(IndexedEntry<BooleanValue> e0 : cells) {
 			ret.fastSet(e0.index(), factory.and(e0.value(), other.fastGet(e0.index()).negation()));
 		}
@@ -648,37 +870,336 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	}
 	
 	/**
-     * Returns the transitive closure of this matrix.
+     * Returns the transitive closure of this matrix, computed using this.factory.closureEncoding.
      * 
      * @return { m: BooleanMatrix | m = ^this }
      * @throws UnsupportedOperationException  #this.diensions != 2 || !this.dimensions.square()
      */
 	public final BooleanMatrix closure() {
+		return closure(factory.closureEncoding);
+	}
+	
+	/**
+     * Returns the transitive closure of this matrix, computed using the given encoding.
+     * 
+     * @return { m: BooleanMatrix | m = ^this }
+     * @throws NullPointerException  encoding = null
+     * @throws UnsupportedOperationException  #this.diensions != 2 || !this.dimensions.square()
+     */
+	public final BooleanMatrix closure(ClosureEncoding encoding) {
 		if (dims.numDimensions() != 2 || !dims.isSquare()) {
 			throw new UnsupportedOperationException("#this.diensions != 2 || !this.dimensions.square()");
 		}
 		if (cells.isEmpty())
 			return clone();
 		
-//		System.out.println("closure of " + this);
-		BooleanMatrix ret = this;
-	
-		// compute the number of rows in the matrix
-		int rowNum = 0;
-		final int rowFactor = dims.dimension(1);
-		for(IndexedEntry<BooleanValue> rowLead = cells.first(); 
-		    rowLead != null; rowLead = cells.ceil(((rowLead.index()/rowFactor) + 1) * rowFactor)) {
-			rowNum++; 
-		}	
+		if (bits != null) { 
+			// Warshall's algorithm, one row at a time:  row i includes row k whenever i is related to k
+			final int n = dims.dimension(1);
+			final long[] r = bits.clone();
+			for(int k = 0; k < n; k++) { 
+				for(int i = 0, ik = k; i < n; i++, ik += n) { 
+					if (i != k && (r[ik >>> 6] & (1L << ik)) != 0)
+						orRange(r, k*n, r, i*n, n);
+				}
+			}
+			return new BooleanMatrix(dims, factory, r);
+		}
 		
-		// compute closure using iterative squaring
-		for(int i = 1; i < rowNum; i*=2) {
+		switch(encoding) { 
+		case SQUARING : 
+			// compute the number of rows in the matrix
+			int rowNum = 0;
+			final int rowFactor = dims.dimension(1);
+			for(IndexedEntry<BooleanValue> rowLead = cells.first(); 
+			    rowLead != null; rowLead = cells.ceil(((rowLead.index()/rowFactor) + 1) * rowFactor)) {
+				rowNum++; 
+			}	
+			return squaring(rowNum);
+		case BOUNDED :
+			final int[][] succ = successors();
+			return squaring(longestPath(succ, components(succ)));
+		case WARSHALL : 
+			return warshall();
+		case SCC : 
+			return componentwise();
+		default :
+			throw new IllegalArgumentException("unknown encoding: " + encoding);
+		}
+	}
+	
+	/**
+	 * Returns the closure of this matrix, computed using iterative squaring, 
+	 * assuming that no simple path (or cycle) in this matrix is longer than the given bound.
+	 * @requires this is a square matrix 
+	 * @requires no simple path or cycle in this.elements is longer than bound
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix squaring(int bound) { 
+		BooleanMatrix ret = this;
+		for(int i = 1; i < bound; i*=2) {
 			ret = ret.or(ret.dot(ret));
 		}
-//		System.out.println(ret);
 		return ret==this ? clone() : ret;
 	}
 	
+	/**
+	 * Returns the closure of this matrix, computed using the Warshall algorithm:
+	 * for each k, the entry at [i, j] is updated to [i, j] || ([i, k] && [k, j]).
+	 * @requires this is a square matrix 
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix warshall() { 
+		final int n = dims.dimension(1);
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, cells);
+		ret.cells.putAll(cells);
+		final int[] cols = new int[n];
+		final BooleanValue[] vals = new BooleanValue[n];
+		for(int k = 0; k < n; k++) { 
+			// row k is not modified in the k-th step, so it is safe to take a snapshot of its entries
+			int size = 0;
+			for(Iterator<IndexedEntry<BooleanValue>> iter = ret.cells.iterator(k*n, k*n + n - 1); iter.hasNext(); ) { 
+				final IndexedEntry<BooleanValue> e = iter.next();
+				final int j = e.index() - k*n;
+				if (j != k) { 
+					cols[size] = j;
+					vals[size++] = e.value();
+				}
+			}
+			if (size==0) continue;
+			for(int i = 0; i < n; i++) { 
+				if (i==k) continue;
+				final BooleanValue ik = ret.fastGet(i*n + k);
+				if (ik==FALSE) continue;
+				for(int j = 0; j < size; j++) { 
+					final int ij = i*n + cols[j];
+					ret.fastSet(ij, factory.or(ret.fastGet(ij), factory.and(ik, vals[j])));
+				}
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the closure of this matrix, computed by decomposing the graph of its 
+	 * non-FALSE entries into strongly connected components.  The closure of each 
+	 * nontrivial component is computed by iterative squaring, and the rows of the 
+	 * returned matrix are then filled in reverse topological order of the components:  
+	 * a node u reaches x if it reaches x within its own component, or if it reaches (or is) 
+	 * some v in its component, which has an edge to a node w outside of the component 
+	 * that is, or that reaches, x.
+	 * @requires this is a square matrix 
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix componentwise() { 
+		final int n = dims.dimension(1);
+		final int[][] succ = successors();
+		final int[][] comps = components(succ);
+		final int[] compOf = new int[n];
+		for(int c = 0; c < comps.length; c++) { 
+			for(int u : comps[c]) { compOf[u] = c; }
+		}
+		
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, cells);
+		final BooleanAccumulator[] acc = new BooleanAccumulator[n];
+		
+		for(int c = 0; c < comps.length; c++) { 
+			final int[] comp = comps[c];
+			
+			// closure of this restricted to the component, or null if the component has no internal edges
+			BooleanMatrix inner = null;
+			for(int u : comp) { 
+				for(int v : succ[u]) { 
+					if (compOf[v]==c) { 
+						if (inner==null) inner = new BooleanMatrix(dims, factory, cells, cells);
+						inner.fastSet(u*n + v, fastGet(u*n + v));
+					}
+				}
+			}
+			if (inner != null) inner = inner.squaring(comp.length);
+			
+			// out[k] holds the nodes outside of the component that are reachable from comp[k] 
+			// by taking an edge out of the component, or null if there are no such nodes
+			final BooleanValue[][] out = new BooleanValue[comp.length][];
+			boolean exits = false;
+			for(int k = 0; k < comp.length; k++) { 
+				final int v = comp[k];
+				boolean some = false;
+				for(int w : succ[v]) { 
+					if (compOf[w]==c) continue;
+					some = true;
+					final BooleanValue e = fastGet(v*n + w);
+					add(acc, w, e);
+					for(Iterator<IndexedEntry<BooleanValue>> iter = ret.cells.iterator(w*n, w*n + n - 1); iter.hasNext(); ) { 
+						final IndexedEntry<BooleanValue> wx = iter.next();
+						add(acc, wx.index() - w*n, factory.and(e, wx.value()));
+					}
+				}
+				if (some) { 
+					out[k] = drain(acc);
+					exits = true;
+				}
+			}
+			if (inner==null && !exits) continue;
+			
+			for(int u : comp) { 
+				if (inner != null) { 
+					for(Iterator<IndexedEntry<BooleanValue>> iter = inner.cells.iterator(u*n, u*n + n - 1); iter.hasNext(); ) { 
+						final IndexedEntry<BooleanValue> ux = iter.next();
+						add(acc, ux.index() - u*n, ux.value());
+					}
+				}
+				for(int k = 0; k < comp.length; k++) { 
+					if (out[k]==null) continue;
+					final int v = comp[k];
+					final BooleanValue uv = u==v ? TRUE : inner==null ? FALSE : inner.fastGet(u*n + v);
+					if (uv==FALSE) continue;
+					final BooleanValue[] vx = out[k];
+					for(int x = 0; x < n; x++) { 
+						if (vx[x] != null) add(acc, x, factory.and(uv, vx[x]));
+					}
+				}
+				final BooleanValue[] ux = drain(acc);
+				for(int x = 0; x < n; x++) { 
+					if (ux[x] != null) ret.fastSet(u*n + x, ux[x]);
+				}
+			}
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Adds the given value to the disjunction stored at acc[index], creating the disjunction if needed.
+	 * @ensures acc[index] = null => acc'[index] = { a: BooleanAccumulator | a.op = OR && a.inputs = value }
+	 * @ensures acc[index] != null => acc[index].add(value)
+	 */
+	private static void add(BooleanAccumulator[] acc, int index, BooleanValue value) { 
+		if (value==FALSE) return;
+		if (acc[index]==null) acc[index] = BooleanAccumulator.treeGate(OR);
+		acc[index].add(value);
+	}
+	
+	/**
+	 * Returns an array that maps each index of the given array to the gate built from the 
+	 * accumulator at that index (or null if there is no accumulator at that index), and clears the given array.
+	 * @ensures no acc'[int] 
+	 * @return { r: BooleanValue[] | r.length = acc.length && 
+	 *            all i: [0..acc.length) | r[i] = (acc[i] = null ? null : this.factory.accumulate(acc[i])) }
+	 */
+	private final BooleanValue[] drain(BooleanAccumulator[] acc) { 
+		final BooleanValue[] r = new BooleanValue[acc.length];
+		for(int i = 0; i < acc.length; i++) { 
+			if (acc[i] != null) { 
+				r[i] = factory.accumulate(acc[i]);
+				acc[i] = null;
+			}
+		}
+		return r;
+	}
+	
+	/**
+	 * Returns the adjacency lists of the graph whose edges are the non-FALSE entries of this matrix.
+	 * @requires this is a square matrix 
+	 * @return { succ: int[][] | succ.length = this.dimensions.dimension(0) && 
+	 *            all i, j: [0..succ.length) | j in succ[i][int] iff this.elements[i*succ.length+j] != FALSE }
+	 */
+	private final int[][] successors() { 
+		final int n = dims.dimension(1);
+		final int[][] succ = new int[n][];
+		final int[] buf = new int[n];
+		for(int u = 0; u < n; u++) { 
+			int size = 0;
+			for(Iterator<IndexedEntry<BooleanValue>> iter = cells.iterator(u*n, u*n + n - 1); iter.hasNext(); ) { 
+				buf[size++] = iter.next().index() - u*n;
+			}
+			succ[u] = Arrays.copyOf(buf, size);
+		}
+		return succ;
+	}
+	
+	/**
+	 * Returns the strongly connected components of the graph with the given adjacency lists,
+	 * in reverse topological order: a component precedes all components from which it is reachable.
+	 * The components are computed using an iterative version of Tarjan's algorithm.
+	 * @return { comps: int[][] | comps[int][int] = [0..succ.length) && 
+	 *           (all c: [0..comps.length) | comps[c][int] is a strongly connected component of succ) &&
+	 *           (all c0, c1: [0..comps.length) | some u: comps[c0][int], v: comps[c1][int] | v in succ[u][int] => c1 <= c0) }
+	 */
+	private static int[][] components(int[][] succ) { 
+		final int n = succ.length;
+		final int[] index = new int[n], low = new int[n], next = new int[n], stack = new int[n], calls = new int[n];
+		final boolean[] onStack = new boolean[n];
+		Arrays.fill(index, -1);
+		final List<int[]> comps = new ArrayList<int[]>();
+		int counter = 0, sp = 0;
+		for(int root = 0; root < n; root++) { 
+			if (index[root] >= 0) continue;
+			int cp = 0;
+			calls[cp++] = root;
+			index[root] = low[root] = counter++;
+			stack[sp++] = root;
+			onStack[root] = true;
+			while(cp > 0) { 
+				final int u = calls[cp-1];
+				if (next[u] < succ[u].length) { 
+					final int v = succ[u][next[u]++];
+					if (index[v] < 0) { 
+						index[v] = low[v] = counter++;
+						stack[sp++] = v;
+						onStack[v] = true;
+						calls[cp++] = v;
+					} else if (onStack[v]) { 
+						low[u] = StrictMath.min(low[u], index[v]);
+					}
+				} else { 
+					cp--;
+					if (cp > 0) { 
+						final int p = calls[cp-1];
+						low[p] = StrictMath.min(low[p], low[u]);
+					}
+					if (low[u]==index[u]) { 
+						int start = sp;
+						do { start--; } while(stack[start] != u);
+						final int[] comp = Arrays.copyOfRange(stack, start, sp);
+						for(int w : comp) { onStack[w] = false; }
+						sp = start;
+						comps.add(comp);
+					}
+				}
+			}
+		}
+		return comps.toArray(new int[comps.size()][]);
+	}
+	
+	/**
+	 * Returns an upper bound on the length of the longest simple path or cycle in the graph
+	 * with the given adjacency lists and strongly connected components:  the largest total 
+	 * size of the components along any path in the component graph.
+	 * @requires comps = components(succ)
+	 * @return an upper bound on the length of the longest simple path or cycle in succ
+	 */
+	private static int longestPath(int[][] succ, int[][] comps) { 
+		final int[] compOf = new int[succ.length];
+		for(int c = 0; c < comps.length; c++) { 
+			for(int u : comps[c]) { compOf[u] = c; }
+		}
+		// comps are in reverse topological order, so the successors of c are already weighed
+		final int[] weight = new int[comps.length];
+		int max = 0;
+		for(int c = 0; c < comps.length; c++) { 
+			int succWeight = 0;
+			for(int u : comps[c]) { 
+				for(int v : succ[u]) { 
+					if (compOf[v] != c) succWeight = StrictMath.max(succWeight, weight[compOf[v]]);
+				}
+			}
+			weight[c] = comps[c].length + succWeight;
+			max = StrictMath.max(max, weight[c]);
+		}
+		return max;
+	}
+	
 	/**
      * Returns the transpose of this matrix.
      * 
@@ -888,6 +1409,18 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		return factory.sum(cells.values());
 	}
 	
+	/**
+	 * Returns the unary representation of the cardinality (number of non-FALSE entries) of this
+	 * matrix, truncated at the given bound and computed using this.factory.cardinalityEncoding.
+	 * @return { u: BooleanValue[] | u.length = bound && 
+	 *             all j: [0..bound) | [[u[j]]] <=> #{ v: elements[int] | [[v]] } > j }
+	 * @throws IllegalArgumentException  bound < 0
+	 * @see BooleanFactory#count(java.util.Collection, int)
+	 */
+	public final BooleanValue[] count(int bound) {
+		return factory.count(cells.values(), bound);
+	}
+	
 	/**
 	 * Returns a BooleanValue that constrains at least one value in this.elements to be true.  The
 	 * effect of this method is the same as calling this.orFold().
@@ -979,6 +1512,8 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	 *                                    m.elements = copy of this.elements } 
 	 */
 	public BooleanMatrix clone()  {
+		if (bits != null) 
+			return new BooleanMatrix(dims, factory, bits.clone());
 		try {
 			return new BooleanMatrix(dims, factory, cells.clone());
 		} catch (CloneNotSupportedException e) {
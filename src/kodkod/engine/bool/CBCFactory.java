@@ -34,6 +34,7 @@ import static kodkod.engine.bool.Operator.VAR;
 
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kodkod.ast.operator.ExprOperator;
 import kodkod.engine.bool.Operator.Nary;
@@ -43,18 +44,32 @@ import kodkod.util.collections.IdentityHashSet;
 
 /**
  * A factory for creating variables, multigates, and if-then-else gates.
+ * <p>A concurrent factory allows gates to be assembled by several threads at once.  
+ * Its gate caches are split into lock-protected stripes, gate labels are allocated atomically,
+ * and each thread uses its own scrap sets for gate comparisons.  The labels of the gates 
+ * created by a concurrent factory therefore depend on thread scheduling, but 
+ * each gate is still created at most once.  Adding variables and changing cmpMax 
+ * are not thread-safe, even for a concurrent factory.</p>
  * @specfield values: set (BooleanVariable + MultiGate + ITEGate)
  * @specfield cmpMax: int // the maximum number of comparisons made when comparing circuits for equality
+ * @specfield concurrent: boolean // true if gates can be assembled concurrently
  * @invariant no disj factory, factory' : CircuitFactory | some factory.values & factory'.values
  * @author Emina Torlak
  */
 final class CBCFactory {
+	/**
+	 * Number of lock stripes per gate cache in a concurrent factory.  MUST be a power of two.
+	 */
+	private static final int STRIPES = 64;
 	
 	/**
-	 * Sets used as `scrap paper' for gate comparisons.  Its capacity is 2^(depth), where
-	 * depth is the depth to which gates should be checked for equality.
+	 * Scrap sets used by a sequential factory, or null if this is a concurrent factory.
+	 */
+	private final Scrap scrap;
+	/**
+	 * Per-thread scrap sets used by a concurrent factory, or null if this is a sequential factory.
 	 */
-	private final Set<BooleanFormula> scrap0, scrap1;
+	private final ThreadLocal<Scrap> scraps;
 	/**
 	 * Caches variables.  This representation is optimized for infrequent addition of 
 	 * ranges of variables at a time (as opposed to frequent addition of one variable at a time).
@@ -64,25 +79,44 @@ final class CBCFactory {
 	 */
 	private BooleanVariable[][] vars;
 	/**
-	 * Caches AND, OR, and ITE gates.  
-	 * @invariant all i: [0..2] | c[i].op.ordinal = i
+	 * Caches AND, OR, and ITE gates.  Each operator's cache consists of this.stripes sets, 
+	 * and a gate with a given hash is stored in the set at index (op.ordinal*stripes + (hash & (stripes-1))).  
+	 * @invariant cache.length = 3*stripes
 	 */
 	private final CacheSet<BooleanFormula>[] cache;
-	private int label, cmpMax;
+	private final int stripes;
+	/**
+	 * The label of the next gate created by a sequential factory.  A concurrent factory 
+	 * allocates its labels from this.atomicLabel instead, which is null in a sequential factory.
+	 */
+	private int label;
+	private final AtomicInteger atomicLabel;
+	private int cmpMax;
 	
-
+	/**
+	 * Constructs a sequential CircuitFactory using the given max comparison parameter, initialized
+	 * to contain the given number of variables. 
+	 * @requires cmpMax > 0 && numVars >= 0
+	 * @ensures #this.values' = numVars && this.values in BooleanVariable
+	 * @ensures this.cmpMax' = cmpMax && !this.concurrent'
+	 */
+	CBCFactory(int numVars, int cmpMax) {
+		this(numVars, cmpMax, false);
+	}
 	
 	/**
 	 * Constructs a CircuitFactory using the given max comparison parameter, initialized
-	 * to contain the given number of variables. 
+	 * to contain the given number of variables.  The factory is concurrent if the given
+	 * flag is true.
 	 * @requires cmpMax > 0 && numVars >= 0
 	 * @ensures #this.values' = numVars && this.values in BooleanVariable
-	 * @ensures this.cmpMax' = cmpMax
+	 * @ensures this.cmpMax' = cmpMax && this.concurrent' = concurrent
 	 */
-	@SuppressWarnings("unchecked") CBCFactory(int numVars, int cmpMax) {
+	@SuppressWarnings("unchecked") CBCFactory(int numVars, int cmpMax, boolean concurrent) {
 		assert cmpMax > 0 && numVars >= 0;
 		this.cmpMax = cmpMax;
 		this.label = numVars + 1;
+		this.atomicLabel = concurrent ? new AtomicInteger(label) : null;
 		if (numVars == 0) {
 			vars = new BooleanVariable[0][];
 		} else {
@@ -91,18 +125,57 @@ final class CBCFactory {
 				vars[0][i]= new BooleanVariable(i+1);                                                                        
 			}
 		}
-		scrap0 = new IdentityHashSet<BooleanFormula>(cmpMax);
-		scrap1 = new IdentityHashSet<BooleanFormula>(cmpMax);
-		cache = new CacheSet[]{new CacheSet<BooleanFormula>(), new CacheSet<BooleanFormula>(), new CacheSet<BooleanFormula>()};
+		if (concurrent) { 
+			this.stripes = STRIPES;
+			this.scrap = null;
+			this.scraps = new ThreadLocal<Scrap>() {
+				protected Scrap initialValue() { return new Scrap(CBCFactory.this.cmpMax); }
+			};
+		} else {
+			this.stripes = 1;
+			this.scrap = new Scrap(cmpMax);
+			this.scraps = null;
+		}
+		this.cache = new CacheSet[3*stripes];
+		for(int i = 0; i < cache.length; i++) {
+			cache[i] = new CacheSet<BooleanFormula>();
+		}
 	}
 	
 	/**
-	 * Returns the cache for gates with the given operator.
+	 * Returns true if this is a concurrent factory.
+	 * @return this.concurrent
+	 */
+	boolean isConcurrent() { return scraps != null; }
+	
+	/**
+	 * Returns the scrap sets for the current thread.
+	 * @return the scrap sets for the current thread
+	 */
+	private Scrap scrap() { 
+		return scrap != null ? scrap : scraps.get();
+	}
+	
+	/**
+	 * Returns the cache stripe for gates with the given operator and hash.  If this is 
+	 * a concurrent factory, the returned set must be locked while it is accessed.
 	 * @requires op in AND + OR + ITE
-	 * @return cache[op.ordinal]
+	 * @return cache[op.ordinal*this.stripes + (hash & (this.stripes-1))]
 	 */
-	private CacheSet<BooleanFormula> opCache(Operator op) {
-		return cache[op.ordinal];
+	private CacheSet<BooleanFormula> opCache(Operator op, int hash) {
+		return cache[op.ordinal*stripes + (hash & (stripes-1))];
+	}
+	
+	/**
+	 * Returns true if the given gate is in the given cache stripe.
+	 * @return g in c
+	 */
+	private static boolean cached(CacheSet<BooleanFormula> c, BooleanFormula g) {
+		for(Iterator<BooleanFormula> gates = c.get(g.hashCode()); gates.hasNext(); ) {
+	    	if (g==gates.next()) 
+	    		return true;
+	    }
+		return false;
 	}
 	
 	/**
@@ -136,11 +209,11 @@ final class CBCFactory {
 			return v == variable(v.label());
 		} else {
 			final BooleanFormula g = (BooleanFormula) v;
-			for(Iterator<BooleanFormula> gates = opCache(g.op()).get(g.hashCode()); gates.hasNext(); ) {
-		    	if (g==gates.next()) 
-		    		return true;
-		    }
-			return false;
+			final CacheSet<BooleanFormula> c = opCache(g.op(), g.hashCode());
+			if (isConcurrent()) { 
+				synchronized(c) { return cached(c, g); }
+			}
+			return cached(c, g);
 		}
 	}
 	
@@ -159,7 +232,25 @@ final class CBCFactory {
 	 * Note that {@link #maxFormula()} >= {@link #maxVariable()} since variables themselves are formulas.
 	 * @return max((this.values & BooleanFormula).label)
 	 */
-	int maxFormula() { return label-1; }
+	int maxFormula() { return nextLabel()-1; }
+	
+	/**
+	 * Returns the label of the next gate that will be created by this factory.
+	 * @return max((this.values & BooleanFormula).label) + 1
+	 */
+	private int nextLabel() { 
+		return atomicLabel==null ? label : atomicLabel.get();
+	}
+	
+	/**
+	 * Returns the label of the next gate that will be created by this factory, and
+	 * allocates it to the caller.
+	 * @ensures this.nextLabel()' = this.nextLabel() + 1
+	 * @return this.nextLabel()
+	 */
+	private int allocateLabel() { 
+		return atomicLabel==null ? label++ : atomicLabel.getAndIncrement();
+	}
 	
 	/**
 	 * Returns the boolean variable from this.values with the given label.
@@ -188,6 +279,7 @@ final class CBCFactory {
 	
 	/**
 	 * Adds the specified number of fresh variables to {@code this.values}.
+	 * This method must not be called while other threads are using this factory.
 	 * @requires numVars > 0
 	 * @ensures let diff = this.values' - this.values | 
 	 *           diff in BooleanVariable && #diff = numVars &&
@@ -195,23 +287,27 @@ final class CBCFactory {
 	 */
 	void addVariables(int numVars) {
 		assert numVars > 0;
+		final int label = nextLabel();
 		if (label > 1 && maxVariable()==maxFormula()) {
 			final BooleanVariable[] last = vars[vars.length-1];
 			final BooleanVariable[] newLast = new BooleanVariable[last.length+numVars];
 			System.arraycopy(last, 0, newLast, 0, last.length);
-			for(int i = last.length, varLabel = this.label; i < newLast.length; i++, varLabel++)
+			for(int i = last.length, varLabel = label; i < newLast.length; i++, varLabel++)
 				newLast[i] = new BooleanVariable(varLabel);
 			vars[vars.length-1] = newLast;
 		} else {
 			final BooleanVariable[][] newVars = new BooleanVariable[vars.length+1][];	
 			System.arraycopy(vars, 0, newVars, 0, vars.length);
 			final BooleanVariable[] newLast = new BooleanVariable[numVars];
-			for(int i = 0, varLabel = this.label; i < numVars; i++, varLabel++)
+			for(int i = 0, varLabel = label; i < numVars; i++, varLabel++)
 				newLast[i] = new BooleanVariable(varLabel);			
 			newVars[vars.length] = newLast;
 			vars = newVars;			
 		}
-		this.label += numVars;
+		if (atomicLabel==null) 
+			this.label += numVars;
+		else 
+			atomicLabel.addAndGet(numVars);
 	}
 	
 	/**
@@ -231,16 +327,30 @@ final class CBCFactory {
 		else {
 			final BooleanFormula f0 = (BooleanFormula) i, f1 = (BooleanFormula) t, f2 = (BooleanFormula) e;
 			final int hash = ITE.hash(f0, f1, f2);
-			
-			for(Iterator<BooleanFormula> gates = opCache(ITE).get(hash); gates.hasNext();) {
-				BooleanFormula gate = gates.next();
-				if (gate.input(0)==i && gate.input(1)==t && gate.input(2)==e)
-					return gate;
+			final CacheSet<BooleanFormula> c = opCache(ITE, hash);
+			if (isConcurrent()) { 
+				synchronized(c) { return cache(c, hash, f0, f1, f2); }
 			}
-			final BooleanFormula ret = new ITEGate(label++, hash, f0, f1, f2);
-			opCache(ITE).add(ret);
-			return ret;
+			return cache(c, hash, f0, f1, f2);
+		}
+	}
+	
+	/**
+	 * Returns an ITE gate with the given inputs from the given cache stripe, if one exists.  
+	 * Otherwise creates such a gate, adds it to the stripe and returns it.
+	 * @requires c = opCache(ITE, hash) && hash = ITE.hash(f0, f1, f2)
+	 * @return g: ITEGate | g.inputs = 0->f0 + 1->f1 + 2->f2
+	 * @ensures g !in this.values => this.values' = this.values + g, this.values' = this.values
+	 */
+	private BooleanFormula cache(CacheSet<BooleanFormula> c, int hash, BooleanFormula f0, BooleanFormula f1, BooleanFormula f2) {
+		for(Iterator<BooleanFormula> gates = c.get(hash); gates.hasNext();) {
+			BooleanFormula gate = gates.next();
+			if (gate.input(0)==f0 && gate.input(1)==f1 && gate.input(2)==f2)
+				return gate;
 		}
+		final BooleanFormula ret = new ITEGate(allocateLabel(), hash, f0, f1, f2);
+		c.add(ret);
+		return ret;
 	}
 		
 	/**
@@ -282,35 +392,53 @@ final class CBCFactory {
 			return assemble(op, inputs.next(), inputs.next());
 		default :
 			final int hash = op.hash((Iterator)acc.iterator());
-			if (asize > cmpMax) {
-				for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
-					BooleanFormula g = gates.next();
-					if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
-						return g;
-					} 
-				}
-			} else {
-				LOOKUP: for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
-					BooleanFormula g = gates.next();
-					if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
-						return g;
-					} else if (g.size() < asize) {
-						scrap0.clear();
-						g.flatten(op, scrap0, cmpMax);
-						if (scrap0.size()==asize) {
-							for(BooleanValue v : acc) {
-								if (!scrap0.contains(v))
-									continue LOOKUP;
-							}
-							return g;
+			final CacheSet<BooleanFormula> c = opCache(op, hash);
+			if (isConcurrent()) { 
+				synchronized(c) { return cache(c, hash, acc); }
+			}
+			return cache(c, hash, acc);
+		}
+	}
+	
+	/**
+	 * Returns a gate from the given cache stripe with the same meaning as the given accumulator, if one exists.
+	 * Otherwise creates such a gate, adds it to the stripe and returns it.
+	 * @requires c = opCache(acc.op, hash) && hash = acc.op.hash(acc.iterator()) && acc.size() > 2
+	 * @return v: BooleanFormula | [[v]] = [[acc]] 
+	 * @ensures v !in this.values => this.values' = this.values + v, this.values' = this.values
+	 */
+	private BooleanFormula cache(CacheSet<BooleanFormula> c, int hash, BooleanAccumulator acc) {
+		final int asize = acc.size();
+		final Operator.Nary op = acc.op;
+		if (asize > cmpMax) {
+			for(Iterator<BooleanFormula> gates = c.get(hash); gates.hasNext(); ) {
+				BooleanFormula g = gates.next();
+				if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
+					return g;
+				} 
+			}
+		} else {
+			final Set<BooleanFormula> scrap0 = scrap().s0;
+			LOOKUP: for(Iterator<BooleanFormula> gates = c.get(hash); gates.hasNext(); ) {
+				BooleanFormula g = gates.next();
+				if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
+					return g;
+				} else if (g.size() < asize) {
+					scrap0.clear();
+					g.flatten(op, scrap0, cmpMax);
+					if (scrap0.size()==asize) {
+						for(BooleanValue v : acc) {
+							if (!scrap0.contains(v))
+								continue LOOKUP;
 						}
+						return g;
 					}
 				}
 			}
-			final BooleanFormula ret = new NaryGate(acc, label++, hash);	
-			opCache(acc.op).add(ret);
-			return ret;
 		}
+		final BooleanFormula ret = new NaryGate(acc, allocateLabel(), hash);	
+		c.add(ret);
+		return ret;
 	}
 	
 	/**
@@ -346,11 +474,28 @@ final class CBCFactory {
 			l = f1; h = f0;
 		}
 		final int hash = op.hash(l,h);
+		final CacheSet<BooleanFormula> c = opCache(op, hash);
+		if (isConcurrent()) { 
+			synchronized(c) { return cache(c, hash, op, l, h); }
+		}
+		return cache(c, hash, op, l, h);
+	}
+	
+	/**
+	 * Returns a gate from the given cache stripe whose meaning is l op h, if one exists.
+	 * Otherwise creates such a gate, adds it to the stripe and returns it.
+	 * @requires c = opCache(op, hash) && hash = op.hash(l, h) && l.label < h.label
+	 * @return f : BooleanFormula | [[f]] = [[l]] op [[h]]
+	 * @ensures f !in this.values => this.values' = this.values + f, this.values' = this.values
+	 */
+	private BooleanFormula cache(CacheSet<BooleanFormula> c, int hash, Operator.Nary op, BooleanFormula l, BooleanFormula h) {
 		if (l.op()==op || h.op()==op) {
+			final Scrap scrap = scrap();
+			final Set<BooleanFormula> scrap0 = scrap.s0, scrap1 = scrap.s1;
 			scrap0.clear();
 			l.flatten(op, scrap0, cmpMax-1);
 			h.flatten(op, scrap0, cmpMax-scrap0.size());
-			for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
+			for(Iterator<BooleanFormula> gates = c.get(hash); gates.hasNext(); ) {
 				BooleanFormula gate = gates.next();
 				if (gate.size()==2 && gate.input(0)==l && gate.input(1)==h)
 					return gate;
@@ -362,14 +507,14 @@ final class CBCFactory {
 				}
 			}
 		} else {
-			for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
+			for(Iterator<BooleanFormula> gates = c.get(hash); gates.hasNext(); ) {
 				BooleanFormula gate = gates.next();
 				if (gate.size()==2 && gate.input(0)==l && gate.input(1)==h)
 					return gate;
 			}
 		}
-		final BooleanFormula ret = new BinaryGate(op, label++, hash, l, h);
-		opCache(op).add(ret);
+		final BooleanFormula ret = new BinaryGate(op, allocateLabel(), hash, l, h);
+		c.add(ret);
 		return ret;
 	}
 
@@ -429,6 +574,8 @@ final class CBCFactory {
 		 */
 		BooleanValue assemble(Nary op, BooleanFormula f0, BooleanFormula f1) {
 			assert f0.op() == AND && f1.op() == OR;
+			final Scrap scrap = scrap();
+			final Set<BooleanFormula> scrap0 = scrap.s0, scrap1 = scrap.s1;
 			scrap0.clear(); 
 			scrap1.clear();
 			f0.flatten(f0.op(), scrap0, cmpMax);
@@ -457,6 +604,8 @@ final class CBCFactory {
 			assert f0.op() == f1.op();
 			if (f0==f1) return f0;
 			final Operator fop = f0.op();
+			final Scrap scrap = scrap();
+			final Set<BooleanFormula> scrap0 = scrap.s0, scrap1 = scrap.s1;
 			scrap0.clear(); 
 			scrap1.clear();
 			f0.flatten(fop, scrap0, cmpMax);
@@ -639,5 +788,16 @@ final class CBCFactory {
 		NoV,		/* NOT op VAR */
 		XoX			/* VAR op VAR */
 	};
-
-}
\ No newline at end of file
+	
+	/**
+	 * Sets used as `scrap paper' for gate comparisons.  Their capacity is 2^(depth), where
+	 * depth is the depth to which gates should be checked for equality.
+	 */
+	private static final class Scrap { 
+		final Set<BooleanFormula> s0, s1;
+		Scrap(int cmpMax) {
+			s0 = new IdentityHashSet<BooleanFormula>(cmpMax);
+			s1 = new IdentityHashSet<BooleanFormula>(cmpMax);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kodkod.engine.satlab.SATFactory;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+
+/**
+ * A global simplification pass over boolean circuits.  Circuit preprocessors 
+ * are applied, in the order given by {@link kodkod.engine.config.Options#circuitPreprocessors()}, 
+ * to the circuit that represents a whole translation, after the translation to a boolean 
+ * circuit and before the translation to CNF.  A preprocessor rebuilds the circuit 
+ * through its factory, and must return a circuit that is equivalent to the original one 
+ * (not just equisatisfiable with it), since the values of the primary variables in a 
+ * model of the processed circuit are used to interpret the solution.  
+ * 
+ * @author agent
+ */
+public abstract class CircuitPreprocessor {
+	
+	/**
+	 * Constructs a new circuit preprocessor.
+	 */
+	protected CircuitPreprocessor() {}
+	
+	/**
+	 * Propagates the literals that are conjuncts of the circuit.  Every other occurrence 
+	 * of a formula that the circuit asserts to be true (false) is replaced by TRUE (FALSE), 
+	 * and the resulting circuit is simplified by the factory.  The pass is repeated while it 
+	 * exposes new conjuncts.
+	 */
+	public static final CircuitPreprocessor UNITS = new CircuitPreprocessor() {
+		public BooleanValue apply(BooleanFormula circuit, BooleanFactory factory) {
+			BooleanValue root = circuit;
+			for(int round = 0; round < 8 && root.op()==Operator.AND; round++) { 
+				final CircuitRebuilder rebuilder = new CircuitRebuilder(factory, false);
+				final List<BooleanFormula> conjuncts = new ArrayList<BooleanFormula>();
+				if (!assume((BooleanFormula) root, rebuilder, conjuncts, Ints.bestSet(StrictMath.abs(root.label())+1)))
+					return BooleanConstant.FALSE;
+				final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
+				for(BooleanFormula conjunct : conjuncts) { 
+					if (acc.add(rebuilder.rebuildInputs(conjunct))==BooleanConstant.FALSE) 
+						return BooleanConstant.FALSE;
+				}
+				final BooleanValue next = factory.accumulate(acc);
+				if (next==root) break;
+				root = next;
+			}
+			return root;
+		}
+		
+		/**
+		 * Collects into the given list the conjuncts of the given formula that are not 
+		 * themselves conjunctions, and substitutes TRUE for all nodes of the tree of 
+		 * conjunctions rooted at the formula, and FALSE for the inputs of its negated conjuncts.  
+		 * Returns false if the circuit asserts both a formula and its negation.
+		 */
+		private boolean assume(BooleanFormula f, CircuitRebuilder rebuilder, List<BooleanFormula> conjuncts, IntSet visited) { 
+			if (!visited.add(StrictMath.abs(f.label()))) 
+				return rebuilder.substitution(f)==BooleanConstant.constant(f.label() > 0);
+			if (f.op()==Operator.AND) { 
+				rebuilder.substitute(f, BooleanConstant.TRUE);
+				for(BooleanFormula input : f) { 
+					if (!assume(input, rebuilder, conjuncts, visited)) 
+						return false;
+				}
+			} else { 
+				conjuncts.add(f);
+				if (f.op()==Operator.NOT) 
+					rebuilder.substitute(f.input(0), BooleanConstant.FALSE);
+				else
+					rebuilder.substitute(f, BooleanConstant.TRUE);
+			}
+			return true;
+		}
+		
+		public String fingerprint() { return "UNITS"; }
+		public String toString() { return "UNITS"; }
+	};
+	
+	/**
+	 * Merges gates that are equivalent to constants, or to (the negations of) other gates 
+	 * or variables, but are structurally different from them.  Candidate equivalences are found by 
+	 * simulating the circuit on random input patterns, and proved with {@link SATFactory#DefaultSAT4J} 
+	 * before the gates are merged.  The number of SAT calls per application of this pass, and the number 
+	 * of conflicts per call, are bounded, so it may miss some equivalences in large circuits.
+	 * @see #sweeping(SATFactory)
+	 */
+	public static final CircuitPreprocessor SWEEPING = sweeping(SATFactory.DefaultSAT4J);
+	
+	/**
+	 * Returns a preprocessor that merges gates that are equivalent to constants, or to (the negations of) 
+	 * other gates or variables, but are structurally different from them.  The preprocessor works like 
+	 * {@link #SWEEPING}, except that it proves the candidate equivalences with instances of the given solver, 
+	 * which must be able to give up on a proof after a given number of conflicts.
+	 * @return a preprocessor that proves equivalences with instances of the given solver
+	 * @throws NullPointerException  solver = null
+	 * @throws IllegalArgumentException  !solver.incremental() || !solver.bounded()
+	 */
+	public static CircuitPreprocessor sweeping(final SATFactory solver) { 
+		if (!solver.incremental() || !solver.bounded())
+			throw new IllegalArgumentException("sweeping requires an incremental and bounded solver: " + solver);
+		return new CircuitPreprocessor() {
+			public BooleanValue apply(BooleanFormula circuit, BooleanFactory factory) {
+				return SatSweeper.sweep(circuit, factory, solver);
+			}
+			public String fingerprint() { return "SWEEPING " + solver.getClass().getName() + " " + solver; }
+			public String toString() { return "SWEEPING(" + solver + ")"; }
+		};
+	}
+	
+	/**
+	 * Reassembles every gate of the circuit from the bottom up, with a comparison depth that is 
+	 * one greater than the factory's.  This gives the factory's local simplification rules a chance 
+	 * to fire on gates whose inputs were built separately, or simplified by earlier passes.
+	 */
+	public static final CircuitPreprocessor REWRITING = new CircuitPreprocessor() {
+		public BooleanValue apply(BooleanFormula circuit, BooleanFactory factory) {
+			final int depth = factory.comparisonDepth();
+			factory.setComparisonDepth(depth+1);
+			try { 
+				return (new CircuitRebuilder(factory, true)).rebuild(circuit);
+			} finally { 
+				factory.setComparisonDepth(depth);
+			}
+		}
+		public String fingerprint() { return "REWRITING"; }
+		public String toString() { return "REWRITING"; }
+	};
+	
+	/**
+	 * Returns a circuit, built by the given factory, that is equivalent to the given circuit.  
+	 * The returned circuit may not contain any variables that are not in the given circuit. 
+	 * @requires circuit in factory.components
+	 * @return { c: BooleanValue | c in factory.components' && [[c]] = [[circuit]] && 
+	 *           (c.*inputs & BooleanVariable) in (circuit.*inputs & BooleanVariable) }
+	 * @ensures factory.components' in factory.components + (BooleanFormula - BooleanVariable)
+	 */
+	public abstract BooleanValue apply(BooleanFormula circuit, BooleanFactory factory);
+	
+	/**
+	 * Returns a string that identifies this preprocessor and its configuration, and that is 
+	 * the same in every run of the JVM, or null if there is no such string.  The 
+	 * {@linkplain kodkod.engine.config.Options#translationCache() translation cache} stores 
+	 * the translations of problems that use this preprocessor under this string, so it 
+	 * caches no translations if some preprocessor returns null.  The fingerprint of 
+	 * a {@link #sweeping(SATFactory) sweeping} preprocessor includes the class and the 
+	 * string representation of its solver factory.  The default implementation returns null.
+	 * @return a string that identifies this preprocessor across runs of the JVM, or null if there is none
+	 */
+	public String fingerprint() { 
+		return null;
+	}
+	
+	/**
+	 * Returns the number of distinct gates (other than inverters) in the given circuit.
+	 * @return #(circuit.*inputs & (MultiGate + ITEGate))
+	 */
+	public static int size(BooleanValue circuit) { 
+		if (circuit.op()==Operator.CONST) return 0;
+		final IntSet visited = Ints.bestSet(StrictMath.abs(circuit.label())+1);
+		return size((BooleanFormula) circuit, visited);
+	}
+	
+	/**
+	 * Returns the number of gates in the given circuit whose labels are not in the given set, 
+	 * and adds their labels to the set.
+	 */
+	private static int size(BooleanFormula circuit, IntSet visited) { 
+		final Operator op = circuit.op();
+		if (op==Operator.NOT) return size(circuit.input(0), visited);
+		if (op==Operator.VAR || !visited.add(circuit.label())) return 0;
+		int size = 1;
+		for(BooleanFormula input : circuit) { 
+			size += size(input, visited);
+		}
+		return size;
+	}
+}
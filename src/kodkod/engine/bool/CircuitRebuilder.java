@@ -0,0 +1,168 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+/**
+ * Rebuilds a circuit through its factory, replacing some of its components with 
+ * other values.  Each gate whose inputs change is reassembled from the rebuilt 
+ * inputs by the factory, which applies its local simplification rules to the 
+ * result.  Gates whose inputs are unchanged are kept as they are, unless all 
+ * gates are to be reassembled.  
+ * 
+ * @specfield factory: BooleanFactory
+ * @specfield substitution: (MultiGate + ITEGate + BooleanVariable) -> lone BooleanValue
+ * @specfield reassemble: boolean // true if all gates are reassembled
+ * @author agent
+ */
+final class CircuitRebuilder implements BooleanVisitor<BooleanValue, Object> {
+	private final BooleanFactory factory;
+	private final boolean reassemble;
+	/** substitution[label] is the replacement for the formula with the given label, if any */
+	private final BooleanValue[] substitution;
+	/** rebuilt[label] is the cached result of rebuilding the formula with the given label, if any */
+	private final BooleanValue[] rebuilt;
+	
+	/**
+	 * Constructs a rebuilder for components of the given factory, with an empty substitution.
+	 * @ensures this.factory' = factory && no this.substitution' && this.reassemble' = reassemble
+	 */
+	CircuitRebuilder(BooleanFactory factory, boolean reassemble) {
+		this.factory = factory;
+		this.reassemble = reassemble;
+		final int size = factory.maxFormula() + 1;
+		this.substitution = new BooleanValue[size];
+		this.rebuilt = new BooleanValue[size];
+	}
+	
+	/**
+	 * Replaces the given formula with the given value.  The value may be 
+	 * a component of the circuit being rebuilt, as long as it does not depend on 
+	 * the formula it replaces.
+	 * @requires formula in MultiGate + ITEGate + BooleanVariable
+	 * @requires formula !in value.*inputs 
+	 * @ensures this.substitution' = this.substitution ++ formula->value
+	 */
+	void substitute(BooleanFormula formula, BooleanValue value) {
+		substitution[formula.label()] = value;
+	}
+	
+	/**
+	 * Returns the replacement for the given formula, if any.
+	 * @return this.substitution[formula]
+	 */
+	BooleanValue substitution(BooleanFormula formula) { 
+		return substitution[StrictMath.abs(formula.label())];
+	}
+	
+	/**
+	 * Returns the result of rebuilding the given value with respect to this.substitution.
+	 * @return value in BooleanConstant => value else rebuilt value
+	 */
+	BooleanValue rebuild(BooleanValue value) { 
+		return value.op()==Operator.CONST ? value : ((BooleanFormula) value).accept(this, null);
+	}
+	
+	/**
+	 * Returns the result of rebuilding the inputs of the given formula, and reassembling 
+	 * them with the formula's operator, without applying this.substitution to the 
+	 * formula itself.  
+	 * @return rebuilt formula, ignoring this.substitution[formula]
+	 */
+	BooleanValue rebuildInputs(BooleanFormula formula) { 
+		final Operator op = formula.op();
+		if (op==Operator.AND || op==Operator.OR) return assemble((MultiGate) formula);
+		if (op==Operator.ITE) return assemble((ITEGate) formula);
+		if (op==Operator.NOT) return factory.not(rebuildInputs(formula.input(0)));
+		return formula;
+	}
+	
+	/**
+	 * Returns the reassembled form of the given multigate.
+	 */
+	private BooleanValue assemble(MultiGate multigate) { 
+		final BooleanAccumulator acc = BooleanAccumulator.treeGate(multigate.op());
+		boolean changed = reassemble;
+		for(BooleanFormula input : multigate) { 
+			final BooleanValue in = input.accept(this, null);
+			changed |= (in != input);
+			if (acc.add(in)==multigate.op().shortCircuit())
+				return multigate.op().shortCircuit();
+		}
+		return changed ? factory.accumulate(acc) : multigate;
+	}
+	
+	/**
+	 * Returns the reassembled form of the given ite gate.
+	 */
+	private BooleanValue assemble(ITEGate ite) { 
+		final BooleanValue i = ite.input(0).accept(this, null);
+		final BooleanValue t = ite.input(1).accept(this, null);
+		final BooleanValue e = ite.input(2).accept(this, null);
+		return reassemble || i!=ite.input(0) || t!=ite.input(1) || e!=ite.input(2) ? factory.ite(i, t, e) : ite;
+	}
+	
+	/**
+	 * Returns the rebuilt form of the given formula, computing and caching it if needed.
+	 * @requires formula in MultiGate + ITEGate
+	 */
+	private BooleanValue lookup(BooleanFormula formula) { 
+		final int label = formula.label();
+		BooleanValue ret = rebuilt[label];
+		if (ret==null) { 
+			final BooleanValue sub = substitution[label];
+			ret = sub==null ? rebuildInputs(formula) : rebuild(sub);
+			rebuilt[label] = ret;
+		}
+		return ret;
+	}
+	
+	/**
+	 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.MultiGate, java.lang.Object)
+	 */
+	public BooleanValue visit(MultiGate multigate, Object arg) {
+		return lookup(multigate);
+	}
+
+	/**
+	 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.ITEGate, java.lang.Object)
+	 */
+	public BooleanValue visit(ITEGate ite, Object arg) {
+		return lookup(ite);
+	}
+
+	/**
+	 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.NotGate, java.lang.Object)
+	 */
+	public BooleanValue visit(NotGate negation, Object arg) {
+		final BooleanFormula input = negation.input(0);
+		final BooleanValue in = input.accept(this, arg);
+		return in==input ? negation : factory.not(in);
+	}
+
+	/**
+	 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.BooleanVariable, java.lang.Object)
+	 */
+	public BooleanValue visit(BooleanVariable variable, Object arg) {
+		final BooleanValue sub = substitution[variable.label()];
+		return sub==null ? variable : rebuild(sub);
+	}
+}
@@ -21,6 +21,7 @@
  */
 package kodkod.engine.bool;
 
+import java.math.BigInteger;
 import java.util.List;
 
 
@@ -92,12 +93,23 @@ public abstract class Int {
 	
 	/**
 	 * If this Int is constant, returns its value.  Otherwise
-	 * throws an IllegalStateException.
+	 * throws an IllegalStateException.  If the value does not 
+	 * fit into 32 bits, the low 32 bits of its two's complement 
+	 * representation are returned; use {@link #bigValue()} to 
+	 * obtain the exact value of a wide constant.
 	 * @return this.isConstant() => [[this.bits]]
 	 * @throws IllegalStateException  !this.isConstant()
 	 */
 	public abstract int value();
 	
+	/**
+	 * If this Int is constant, returns its value as a BigInteger.  
+	 * Otherwise throws an IllegalStateException.
+	 * @return this.isConstant() => [[this.bits]]
+	 * @throws IllegalStateException  !this.isConstant()
+	 */
+	public abstract BigInteger bigValue();
+	
 	/**
 	 * Returns a BooleanValue encoding the comparator circuit
 	 * that checks whether the integer represented by this
@@ -0,0 +1,358 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+
+/**
+ * Detects gates of a circuit that are equivalent to constants, or to (the negations of) 
+ * other gates or variables of the circuit, and merges them.  Candidate equivalences 
+ * are found by simulating the circuit on random input patterns:  two formulas can only be 
+ * equivalent if they agree on all patterns, and a formula can only be constant if it 
+ * takes the same value on all of them.  Each candidate is then proved or refuted with 
+ * an incremental SAT solver that holds the Tseitin encoding of the circuit, and proved equivalences 
+ * are added to that solver to speed up the subsequent proofs.  The models found 
+ * by refuted proofs are simulated as additional patterns, which filters out 
+ * further candidates without calling the solver.  The number of SAT calls 
+ * per sweep is bounded, and so is the number of conflicts per call.  Candidates whose 
+ * proofs run out of conflicts, and candidates that are left when the calls run out, 
+ * are left alone.
+ * 
+ * <p>Proofs are done with respect to the definitions of the gates only, not 
+ * the constraint that the circuit is true, so merging yields an equivalent circuit.
+ * The root of the circuit is not checked, since proving it constant amounts to 
+ * solving the circuit.</p>
+ * 
+ * @specfield circuit: BooleanFormula
+ * @specfield factory: BooleanFactory
+ * @specfield solver: SATFactory
+ * @author agent
+ */
+final class SatSweeper {
+	/** Number of 64-bit words of random patterns simulated per formula. */
+	private static final int WORDS = 4;
+	/** Index of the word that holds the patterns taken from counterexamples, and the number of words per formula. */
+	private static final int CEX = WORDS, STRIDE = WORDS + 1;
+	/** Maximum number of SAT calls per sweep. */
+	private static final int CALLS = 1024;
+	/** Maximum number of conflicts per SAT call. */
+	private static final int CONFLICTS = 100;
+	/** Maximum number of mutually inequivalent formulas per simulation class that are tried as representatives. */
+	private static final int CANDIDATES = 4;
+	
+	private final BooleanFactory factory;
+	private final SATFactory solver;
+	/** The gates and variables of the circuit, in topological order.*/
+	private final List<BooleanFormula> order;
+	/** position[label] is 1 + the index of the formula with the given label in this.order, or 0 if none. */
+	private final int[] position;
+	/** 
+	 * sims[STRIDE*i..STRIDE*i+WORDS) holds the values of this.order[i] on random patterns, and 
+	 * sims[STRIDE*i+CEX] its values on the patterns taken from counterexamples, which occupy the bits in this.cexMask.
+	 */
+	private long[] sims;
+	private long cexMask;
+	private int calls, cexs;
+	
+	/**
+	 * Constructs a sweeper for the given circuit.
+	 * @ensures this.circuit' = circuit && this.factory' = factory && this.solver' = solver
+	 */
+	private SatSweeper(BooleanFormula circuit, BooleanFactory factory, SATFactory solver) {
+		this.factory = factory;
+		this.solver = solver;
+		this.order = new ArrayList<BooleanFormula>();
+		this.position = new int[StrictMath.abs(circuit.label())+1];
+		this.calls = this.cexs = 0;
+		this.cexMask = 0L;
+		sort(circuit);
+	}
+	
+	/**
+	 * Returns a circuit, built by the given factory, that is equivalent to the given circuit, 
+	 * and in which some of the formulas that are equivalent to constants or to other 
+	 * formulas of the circuit have been merged.  The merges are proved with 
+	 * instances of the given solver.
+	 * @requires circuit in factory.components
+	 * @requires solver.incremental() && solver.bounded()
+	 * @return { c: BooleanValue | [[c]] = [[circuit]] }
+	 */
+	static BooleanValue sweep(BooleanFormula circuit, BooleanFactory factory, SATFactory solver) { 
+		return (new SatSweeper(circuit, factory, solver)).sweep(circuit);
+	}
+	
+	/**
+	 * Adds the gates and variables in the given circuit to this.order, in topological order.
+	 */
+	private void sort(BooleanFormula circuit) { 
+		if (circuit.op()==Operator.NOT) {
+			sort(circuit.input(0));
+		} else if (position[circuit.label()]==0) { 
+			for(BooleanFormula input : circuit) { 
+				sort(input);
+			}
+			order.add(circuit);
+			position[circuit.label()] = order.size();
+		}
+	}
+	
+	/**
+	 * Returns the simulated value of the given formula in the given word.
+	 * @requires formula in this.order.*(~inputs)
+	 */
+	private long value(BooleanFormula formula, int word) { 
+		final int label = formula.label();
+		return label < 0 ? ~sims[STRIDE*(position[-label]-1) + word] : sims[STRIDE*(position[label]-1) + word];
+	}
+	
+	/**
+	 * Returns the value of the given gate in the given word, computed from the values of its inputs.
+	 * @requires gate in MultiGate + ITEGate
+	 */
+	private long evaluate(BooleanFormula gate, int word) { 
+		final Operator op = gate.op();
+		if (op==Operator.AND) { 
+			long and = -1L;
+			for(BooleanFormula input : gate) { and &= value(input, word); }
+			return and;
+		} else if (op==Operator.OR) { 
+			long or = 0L;
+			for(BooleanFormula input : gate) { or |= value(input, word); }
+			return or;
+		} else if (op==Operator.ITE) { 
+			final long cond = value(gate.input(0), word);
+			return (cond & value(gate.input(1), word)) | (~cond & value(gate.input(2), word));
+		} else {
+			throw new AssertionError("not a gate: " + gate);
+		}
+	}
+	
+	/**
+	 * Simulates this.order on random patterns, storing the results in this.sims.
+	 */
+	private void simulate() { 
+		final Random random = new Random(0x5eed);
+		sims = new long[STRIDE*order.size()];
+		for(int i = 0, base = 0, max = order.size(); i < max; i++, base += STRIDE) { 
+			final BooleanFormula f = order.get(i);
+			for(int w = 0; w < WORDS; w++) {
+				sims[base + w] = f.op()==Operator.VAR ? random.nextLong() : evaluate(f, w);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the model found by the given solver to the patterns taken from counterexamples, 
+	 * replacing the oldest such pattern if all 64 are taken, and simulates this.order[0..max] on it.
+	 */
+	private void counterexample(SATSolver solver, int max) { 
+		final long bit = 1L << (cexs++ & 63);
+		cexMask |= bit;
+		for(int i = 0, idx = CEX; i <= max; i++, idx += STRIDE) { 
+			final BooleanFormula f = order.get(i);
+			final boolean value = f.op()==Operator.VAR ? solver.valueOf(f.label()) : (evaluate(f, CEX) & bit) != 0;
+			sims[idx] = value ? sims[idx] | bit : sims[idx] & ~bit;
+		}
+	}
+	
+	/**
+	 * Returns true if the given literals take the same values on all patterns taken from counterexamples.
+	 */
+	private boolean agree(int lit0, int lit1) { 
+		final long v0 = lit0 < 0 ? ~sims[STRIDE*(position[-lit0]-1) + CEX] : sims[STRIDE*(position[lit0]-1) + CEX];
+		final long v1 = lit1 < 0 ? ~sims[STRIDE*(position[-lit1]-1) + CEX] : sims[STRIDE*(position[lit1]-1) + CEX];
+		return ((v0 ^ v1) & cexMask) == 0;
+	}
+	
+	/**
+	 * Returns true if the given literal is false on all patterns taken from counterexamples.
+	 */
+	private boolean alwaysFalse(int lit) { 
+		final long v = lit < 0 ? ~sims[STRIDE*(position[-lit]-1) + CEX] : sims[STRIDE*(position[lit]-1) + CEX];
+		return (v & cexMask) == 0;
+	}
+	
+	/**
+	 * Adds the Tseitin encoding of the given gate to the given solver. 
+	 * @requires gate in MultiGate + ITEGate
+	 */
+	private static void define(BooleanFormula gate, SATSolver solver) { 
+		final int o = gate.label();
+		final Operator op = gate.op();
+		if (op==Operator.AND || op==Operator.OR) { // o = AND(i1..ik) or o = !AND(!i1..!ik) 
+			final int sgn = op==Operator.AND ? 1 : -1;
+			final int[] last = new int[gate.size()+1];
+			int i = 0;
+			for(BooleanFormula input : gate) { 
+				solver.addClause(new int[]{ -sgn*o, sgn*input.label() });
+				last[i++] = -sgn*input.label();
+			}
+			last[i] = sgn*o;
+			solver.addClause(last);
+		} else if (op==Operator.ITE) { 
+			final int c = gate.input(0).label(), t = gate.input(1).label(), e = gate.input(2).label();
+			solver.addClause(new int[]{ -c, -t, o });
+			solver.addClause(new int[]{ -c, t, -o });
+			solver.addClause(new int[]{ c, -e, o });
+			solver.addClause(new int[]{ c, e, -o });
+		} else {
+			throw new AssertionError("not a gate: " + gate);
+		}
+	}
+	
+	/**
+	 * Returns true if the given solver proves, within {@link #CONFLICTS} conflicts, that its 
+	 * clauses are unsatisfiable under the given assumptions.  If the solver finds a model 
+	 * instead, it is added to the patterns taken from counterexamples.
+	 * @requires all lit: assumptions | abs(lit) in this.order[0..max].label
+	 */
+	private boolean refuted(SATSolver solver, int max, int... assumptions) { 
+		calls++;
+		try { 
+			if (solver.solve(assumptions, CONFLICTS)) { 
+				counterexample(solver, max);
+				return false;
+			}
+			return true;
+		} catch (SATAbortedException e) { 
+			return false;
+		}
+	}
+	
+	/**
+	 * Merges the gates in this.order that are provably equivalent to a constant or to 
+	 * an earlier formula in this.order, and returns the resulting circuit.
+	 * @requires root = this.circuit
+	 */
+	private BooleanValue sweep(BooleanFormula root) { 
+		simulate();
+		final CircuitRebuilder rebuilder = new CircuitRebuilder(factory, false);
+		final Map<Signature, List<BooleanFormula>> classes = new HashMap<Signature, List<BooleanFormula>>();
+		final SATSolver solver = this.solver.instance();
+		try { 
+			solver.addVariables(StrictMath.abs(root.label()));
+			for(int i = 0, max = order.size()-1; i < max && calls < CALLS; i++) { 
+				final BooleanFormula f = order.get(i);
+				final Signature sig = new Signature(i);
+				final int lit = sig.flipped ? -f.label() : f.label(); // sig is the simulated value of lit
+				if (f.op()!=Operator.VAR) {
+					sims[STRIDE*i + CEX] = evaluate(f, CEX);
+					define(f, solver);
+					if (sig.isZero()) { // lit may be FALSE
+						if (alwaysFalse(lit) && refuted(solver, i, lit)) { 
+							rebuilder.substitute(f, BooleanConstant.constant(lit < 0));
+							solver.addClause(new int[]{ -lit });
+						}
+						continue;
+					}
+				}
+				List<BooleanFormula> reps = classes.get(sig);
+				if (reps==null) { 
+					reps = new ArrayList<BooleanFormula>(1);
+					classes.put(sig, reps);
+				} else if (f.op()!=Operator.VAR) { 
+					boolean merged = false;
+					for(int j = 0; j < reps.size() && calls < CALLS; j++) {
+						final BooleanFormula rep = reps.get(j);
+						final int repLit = new Signature(position[rep.label()]-1).flipped ? -rep.label() : rep.label();
+						if (agree(lit, repLit) && refuted(solver, i, lit, -repLit) && refuted(solver, i, -lit, repLit)) { 
+							// f = lit*sgn(lit) = repLit*sgn(lit) 
+							final int target = lit < 0 ? -repLit : repLit;
+							rebuilder.substitute(f, target < 0 ? factory.not(rep) : rep);
+							solver.addClause(new int[]{ -lit, repLit });
+							solver.addClause(new int[]{ lit, -repLit });
+							merged = true;
+							break;
+						}
+					}
+					if (merged) continue;
+				}
+				if (reps.size() < CANDIDATES)
+					reps.add(f);
+			}
+		} finally { 
+			solver.free();
+		}
+		return rebuilder.rebuild(root);
+	}
+	
+	/**
+	 * The simulated value of a formula in this.order, normalized so that 
+	 * the first pattern evaluates to false.  
+	 * @author agent
+	 */
+	private final class Signature { 
+		final int base;
+		final boolean flipped;
+		final int hash;
+		
+		/**
+		 * Constructs the signature of this.order[index].
+		 */
+		Signature(int index) { 
+			this.base = STRIDE*index;
+			this.flipped = (sims[base] & 1L) != 0;
+			int h = 0;
+			for(int w = 0; w < WORDS; w++) { 
+				final long v = word(w);
+				h = 31*h + (int)(v ^ (v >>> 32));
+			}
+			this.hash = h;
+		}
+		
+		/**
+		 * Returns the given word of this normalized signature.
+		 */
+		long word(int w) { return flipped ? ~sims[base+w] : sims[base+w]; }
+		
+		/**
+		 * Returns true if all words of this normalized signature are zero.
+		 */
+		boolean isZero() { 
+			for(int w = 0; w < WORDS; w++) { 
+				if (word(w) != 0) return false;
+			}
+			return true;
+		}
+		
+		public int hashCode() { return hash; }
+		
+		public boolean equals(Object o) { 
+			if (o==this) return true;
+			if (!(o instanceof Signature)) return false;
+			final Signature s = (Signature) o;
+			if (hash != s.hash) return false;
+			for(int w = 0; w < WORDS; w++) { 
+				if (word(w) != s.word(w)) return false;
+			}
+			return true;
+		}
+	}
+}
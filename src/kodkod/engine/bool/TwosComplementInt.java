@@ -26,6 +26,7 @@ import static kodkod.engine.bool.BooleanConstant.TRUE;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
 
+import java.math.BigInteger;
 import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.List;
@@ -34,7 +35,9 @@ import kodkod.util.collections.Containers;
 
 /**
  * Two's complement integer representation.  Supports comparisons, addition and subtraction.  
- * Integers are represented in little-endian (least significant bit first) order.
+ * Integers are represented in little-endian (least significant bit first) order.  
+ * Operations on two constant integers are folded with {@link BigInteger} arithmetic 
+ * at the full width of the factory, so no gates are built for them regardless of the bitwidth.
  * @author Emina Torlak
  */
 final class TwosComplementInt extends Int {
@@ -68,6 +71,22 @@ final class TwosComplementInt extends Int {
 	}
 
 	
+	/**
+	 * Constructs a constant TwosComplementInt that represents the this.factory.bitwidth 
+	 * low-order bits of the given number.
+	 * @ensures this.factory' = factory
+	 * @ensures bits is a two's-complement representation of the given number, 
+	 * truncated to factory.bitwidth bits
+	 */
+	private TwosComplementInt(BooleanFactory factory, BigInteger number) {
+		super(factory);
+		final int width = StrictMath.min(number.bitLength()+1, factory.bitwidth);
+		this.bits = new BooleanValue[width];
+		for(int i = 0; i < width; i++) {
+			bits[i] = number.testBit(i) ? TRUE : FALSE;
+		}
+	}
+	
 	/**
 	 * Returns the number of bits needed/allowed to represent the given number.
 	 * @return the number of bits needed/allowed to represent the given number.
@@ -126,19 +145,65 @@ final class TwosComplementInt extends Int {
 	 * @see kodkod.engine.bool.Int#value()
 	 */
 	public final int value() {
-		int ret = 0;
+		return bigValue().intValue();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#bigValue()
+	 */
+	public final BigInteger bigValue() {
+		BigInteger ret = BigInteger.ZERO;
 		final int max = bits.length-1;
 		for(int i = 0; i < max; i++) {
-			if (bits[i]==TRUE) ret += 1<<i;
+			if (bits[i]==TRUE) ret = ret.setBit(i);
 			else if (bits[i]!=FALSE)
 				throw new IllegalStateException(this + " is not constant.");       
 		}
-		if (bits[max]==TRUE) ret -= 1<<max;
+		if (bits[max]==TRUE) ret = ret.subtract(BigInteger.ONE.shiftLeft(max));
 		else if (bits[max]!=FALSE)
 			throw new IllegalStateException(this + " is not constant.");       
 		return ret;
 	}
 	
+	/**
+	 * Returns true if both this and the given int are constant.
+	 * @return this.isConstant() && other.isConstant()
+	 */
+	private boolean constant(Int other) {
+		return isConstant() && other.isConstant();
+	}
+	
+	/**
+	 * Returns the value of the given constant int as an unsigned 
+	 * number that is this.factory.bitwidth bits wide.
+	 * @requires other.isConstant()
+	 * @return [[other.bits]] mod 2^this.factory.bitwidth
+	 */
+	private BigInteger unsigned(Int other) {
+		return other.bigValue().mod(BigInteger.ONE.shiftLeft(factory.bitwidth));
+	}
+	
+	/**
+	 * Returns a constant int that represents the this.factory.bitwidth 
+	 * low-order bits of the given number.
+	 * @return { i: TwosComplementInt | [[i.bits]] = number mod 2^this.factory.bitwidth }
+	 */
+	private Int fold(BigInteger number) {
+		return new TwosComplementInt(factory, number);
+	}
+	
+	/**
+	 * Returns the shift amount encoded by the given constant int, capped 
+	 * at this.factory.bitwidth.
+	 * @requires other.isConstant()
+	 * @return min(unsigned(other), this.factory.bitwidth)
+	 */
+	private int shift(Int other) {
+		final BigInteger amount = unsigned(other);
+		return amount.bitLength() < 32 ? StrictMath.min(amount.intValue(), factory.bitwidth) : factory.bitwidth;
+	}
+	
 	
 	
 	/**
@@ -156,6 +221,8 @@ final class TwosComplementInt extends Int {
 	 */
 	public final BooleanValue eq(Int other) {
 		validate(other);
+		if (constant(other))
+			return BooleanConstant.constant(bigValue().equals(other.bigValue()));
 		final BooleanAccumulator cmp = BooleanAccumulator.treeGate(AND);
 		for(int i = 0, width = StrictMath.max(width(), other.width()); i < width; i++) {
 			if (cmp.add(factory.iff(bit(i), other.bit(i)))==FALSE)
@@ -169,6 +236,9 @@ final class TwosComplementInt extends Int {
 	 * @see kodkod.engine.bool.Int#lt(kodkod.engine.bool.Int)
 	 */
 	public final BooleanValue lt(Int other) {
+		validate(other);
+		if (constant(other))
+			return BooleanConstant.constant(bigValue().compareTo(other.bigValue()) < 0);
 		final BooleanValue leq = lte(other);
 		final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
 		for(int i = 0, width = StrictMath.max(width(), other.width()); i < width; i++) {
@@ -184,6 +254,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public BooleanValue lte(Int other) {
 		validate(other);
+		if (constant(other))
+			return BooleanConstant.constant(bigValue().compareTo(other.bigValue()) <= 0);
 		final BooleanAccumulator cmp = BooleanAccumulator.treeGate(Operator.AND);
 		final int last = StrictMath.max(width(), other.width())-1;
 		cmp.add(factory.implies(other.bit(last), bit(last)));
@@ -203,6 +275,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int plus(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().add(other.bigValue()));
 		final int width = StrictMath.min(StrictMath.max(width(), other.width()) + 1, factory.bitwidth);
 		final BooleanValue[] plus = new BooleanValue[width];
 		BooleanValue carry = FALSE;
@@ -222,6 +296,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int minus(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().subtract(other.bigValue()));
 		final int width = StrictMath.min(StrictMath.max(width(), other.width()) + 1, factory.bitwidth);
 		final BooleanValue[] minus = new BooleanValue[width];
 		BooleanValue carry = TRUE;
@@ -253,6 +329,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int multiply(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().multiply(other.bigValue()));
 		final int width = StrictMath.min(width()+other.width(), factory.bitwidth);
 		final BooleanValue[] mult = new BooleanValue[width];
 		final TwosComplementInt ret = new TwosComplementInt(factory, mult);
@@ -406,6 +484,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int divide(Int other) {
 		validate(other);
+		if (constant(other) && other.bigValue().signum()!=0)
+			return fold(bigValue().divide(other.bigValue()));
 		return new TwosComplementInt(factory, nonRestoringDivision(other, true));
 	}
 	
@@ -416,6 +496,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int modulo(Int other) {
 		validate(other);
+		if (constant(other) && other.bigValue().signum()!=0)
+			return fold(bigValue().remainder(other.bigValue()));
 		return new TwosComplementInt(factory, nonRestoringDivision(other, false));
 	}
 	
@@ -441,6 +523,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int and(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().and(other.bigValue()));
 		final int width = StrictMath.max(width(), other.width());
 		final BooleanValue[] and = new BooleanValue[width];
 		for(int i = 0; i < width; i++) {
@@ -456,6 +540,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int or(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().or(other.bigValue()));
 		final int width = StrictMath.max(width(), other.width());
 		final BooleanValue[] or = new BooleanValue[width];
 		for(int i = 0; i < width; i++) {
@@ -471,6 +557,8 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int xor(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().xor(other.bigValue()));
 		final int width = StrictMath.max(width(), other.width());
 		final BooleanValue[] xor = new BooleanValue[width];
 		for(int i = 0; i < width; i++) {
@@ -486,10 +574,12 @@ final class TwosComplementInt extends Int {
 	@Override
 	public Int shl(Int other) {
 		validate(other);
+		if (constant(other))
+			return fold(bigValue().shiftLeft(shift(other)));
 		final int width = factory.bitwidth;
 		final TwosComplementInt shifted = new TwosComplementInt(factory, extend(width));
 		for(int i = 0; i < width; i++) {
-			final long shift = 1L << i;
+			final long shift = i < 63 ? 1L << i : Long.MAX_VALUE;
 			final BooleanValue bit = other.bit(i);
 			for(int j = width-1; j >= 0; j--) {
 				shifted.bits[j] = factory.ite(bit, j < shift ? FALSE : shifted.bit(j-shift), shifted.bits[j]);
@@ -507,7 +597,7 @@ final class TwosComplementInt extends Int {
 		final int width = factory.bitwidth;
 		final TwosComplementInt shifted = new TwosComplementInt(factory, extend(width));
 		for(int i = 0; i < width; i++) {
-			final long shift = 1L << i;
+			final long shift = i < 63 ? 1L << i : Long.MAX_VALUE;
 			final long fill = width - shift;
 			BooleanValue bit = other.bit(i);
 			for(int j = 0; j < width; j++) {
@@ -523,6 +613,9 @@ final class TwosComplementInt extends Int {
 	 */
 	@Override
 	public Int shr(Int other) {
+		validate(other);
+		if (constant(other))
+			return fold(unsigned(this).shiftRight(shift(other)));
 		return shr(other, FALSE);
 	}
 	
@@ -532,6 +625,9 @@ final class TwosComplementInt extends Int {
 	 */
 	@Override
 	public Int sha(Int other) {
+		validate(other);
+		if (constant(other))
+			return fold(bigValue().shiftRight(shift(other)));
 		return shr(other, bits[bits.length-1]);
 	}
 	
@@ -541,6 +637,8 @@ final class TwosComplementInt extends Int {
 	 */
 	@Override
 	public Int negate() {
+		if (isConstant())
+			return fold(bigValue().negate());
 		return (new TwosComplementInt(factory, new BooleanValue[]{FALSE})).minus(this);
 	}
 	
@@ -564,6 +662,8 @@ final class TwosComplementInt extends Int {
 	 */
 	@Override
 	public Int abs() {
+		if (isConstant())
+			return fold(bigValue().abs());
 		return choice(factory.not(bits[bits.length-1]), negate());
 	}
 	
@@ -573,6 +673,8 @@ final class TwosComplementInt extends Int {
 	 */
 	@Override
 	public Int sgn() { 
+		if (isConstant())
+			return fold(BigInteger.valueOf(bigValue().signum()));
 		final BooleanValue[] sgn = new BooleanValue[2];
 		sgn[0] = factory.accumulate(BooleanAccumulator.treeGate(Operator.OR, bits));
 		sgn[1] = bits[bits.length-1];
@@ -0,0 +1,474 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+import static kodkod.engine.bool.BooleanConstant.FALSE;
+import static kodkod.engine.bool.BooleanConstant.TRUE;
+import static kodkod.engine.bool.Operator.AND;
+import static kodkod.engine.bool.Operator.OR;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kodkod.util.collections.Containers;
+
+/**
+ * Unary (order) integer representation.  Supports comparisons, addition, subtraction, 
+ * multiplication, division and remainder of integers in the range [0..factory.bitwidth].  
+ * The i-th bit of an integer is true iff the integer is greater than i, so the bits are 
+ * monotone:  each bit implies the bits below it.  Comparisons against constants are 
+ * therefore single literals, and addition is a merge of two unary counts.  Results of 
+ * arithmetic operations that fall outside of [0..factory.bitwidth] are clamped to that range.
+ * @author agent
+ */
+final class UnaryInt extends Int {
+	private final BooleanValue[] bits;
+	
+	/**
+	 * Constructs a UnaryInt out of the given factory and bits.
+	 * @requires bits is well formed
+	 * @ensures this.factory' = factory && this.bits' = bits
+	 */
+	private UnaryInt(BooleanFactory factory, BooleanValue[] bits) {
+		super(factory);
+		this.bits = bits;
+	}
+	
+	/**
+	 * Constructs a UnaryInt that represents either 0 or the given number, depending on 
+	 * the value of the given bit.  If the number is outside of the range [0..factory.bitwidth], 
+	 * it is clamped to that range.
+	 * @requires factory.encoding = UNARY  && bit in factory.components 
+	 * @ensures this.factory' = factory
+	 * @ensures bits is a unary representation of the given number
+	 * that uses the provided bit in place of 1's
+	 */
+	UnaryInt(BooleanFactory factory, int number, BooleanValue bit) {
+		super(factory);
+		this.bits = new BooleanValue[bit==FALSE ? 0 : StrictMath.max(0, StrictMath.min(number, factory.bitwidth))];
+		Arrays.fill(bits, bit);
+	}
+	
+	/**
+	 * Returns a value that is true iff the given unary int is at least m.
+	 * @return m <= 0 => TRUE, i.bit(m-1)
+	 */
+	private static BooleanValue atLeast(Int i, long m) { 
+		return m <= 0 ? TRUE : i.bit(m-1);
+	}
+	
+	/**
+	 * Returns a value that is true iff the given unary int is equal to m.
+	 * @return atLeast(i, m) && !atLeast(i, m+1)
+	 */
+	private BooleanValue equalTo(Int i, long m) { 
+		return factory.and(atLeast(i, m), factory.not(atLeast(i, m+1)));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#isConstant()
+	 */
+	public final boolean isConstant() {
+		for(BooleanValue b : bits) {
+			if (b!=TRUE && b!=FALSE)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the little endian two's complement representation of this integer.  
+	 * The returned list is wide enough to hold every integer in [0..this.factory.bitwidth] 
+	 * and a sign bit; its i-th value is true iff this integer is equal to some
+	 * number in [0..this.factory.bitwidth] whose i-th bit is 1.
+	 * @see kodkod.engine.bool.Int#twosComplementBits()
+	 */
+	@Override
+	public final List<BooleanValue> twosComplementBits() {
+		final BooleanValue[] twos = new BooleanValue[33 - Integer.numberOfLeadingZeros(factory.bitwidth)];
+		for(int i = 0; i < twos.length; i++) { 
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
+			for(int m = 1; m <= bits.length; m++) { 
+				if ((m & (1<<i)) != 0) acc.add(equalTo(this, m));
+			}
+			twos[i] = factory.accumulate(acc);
+		}
+		return Collections.unmodifiableList(Arrays.asList(twos));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#width()
+	 */
+	@Override
+	public int width() {
+		return bits.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#value()
+	 */
+	public final int value() {
+		int ret = 0;
+		for(BooleanValue b : bits) {
+			if (b==TRUE) ret++;
+			else if (b!=FALSE)
+				throw new IllegalStateException(this + " is not constant.");       
+		}
+		return ret;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#bigValue()
+	 */
+	public final BigInteger bigValue() {
+		return BigInteger.valueOf(value());
+	}
+	
+	/**
+	 * Returns the BooleanValue at the specified index, which is 
+	 * true iff this integer is greater than i.
+	 * @requires 0 <= i 
+	 * @return i < this.width() => this.bits[i] else FALSE
+	 */
+	final BooleanValue bit(long i) {
+		return i < bits.length ? bits[(int)i] : FALSE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#eq(kodkod.engine.bool.Int)
+	 */
+	public final BooleanValue eq(Int other) {
+		validate(other);
+		if (other.isConstant()) return equalTo(this, other.value());
+		if (isConstant()) return equalTo(other, value());
+		final BooleanAccumulator cmp = BooleanAccumulator.treeGate(AND);
+		for(int i = 0, width = StrictMath.max(width(), other.width()); i < width; i++) {
+			if (cmp.add(factory.iff(bit(i), other.bit(i)))==FALSE)
+				return FALSE;
+		}
+		return factory.accumulate(cmp);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#lt(kodkod.engine.bool.Int)
+	 */
+	public final BooleanValue lt(Int other) {
+		validate(other);
+		if (other.isConstant()) return factory.not(atLeast(this, other.value()));
+		if (isConstant()) return atLeast(other, value()+1L);
+		// this < other iff this >= i implies other >= i+1, for all i
+		final BooleanAccumulator cmp = BooleanAccumulator.treeGate(AND);
+		for(int i = 0, width = width(); i <= width; i++) { 
+			if (cmp.add(factory.implies(atLeast(this, i), atLeast(other, i+1)))==FALSE)
+				return FALSE;
+		}
+		return factory.accumulate(cmp);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#lte(kodkod.engine.bool.Int)
+	 */
+	@Override
+	public BooleanValue lte(Int other) {
+		validate(other);
+		if (other.isConstant()) return factory.not(atLeast(this, other.value()+1L));
+		if (isConstant()) return atLeast(other, value());
+		// this <= other iff this >= i implies other >= i, for all i
+		final BooleanAccumulator cmp = BooleanAccumulator.treeGate(AND);
+		for(int i = 0, width = width(); i < width; i++) { 
+			if (cmp.add(factory.implies(bits[i], other.bit(i)))==FALSE)
+				return FALSE;
+		}
+		return factory.accumulate(cmp);
+	}
+	
+	/**
+	 * Returns the unary sum of this and the given int:  the sum is at least k iff 
+	 * this is at least i and the given int is at least k-i, for some i.
+	 * @see kodkod.engine.bool.Int#plus(kodkod.engine.bool.Int)
+	 */
+	@Override
+	public Int plus(Int other) {
+		validate(other);
+		final int w0 = width(), w1 = other.width();
+		final BooleanValue[] plus = new BooleanValue[StrictMath.min(w0 + w1, factory.bitwidth)];
+		for(int k = 1; k <= plus.length; k++) { 
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
+			for(int i = StrictMath.max(0, k - w1), max = StrictMath.min(k, w0); i <= max; i++) { 
+				if (acc.add(factory.and(atLeast(this, i), atLeast(other, k-i)))==TRUE) break;
+			}
+			plus[k-1] = factory.accumulate(acc);
+		}
+		return new UnaryInt(factory, plus);
+	}
+
+	/**
+	 * Returns the unary difference between this and the given int, clamped at 0:  
+	 * the difference is at least k iff the given int is at most j and this is at least j+k, for some j.
+	 * @see kodkod.engine.bool.Int#minus(kodkod.engine.bool.Int)
+	 */
+	@Override
+	public Int minus(Int other) {
+		validate(other);
+		final int w0 = width(), w1 = other.width();
+		final BooleanValue[] minus = new BooleanValue[w0];
+		for(int k = 1; k <= w0; k++) { 
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
+			for(int j = 0; j <= w1 && j + k <= w0; j++) { 
+				if (acc.add(factory.and(factory.not(atLeast(other, j+1)), atLeast(this, j+k)))==TRUE) break;
+			}
+			minus[k-1] = factory.accumulate(acc);
+		}
+		return new UnaryInt(factory, minus);
+	}
+	
+	/**
+	 * Returns the unary product of this and the given int:  the product is at least k 
+	 * iff this is at least i and the given int is at least ceil(k/i), for some i > 0.
+	 * @see kodkod.engine.bool.Int#multiply(kodkod.engine.bool.Int)
+	 */
+	@Override
+	public Int multiply(Int other) {
+		validate(other);
+		final int w0 = width(), w1 = other.width();
+		final BooleanValue[] mult = new BooleanValue[(int)StrictMath.min((long)w0 * w1, factory.bitwidth)];
+		for(int k = 1; k <= mult.length; k++) { 
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
+			for(int i = 1; i <= w0; i++) { 
+				final int j = (k + i - 1) / i;
+				if (j > w1) continue;
+				if (acc.add(factory.and(atLeast(this, i), atLeast(other, j)))==TRUE) break;
+			}
+			mult[k-1] = factory.accumulate(acc);
+		}
+		return new UnaryInt(factory, mult);
+	}
+	
+	/**
+	 * Returns the unary quotient of this and the given int:  the quotient is at least k
+	 * iff the given int is equal to some j > 0 and this is at least k*j.  The quotient 
+	 * of a division by zero is zero.
+	 * @see kodkod.engine.bool.Int#divide(kodkod.engine.bool.Int)
+	 */
+	@Override
+	public Int divide(Int other) {
+		validate(other);
+		final int w0 = width(), w1 = other.width();
+		final BooleanValue[] div = new BooleanValue[w0];
+		for(int k = 1; k <= w0; k++) { 
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(OR);
+			for(int j = 1; j <= w1 && (long)k*j <= w0; j++) { 
+				if (acc.add(factory.and(equalTo(other, j), atLeast(this, (long)k*j)))==TRUE) break;
+			}
+			div[k-1] = factory.accumulate(acc);
+		}
+		return new UnaryInt(factory, div);
+	}
+	
+	/**
+	 * Returns the unary remainder of the division of this by the given int, 
+	 * computed as this - other*(this/other).  The remainder of a division by zero is this.
+	 * @see kodkod.engine.bool.Int#modulo(kodkod.engine.bool.Int)
+	 */
+	@Override
+	public Int modulo(Int other) {
+		validate(other);
+		return minus(other.multiply(divide(other)));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#choice(kodkod.engine.bool.BooleanValue, kodkod.engine.bool.Int)
+	 */
+	@Override
+	public Int choice(BooleanValue condition, Int other) {
+		validate(other);
+		final int width = StrictMath.max(width(), other.width());
+		final BooleanValue[] choice = new BooleanValue[width];
+		for(int i = 0; i < width; i++) {
+			choice[i] = factory.ite(condition, bit(i), other.bit(i));
+		}
+		return new UnaryInt(factory, choice);
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int and(Int other) {
+		throw new UnsupportedOperationException("bitwise and is not supported by unary ints");
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int and(Int... others) {
+		throw new UnsupportedOperationException("bitwise and is not supported by unary ints");
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int or(Int other) {
+		throw new UnsupportedOperationException("bitwise or is not supported by unary ints");
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int or(Int... others) {
+		throw new UnsupportedOperationException("bitwise or is not supported by unary ints");
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int xor(Int other) {
+		throw new UnsupportedOperationException("bitwise xor is not supported by unary ints");
+	}
+
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int shl(Int other) {
+		throw new UnsupportedOperationException("shifts are not supported by unary ints");
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int shr(Int other) {
+		throw new UnsupportedOperationException("shifts are not supported by unary ints");
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int sha(Int other) {
+		throw new UnsupportedOperationException("shifts are not supported by unary ints");
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int negate() {
+		throw new UnsupportedOperationException("negation is not supported by unary ints");
+	}
+	
+	/**
+	 * Throws an UnsupportedOperationException.
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public Int not() {
+		throw new UnsupportedOperationException("bitwise negation is not supported by unary ints");
+	}
+	
+	/**
+	 * Returns this, since unary ints are never negative.
+	 * @see kodkod.engine.bool.Int#abs()
+	 */
+	@Override
+	public Int abs() {
+		return this;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#sgn()
+	 */
+	@Override
+	public Int sgn() { 
+		return new UnaryInt(factory, new BooleanValue[]{ bit(0) });
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "u" + Arrays.toString(bits);
+	}
+
+	/**
+	 * If the plus flag is true, returns a sum of this and other ints,
+	 * with a cascade of mergers of logarithmic depth.  If the plus flag
+	 * is false, returns a product of this and other ints, with a cascade
+	 * of multipliers of logarithmic depth.
+	 * @return plus => PLUS(this, others) else MULTIPLY(this, others)
+	 */
+	private Int apply(boolean plus, Int...others) { 
+		final Int[] ints = Containers.copy(others, 0, new Int[others.length+1], 1, others.length);
+		ints[0] = this;
+		for(int part = ints.length; part > 1; part -= part/2) { 
+			final int max = part-1;
+			for(int i = 0; i < max; i += 2) { 
+				ints[i/2] = plus ? ints[i].plus(ints[i+1]) : ints[i].multiply(ints[i+1]);
+			}
+			if (max%2==0) { // even max => odd number of entries
+				ints[max/2] = ints[max];
+			}
+		}
+		return ints[0];
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#plus(kodkod.engine.bool.Int[])
+	 */
+	@Override
+	public Int plus(Int... others) { return apply(true, others); }
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.bool.Int#multiply(kodkod.engine.bool.Int[])
+	 */
+	@Override
+	public Int multiply(Int... others) { return apply(false, others); }
+
+}
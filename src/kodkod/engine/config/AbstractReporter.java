@@ -29,6 +29,7 @@ import kodkod.ast.Decl;
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
 import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.CircuitPreprocessor;
 import kodkod.instance.Bounds;
 import kodkod.util.ints.IntSet;
 
@@ -86,5 +87,10 @@ public abstract class AbstractReporter implements Reporter {
 	 * @see kodkod.engine.config.Reporter#translatingToCNF(kodkod.engine.bool.BooleanFormula)
 	 */
 	public void translatingToCNF(BooleanFormula circuit) {}
+	
+	/**
+	 * @see kodkod.engine.config.Reporter#preprocessedCircuit(kodkod.engine.bool.CircuitPreprocessor, int, int)
+	 */
+	public void preprocessedCircuit(CircuitPreprocessor preprocessor, int before, int after) {}
 
 }
@@ -29,6 +29,7 @@ import kodkod.ast.Decl;
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
 import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.CircuitPreprocessor;
 import kodkod.instance.Bounds;
 import kodkod.util.ints.IntSet;
 
@@ -104,6 +105,13 @@ public final class ConsoleReporter implements Reporter {
 		System.out.println("translating to cnf ...");
 	}
 	
+	/**
+	 * @see kodkod.engine.config.Reporter#preprocessedCircuit(kodkod.engine.bool.CircuitPreprocessor, int, int)
+	 */
+	public void preprocessedCircuit(CircuitPreprocessor preprocessor, int before, int after) {
+		System.out.println("preprocessing with " + preprocessor + ": " + before + " -> " + after + " gates");
+	}
+	
 	/**
 	 * @see java.lang.Object#toString()
 	 */
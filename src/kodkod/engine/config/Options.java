@@ -21,6 +21,12 @@
  */
 package kodkod.engine.config;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kodkod.engine.bool.CircuitPreprocessor;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.util.ints.IntRange;
 import kodkod.util.ints.Ints;
@@ -39,6 +45,14 @@ import kodkod.util.ints.Ints;
  * @specfield skolemDepth: int // skolemization depth
  * @specfield logTranslation: [0..2] // log translation events, default is 0 (no logging)
  * @specfield coreGranularity: [0..3] // unsat core granularity, default is 0 (only top-level conjuncts are considered)
+ * @specfield minimizeBlockingClauses: boolean // block implicants rather than whole models during enumeration, default is false
+ * @specfield groundingThreads: int // number of threads used to ground top-level quantifiers, default is 1 (sequential grounding)
+ * @specfield symmetryThreads: int // number of threads used to detect and break symmetries, default is 1 (sequential)
+ * @specfield closureEncoding: ClosureEncoding // encoding to use for translating transitive closures, default is SQUARING
+ * @specfield cardinalityEncoding: CardinalityEncoding // encoding to use for comparing cardinalities with constants, default is ADDERS
+ * @specfield cnfEncoding: CNFEncoding // encoding to use for translating boolean circuits to CNF, default is PLAISTED_GREENBAUM
+ * @specfield circuitPreprocessors: seq CircuitPreprocessor // passes applied to circuits before CNF translation, default is empty
+ * @specfield translationCache: lone File // directory in which translations are cached, default is null (no caching)
  * @author Emina Torlak
  */
 public final class Options implements Cloneable {
@@ -51,6 +65,15 @@ public final class Options implements Cloneable {
 	private int skolemDepth = 0;
 	private int logTranslation = 0;
 	private int coreGranularity = 0;
+	private boolean minimizeBlockingClauses = false;
+	private boolean lazyInterpretation = false;
+	private int groundingThreads = 1;
+	private int symmetryThreads = 1;
+	private ClosureEncoding closureEncoding = ClosureEncoding.SQUARING;
+	private CardinalityEncoding cardinalityEncoding = CardinalityEncoding.ADDERS;
+	private CNFEncoding cnfEncoding = CNFEncoding.PLAISTED_GREENBAUM;
+	private List<CircuitPreprocessor> circuitPreprocessors = Collections.emptyList();
+	private File translationCache = null;
 	
 	/**
 	 * Constructs an Options object initialized with default values.
@@ -63,6 +86,15 @@ public final class Options implements Cloneable {
 	 *          this.skolemDepth' = 0
 	 *          this.logTranslation' = 0
 	 *          this.coreGranularity' = 0
+	 *          this.minimizeBlockingClauses' = false
+	 *          this.lazyInterpretation' = false
+	 *          this.groundingThreads' = 1
+	 *          this.symmetryThreads' = 1
+	 *          this.closureEncoding' = SQUARING
+	 *          this.cardinalityEncoding' = ADDERS
+	 *          this.cnfEncoding' = PLAISTED_GREENBAUM
+	 *          no this.circuitPreprocessors'
+	 *          this.translationCache' = null
 	 */
 	public Options() {}
 	
@@ -154,7 +186,8 @@ public final class Options implements Cloneable {
 	 * Sets this.bitwidth to the given value.
 	 * @ensures this.bitwidth' = bitwidth
 	 * @throws IllegalArgumentException  bitwidth < 1
-	 * @throws IllegalArgumentException  this.intEncoding==BINARY && bitwidth > 32
+	 * @throws IllegalArgumentException  this.intEncoding==TWOSCOMPLEMENT && bitwidth > 1024
+	 * @throws IllegalArgumentException  this.intEncoding==UNARY && bitwidth > 1024
 	 */
 	public void setBitwidth(int bitwidth) {
 		checkRange(bitwidth, 1, intEncoding.maxAllowedBitwidth());
@@ -288,6 +321,216 @@ public final class Options implements Cloneable {
 		this.coreGranularity = coreGranularity;
 	}
 	
+	/**
+	 * Returns true if solution enumeration should block implicants of the 
+	 * enumerated models rather than the models themselves.  The default is false, which means that 
+	 * each solution is blocked with a clause over all primary variables, and that enumeration 
+	 * produces every solution of a problem (modulo symmetry breaking).  If this option is set, 
+	 * each solution is blocked with a clause over a subset of primary variables that suffices to 
+	 * satisfy the translated formula, regardless of the values of the remaining variables.  
+	 * The resulting blocking clauses are much shorter, and each enumerated solution 
+	 * represents all solutions that agree with it on that subset of variables.
+	 * @return this.minimizeBlockingClauses
+	 */
+	public boolean minimizeBlockingClauses() {
+		return minimizeBlockingClauses;
+	}
+	
+	/**
+	 * Sets the minimizeBlockingClauses option to the given value.
+	 * @ensures this.minimizeBlockingClauses' = minimizeBlockingClauses
+	 */
+	public void setMinimizeBlockingClauses(boolean minimizeBlockingClauses) {
+		this.minimizeBlockingClauses = minimizeBlockingClauses;
+	}
+	
+	/**
+	 * Returns true if the instances of satisfiable solutions should be 
+	 * {@linkplain kodkod.engine.fol2sat.Translation#interpretLazily() interpreted lazily}.  
+	 * The default is false, which means that each solution's instance is built in full as soon 
+	 * as the solution is found.  If this option is set, the solver still reads the values of all 
+	 * primary variables when a solution is found, but the tuple set of each relation is 
+	 * built only when that relation is first looked up, and the returned instance is unmodifiable.  
+	 * This makes enumeration with {@link kodkod.engine.Solver#solveAll(kodkod.ast.Formula, kodkod.instance.Bounds) solveAll} 
+	 * cheaper when clients read only a few relations from each solution.
+	 * @return this.lazyInterpretation
+	 */
+	public boolean lazyInterpretation() {
+		return lazyInterpretation;
+	}
+	
+	/**
+	 * Sets the lazyInterpretation option to the given value.
+	 * @ensures this.lazyInterpretation' = lazyInterpretation
+	 */
+	public void setLazyInterpretation(boolean lazyInterpretation) {
+		this.lazyInterpretation = lazyInterpretation;
+	}
+	
+	/**
+	 * Returns the number of threads used to ground top-level quantified formulas.  
+	 * The default is 1, which means that quantifiers are grounded sequentially.  
+	 * If this value is greater than 1, the tuples of the outermost declaration of 
+	 * each top-level quantified formula are split across a fork-join pool with 
+	 * the given parallelism.  Each worker grounds the body of the formula in its own 
+	 * circuit factory, and the resulting circuits are then merged into the shared one.
+	 * Parallel grounding is not used when translation logging is enabled.
+	 * @return this.groundingThreads
+	 */
+	public int groundingThreads() {
+		return groundingThreads;
+	}
+	
+	/**
+	 * Sets the number of threads used to ground top-level quantified formulas.
+	 * @requires groundingThreads > 0
+	 * @ensures this.groundingThreads' = groundingThreads
+	 * @throws IllegalArgumentException  groundingThreads < 1
+	 */
+	public void setGroundingThreads(int groundingThreads) {
+		checkRange(groundingThreads, 1, Integer.MAX_VALUE);
+		this.groundingThreads = groundingThreads;
+	}
+	
+	/**
+	 * Returns the number of threads used to detect symmetries and to generate the 
+	 * lex-leader symmetry breaking predicate.  The default is 1, which means that both 
+	 * are done sequentially.  If this value is greater than 1, the universe is refined by 
+	 * the bounds of different relations in parallel, and the operands of the lex-leader 
+	 * comparisons for different pairs of symmetric atoms are collected in parallel. 
+	 * The comparison circuits themselves are built on the calling thread, in the same 
+	 * order as in the sequential case.
+	 * @return this.symmetryThreads
+	 */
+	public int symmetryThreads() {
+		return symmetryThreads;
+	}
+	
+	/**
+	 * Sets the number of threads used to detect and break symmetries.
+	 * @requires symmetryThreads > 0
+	 * @ensures this.symmetryThreads' = symmetryThreads
+	 * @throws IllegalArgumentException  symmetryThreads < 1
+	 */
+	public void setSymmetryThreads(int symmetryThreads) {
+		checkRange(symmetryThreads, 1, Integer.MAX_VALUE);
+		this.symmetryThreads = symmetryThreads;
+	}
+	
+	/**
+	 * Returns the encoding that will be used for translating {@linkplain kodkod.ast.operator.ExprOperator#CLOSURE closures}
+	 * and {@linkplain kodkod.ast.operator.ExprOperator#REFLEXIVE_CLOSURE reflexive closures}.  
+	 * The default is SQUARING.
+	 * @return this.closureEncoding
+	 */
+	public ClosureEncoding closureEncoding() { 
+		return closureEncoding;
+	}
+	
+	/**
+	 * Sets the closureEncoding option to the given value.
+	 * @ensures this.closureEncoding' = encoding
+	 * @throws NullPointerException  encoding = null
+	 */
+	public void setClosureEncoding(ClosureEncoding encoding) {
+		if (encoding==null) throw new NullPointerException();
+		this.closureEncoding = encoding;
+	}
+	
+	/**
+	 * Returns the encoding that will be used for translating comparisons between 
+	 * {@linkplain kodkod.ast.operator.IntOperator#CARDINALITY cardinalities} and 
+	 * {@linkplain kodkod.ast.IntConstant integer constants}, such as #r <= 3.  
+	 * The default is ADDERS.
+	 * @return this.cardinalityEncoding
+	 */
+	public CardinalityEncoding cardinalityEncoding() { 
+		return cardinalityEncoding;
+	}
+	
+	/**
+	 * Sets the cardinalityEncoding option to the given value.
+	 * @ensures this.cardinalityEncoding' = encoding
+	 * @throws NullPointerException  encoding = null
+	 */
+	public void setCardinalityEncoding(CardinalityEncoding encoding) {
+		if (encoding==null) throw new NullPointerException();
+		this.cardinalityEncoding = encoding;
+	}
+	
+	/**
+	 * Returns the encoding that will be used for translating boolean circuits 
+	 * to conjunctive normal form.  The default is PLAISTED_GREENBAUM.
+	 * @return this.cnfEncoding
+	 */
+	public CNFEncoding cnfEncoding() { 
+		return cnfEncoding;
+	}
+	
+	/**
+	 * Sets the cnfEncoding option to the given value.
+	 * @ensures this.cnfEncoding' = encoding
+	 * @throws NullPointerException  encoding = null
+	 */
+	public void setCNFEncoding(CNFEncoding encoding) {
+		if (encoding==null) throw new NullPointerException();
+		this.cnfEncoding = encoding;
+	}
+	
+	/**
+	 * Returns the preprocessors that are applied, in order, to the circuit of a whole 
+	 * translation before it is translated to CNF.  Preprocessing is skipped for incremental 
+	 * translations, and when this.logTranslation > 0.  The sizes of the circuit 
+	 * before and after each pass are reported to this.reporter.  The default is an empty list.
+	 * @return this.circuitPreprocessors
+	 */
+	public List<CircuitPreprocessor> circuitPreprocessors() { 
+		return circuitPreprocessors;
+	}
+	
+	/**
+	 * Sets the circuitPreprocessors option to the given sequence.
+	 * @ensures this.circuitPreprocessors' = preprocessors
+	 * @throws NullPointerException  preprocessors = null || null in preprocessors[int]
+	 */
+	public void setCircuitPreprocessors(CircuitPreprocessor... preprocessors) {
+		for(CircuitPreprocessor p : preprocessors) { 
+			if (p==null) throw new NullPointerException();
+		}
+		this.circuitPreprocessors = Collections.unmodifiableList(Arrays.asList(preprocessors.clone()));
+	}
+	
+	/**
+	 * Returns the directory in which translations to CNF are cached, or null if 
+	 * translations are not cached.  When a cache directory is set, each 
+	 * {@linkplain kodkod.engine.fol2sat.Translator#translate(kodkod.ast.Formula, kodkod.instance.Bounds, Options) 
+	 * whole translation} is stored in that directory under a structural fingerprint of its formula, 
+	 * bounds and options, and a later translation of a problem with the same fingerprint loads the stored 
+	 * CNF instead of translating the problem again.  A translation that is loaded from the cache is reported 
+	 * to this.reporter only through {@link Reporter#detectingSymmetries(kodkod.instance.Bounds) detectingSymmetries}, 
+	 * {@link Reporter#detectedSymmetries(java.util.Set) detectedSymmetries} and 
+	 * {@link Reporter#translatingToBoolean(kodkod.ast.Formula, kodkod.instance.Bounds) translatingToBoolean}, 
+	 * followed by the usual {@link Reporter#solvingCNF(int, int, int) solvingCNF}; the stages that 
+	 * it skips, such as skolemization, symmetry breaking and the translation to CNF, are not reported.  
+	 * Translations are not cached when this.logTranslation > 0 or this.minimizeBlockingClauses is set, or 
+	 * when some {@linkplain #circuitPreprocessors() circuit preprocessor} has no 
+	 * {@linkplain CircuitPreprocessor#fingerprint() fingerprint}.  
+	 * The default is null.
+	 * @return this.translationCache
+	 */
+	public File translationCache() { 
+		return translationCache;
+	}
+	
+	/**
+	 * Sets the translationCache option to the given value.  The directory 
+	 * is created on demand, and a null value disables caching.
+	 * @ensures this.translationCache' = directory
+	 */
+	public void setTranslationCache(File directory) {
+		this.translationCache = directory;
+	}
+	
 	/**
 	 * Returns a shallow copy of this Options object.  In particular, 
 	 * the returned options shares the same {@linkplain #reporter()} 
@@ -298,14 +541,23 @@ public final class Options implements Cloneable {
 		final Options c = new Options();
 		c.setSolver(solver);
 		c.setReporter(reporter);
-		c.setBitwidth(bitwidth);
 		c.setIntEncoding(intEncoding);
+		c.setBitwidth(bitwidth);
 		c.setSharing(sharing);
 		c.setSharing(sharing);
 		c.setSymmetryBreaking(symmetryBreaking);
 		c.setSkolemDepth(skolemDepth);
 		c.setLogTranslation(logTranslation);
 		c.setCoreGranularity(coreGranularity);
+		c.setMinimizeBlockingClauses(minimizeBlockingClauses);
+		c.setLazyInterpretation(lazyInterpretation);
+		c.setGroundingThreads(groundingThreads);
+		c.setSymmetryThreads(symmetryThreads);
+		c.setClosureEncoding(closureEncoding);
+		c.setCardinalityEncoding(cardinalityEncoding);
+		c.setCNFEncoding(cnfEncoding);
+		c.circuitPreprocessors = circuitPreprocessors;
+		c.setTranslationCache(translationCache);
 		return c;
 	}
 	
@@ -334,6 +586,24 @@ public final class Options implements Cloneable {
 		b.append(logTranslation);
 		b.append("\n coreGranularity: ");
 		b.append(coreGranularity);
+		b.append("\n minimizeBlockingClauses: ");
+		b.append(minimizeBlockingClauses);
+		b.append("\n lazyInterpretation: ");
+		b.append(lazyInterpretation);
+		b.append("\n groundingThreads: ");
+		b.append(groundingThreads);
+		b.append("\n symmetryThreads: ");
+		b.append(symmetryThreads);
+		b.append("\n closureEncoding: ");
+		b.append(closureEncoding);
+		b.append("\n cardinalityEncoding: ");
+		b.append(cardinalityEncoding);
+		b.append("\n cnfEncoding: ");
+		b.append(cnfEncoding);
+		b.append("\n circuitPreprocessors: ");
+		b.append(circuitPreprocessors);
+		b.append("\n translationCache: ");
+		b.append(translationCache);
 		return b.toString();
 	}
 	
@@ -347,16 +617,38 @@ public final class Options implements Cloneable {
 		 * comparisons, addition, subtraction, multiplication,
 		 * division, and all low-level bit operations 
 		 * (shifting, and, or, not, etc.).  Maximum allowed
-		 * bitwidth for this encoding is 32 bits.
+		 * bitwidth for this encoding is 1024 bits.  Arithmetic 
+		 * is performed at the full bitwidth, but integer atoms 
+		 * are Java ints, so the range of integers that can be 
+		 * bound to atoms is clamped to 32 bits.
 		 */
 		TWOSCOMPLEMENT {
 			@Override
-			int maxAllowedBitwidth() { return 32; }
+			int maxAllowedBitwidth() { return 1024; }
 			@Override
 			IntRange range(int bitwidth) { 
-				final int shift = bitwidth-1;
+				final int shift = StrictMath.min(bitwidth, 32)-1;
 				return Ints.range(-1<<shift, (1<<shift)-1);
 			}
+		},
+		/**
+		 * Unary (order) encoding of integers represents the numbers in 
+		 * the range [0..bitwidth] with bitwidth bits, the i-th of which is 
+		 * true iff the number is greater than i.  It supports comparisons, 
+		 * addition, subtraction, multiplication and division, 
+		 * but no bitwise operations or negation.  Results that fall 
+		 * outside of [0..bitwidth] are clamped to that range.  Comparisons 
+		 * with constants are single literals in this encoding, so it is 
+		 * best suited to problems whose integers lie in small, non-negative ranges.  
+		 * Maximum allowed bitwidth for this encoding is 1024 bits.
+		 */
+		UNARY {
+			@Override
+			int maxAllowedBitwidth() { return 1024; }
+			@Override
+			IntRange range(int bitwidth) { 
+				return Ints.range(0, bitwidth);
+			}
 		};
 		
 		/**
@@ -375,4 +667,103 @@ public final class Options implements Cloneable {
 		abstract IntRange range(int bitwidth) ;
 	}
 	
+	/**
+	 * Encoding options for the translation of transitive closures.  Each encoding 
+	 * yields an equivalent circuit;  they differ in the size and depth of the circuits
+	 * they produce.  All encodings work on the upper bound of a closed expression, 
+	 * i.e. the graph whose edges are the entries of its matrix that are not FALSE.
+	 */
+	public static enum ClosureEncoding {
+		/**
+		 * Computes the closure of an n-row matrix by iterative squaring, r + r.r, 
+		 * (r + r.r) + (r + r.r).(r + r.r), ..., for log(n) rounds.  The resulting 
+		 * circuits have logarithmic depth, but their size is O(n^3 log n).
+		 */
+		SQUARING,
+		/**
+		 * Computes the closure with the Warshall algorithm, which adds the paths 
+		 * through each node k to the matrix in turn.  The resulting circuits have 
+		 * size O(n^3) and linear depth.
+		 */
+		WARSHALL,
+		/**
+		 * Computes the closure by iterative squaring, but only for as many rounds as
+		 * are needed to cover the longest simple path in the upper bound.  The length of 
+		 * that path is bounded by the largest total size of the strongly connected components 
+		 * along any path in the upper bound's component graph.  This encoding produces 
+		 * the same circuits as SQUARING, but fewer of them when the upper bound is shallow.
+		 */
+		BOUNDED,
+		/**
+		 * Decomposes the upper bound into strongly connected components, computes 
+		 * the closure within each nontrivial component by iterative squaring, and then 
+		 * propagates reachability along the component graph in reverse topological order.  
+		 * The size of the resulting circuits is cubic in the size of the largest component 
+		 * rather than in the size of the whole matrix. 
+		 */
+		SCC
+	}
+	
+	/**
+	 * Encoding options for the translation of comparisons between cardinalities 
+	 * and integer constants, such as #r <= 3, #r = 1 or 2 < #r.  All encodings other than 
+	 * ADDERS represent the cardinality of an expression in unary:  the j-th output of the 
+	 * encoding is true iff at least j entries of the expression's matrix are true, and only 
+	 * as many outputs are built as the comparison needs.  To preserve the semantics of 
+	 * integer arithmetic at {@link Options#bitwidth() bitwidth}, the unary encodings are only 
+	 * used when both the constant and the largest possible cardinality of the expression are 
+	 * representable at that bitwidth; all other comparisons are translated with ADDERS.
+	 */
+	public static enum CardinalityEncoding {
+		/**
+		 * Computes the cardinality as a sum in {@link Options#intEncoding() intEncoding}, 
+		 * using a tree of adders, and compares the sum with the constant.
+		 */
+		ADDERS,
+		/**
+		 * Sinz's sequential counter, which counts the true entries one at a time, up to k+1
+		 * for a comparison with the constant k.  The resulting circuit has O(nk) gates.
+		 */
+		SEQUENTIAL,
+		/**
+		 * Bailleux and Boufkhad's totalizer, which recursively adds up the unary counts of 
+		 * the two halves of the entries, truncated at k+1.  The resulting circuit has 
+		 * O(nk) gates and logarithmic depth.
+		 */
+		TOTALIZER,
+		/**
+		 * Batcher's odd-even merge sorting network, which sorts the entries so that 
+		 * the true ones come first.  The resulting circuit has O(n log^2 n) gates.
+		 */
+		SORTING
+	}
+	
+	/**
+	 * Encoding options for the translation of boolean circuits to conjunctive normal form.  
+	 * All encodings introduce one variable per gate and yield equisatisfiable CNFs; they differ in 
+	 * which of the clauses that define a gate's output are generated.  The clauses for 
+	 * o = AND(i1, ..., ik), for example, consist of the <i>positive</i> half, (i1 | !o) & ... & (ik | !o), 
+	 * which is needed when o occurs positively in the circuit, and the <i>negative</i> half, 
+	 * (!i1 | ... | !ik | o), which is needed when o occurs negatively.  
+	 */
+	public static enum CNFEncoding {
+		/**
+		 * Tseitin's encoding, which generates both halves of the definition of each gate. 
+		 */
+		TSEITIN,
+		/**
+		 * Plaisted and Greenbaum's encoding, which generates only the halves that are needed 
+		 * for the polarities with which each gate occurs in the circuit.  Since an incremental 
+		 * translation may later use a gate with the opposite polarity, incremental translations 
+		 * fall back to TSEITIN with this encoding.
+		 */
+		PLAISTED_GREENBAUM,
+		/**
+		 * Plaisted and Greenbaum's encoding for whole and incremental translations.  Incremental 
+		 * translations keep track of the halves that have been generated for each gate, and 
+		 * add the missing half as soon as an extension of the translation uses the gate with 
+		 * a new polarity.
+		 */
+		HYBRID
+	}
 }
@@ -29,6 +29,7 @@ import kodkod.ast.Decl;
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
 import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.CircuitPreprocessor;
 import kodkod.instance.Bounds;
 import kodkod.util.ints.IntSet;
 
@@ -40,6 +41,7 @@ import kodkod.util.ints.IntSet;
  * <li>bounds and formula optimization (breaking of predicate symmetries, predicate inlining and skolemization)</li>
  * <li>translation to a boolean circuit</li>
  * <li>symmetry breaking predicate (SBP) generation</li>
+ * <li>circuit preprocessing</li>
  * <li>translation to cnf</li>
  * <li>running a sat solver on the generated cnf</li>
  * </ol>
@@ -86,6 +88,12 @@ public interface Reporter {
 	 */
 	public void generatingSBP();
 
+	/**
+	 * Reports that the given preprocessor has reduced the number of gates in the 
+	 * circuit to be translated to CNF from {@code before} to {@code after}.  
+	 * The default implementation does nothing.
+	 */
+	public default void preprocessedCircuit(CircuitPreprocessor preprocessor, int before, int after) {}
 	
 	/**
 	 * Reports that the given (optimized)
@@ -0,0 +1,687 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import kodkod.ast.Decl;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.CircuitPreprocessor;
+import kodkod.engine.config.Options;
+import kodkod.engine.config.Reporter;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+
+/**
+ * Reads and writes {@linkplain Translation.Whole whole translations} in a compact binary format.  
+ * A translation file stores the CNF of a translation, its optimized bounds, the primary variables 
+ * of each relation in those bounds, and the {@linkplain SymmetryDetector#partition(Bounds) symmetry partitions} 
+ * that the translator computed for the original bounds, restricted to the relations used by the formula, 
+ * and reported to {@link Reporter#detectedSymmetries(Set)}.  A translation that is {@linkplain #translate(Formula, Bounds, Options, File) written} 
+ * by one process can be {@linkplain #read(File, Bounds, Options) read} by another, given the same 
+ * universe and the same relations (in the same order) in the original bounds, without translating the 
+ * problem again.
+ * 
+ * <p>A translation file consists of a header, a sequence of blocks, and a trailer.  The header holds 
+ * a magic number and the format version.  Each block starts with its kind, its uncompressed length and its 
+ * compressed length, followed by the block contents, compressed with {@link Deflater}.  The CNF blocks 
+ * hold the variables and clauses in the order in which they were added to the solver:  each 
+ * record is a tag, followed by the number of new variables, or by the length and the literals of a clause.  
+ * All numbers within blocks are varint-encoded, and literals are zigzag-encoded as well.  Records never 
+ * span blocks, so each block can be decompressed and replayed on its own.  The last block holds the 
+ * metadata of the translation, and the trailer holds the offset of that block and the magic number.  
+ * Files are read through {@linkplain FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long) memory maps}, 
+ * one block at a time, so the size of a file is not limited by the size of a single mapping.  The format 
+ * is not zero-parse:  each block is inflated into a heap array, and its varints are decoded as the records 
+ * are replayed into the solver.  Compared to DIMACS text, this saves the cost of formatting and parsing 
+ * decimal numbers and most of the file size, but not the cost of passing each clause to the solver.</p>
+ * 
+ * <p>A translation that is read from a file has no {@linkplain Translation.Whole#log() log} and does not 
+ * retain its circuit for the computation of {@linkplain Translation.Whole#implicant() implicants}.</p>
+ * 
+ * @author agent
+ */
+public final class BinaryCNF {
+	/** Magic number ("KKCN") at the start and the end of each translation file. */
+	private static final int MAGIC = 0x4b4b434e;
+	/** Version of the file format. */
+	private static final int VERSION = 1;
+	/** Block kinds. */
+	private static final int CNF = 1, METADATA = 2;
+	/** Record tags within CNF blocks. */
+	private static final int VARIABLES = 1, CLAUSE = 2;
+	/** Number of uncompressed bytes after which a CNF block is written out. */
+	private static final int BLOCK = 1 << 20;
+	/** Sizes of the header, block headers and the trailer, in bytes. */
+	private static final int HEADER = 8, BLOCK_HEADER = 12, TRAILER = 12;
+	
+	private BinaryCNF() {}
+	
+	/**
+	 * Translates the given problem with {@link Translator#translate(Formula, Bounds, Options)} and writes 
+	 * the translation to the given file, which is overwritten if it exists.  The CNF is written out as it 
+	 * is generated, so writing the file does not require an additional copy of the CNF in memory.  The  
+	 * returned translation is the translation of the problem; it has the same log and circuit (if any) as the 
+	 * translation returned by Translator.  The problem is translated even if options.translationCache is set, 
+	 * and the translation is not cached.  The stored symmetry partitions are the ones that the translator 
+	 * reports to options.reporter, so they are not computed a second time.
+	 * @return some t: Translation.Whole |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds.
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but options.skolemize is false.
+	 * @throws IOException  the translation could not be written to the given file
+	 */
+	public static Translation.Whole translate(Formula formula, Bounds bounds, Options options, File file) throws IOException { 
+		final Writer writer = new Writer(options.solver(), new BufferedOutputStream(new FileOutputStream(file)));
+		try { 
+			final Options recording = options.clone();
+			final SymmetryRecorder reporter = new SymmetryRecorder(options.reporter());
+			recording.setTranslationCache(null);
+			recording.setSolver(writer);
+			recording.setReporter(reporter);
+			final Translation.Whole transl = Translator.translate(formula, bounds, recording);
+			final Map<Relation, IntSet> vars = primaryVariables(transl);
+			writer.finish(transl, vars, bounds, reporter.symmetries);
+			return new Translation.Whole(transl.bounds(), options, writer.solver, vars, transl.numPrimaryVariables(), transl.log(), transl.circuit());
+		} catch (IOException e) { 
+			writer.abort(file);
+			throw e;
+		} catch (RuntimeException e) { 
+			writer.abort(file);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Reads the translation of the problem with the given bounds and options from the given file, 
+	 * which was written by {@link #translate(Formula, Bounds, Options, File)}.  The CNF is added to a 
+	 * new solver, created by options.solver().  Relations in the stored bounds are matched with those in 
+	 * bounds.relations() by their position.  
+	 * @requires the given file was written by translate(f, b, o, file), where b.relations() and bounds.relations() 
+	 * list relations with the same names and arities in the same order, b.universe and bounds.universe have the 
+	 * same atoms in the same order, b.intBounds = bounds.intBounds, and the options o and options differ at most 
+	 * in their solver and reporter.
+	 * @return some t: Translation.Whole |  t.originalFormula = f && t.originalBounds = bounds && t.options = options 
+	 * @throws IOException  the file cannot be read or is not a translation file
+	 * @throws IllegalArgumentException  the file stores the translation of a problem with a different universe or relations
+	 */
+	public static Translation.Whole read(File file, Bounds bounds, Options options) throws IOException { 
+		final Reader reader = new Reader(file);
+		SATSolver solver = null;
+		try { 
+			final ByteBuffer meta = reader.metadata();
+			final int numVars = readVarint(meta);
+			final int numClauses = readVarint(meta);
+			final int maxPrimaryVar = readVarint(meta);
+			final Universe universe = bounds.universe();
+			if (readVarint(meta) != universe.size())
+				throw new IllegalArgumentException("The universe of " + file + " differs from " + universe);
+			
+			solver = options.solver().instance();
+			solver.expectClauses(numClauses);
+			if (!reader.replay(solver) || solver.numberOfVariables()!=numVars) 
+				throw new IOException("Malformed translation file: " + file);
+			
+			readSymmetries(meta);
+			final TupleFactory factory = universe.factory();
+			final List<Relation> originals = new ArrayList<Relation>(bounds.relations());
+			final Bounds tbounds = new Bounds(universe);
+			final Map<Relation, IntSet> vars = new LinkedHashMap<Relation, IntSet>();
+			for(int i = 0, size = readVarint(meta); i < size; i++) { 
+				final int pos = readVarint(meta);
+				final String name = readString(meta);
+				final int arity = readVarint(meta);
+				final Relation r;
+				if (pos==0) { 
+					r = Relation.nary(name, arity);
+				} else if (pos <= originals.size() && originals.get(pos-1).name().equals(name) && originals.get(pos-1).arity()==arity) { 
+					r = originals.get(pos-1);
+				} else {
+					throw new IllegalArgumentException("The relations of " + file + " differ from " + bounds.relations());
+				}
+				final long capacity = factory.capacity(arity);
+				if (capacity > Integer.MAX_VALUE)
+					throw new IOException("Malformed translation file: " + file);
+				final TupleSet lower = factory.setOf(arity, readInts(meta, (int) capacity));
+				final TupleSet upper = factory.setOf(arity, readInts(meta, (int) capacity));
+				tbounds.bound(r, lower, upper);
+				final IntSet rvars = readInts(meta, Integer.MAX_VALUE);
+				if (!rvars.isEmpty()) vars.put(r, rvars);
+			}
+			for(IndexedEntry<TupleSet> e : bounds.intBounds()) { 
+				tbounds.boundExactly(e.index(), e.value());
+			}
+			return new Translation.Whole(tbounds, options, solver, vars, maxPrimaryVar, null, null);
+		} catch (IOException e) { 
+			if (solver!=null) solver.free();
+			throw e;
+		} catch (BufferUnderflowException e) { 
+			if (solver!=null) solver.free();
+			throw new IOException("Malformed translation file: " + file, e);
+		} catch (RuntimeException e) {
+			if (solver!=null) solver.free();
+			throw e;
+		} finally { 
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Returns the symmetry partitions stored in the given file, which was written by 
+	 * {@link #translate(Formula, Bounds, Options, File)}.  Only the metadata block of the file is read.
+	 * @return the symmetry partitions that the translator reported to {@link Reporter#detectedSymmetries(Set)} 
+	 * during the call to translate that wrote the file
+	 * @throws IOException  the file cannot be read or is not a translation file
+	 */
+	public static Set<IntSet> symmetries(File file) throws IOException { 
+		final Reader reader = new Reader(file);
+		try { 
+			final ByteBuffer meta = reader.metadata();
+			for(int i = 0; i < 4; i++) { readVarint(meta); }
+			return readSymmetries(meta);
+		} catch (BufferUnderflowException e) { 
+			throw new IOException("Malformed translation file: " + file, e);
+		} finally { 
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Returns a map from each relation r in transl.bounds to transl.primaryVariables(r), if non-empty.
+	 * @return { r: transl.bounds.relations, s: IntSet | s = transl.primaryVariables(r) && some s }
+	 */
+	private static Map<Relation, IntSet> primaryVariables(Translation.Whole transl) { 
+		final Map<Relation, IntSet> vars = new LinkedHashMap<Relation, IntSet>();
+		for(Relation r : transl.bounds().relations()) { 
+			final IntSet rvars = transl.primaryVariables(r);
+			if (!rvars.isEmpty()) vars.put(r, rvars);
+		}
+		return vars;
+	}
+	
+	/**
+	 * Reads a set of symmetry partitions written by {@link Writer#finish(Translation.Whole, Map, Bounds, Set)} from the given buffer.
+	 * @return set of symmetry partitions read from the given buffer
+	 */
+	private static Set<IntSet> readSymmetries(ByteBuffer in) { 
+		final Set<IntSet> parts = new LinkedHashSet<IntSet>();
+		for(int i = 0, size = readVarint(in); i < size; i++) { 
+			parts.add(readInts(in, Integer.MAX_VALUE));
+		}
+		return parts;
+	}
+	
+	/*---------------------- varint encoding ----------------------*/
+	
+	/**
+	 * Reads a varint from the given buffer.
+	 * @throws BufferUnderflowException  the buffer ends before the varint
+	 */
+	private static int readVarint(ByteBuffer in) { 
+		int v = 0;
+		for(int shift = 0; ; shift += 7) { 
+			final int b = in.get();
+			v |= (b & 0x7f) << shift;
+			if ((b & 0x80)==0 || shift >= 28) return v;
+		}
+	}
+	
+	/**
+	 * Reads a string, written as the varint length of its UTF-8 encoding followed by the encoding, from the given buffer.
+	 * @throws BufferUnderflowException  the buffer ends before the string
+	 */
+	private static String readString(ByteBuffer in) { 
+		final byte[] bytes = new byte[readVarint(in)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Reads a set of ints in [0..capacity), written as its size followed by the gaps between its 
+	 * consecutive elements, from the given buffer. 
+	 * @throws BufferUnderflowException  the buffer ends before the set
+	 */
+	private static IntSet readInts(ByteBuffer in, int capacity) { 
+		final IntSet ints = Ints.bestSet(capacity);
+		int prev = 0;
+		for(int i = 0, size = readVarint(in); i < size; i++) { 
+			prev += readVarint(in);
+			ints.add(prev);
+		}
+		return ints;
+	}
+	
+	/**
+	 * A growable byte buffer with varint encoding.
+	 * @specfield bytes: [0..size) -> byte
+	 */
+	private static final class Block { 
+		byte[] bytes = new byte[BLOCK + (BLOCK >>> 4)];
+		int size = 0;
+		
+		/** Ensures that this.bytes can hold additional more bytes. */
+		void ensure(int additional) { 
+			if (size + additional > bytes.length) { 
+				final byte[] grown = new byte[StrictMath.max(bytes.length*2, size + additional)];
+				System.arraycopy(bytes, 0, grown, 0, size);
+				bytes = grown;
+			}
+		}
+		
+		/** Appends the varint encoding of v to this buffer.  @requires this.bytes can hold 5 more bytes */
+		void varint(int v) { 
+			while((v & ~0x7f) != 0) { 
+				bytes[size++] = (byte)((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+		
+		/** Appends the given string, as the varint length of its UTF-8 encoding followed by the encoding. */
+		void string(String s) { 
+			final byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+			ensure(utf.length + 5);
+			varint(utf.length);
+			System.arraycopy(utf, 0, bytes, size, utf.length);
+			size += utf.length;
+		}
+		
+		/** Appends the size of the given set, followed by the gaps between its consecutive elements. */
+		void ints(IntSet ints) { 
+			ensure(5);
+			varint(ints.size());
+			int prev = 0;
+			for(IntIterator itr = ints.iterator(); itr.hasNext(); ) { 
+				final int next = itr.next();
+				ensure(5);
+				varint(next - prev);
+				prev = next;
+			}
+		}
+	}
+	
+	/*---------------------- writing ----------------------*/
+	
+	/**
+	 * A reporter that records the symmetry partitions reported to it, and forwards 
+	 * all calls to a delegate reporter.
+	 * @specfield delegate: Reporter
+	 * @specfield symmetries: lone Set<IntSet> // the last partitions reported to this
+	 * @author agent
+	 */
+	private static final class SymmetryRecorder implements Reporter { 
+		private final Reporter delegate;
+		Set<IntSet> symmetries;
+		
+		SymmetryRecorder(Reporter delegate) { 
+			this.delegate = delegate;
+			this.symmetries = null;
+		}
+		
+		public void detectingSymmetries(Bounds bounds) { delegate.detectingSymmetries(bounds); }
+		public void detectedSymmetries(Set<IntSet> parts) { 
+			symmetries = parts;
+			delegate.detectedSymmetries(parts);
+		}
+		public void optimizingBoundsAndFormula() { delegate.optimizingBoundsAndFormula(); }
+		public void skolemizing(Decl decl, Relation skolem, List<Decl> context) { delegate.skolemizing(decl, skolem, context); }
+		public void translatingToBoolean(Formula formula, Bounds bounds) { delegate.translatingToBoolean(formula, bounds); }
+		public void generatingSBP() { delegate.generatingSBP(); }
+		public void preprocessedCircuit(CircuitPreprocessor preprocessor, int before, int after) { 
+			delegate.preprocessedCircuit(preprocessor, before, after);
+		}
+		public void translatingToCNF(BooleanFormula circuit) { delegate.translatingToCNF(circuit); }
+		public void solvingCNF(int primaryVars, int vars, int clauses) { delegate.solvingCNF(primaryVars, vars, clauses); }
+	}
+	
+	
+	/**
+	 * A SATFactory that produces solvers which write the variables and clauses added 
+	 * to them to a translation file, before passing them on to a solver produced by a delegate factory.  
+	 * @specfield delegate: SATFactory
+	 * @specfield solver: lone SATSolver // the last solver produced by this.delegate 
+	 * @specfield out: OutputStream // the file being written 
+	 * @specfield failure: lone IOException // the first error encountered while writing 
+	 */
+	private static final class Writer extends SATFactory { 
+		private final SATFactory delegate;
+		private final OutputStream out;
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		private final Block block = new Block();
+		private byte[] compressed = new byte[0];
+		private long offset;
+		private int clauses;
+		private IOException failure;
+		SATSolver solver;
+		
+		/**
+		 * Creates a writer for the given delegate and output stream, and writes the file header to the stream.
+		 */
+		Writer(SATFactory delegate, OutputStream out) throws IOException { 
+			this.delegate = delegate;
+			this.out = out;
+			final ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION);
+			out.write(header.array());
+			this.offset = HEADER;
+		}
+		
+		/**
+		 * Compresses this.block, writes it out as a block of the given kind, and clears it.
+		 */
+		private void flush(int kind) throws IOException { 
+			deflater.reset();
+			deflater.setInput(block.bytes, 0, block.size);
+			deflater.finish();
+			int length = 0;
+			while(!deflater.finished()) { 
+				if (length == compressed.length) { 
+					final byte[] grown = new byte[StrictMath.max(1024, compressed.length*2)];
+					System.arraycopy(compressed, 0, grown, 0, length);
+					compressed = grown;
+				}
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+			header.putInt(kind).putInt(block.size).putInt(length);
+			out.write(header.array());
+			out.write(compressed, 0, length);
+			offset += BLOCK_HEADER + length;
+			block.size = 0;
+		}
+		
+		/**
+		 * Appends a record with the given tag and ints to the current CNF block, and writes 
+		 * the block out if it is full.  Any error is saved in this.failure.
+		 */
+		private void record(int tag, int[] ints) { 
+			if (failure != null) return;
+			block.ensure(5*(ints.length+2));
+			block.varint(tag);
+			if (tag==CLAUSE) { 
+				block.varint(ints.length);
+				for(int lit : ints) { 
+					block.varint((lit << 1) ^ (lit >> 31));
+				}
+				clauses++;
+			} else { 
+				block.varint(ints[0]);
+			}
+			if (block.size >= BLOCK) { 
+				try {
+					flush(CNF);
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+		}
+		
+		/**
+		 * Writes the last CNF block, the metadata block and the trailer, and closes this.out.  
+		 * @throws IOException  an error was encountered while writing the file
+		 */
+		void finish(Translation.Whole transl, Map<Relation,IntSet> vars, Bounds original, Set<IntSet> symmetries) throws IOException { 
+			if (failure != null) throw failure;
+			if (block.size > 0) flush(CNF);
+			
+			final long metadata = offset;
+			block.ensure(20);
+			block.varint(solver.numberOfVariables());
+			block.varint(clauses);
+			block.varint(transl.numPrimaryVariables());
+			block.varint(original.universe().size());
+			block.ensure(5);
+			block.varint(symmetries.size());
+			for(IntSet part : symmetries) { 
+				block.ints(part);
+			}
+			
+			final Map<Relation,Integer> positions = new IdentityHashMap<Relation,Integer>();
+			for(Relation r : original.relations()) { 
+				positions.put(r, positions.size()+1);
+			}
+			final Bounds tbounds = transl.bounds();
+			block.ensure(5);
+			block.varint(tbounds.relations().size());
+			for(Relation r : tbounds.relations()) { 
+				final Integer pos = positions.get(r);
+				block.ensure(5);
+				block.varint(pos==null ? 0 : pos);
+				block.string(r.name());
+				block.ensure(5);
+				block.varint(r.arity());
+				block.ints(tbounds.lowerBound(r).indexView());
+				block.ints(tbounds.upperBound(r).indexView());
+				final IntSet rvars = vars.get(r);
+				block.ints(rvars==null ? Ints.EMPTY_SET : rvars);
+			}
+			flush(METADATA);
+			
+			final ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+			trailer.putLong(metadata).putInt(MAGIC);
+			out.write(trailer.array());
+			out.close();
+			deflater.end();
+		}
+		
+		/**
+		 * Closes this.out, ignoring any errors, and deletes the given file.
+		 */
+		void abort(File file) { 
+			try { 
+				out.close();
+			} catch (IOException e) { 
+				/* unused */
+			} finally { 
+				deflater.end();
+				file.delete();
+			}
+		}
+		
+		/**
+		 * Returns a recording wrapper around a new instance of this.delegate.
+		 * @see kodkod.engine.satlab.SATFactory#instance()
+		 */
+		public SATSolver instance() {
+			solver = delegate.instance();
+			return new SATSolver() {
+				public int numberOfVariables() { return solver.numberOfVariables(); }
+				public int numberOfClauses() { return solver.numberOfClauses(); }
+				public void addVariables(int numVars) { 
+					record(VARIABLES, new int[]{numVars});
+					solver.addVariables(numVars);
+				}
+				public boolean addClause(int[] lits) {
+					record(CLAUSE, lits);
+					return solver.addClause(lits);
+				}
+				public void expectClauses(int count) { solver.expectClauses(count); }
+				public boolean solve() throws SATAbortedException { return solver.solve(); }
+				public boolean solve(int[] assumptions) throws SATAbortedException { return solver.solve(assumptions); }
+				public int[] failedAssumptions() { return solver.failedAssumptions(); }
+				public boolean valueOf(int variable) { return solver.valueOf(variable); }
+				public void free() { solver.free(); }
+			};
+		}
+		
+		/**
+		 * @see kodkod.engine.satlab.SATFactory#prover()
+		 */
+		public boolean prover() { return delegate.prover(); }
+		
+		/**
+		 * @see kodkod.engine.satlab.SATFactory#incremental()
+		 */
+		public boolean incremental() { return delegate.incremental(); }
+		
+		/**
+		 * @see kodkod.engine.satlab.SATFactory#streaming()
+		 */
+		public boolean streaming() { return delegate.streaming(); }
+	}
+	
+	/*---------------------- reading ----------------------*/
+	
+	/**
+	 * Reads the blocks of a translation file through memory maps.
+	 * @specfield file: RandomAccessFile
+	 * @specfield metadata: long // offset of the metadata block
+	 */
+	private static final class Reader { 
+		private final File name;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final long metadata;
+		private final Inflater inflater = new Inflater();
+		private byte[] compressed = new byte[0];
+		
+		/**
+		 * Opens the given file and checks its header and trailer.
+		 * @throws IOException  the file cannot be read or is not a translation file
+		 */
+		Reader(File name) throws IOException { 
+			this.name = name;
+			this.file = new RandomAccessFile(name, "r");
+			this.channel = file.getChannel();
+			final long size = channel.size();
+			if (size < HEADER + TRAILER) { 
+				close();
+				throw new IOException("Not a translation file: " + name);
+			}
+			final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			final MappedByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER, TRAILER);
+			this.metadata = trailer.getLong();
+			if (header.getInt()!=MAGIC || header.getInt()!=VERSION || trailer.getInt()!=MAGIC || 
+				metadata < HEADER || metadata > size - TRAILER - BLOCK_HEADER) { 
+				close();
+				throw new IOException("Not a translation file: " + name);
+			}
+		}
+		
+		/**
+		 * Decompresses the block at the given offset, which must be of the given kind, and 
+		 * returns its contents.  Stores the offset of the next block in next[0].
+		 * @throws IOException  there is no block of the given kind at the given offset
+		 */
+		private ByteBuffer block(long offset, int kind, long[] next) throws IOException { 
+			final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, offset, BLOCK_HEADER);
+			final int actual = header.getInt(), length = header.getInt(), clength = header.getInt();
+			if (actual != kind || length < 0 || clength < 0 || offset + BLOCK_HEADER + clength > channel.size() - TRAILER)
+				throw new IOException("Malformed translation file: " + name);
+			if (compressed.length < clength) compressed = new byte[clength];
+			channel.map(FileChannel.MapMode.READ_ONLY, offset + BLOCK_HEADER, clength).get(compressed, 0, clength);
+			final byte[] bytes = new byte[length];
+			inflater.reset();
+			inflater.setInput(compressed, 0, clength);
+			try {
+				if (inflater.inflate(bytes)!=length || !inflater.finished())
+					throw new IOException("Malformed translation file: " + name);
+			} catch (DataFormatException e) {
+				throw new IOException("Malformed translation file: " + name, e);
+			}
+			next[0] = offset + BLOCK_HEADER + clength;
+			return ByteBuffer.wrap(bytes);
+		}
+		
+		/**
+		 * Returns the contents of the metadata block.
+		 * @throws IOException  the metadata block is malformed
+		 */
+		ByteBuffer metadata() throws IOException { 
+			return block(metadata, METADATA, new long[1]);
+		}
+		
+		/**
+		 * Adds the variables and clauses stored in the CNF blocks to the given solver, 
+		 * and returns true if all records in the CNF blocks were well-formed.
+		 * @throws IOException  the CNF blocks are malformed
+		 */
+		boolean replay(SATSolver solver) throws IOException { 
+			final long[] next = { HEADER };
+			int[] clause = new int[16];
+			while(next[0] < metadata) { 
+				final ByteBuffer in = block(next[0], CNF, next);
+				while(in.hasRemaining()) { 
+					final int tag = readVarint(in);
+					if (tag==VARIABLES) { 
+						solver.addVariables(readVarint(in));
+					} else if (tag==CLAUSE) { 
+						final int size = readVarint(in);
+						if (clause.length != size) clause = new int[size];
+						for(int i = 0; i < size; i++) { 
+							final int z = readVarint(in);
+							clause[i] = (z >>> 1) ^ -(z & 1);
+						}
+						solver.addClause(clause);
+					} else { 
+						return false;
+					}
+				}
+			}
+			return next[0]==metadata;
+		}
+		
+		/**
+		 * Closes the underlying file, ignoring any errors.
+		 */
+		void close() { 
+			inflater.end();
+			try {
+				file.close();
+			} catch (IOException e) {
+				/* unused */
+			}
+		}
+	}
+}
@@ -22,6 +22,9 @@
 package kodkod.engine.fol2sat;
 
 import static kodkod.engine.bool.Operator.AND;
+
+import java.util.Arrays;
+
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanFactory;
 import kodkod.engine.bool.BooleanFormula;
@@ -31,6 +34,7 @@ import kodkod.engine.bool.ITEGate;
 import kodkod.engine.bool.MultiGate;
 import kodkod.engine.bool.NotGate;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Options.CNFEncoding;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.util.ints.IntSet;
@@ -51,7 +55,10 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	/**
 	 * Creates a new instance of SATSolver using the provided factory
 	 * and uses it to translate the given circuit into conjunctive normal form
-	 * using the <i>definitional translation algorithm</i>.
+	 * using the <i>definitional translation algorithm</i>.  Unless the given encoding 
+	 * is TSEITIN, only the clauses needed for the polarities with which the gates occur 
+	 * in the circuit are generated.  If the factory is {@linkplain SATFactory#streaming() streaming}, 
+	 * the clauses are first generated without being stored, to tell the solver how many there will be.
 	 * The {@code maxPrimaryVar} parameter is required to contain the maximum label of any primary variable
 	 * allocated during translation from FOL to boolean.  This method assumes that 
 	 * all variables allocated during translation have contiguous labels.
@@ -62,14 +69,17 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 *          max(cnf.variables) = max(abs(circuit.label), maxPrimaryVar) && 
 	 *          meaning(circuit) = meaning(cnf.clauses)
 	 */
-	static SATSolver translate(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory) {
-		final int maxLiteral = StrictMath.abs(circuit.label());		
-		final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance()) {
-			final PolarityDetector pdetector = (new PolarityDetector(maxPrimaryVar, maxLiteral)).apply(circuit);
-			boolean positive(int label) { return pdetector.positive(label); }
-			boolean negative(int label) { return pdetector.negative(label); }
-		};
-		return translator.translate(circuit, maxPrimaryVar).solver;
+	static SATSolver translate(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory, final CNFEncoding encoding) {
+		final SATSolver solver = factory.instance();
+		if (encoding==CNFEncoding.TSEITIN) { 
+			if (factory.streaming())
+				solver.expectClauses(tseitin(new ClauseCounter()).translate(circuit, maxPrimaryVar).solver.numberOfClauses());
+			return tseitin(solver).translate(circuit, maxPrimaryVar).solver;
+		}
+		final PolarityDetector pdetector = (new PolarityDetector(maxPrimaryVar, StrictMath.abs(circuit.label()))).apply(circuit);
+		if (factory.streaming())
+			solver.expectClauses(polarized(new ClauseCounter(), pdetector).translate(circuit, maxPrimaryVar).solver.numberOfClauses());
+		return polarized(solver, pdetector).translate(circuit, maxPrimaryVar).solver;
 	}
 	
 	/**
@@ -83,6 +93,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 */
 	static SATSolver translate(BooleanConstant value, final SATFactory factory) {
 		final SATSolver cnf = factory.instance();
+		cnf.expectClauses(value.booleanValue() ? 0 : 1);
 		if (!value.booleanValue()) {
 			cnf.addClause(new int[0]); // unsat
 		} // sat
@@ -93,30 +104,82 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 * Returns a new Bool2CNFTranslator that is initialized with the translation of the given circuit.  
 	 * The {@code maxPrimaryVar} parameter is required to contain the maximum label of any primary variable
 	 * allocated during translation from FOL to boolean.
+	 * The returned translator uses the given encoding for this and all subsequent translations. 
 	 * @requires let boolFactory = components.circuit | boolFactory.maxVariable() = maxPrimaryVar
 	 * @requires factory.incremental
 	 * @return some t: Bool2CNFTranslator | t.roots = circuit && t.factory = components.circuit && 
 	 *          max(t.cnf.variables) = max(abs(circuit.label), maxPrimaryVar) && 
 	 *          meaning(circuit) = meaning(t.cnf.clauses)
 	 */
-	static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory) {
+	static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory, final CNFEncoding encoding) {
 		assert factory.incremental();	
-		final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance()) { };
-		return translator.translate(circuit, maxPrimaryVar);
+		return incremental(factory.instance(), encoding).translate(circuit, maxPrimaryVar);
 	}
 	
 	/**
 	 * Returns a new Bool2CNFTranslator that is initialized with the trivial translation of the given boolean value.  
 	 * If {@code value} is true, the translation is a solver with no variables and no clauses.  Otherwise, the 
 	 * translation is a solver with no variables and a single empty (conflict) clause.
+	 * The returned translator uses the given encoding for all subsequent translations. 
 	 * @requires factory.incremental
 	 * @return some t: Bool2CNFTranslator | t.roots = value && 
 	 *          no t.cnf.variables &&  
 	 *          (value.booleanValue() => no t.cnf.clauses else (one t.cnf.clauses && no t.cnf.clauses.literals))     
 	 */
-	static Bool2CNFTranslator translateIncremental(BooleanConstant value, final SATFactory factory) {
+	static Bool2CNFTranslator translateIncremental(BooleanConstant value, final SATFactory factory, final CNFEncoding encoding) {
 		assert factory.incremental();	
-		return new Bool2CNFTranslator(translate(value, factory)) { };
+		return incremental(translate(value, factory), encoding);
+	}
+	
+	/**
+	 * Returns a translator that adds clauses to the given solver using the given encoding, 
+	 * and that can be applied to any number of circuits in succession.  Since later circuits 
+	 * may use gates with different polarities than the earlier ones, the PLAISTED_GREENBAUM encoding
+	 * is replaced by TSEITIN, and the HYBRID encoding generates the clauses for each polarity 
+	 * of a gate when the gate is first used with that polarity.
+	 * @return some t: Bool2CNFTranslator | t.solver = solver && no t.roots
+	 */
+	private static Bool2CNFTranslator incremental(SATSolver solver, CNFEncoding encoding) {
+		if (encoding!=CNFEncoding.HYBRID)
+			return tseitin(solver);
+		return new Bool2CNFTranslator(solver) {
+			/** emitted[label] holds the polarities whose clauses have been generated for the gate with the given label */
+			byte[] emitted = new byte[0];
+			int missing(int label, int polarity) { 
+				if (label >= emitted.length) 
+					emitted = Arrays.copyOf(emitted, StrictMath.max(label+1, emitted.length*2));
+				final int missing = polarity & ~emitted[label];
+				emitted[label] |= missing;
+				return missing;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a translator that adds the clauses for the polarities with which each gate occurs in 
+	 * the circuit analyzed by the given detector to the given solver.
+	 * @return some t: Bool2CNFTranslator | t.solver = solver && no t.roots
+	 */
+	private static Bool2CNFTranslator polarized(SATSolver solver, final PolarityDetector pdetector) {
+		return new Bool2CNFTranslator(solver) {
+			final IntSet visited = new IntTreeSet();
+			int missing(int label, int polarity) { 
+				return visited.add(label) ? pdetector.polarity(label) : 0;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a translator that adds the full Tseitin encoding of each gate to the given solver. 
+	 * @return some t: Bool2CNFTranslator | t.solver = solver && no t.roots
+	 */
+	private static Bool2CNFTranslator tseitin(SATSolver solver) {
+		return new Bool2CNFTranslator(solver) { 
+			final IntSet visited = new IntTreeSet();
+			int missing(int label, int polarity) { 
+				return visited.add(label) ? BOTH : 0;
+			}
+		};
 	}
 	
 	/**
@@ -138,8 +201,12 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		return translator.translate(circuit, maxPrimaryVar);
 	}
 
+	/** Polarities with which a gate may occur in a circuit. */
+	static final int POSITIVE = 1, NEGATIVE = 2, BOTH = POSITIVE | NEGATIVE;
+	/** POLARITY[p] is the boxed value of the polarity p, and FLIP[p] is the polarity of the negation of a gate with polarity p. */
+	private static final Integer[] POLARITY = { null, POSITIVE, NEGATIVE, BOTH }, FLIP = { null, NEGATIVE, POSITIVE, BOTH };
+	
 	private final SATSolver solver;
-	private final IntSet visited;
 	private final int[] unaryClause = new int[1];
 	private final int[] binaryClause = new int[2];
 	private final int[] ternaryClause = new int[3];
@@ -151,7 +218,6 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 */
 	private Bool2CNFTranslator(SATSolver solver) {
 		this.solver = solver;
-		this.visited = new IntTreeSet();
 	}
 
 	/**
@@ -174,14 +240,14 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		
 		if (circuit.op()==Operator.AND) { 
 			for(BooleanFormula input : circuit) { 
-				input.accept(this, null);
+				input.accept(this, POLARITY[POSITIVE]);
 			}
 			for(BooleanFormula input : circuit) { 
 				unaryClause[0] = input.label();
 				solver.addClause(unaryClause);
 			}
 		} else {
-			solver.addClause(circuit.accept(this, null));
+			solver.addClause(circuit.accept(this, POLARITY[POSITIVE]));
 		}
 		return this;
 	}
@@ -193,18 +259,15 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	public SATSolver solver() { return solver; }
 	
 	/**
-	 * Returns true if the gate with the given label occurs (or may occur) positively in this.roots.
-	 * @requires some f: (MultiGate + ITEGate) & components.(this.roots) | f.label = label
-	 * @return true if the gate with the given label occurs (or may occur) positively in this.roots
-	 */
-	boolean positive(int label) { return true; }
-	
-	/**
-	 * Returns true if the gate with the given label occurs (or may occur) negatively in this.roots.
+	 * Returns the polarities (a subset of BOTH) of the gate with the given label whose defining 
+	 * clauses have not yet been added to this.solver but are needed for the translation of 
+	 * this.roots, and records that they have been added.  The given polarity is the one with which 
+	 * the gate is reached from the root being translated.
 	 * @requires some f: (MultiGate + ITEGate) & components.(this.roots) | f.label = label
-	 * @return true if the gate with the given label occurs (or may occur) negatively in this.roots.
+	 * @requires polarity in POSITIVE + NEGATIVE + BOTH
+	 * @return polarities of the given gate whose clauses still need to be added to this.solver
 	 */
-	boolean negative(int label) { return true; }
+	abstract int missing(int label, int polarity);
 	
 	/** @return 0->lit */
 	private final int[] clause(int lit) { 
@@ -234,18 +297,20 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 */
 	public final int[] visit(MultiGate multigate, Object arg) {  
 		final int oLit = multigate.label();
-		if (visited.add(oLit)) { 
+		final int missing = missing(oLit, (Integer) arg);
+		if (missing != 0) { 
 			final int sgn; final boolean p, n;
 			if (multigate.op()==AND) {
-				sgn = 1; p = positive(oLit); n = negative(oLit);
+				sgn = 1; p = (missing & POSITIVE) != 0; n = (missing & NEGATIVE) != 0;
 			} else { // multigate.op()==OR
-				sgn = -1; n = positive(oLit); p = negative(oLit);
+				sgn = -1; n = (missing & POSITIVE) != 0; p = (missing & NEGATIVE) != 0;
 			}
 			final int[] lastClause = n ? new int[multigate.size()+1] : null;
 			final int output = oLit * -sgn;
+			final Integer polarity = POLARITY[missing];
 			int i = 0;
 			for(BooleanFormula input : multigate) {
-				int iLit = input.accept(this, arg)[0];
+				int iLit = input.accept(this, polarity)[0];
 				if (p) {
 					solver.addClause(clause(iLit * sgn, output));
 				}
@@ -272,11 +337,13 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 */
 	public final int[] visit(ITEGate itegate, Object arg) {
 		final int oLit = itegate.label();
-		if (visited.add(oLit)) {
-			final int i = itegate.input(0).accept(this, arg)[0];
-			final int t = itegate.input(1).accept(this, arg)[0];
-			final int e = itegate.input(2).accept(this, arg)[0];
-			final boolean p = positive(oLit), n = negative(oLit);
+		final int missing = missing(oLit, (Integer) arg);
+		if (missing != 0) {
+			// the condition occurs both positively and negatively in an ITE gate
+			final int i = itegate.input(0).accept(this, POLARITY[BOTH])[0];
+			final int t = itegate.input(1).accept(this, POLARITY[missing])[0];
+			final int e = itegate.input(2).accept(this, POLARITY[missing])[0];
+			final boolean p = (missing & POSITIVE) != 0, n = (missing & NEGATIVE) != 0;
 			if (p) {
 				solver.addClause(clause(-i, t, -oLit));
 				solver.addClause(clause(i, e, -oLit));
@@ -298,7 +365,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 * @return o: int[] | o.length = 1 && o[0] = - translate(negation.inputs)[0]
 	 * */
 	public final int[] visit(NotGate negation, Object arg) {
-		return clause(-negation.input(0).accept(this, arg)[0]);
+		return clause(-negation.input(0).accept(this, FLIP[(Integer) arg])[0]);
 	}
 
 	/**
@@ -348,23 +415,14 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		}
 
 		/**
-		 * Returns true if the formula with the given label occurs positively in this.root.  
-		 * @requires this visitor has been applied to this.root
-		 * @requires label in (MultiGate + ITEGate).label
-		 * @return true if the formula with the given label occurs positively in this.root.  
-		 */
-		boolean positive(int label) {
-			return (polarity[label-offset] & 1) > 0;
-		}
-
-		/**
-		 * Returns true if the formula with the given label occurs negatively in this.root.  
+		 * Returns the polarities (1 = positive, 2 = negative, 3 = both) with which the formula 
+		 * with the given label occurs in this.root.  
 		 * @requires this visitor has been applied to this.root
 		 * @requires label in (MultiGate + ITEGate).label
-		 * @return true if the formula with the given label occurs negatively in this.root.  
+		 * @return polarities with which the formula with the given label occurs in this.root.  
 		 */
-		boolean negative(int label) {
-			return (polarity[label-offset] & 2) > 0;
+		int polarity(int label) {
+			return polarity[label-offset];
 		}
 
 		/**
@@ -409,5 +467,28 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		}
 		
 	}
+	
+	/**
+	 * A solver that only counts the variables and clauses added to it.  A translation into a 
+	 * clause counter computes the number of clauses that a {@linkplain SATFactory#streaming() streaming} 
+	 * solver needs to be told before the same translation is added to it.
+	 * @author agent
+	 */
+	private static final class ClauseCounter implements SATSolver {
+		private int vars, clauses;
+		
+		public int numberOfVariables() { return vars; }
+		public int numberOfClauses() { return clauses; }
+		public void addVariables(int numVars) { vars += numVars; }
+		public boolean addClause(int[] lits) { 
+			clauses++;
+			return true;
+		}
+		public boolean solve() { throw new UnsupportedOperationException(); }
+		public boolean solve(int[] assumptions) { throw new UnsupportedOperationException(); }
+		public int[] failedAssumptions() { throw new UnsupportedOperationException(); }
+		public boolean valueOf(int variable) { throw new UnsupportedOperationException(); }
+		public void free() { }
+	}
 
 }
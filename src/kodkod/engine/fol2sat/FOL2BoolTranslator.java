@@ -23,8 +23,12 @@ package kodkod.engine.fol2sat;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import kodkod.ast.BinaryExpression;
 import kodkod.ast.BinaryFormula;
@@ -59,20 +63,30 @@ import kodkod.ast.SumExpression;
 import kodkod.ast.UnaryExpression;
 import kodkod.ast.UnaryIntExpression;
 import kodkod.ast.Variable;
+import kodkod.ast.operator.ExprCastOperator;
 import kodkod.ast.operator.ExprCompOperator;
 import kodkod.ast.operator.ExprOperator;
 import kodkod.ast.operator.FormulaOperator;
+import kodkod.ast.operator.IntCompOperator;
 import kodkod.ast.operator.Multiplicity;
 import kodkod.ast.operator.Quantifier;
 import kodkod.ast.visitor.ReturnVisitor;
 import kodkod.engine.bool.BooleanAccumulator;
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanFormula;
 import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.bool.BooleanValue;
+import kodkod.engine.bool.BooleanVariable;
+import kodkod.engine.bool.BooleanVisitor;
 import kodkod.engine.bool.Dimensions;
+import kodkod.engine.bool.ITEGate;
 import kodkod.engine.bool.Int;
+import kodkod.engine.bool.MultiGate;
+import kodkod.engine.bool.NotGate;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Options;
+import kodkod.engine.config.Options.CardinalityEncoding;
 import kodkod.util.ints.IndexedEntry;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
@@ -105,6 +119,30 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {};
 		return (T) annotated.node().accept(translator);
 	}
+	
+	/**
+	 * Translates the given annotated formula into a boolean value, using the provided interpreter.  
+	 * If options.groundingThreads > 1, the top-level quantified formulas of annotated.node are 
+	 * grounded in parallel, using a fork-join pool with options.groundingThreads worker threads.  
+	 * Otherwise, the translation is performed sequentially, as by {@link #translate(AnnotatedNode, LeafInterpreter)}.
+	 * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+	 * @requires interpreter.factory = BooleanFactory.factory(_, options)
+	 * @return the translation of annotated.node with respect to the given interpreter
+	 * @throws HigherOrderDeclException  annotated.node contains a higher order declaration
+	 * @throws UnboundLeafException  annotated.node refers to an undeclared variable 
+	 **/
+	static final BooleanValue translate(AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, Options options) {
+		if (options.groundingThreads() < 2) 
+			return translate(annotated, interpreter);
+		final ForkJoinPool pool = new ForkJoinPool(options.groundingThreads());
+		try {
+			final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+			final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter, new Grounder(annotated, interpreter, options, pool)) {};
+			return annotated.node().accept(translator);
+		} finally {
+			pool.shutdown();
+		}
+	}
 
 	/**
 	 * Translates the given annotated formula into a boolean
@@ -172,15 +210,15 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 					ret = factory.matrix(Dimensions.square(super.interpreter.universe().size(), 1));
 					final IntSet ints = super.interpreter.ints();
 					final int msb = factory.bitwidth()-1;
-					// handle all bits but the sign bit
-					for(int i = 0; i < msb; i++) { 
+					// handle all bits but the sign bit; powers of two that do not fit into an int have no atoms
+					for(int i = 0, max = StrictMath.min(msb, 31); i < max; i++) { 
 						int pow2 = 1<<i;
 						if (ints.contains(pow2)) { 
 							ret.set(super.interpreter.interpret(pow2), BooleanConstant.TRUE);
 						}
 					}
 					// handle the sign bit
-					if (ints.contains(-1<<msb)) {
+					if (msb < 32 && ints.contains(-1<<msb)) {
 						ret.set(super.interpreter.interpret(-1<<msb), BooleanConstant.TRUE);
 					}
 					return cache(castExpr, ret);
@@ -201,6 +239,8 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 
 	private final FOL2BoolCache cache;
 	private final Map<LeafExpression, BooleanMatrix> leafCache;
+	/* Grounds top-level quantified formulas in parallel; null if grounding is sequential */
+	private final Grounder grounder;
 	
 	/**
 	 * Constructs a new translator that will use the given translation cache
@@ -208,10 +248,21 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 	 * @ensures this.node' = manager.node
 	 */   
 	private FOL2BoolTranslator(FOL2BoolCache cache,  LeafInterpreter interpreter) {
+		this(cache, interpreter, (Grounder)null);
+	}
+	
+	/**
+	 * Constructs a new translator that will use the given translation cache, 
+	 * interpreter and grounder to perform the translation.  If the grounder 
+	 * is null, all quantified formulas are grounded sequentially.
+	 * @ensures this.node' = manager.node
+	 */   
+	private FOL2BoolTranslator(FOL2BoolCache cache,  LeafInterpreter interpreter, Grounder grounder) {
 		this.interpreter = interpreter;
 		this.env = Environment.empty();
 		this.cache = cache;
 		this.leafCache = new HashMap<>(64);
+		this.grounder = grounder;
 	}
 
 	/**
@@ -224,6 +275,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		this.env = env;
 		this.cache = cache;
 		this.leafCache = new HashMap<>(64);
+		this.grounder = null;
 	}
 
 	/**
@@ -598,12 +650,18 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		switch(quantifier) {
 		case ALL		: 
 			final BooleanAccumulator and = BooleanAccumulator.treeGate(Operator.AND);
-			all(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.FALSE, and); 
+			if (grounder!=null && env.isEmpty())
+				grounder.ground(this, quantFormula, and);
+			else
+				all(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.FALSE, and); 
 			ret = interpreter.factory().accumulate(and);
 			break;
 		case SOME	: 
 			final BooleanAccumulator or = BooleanAccumulator.treeGate(Operator.OR);
-			some(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.TRUE, or); 
+			if (grounder!=null && env.isEmpty())
+				grounder.ground(this, quantFormula, or);
+			else
+				some(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.TRUE, or); 
 			ret = interpreter.factory().accumulate(or);
 			break;
 		default :
@@ -777,15 +835,15 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		case BITSETCAST : 
 			final List<BooleanValue> twosComplement = child.twosComplementBits();
 			final int msb = twosComplement.size()-1;
-			// handle all bits but the sign bit
-			for(int i = 0; i < msb; i++) { 
+			// handle all bits but the sign bit; powers of two that do not fit into an int have no atoms
+			for(int i = 0, max = StrictMath.min(msb, 31); i < max; i++) { 
 				int pow2 = 1<<i;
 				if (ints.contains(pow2)) { 
 					ret.set(interpreter.interpret(pow2), twosComplement.get(i));
 				}
 			}
 			// handle the sign bit
-			if (ints.contains(-1<<msb)) {
+			if (msb < 32 && ints.contains(-1<<msb)) {
 				ret.set(interpreter.interpret(-1<<msb), twosComplement.get(msb));
 			}
 			break;
@@ -1010,6 +1068,10 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 	public final BooleanValue visit(IntComparisonFormula intComp) {
 		BooleanValue ret = lookup(intComp);
 		if (ret!=null) return ret;
+		if (interpreter.factory().cardinalityEncoding() != CardinalityEncoding.ADDERS) { 
+			ret = compareCardinality(intComp);
+			if (ret!=null) return cache(intComp, ret);
+		}
 		final Int left = intComp.left().accept(this);
 		final Int right = intComp.right().accept(this);
 		switch(intComp.op()) {
@@ -1023,5 +1085,332 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		}
 		return cache(intComp, ret);
 	}
+	
+	/**
+	 * Returns the translation of the given comparison in terms of the unary representation of 
+	 * a cardinality, if the comparison is between the cardinality of an expression and an 
+	 * integer constant, and if neither the constant nor the cardinality can overflow at 
+	 * this.interpreter.factory.bitwidth.  Otherwise returns null.
+	 * @return intComp.left in ExprToIntCast && intComp.left.op = CARDINALITY && intComp.right in IntConstant ||
+	 *         intComp.right in ExprToIntCast && intComp.right.op = CARDINALITY && intComp.left in IntConstant => 
+	 *         (let m = (intComp.left + intComp.right).expression.accept(this), k = (intComp.left + intComp.right).value |
+	 *          representable(k) && representable(m.density()) => a translation of intComp based on m.count(...), null),
+	 *         null
+	 */
+	private final BooleanValue compareCardinality(IntComparisonFormula intComp) {
+		final ExprToIntCast card;
+		final int k;
+		IntCompOperator op = intComp.op();
+		if (isCardinality(intComp.left()) && intComp.right() instanceof IntConstant) { 
+			card = (ExprToIntCast) intComp.left();
+			k = ((IntConstant) intComp.right()).value();
+		} else if (isCardinality(intComp.right()) && intComp.left() instanceof IntConstant) { 
+			card = (ExprToIntCast) intComp.right();
+			k = ((IntConstant) intComp.left()).value();
+			switch(op) { // k op #e <=> #e op' k
+			case LT  : op = IntCompOperator.GT; break;
+			case LTE : op = IntCompOperator.GTE; break;
+			case GT  : op = IntCompOperator.LT; break;
+			case GTE : op = IntCompOperator.LTE; break;
+			default  : // EQ is symmetric
+			}
+		} else { 
+			return null;
+		}
+		if (!representable(k)) return null;
+		final BooleanMatrix m = card.expression().accept(this);
+		if (!representable(m.density())) return null;
+		// we only need to count up to k+1, and never past the number of non-FALSE entries in m
+		final BooleanValue[] count = m.count((int) StrictMath.max(0, StrictMath.min((long) k, m.density()) + 1));
+		final BooleanFactory f = interpreter.factory();
+		switch(op) { 
+		case EQ  : return f.and(atLeast(count, k), f.not(atLeast(count, k+1L)));
+		case LT  : return f.not(atLeast(count, k));
+		case LTE : return f.not(atLeast(count, k+1L));
+		case GT  : return atLeast(count, k+1L);
+		case GTE : return atLeast(count, k);
+		default: 
+			throw new IllegalArgumentException("Unknown operator: " + op);
+		}
+	}
+	
+	/**
+	 * Returns true if the given value is represented exactly by an integer circuit 
+	 * built by this.interpreter.factory.  Values outside of that range wrap around 
+	 * (in two's complement) or are clamped (in unary).
+	 * @return this.interpreter.factory.intEncoding = UNARY => 0 <= value <= this.interpreter.factory.bitwidth, 
+	 *         -2^(this.interpreter.factory.bitwidth-1) <= value < 2^(this.interpreter.factory.bitwidth-1)
+	 */
+	private boolean representable(long value) { 
+		final BooleanFactory f = interpreter.factory();
+		final int bitwidth = f.bitwidth();
+		if (f.intEncoding()==Options.IntEncoding.UNARY) 
+			return 0 <= value && value <= bitwidth;
+		return bitwidth > 32 || (-(1L << (bitwidth-1)) <= value && value < (1L << (bitwidth-1)));
+	}
+	
+	/**
+	 * Returns true if the given expression is a cardinality cast.
+	 * @return intExpr in ExprToIntCast && intExpr.op = CARDINALITY
+	 */
+	private static boolean isCardinality(IntExpression intExpr) { 
+		return intExpr instanceof ExprToIntCast && ((ExprToIntCast) intExpr).op()==ExprCastOperator.CARDINALITY;
+	}
+	
+	/**
+	 * Returns a value that is true iff at least c entries are true, given 
+	 * the unary representation of their count.
+	 * @requires all j: [0..count.length) | [[count[j]]] <=> #{true entries} > j
+	 * @requires c > count.length => #{entries} < c
+	 * @return c <= 0 => TRUE, c > count.length => FALSE, count[c-1]
+	 */
+	private static BooleanValue atLeast(BooleanValue[] count, long c) { 
+		return c <= 0 ? BooleanConstant.TRUE : c > count.length ? BooleanConstant.FALSE : count[(int) c - 1];
+	}
+	
+	/**
+	 * Grounds top-level quantified formulas in parallel.  The tuples of the outermost declaration
+	 * of a quantified formula are split across a fork-join pool, and each worker thread grounds the 
+	 * body of the formula using its own translator and a {@linkplain LeafInterpreter#fork(Options) fork} 
+	 * of the shared interpreter.  The resulting circuits are then imported into the shared factory in the 
+	 * order of the tuples they represent, so the final translation does not depend on thread scheduling.
+	 * @specfield annotated: AnnotatedNode<Formula> // formula being translated
+	 * @specfield interpreter: LeafInterpreter // shared interpreter
+	 * @specfield pool: ForkJoinPool // pool that executes the workers
+	 * @specfield workers: Thread -> lone FOL2BoolTranslator // per-thread translators
+	 * @author agent
+	 */
+	private static final class Grounder {
+		private final AnnotatedNode<Formula> annotated;
+		private final LeafInterpreter interpreter;
+		private final Options options;
+		private final ForkJoinPool pool;
+		private final Map<Thread, FOL2BoolTranslator> workers;
+		
+		/**
+		 * Constructs a new grounder for the given formula, interpreter and options, 
+		 * which will execute its workers in the given pool.
+		 * @ensures this.annotated' = annotated && this.interpreter' = interpreter && 
+		 *          this.pool' = pool && no this.workers'
+		 */
+		Grounder(AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, Options options, ForkJoinPool pool) {
+			this.annotated = annotated;
+			this.interpreter = interpreter;
+			this.options = options;
+			this.pool = pool;
+			this.workers = new ConcurrentHashMap<Thread, FOL2BoolTranslator>();
+		}
+		
+		/**
+		 * Returns the translator used by the current thread, creating it if necessary.  
+		 * Translators are reused across tasks so that each worker's translation cache 
+		 * and factory are shared by all the sub-circuits it grounds.
+		 * @ensures Thread.currentThread() !in this.workers.FOL2BoolTranslator => 
+		 *           this.workers' = this.workers + Thread.currentThread()->(new FOL2BoolTranslator),
+		 *           this.workers' = this.workers
+		 * @return this.workers'[Thread.currentThread()]
+		 */
+		private FOL2BoolTranslator worker() {
+			final Thread thread = Thread.currentThread();
+			FOL2BoolTranslator worker = workers.get(thread);
+			if (worker==null) { 
+				worker = new FOL2BoolTranslator(new FOL2BoolCache(annotated), interpreter.fork(options)) {};
+				workers.put(thread, worker);
+			}
+			return worker;
+		}
+		
+		/**
+		 * Adds the translation of the given quantified formula to the given accumulator.  
+		 * @requires translator.grounder = this && no translator.env.variable()
+		 * @requires acc.op = (quantFormula.quantifier = ALL => AND, OR)
+		 * @ensures the given accumulator contains the translation of quantFormula
+		 */
+		void ground(FOL2BoolTranslator translator, QuantifiedFormula quantFormula, BooleanAccumulator acc) {
+			final boolean all = quantFormula.quantifier()==Quantifier.ALL;
+			final BooleanMatrix declTransl = translator.visit(quantFormula.decls().get(0));
+			final int size = declTransl.density();
+			
+			if (size < 2) { 
+				if (all) translator.all(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.FALSE, acc);
+				else     translator.some(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.TRUE, acc);
+				return;
+			}
+			
+			final int[] indices = new int[size];
+			final BooleanValue[] guards = new BooleanValue[size];
+			int i = 0;
+			for(IndexedEntry<BooleanValue> entry : declTransl) {
+				indices[i] = entry.index();
+				guards[i++] = entry.value();
+			}
+			
+			final Task task = new Task(quantFormula, declTransl.dimensions(), indices);
+			pool.invoke(task);
+			
+			final BooleanFactory factory = interpreter.factory();
+			final Map<BooleanFactory, Importer> importers = new IdentityHashMap<BooleanFactory, Importer>();
+			for(i = 0; i < size && !acc.isShortCircuited(); i++) { 
+				Importer importer = importers.get(task.sources[i]);
+				if (importer==null) { 
+					importer = new Importer(factory);
+					importers.put(task.sources[i], importer);
+				}
+				final BooleanValue body = importer.copy(task.bodies[i]);
+				acc.add(all ? factory.or(factory.not(guards[i]), body) : factory.and(guards[i], body));
+			}
+		}
+		
+		/**
+		 * Grounds the body of a quantified formula for a range of tuples 
+		 * from its outermost declaration, splitting the range in half until it
+		 * consists of a single tuple.
+		 * @specfield quantFormula: QuantifiedFormula
+		 * @specfield indices: [0..size) -> one int // tuple indices of the outermost declaration
+		 * @specfield bodies: [0..size) -> lone BooleanValue // translation of the body for each tuple
+		 * @specfield sources: [0..size) -> lone BooleanFactory // factory that created each body
+		 * @specfield lo, hi: [0..size] // range of tuples grounded by this task
+		 */
+		@SuppressWarnings("serial")
+		private final class Task extends RecursiveAction {
+			final QuantifiedFormula quantFormula;
+			final Dimensions dims;
+			final int[] indices;
+			final BooleanValue[] bodies;
+			final BooleanFactory[] sources;
+			final int lo, hi;
+			
+			/**
+			 * Constructs a task that grounds the given formula for all the given tuple indices.
+			 * @ensures this.quantFormula' = quantFormula && this.indices' = indices && 
+			 *          this.lo' = 0 && this.hi' = indices.length && no this.bodies' && no this.sources'
+			 */
+			Task(QuantifiedFormula quantFormula, Dimensions dims, int[] indices) {
+				this(quantFormula, dims, indices, new BooleanValue[indices.length], new BooleanFactory[indices.length], 0, indices.length);
+			}
+			
+			/**
+			 * Constructs a task that grounds the given formula for the tuples indices[lo..hi), 
+			 * storing the results in the given arrays.
+			 */
+			private Task(QuantifiedFormula quantFormula, Dimensions dims, int[] indices, BooleanValue[] bodies, BooleanFactory[] sources, int lo, int hi) {
+				this.quantFormula = quantFormula;
+				this.dims = dims;
+				this.indices = indices;
+				this.bodies = bodies;
+				this.sources = sources;
+				this.lo = lo;
+				this.hi = hi;
+			}
+			
+			/**
+			 * @see java.util.concurrent.RecursiveAction#compute()
+			 */
+			protected void compute() {
+				if (hi - lo > 1) { 
+					final int mid = (lo + hi) >>> 1;
+					invokeAll(new Task(quantFormula, dims, indices, bodies, sources, lo, mid), 
+							  new Task(quantFormula, dims, indices, bodies, sources, mid, hi));
+				} else {
+					final FOL2BoolTranslator worker = worker();
+					final BooleanFactory factory = worker.interpreter.factory();
+					final Decls decls = quantFormula.decls();
+					final BooleanMatrix groundValue = factory.matrix(dims);
+					groundValue.set(indices[lo], BooleanConstant.TRUE);
+					worker.env = worker.env.extend(decls.get(0).variable(), groundValue);
+					try { 
+						final BooleanAccumulator acc;
+						if (quantFormula.quantifier()==Quantifier.ALL) { 
+							acc = BooleanAccumulator.treeGate(Operator.AND);
+							worker.all(decls, quantFormula.formula(), 1, BooleanConstant.FALSE, acc);
+						} else {
+							acc = BooleanAccumulator.treeGate(Operator.OR);
+							worker.some(decls, quantFormula.formula(), 1, BooleanConstant.TRUE, acc);
+						}
+						bodies[lo] = factory.accumulate(acc);
+						sources[lo] = factory;
+					} finally { 
+						worker.env = worker.env.parent();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies circuits created by one factory into another.  Variables are mapped
+	 * to the variables with the same labels in the target factory, and gates are 
+	 * rebuilt with the target factory's operations, so that the copies are shared
+	 * with the target's existing circuits wherever possible.
+	 * @specfield factory: BooleanFactory // target factory
+	 * @specfield copies: BooleanFormula -> lone BooleanValue // formulas copied so far
+	 * @author agent
+	 */
+	private static final class Importer implements BooleanVisitor<BooleanValue, Object> {
+		private final BooleanFactory factory;
+		private final Map<BooleanFormula, BooleanValue> copies;
+		
+		/**
+		 * Constructs an importer into the given factory.
+		 * @ensures this.factory' = factory && no this.copies'
+		 */
+		Importer(BooleanFactory factory) {
+			this.factory = factory;
+			this.copies = new IdentityHashMap<BooleanFormula, BooleanValue>();
+		}
+		
+		/**
+		 * Returns the copy of the given value in this.factory.
+		 * @requires all v: value.*inputs & BooleanVariable | v.label in [1..this.factory.maxVariable()]
+		 * @return value in BooleanConstant => value, the copy of value in this.factory
+		 */
+		BooleanValue copy(BooleanValue value) {
+			return value.op()==Operator.CONST ? value : ((BooleanFormula)value).accept(this, null);
+		}
+		
+		/**
+		 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.MultiGate, java.lang.Object)
+		 */
+		public BooleanValue visit(MultiGate multigate, Object arg) {
+			BooleanValue ret = copies.get(multigate);
+			if (ret==null) { 
+				final Operator.Nary op = multigate.op();
+				final BooleanAccumulator acc = BooleanAccumulator.treeGate(op);
+				for(BooleanFormula input : multigate) { 
+					if (acc.add(input.accept(this, arg))==op.shortCircuit())
+						break;
+				}
+				ret = factory.accumulate(acc);
+				copies.put(multigate, ret);
+			}
+			return ret;
+		}
+		
+		/**
+		 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.ITEGate, java.lang.Object)
+		 */
+		public BooleanValue visit(ITEGate ite, Object arg) {
+			BooleanValue ret = copies.get(ite);
+			if (ret==null) { 
+				ret = factory.ite(ite.input(0).accept(this, arg), ite.input(1).accept(this, arg), ite.input(2).accept(this, arg));
+				copies.put(ite, ret);
+			}
+			return ret;
+		}
+		
+		/**
+		 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.NotGate, java.lang.Object)
+		 */
+		public BooleanValue visit(NotGate negation, Object arg) {
+			return factory.not(negation.input(0).accept(this, arg));
+		}
+		
+		/**
+		 * @see kodkod.engine.bool.BooleanVisitor#visit(kodkod.engine.bool.BooleanVariable, java.lang.Object)
+		 */
+		public BooleanValue visit(BooleanVariable variable, Object arg) {
+			return factory.variable(variable.label());
+		}
+	}
 }
 
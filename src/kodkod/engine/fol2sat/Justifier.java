@@ -0,0 +1,192 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.BooleanVariable;
+import kodkod.engine.bool.BooleanVisitor;
+import kodkod.engine.bool.ITEGate;
+import kodkod.engine.bool.MultiGate;
+import kodkod.engine.bool.NotGate;
+import kodkod.engine.bool.Operator;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.util.ints.ArrayIntVector;
+import kodkod.util.ints.IntBitSet;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntVector;
+
+/**
+ * Computes an implicant of a boolean circuit with respect to a model of the circuit's CNF encoding.  
+ * The implicant is obtained by justifying the value of the circuit's root, top-down, in terms of the values
+ * of its inputs:  a true conjunction (false disjunction) is justified by all of its inputs, a false conjunction 
+ * (true disjunction) is justified by one of its inputs, and an if-then-else gate is justified by 
+ * its condition and the branch selected by the condition.  The values of gates are computed from the 
+ * values of the circuit's variables in the model rather than read from the model, since the 
+ * polarity-based CNF encoding does not constrain all gate variables to take on the values of their gates.  
+ * 
+ * @specfield root: BooleanFormula
+ * @specfield model: SATSolver
+ * @invariant root.label in model.variables
+ * @author agent
+ */
+final class Justifier implements BooleanVisitor<Object, Boolean> {
+	private final SATSolver model;
+	/**
+	 * @invariant all i: [1..values.length) | 
+	 *   values[i] = 0 <=> the value of the formula with label i has not been computed,
+	 *   values[i] = 1 <=> the formula with label i is true in this.model,
+	 *   values[i] = 2 <=> the formula with label i is false in this.model
+	 */
+	private final byte[] values;
+	private final IntSet justified;
+	private final IntVector implicant;
+	
+	/**
+	 * Creates a justifier for the given root and model.
+	 * @ensures this.root' = root && this.model' = model
+	 */
+	private Justifier(BooleanFormula root, SATSolver model) {
+		final int maxLabel = StrictMath.abs(root.label());
+		this.model = model;
+		this.values = new byte[maxLabel+1];
+		this.justified = new IntBitSet(maxLabel+1);
+		this.implicant = new ArrayIntVector();
+	}
+	
+	/**
+	 * Returns an implicant of the given circuit with respect to the current model of the given solver.
+	 * @requires model.solve() has been called and returned true, and the clauses of the model include the CNF encoding of the given root
+	 * @return some lits: int[] | lits = { lit: int | some v: root.*inputs & BooleanVariable | lit = (model.valueOf(v.label) ? v.label : -v.label) } && 
+	 *          all m: model.variables -> boolean | (all lit: lits | m(|lit|) = lit > 0) => meaning(root, m) = true 
+	 */
+	static int[] implicant(BooleanFormula root, SATSolver model) {
+		final Justifier justifier = new Justifier(root, model);
+		root.accept(justifier, Boolean.TRUE);
+		return justifier.implicant.toArray();
+	}
+	
+	/**
+	 * Returns the value of the given formula in this.model.
+	 * @return meaning(f, this.model)
+	 */
+	private boolean value(BooleanFormula f) {
+		final int label = f.label();
+		if (label < 0) return !value(f.input(0));
+		if (values[label] != 0) return values[label]==1;
+		final Operator op = f.op();
+		final boolean val;
+		if (op==Operator.VAR) { 
+			val = model.valueOf(label);
+		} else if (op==Operator.AND) {
+			val = all(f, true);
+		} else if (op==Operator.OR) { 
+			val = !all(f, false);
+		} else {
+			assert op==Operator.ITE;
+			val = value(f.input(0)) ? value(f.input(1)) : value(f.input(2));
+		}
+		values[label] = val ? (byte)1 : (byte)2;
+		return val;
+	}
+	
+	/**
+	 * Returns true if all inputs of the given gate have the specified value in this.model.
+	 * @return all i: [0..gate.size()) | value(gate.input(i)) = val
+	 */
+	private boolean all(BooleanFormula gate, boolean val) {
+		for(BooleanFormula input : gate) {
+			if (value(input) != val) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns an input of the given gate with the specified value, preferring inputs that have already been 
+	 * justified, since they do not add any literals to the implicant.
+	 * @requires some i: [0..gate.size()) | value(gate.input(i)) = val
+	 * @return some i: [0..gate.size()) | value(gate.input(i)) = val
+	 */
+	private BooleanFormula witness(BooleanFormula gate, boolean val) {
+		BooleanFormula witness = null;
+		for(BooleanFormula input : gate) {
+			if (value(input)==val) {
+				if (justified.contains(StrictMath.abs(input.label()))) return input;
+				if (witness==null) witness = input;
+			}
+		}
+		assert witness != null;
+		return witness;
+	}
+	
+	/**
+	 * Justifies the given multigate, which has the specified value in this.model.
+	 * @return null
+	 */
+	public Object visit(MultiGate multigate, Boolean arg) {
+		if (justified.add(multigate.label())) {
+			final boolean val = arg.booleanValue();
+			if (multigate.op().identity().booleanValue()==val) { // AND is true or OR is false
+				for(BooleanFormula input : multigate) {
+					input.accept(this, arg);
+				}
+			} else {
+				witness(multigate, val).accept(this, arg);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Justifies the given if-then-else gate, which has the specified value in this.model.
+	 * @return null
+	 */
+	public Object visit(ITEGate ite, Boolean arg) {
+		if (justified.add(ite.label())) {
+			final BooleanFormula condition = ite.input(0);
+			final boolean branch = value(condition);
+			condition.accept(this, Boolean.valueOf(branch));
+			ite.input(branch ? 1 : 2).accept(this, arg);
+		}
+		return null;
+	}
+
+	/**
+	 * Justifies the given inverter, which has the specified value in this.model.
+	 * @return null
+	 */
+	public Object visit(NotGate negation, Boolean arg) {
+		return negation.input(0).accept(this, Boolean.valueOf(!arg.booleanValue()));
+	}
+
+	/**
+	 * Adds the literal corresponding to the given variable's value to this.implicant.
+	 * @return null
+	 */
+	public Object visit(BooleanVariable variable, Boolean arg) {
+		final int label = variable.label();
+		if (justified.add(label)) {
+			implicant.add(arg.booleanValue() ? label : -label);
+		}
+		return null;
+	}
+	
+}
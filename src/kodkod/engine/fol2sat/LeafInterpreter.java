@@ -154,6 +154,20 @@ final class LeafInterpreter {
 				(SparseSequence<TupleSet>)Ints.EMPTY_SEQUENCE, options);
 	}
 	
+	/**
+	 * Returns an interpreter that has the same universe, relations, bounds and variable 
+	 * assignments as this one, but a fresh factory with the same variables as this.factory.
+	 * The returned interpreter can be used to translate formulas independently of 
+	 * (and concurrently with) this interpreter, as long as neither is {@linkplain #extend(Set, Map, Map) extended}.
+	 * @return some l: LeafInterpreter | l.universe = this.universe && l.relations = this.relations && 
+	 *           l.ints = this.ints && l.lbounds = this.lbounds && l.ubounds = this.ubounds && 
+	 *           l.ibounds = this.ibounds && l.vars = this.vars && 
+	 *           l.factory = BooleanFactory.factory(this.factory.maxVariable(), options)
+	 */
+	final LeafInterpreter fork(Options options) {
+		return new LeafInterpreter(universe, lowers, uppers, ints, BooleanFactory.factory(factory.maxVariable(), options), vars);
+	}
+	
 	/**
 	 * Populates the {@code vars} map with bindings from each relation in {@code rels} to an integer range,
 	 * which specifies the identifiers of the variables used to encode the contents of that relation.  The 
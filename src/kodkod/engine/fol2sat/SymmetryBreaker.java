@@ -33,6 +33,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
@@ -70,19 +72,21 @@ final class SymmetryBreaker {
 	
 	/**
 	 * Constructs a new symmetry breaker for the given Bounds, and calls 
-	 * the given reporter's {@linkplain Reporter#detectedSymmetries(Set)} method
-	 * with the detected symmetries.
+	 * the given options' reporter's {@linkplain Reporter#detectedSymmetries(Set)} method
+	 * with the detected symmetries.  The symmetries are detected using 
+	 * options.symmetryThreads threads.
 	 * <b>Note that the constructor does not make a local copy of the given
 	 * bounds, so the caller must ensure that all modifications of the
 	 * given bounds are symmetry preserving.</b>  
-	 * @ensures reporter.detectedSymmetries(this.symmteries')
+	 * @ensures options.reporter().detectedSymmetries(this.symmteries')
 	 * @ensures this.bounds' = bounds && this.symmetries' = SymmetryDetector.partition(bounds) && no this.broken'
 	 **/
-	SymmetryBreaker(Bounds bounds, Reporter reporter) {
+	SymmetryBreaker(Bounds bounds, Options options) {
 		this.bounds = bounds;
 		this.usize = bounds.universe().size();
+		final Reporter reporter = options.reporter();
 		reporter.detectingSymmetries(bounds);
-		this.symmetries = SymmetryDetector.partition(bounds);
+		this.symmetries = SymmetryDetector.partition(bounds, options.symmetryThreads());
 		reporter.detectedSymmetries(symmetries);
 //		System.out.println(symmetries);
 	}
@@ -154,7 +158,10 @@ final class SymmetryBreaker {
 	 * Generates a lex leader symmetry breaking predicate for this.symmetries 
 	 * (if any), using the specified leaf interpreter and options.symmetryBreaking.
 	 * It also invokes options.reporter().generatingSBP() if a non-constant predicate
-	 * is generated.
+	 * is generated.  If options.symmetryThreads is greater than 1, the operands of the 
+	 * comparisons that make up the predicate are collected in parallel.  The comparison 
+	 * circuits themselves are always built on the calling thread, in the same order, 
+	 * so the generated predicate does not depend on the number of threads.
 	 * @requires interpreter.relations in this.bounds.relations
 	 * @ensures options.reporter().generatingSBP() if a non-constant predicate is generated.
 	 * @return a symmetry breaking predicate for this.symmetries
@@ -165,43 +172,102 @@ final class SymmetryBreaker {
 		options.reporter().generatingSBP();
 		
 		final List<RelationParts> relParts = relParts();
+		final BooleanMatrix[] matrices = new BooleanMatrix[relParts.size()];
+		for(int i = 0; i < matrices.length; i++) { 
+			matrices[i] = interpreter.interpret(relParts.get(i).relation);
+		}
 		final BooleanFactory factory = interpreter.factory();
 		final BooleanAccumulator sbp = BooleanAccumulator.treeGate(Operator.AND);
-		final List<BooleanValue> original = new ArrayList<BooleanValue>(predLength);
-		final List<BooleanValue> permuted = new ArrayList<BooleanValue>(predLength);
 		
+		if (options.symmetryThreads() > 1) { 
+			final Comparands comparands = new Comparands(relParts, matrices, pairs(), predLength);
+			final ForkJoinPool pool = new ForkJoinPool(options.symmetryThreads());
+			try { 
+				pool.invoke(comparands);
+			} finally { 
+				pool.shutdown();
+			}
+			for(Comparison c : comparands.comparisons) { 
+				sbp.add(leq(factory, c.original, c.permuted));
+			}
+		} else {
+			final List<BooleanValue> original = new ArrayList<BooleanValue>(predLength);
+			final List<BooleanValue> permuted = new ArrayList<BooleanValue>(predLength);
+			for(IntSet sym : symmetries) {
+				IntIterator indeces = sym.iterator();
+				for(int prevIndex = indeces.next(); indeces.hasNext(); ) {
+					int curIndex = indeces.next();
+					comparands(relParts, matrices, sym.min(), prevIndex, curIndex, predLength, original, permuted);
+					sbp.add(leq(factory, original, permuted));
+					original.clear();
+					permuted.clear();
+					prevIndex = curIndex;
+				}
+			}
+		}
+		symmetries.clear(); // no symmetries left to break (this is conservative)
+		return factory.accumulate(sbp);
+	}
+	
+	/**
+	 * Returns the pairs of consecutive atoms in the sets that make up this.symmetries, 
+	 * in the order in which the lex leader predicate compares them.  Each pair is encoded 
+	 * as a triple in the returned array:  the representative of the pair's symmetry class, 
+	 * followed by the smaller and then the larger atom in the pair.
+	 * @return an array that encodes the pairs of consecutive atoms in this.symmetries, as described above
+	 */
+	private int[] pairs() { 
+		int size = 0;
+		for(IntSet sym : symmetries) { 
+			size += 3*(sym.size()-1);
+		}
+		final int[] pairs = new int[size];
+		int pos = 0;
 		for(IntSet sym : symmetries) {
-		
 			IntIterator indeces = sym.iterator();
 			for(int prevIndex = indeces.next(); indeces.hasNext(); ) {
 				int curIndex = indeces.next();
-				for(Iterator<RelationParts> rIter = relParts.iterator(); rIter.hasNext() && original.size() < predLength;) {
-					
-					RelationParts rparts = rIter.next();
-					Relation r = rparts.relation;
-					
-					if (!rparts.representatives.contains(sym.min())) continue;  // r does not range over sym
-					
-					BooleanMatrix m = interpreter.interpret(r);
-					for(IndexedEntry<BooleanValue> entry : m) {
-						int permIndex = permutation(r.arity(), entry.index(), prevIndex, curIndex);
-						BooleanValue permValue = m.get(permIndex);
-						if (permIndex==entry.index() || atSameIndex(original, permValue, permuted, entry.value()))
-							continue;
-						
-						original.add(entry.value());
-						permuted.add(permValue);			
-					}
-				}
-								
-				sbp.add(leq(factory, original, permuted));
-				original.clear();
-				permuted.clear();
+				pairs[pos++] = sym.min();
+				pairs[pos++] = prevIndex;
+				pairs[pos++] = curIndex;
 				prevIndex = curIndex;
 			}
 		}
-		symmetries.clear(); // no symmetries left to break (this is conservative)
-		return factory.accumulate(sbp);
+		return pairs;
+	}
+	
+	/**
+	 * Adds to the given lists the values that the lex leader predicate compares 
+	 * in order to break the symmetry between the atoms prevIndex and curIndex 
+	 * from the symmetry class represented by symMin.  The values are drawn from 
+	 * the given matrices, which are the interpretations of the relations in the 
+	 * given list, until the lists hold at least predLength values. 
+	 * @requires matrices.length = relParts.size()
+	 * @requires all i: [0..matrices.length) | matrices[i] is the interpretation of relParts[i].relation
+	 * @requires original.size() = permuted.size()
+	 * @ensures original and permuted are extended with the values of the entries of the given matrices and 
+	 * the values of those entries' images under the permutation that swaps prevIndex and curIndex, respectively
+	 */
+	private void comparands(List<RelationParts> relParts, BooleanMatrix[] matrices, int symMin, int prevIndex, int curIndex, 
+			int predLength, List<BooleanValue> original, List<BooleanValue> permuted) { 
+		for(int i = 0, max = matrices.length; i < max && original.size() < predLength; i++) {
+			
+			RelationParts rparts = relParts.get(i);
+			Relation r = rparts.relation;
+			
+			if (!rparts.representatives.contains(symMin)) continue;  // r does not range over sym
+			
+			BooleanMatrix m = matrices[i];
+			for(IndexedEntry<BooleanValue> entry : m) {
+				int permIndex = permutation(r.arity(), entry.index(), prevIndex, curIndex);
+				BooleanValue permValue = m.get(permIndex);
+				if (permIndex==entry.index() || atSameIndex(original, permValue, permuted, entry.value()))
+					continue;
+				
+				original.add(entry.value());
+				permuted.add(permValue);			
+			}
+		}
 	}
 	
 	/**
@@ -481,6 +547,78 @@ final class SymmetryBreaker {
 		return colParts;	
 	}
 	
+	/**
+	 * Collects the operands of the lex leader comparisons for a range of atom pairs, 
+	 * splitting the range in half until it is small enough to be processed sequentially.
+	 * @specfield relParts: [0..size) -> one RelationParts
+	 * @specfield matrices: [0..size) -> one BooleanMatrix
+	 * @specfield pairs: int[] // pairs of atoms to compare, encoded as described in {@linkplain SymmetryBreaker#pairs()}
+	 * @specfield comparisons: [0..pairs.length/3) -> lone Comparison // operands for each pair
+	 * @specfield lo, hi: [0..pairs.length/3] // range of pairs processed by this task
+	 * @author agent
+	 */
+	@SuppressWarnings("serial")
+	private final class Comparands extends RecursiveAction {
+		static final int BATCH = 256;
+		final List<RelationParts> relParts;
+		final BooleanMatrix[] matrices;
+		final int[] pairs;
+		final int predLength;
+		final Comparison[] comparisons;
+		final int lo, hi;
+		
+		/**
+		 * Constructs a task that collects the comparison operands for all of the given pairs.
+		 */
+		Comparands(List<RelationParts> relParts, BooleanMatrix[] matrices, int[] pairs, int predLength) { 
+			this(relParts, matrices, pairs, predLength, new Comparison[pairs.length/3], 0, pairs.length/3);
+		}
+		
+		/**
+		 * Constructs a task that collects the comparison operands for the pairs in the range [lo..hi), 
+		 * storing them in the given array. 
+		 */
+		private Comparands(List<RelationParts> relParts, BooleanMatrix[] matrices, int[] pairs, int predLength, 
+				Comparison[] comparisons, int lo, int hi) { 
+			this.relParts = relParts;
+			this.matrices = matrices;
+			this.pairs = pairs;
+			this.predLength = predLength;
+			this.comparisons = comparisons;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if (hi - lo > BATCH) { 
+				final int mid = (lo + hi) >>> 1;
+				invokeAll(new Comparands(relParts, matrices, pairs, predLength, comparisons, lo, mid), 
+						  new Comparands(relParts, matrices, pairs, predLength, comparisons, mid, hi));
+			} else {
+				for(int i = lo; i < hi; i++) { 
+					final Comparison c = new Comparison(predLength);
+					comparands(relParts, matrices, pairs[3*i], pairs[3*i+1], pairs[3*i+2], predLength, c.original, c.permuted);
+					comparisons[i] = c;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The operands of the lex leader comparison for one pair of atoms.
+	 */
+	private static final class Comparison {
+		final List<BooleanValue> original, permuted;
+		
+		Comparison(int predLength) {
+			this.original = new ArrayList<BooleanValue>(predLength);
+			this.permuted = new ArrayList<BooleanValue>(predLength);
+		}
+	}
+	
 	/**
 	 * An entry for a relation and the representative (least atom) for each
 	 * symmetry class in the relation's upper bound.
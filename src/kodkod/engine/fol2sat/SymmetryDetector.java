@@ -31,6 +31,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import kodkod.ast.Relation;
 import kodkod.instance.Bounds;
@@ -96,6 +98,63 @@ public final class SymmetryDetector {
 		return parts;
 	}
 
+	/**
+	 * Returns the coarsest sound partition of {@code bounds.universe} into symmetry classes, 
+	 * computed with the given number of threads.  If {@code threads} is 1, this method behaves 
+	 * like {@link #partition(Bounds)}.  Otherwise, the universe is refined by each tupleset in 
+	 * the given bounds independently, using a fork-join pool with the given parallelism, and the 
+	 * resulting partitions are intersected.  Refinement by a tupleset only ever separates two atoms 
+	 * for reasons that depend on that tupleset alone, so the intersection contains the same parts as 
+	 * the partition computed sequentially.  The parts are returned in the order of their smallest atoms.
+	 * @requires threads > 0
+	 * @return { symmetries: set IntSet | symmetries = partition(bounds) } 
+	 * @throws IllegalArgumentException  threads < 1
+	 */
+	public static Set<IntSet> partition(Bounds bounds, int threads) {
+		if (threads < 1) 
+			throw new IllegalArgumentException("threads < 1: " + threads);
+		final int usize = bounds.universe().size();
+		final List<TupleSet> sets = new ArrayList<TupleSet>();
+		for(IntIterator iter = bounds.ints().iterator(); iter.hasNext();) {
+			sets.add(bounds.exactBound(iter.next()));
+		}
+		sets.addAll(Arrays.asList(sort(bounds)));
+		if (threads==1 || usize==1 || sets.size() < 2) 
+			return partition(bounds);
+		
+		final Refinement refinement = new Refinement(bounds, sets.toArray(new TupleSet[sets.size()]));
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try { 
+			pool.invoke(refinement);
+		} finally { 
+			pool.shutdown();
+		}
+		
+		// intersect the partitions, numbering the parts of the intersection in the order of their smallest atoms
+		final int[] classes = new int[usize];
+		final Map<Long, Integer> refined = new HashMap<Long, Integer>();
+		for(int[] part : refinement.parts) { 
+			refined.clear();
+			for(int atom = 0; atom < usize; atom++) { 
+				final Long key = ((long)classes[atom] << 32) | part[atom];
+				Integer id = refined.get(key);
+				if (id==null) { 
+					id = refined.size();
+					refined.put(key, id);
+				}
+				classes[atom] = id;
+			}
+			if (refined.size()==usize) break;
+		}
+		
+		final List<IntSet> parts = new ArrayList<IntSet>();
+		for(int atom = 0; atom < usize; atom++) { 
+			if (classes[atom]==parts.size()) 
+				parts.add(Ints.bestSet(usize));
+			parts.get(classes[atom]).add(atom);
+		}
+		return new LinkedHashSet<IntSet>(parts);
+	}
 	
 	/**
 	 * Partitions this.bounds.universe into sets of equivalent atoms.
@@ -243,6 +302,65 @@ public final class SymmetryDetector {
 		}
 	}
 	
+	/**
+	 * Refines the whole universe of the given bounds by each of a number of tuplesets, 
+	 * splitting the tuplesets in half until a single one is left.
+	 * @specfield bounds: Bounds
+	 * @specfield sets: [0..size) -> one TupleSet
+	 * @specfield parts: [0..size) -> lone int[] // parts[i][a] is the index of the part of sets[i]'s refinement that contains a
+	 * @specfield lo, hi: [0..size] // range of tuplesets refined by this task
+	 * @author agent
+	 */
+	@SuppressWarnings("serial")
+	private static final class Refinement extends RecursiveAction {
+		final Bounds bounds;
+		final TupleSet[] sets;
+		final int[][] parts;
+		final int lo, hi;
+		
+		/**
+		 * Constructs a task that refines the universe of the given bounds by each of the given sets.
+		 * @ensures this.bounds' = bounds && this.sets' = sets && this.lo' = 0 && this.hi' = sets.length && no this.parts'
+		 */
+		Refinement(Bounds bounds, TupleSet[] sets) { 
+			this(bounds, sets, new int[sets.length][], 0, sets.length);
+		}
+		
+		/**
+		 * Constructs a task that refines the universe of the given bounds by sets[lo..hi), 
+		 * storing the results in the given array.
+		 */
+		private Refinement(Bounds bounds, TupleSet[] sets, int[][] parts, int lo, int hi) { 
+			this.bounds = bounds;
+			this.sets = sets;
+			this.parts = parts;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if (hi - lo > 1) { 
+				final int mid = (lo + hi) >>> 1;
+				invokeAll(new Refinement(bounds, sets, parts, lo, mid), new Refinement(bounds, sets, parts, mid, hi));
+			} else {
+				final SymmetryDetector detector = new SymmetryDetector(bounds);
+				detector.refinePartitions(sets[lo].indexView(), sets[lo].arity(), new HashMap<IntSet, IntSet>());
+				final int[] part = new int[detector.usize];
+				int id = 0;
+				for(IntSet set : detector.parts) { 
+					for(IntIterator atoms = set.iterator(); atoms.hasNext(); ) { 
+						part[atoms.next()] = id;
+					}
+					id++;
+				}
+				parts[lo] = part;
+			}
+		}
+	}
+	
 	/**
 	 * Returns an IntSet that can store elements
 	 * in the range [0..size), and that holds
@@ -21,21 +21,32 @@
  */
 package kodkod.engine.fol2sat;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 import kodkod.ast.Relation;
 import kodkod.engine.bool.BooleanConstant;
+import kodkod.engine.bool.BooleanFormula;
 import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATSimplifier;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
 import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntBitSet;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
 import kodkod.util.ints.Ints;
+import kodkod.util.ints.SparseSequence;
+import kodkod.util.ints.TreeSequence;
 
 /**
  * Stores the translation of a Kodkod problem to CNF.  A problem consists of 
@@ -183,6 +194,201 @@ public abstract class Translation {
 		return instance;
 	}
 	
+	/**
+	 * If {@code this.solver.solve()} is true, returns a lazy interpretation of the CNF solution as a 
+	 * mapping from Relations to sets of Tuples.  The returned instance is equal to {@link #interpret()}, 
+	 * but the tuple set of each relation is built only when that relation is first looked up.  
+	 * The solver itself is not queried lazily:  this method calls {@code this.solver.valueOf} for 
+	 * every primary variable and copies the values into a bit set before returning.  The returned 
+	 * instance therefore remains valid after further calls to {@code this.solver.solve()}, 
+	 * and the laziness saves only the cost of building the tuple sets that are never read.
+	 * 
+	 * <p>
+	 * The returned instance is unmodifiable; its {@linkplain Instance#clone() clone} is a modifiable copy
+	 * that binds every relation.  A lazy interpretation is cheaper than {@link #interpret()} when 
+	 * a client enumerating many solutions reads only a few relations from each.  The solvers 
+	 * in {@code kodkod.engine} use it if {@linkplain Options#lazyInterpretation() this.options.lazyInterpretation} is set.
+	 * </p>
+	 * 
+	 * @return an unmodifiable instance that is equal to {@code this.interpret()}
+	 * 
+	 * @throws IllegalStateException  this.solver.solve() has not been called or the outcome of the last call 
+	 *        was not <code>true</code>.
+	 * @see #interpret()
+	 */
+	public final Instance interpretLazily() {
+		final SATSolver solver = cnf();
+		int maxVar = 0;
+		for(Relation r : bounds.relations()) {
+			final IntSet vars = primaryVariables(r);
+			if (!vars.isEmpty()) 
+				maxVar = StrictMath.max(maxVar, vars.max());
+		}
+		final IntSet model = new IntBitSet(maxVar+1);
+		for(Relation r : bounds.relations()) {
+			final IntSet vars = primaryVariables(r);
+			if (!vars.isEmpty()) {
+				for(int lit = vars.min(), max = vars.max(); lit <= max; lit++) {
+					if (solver.valueOf(lit))
+						model.add(lit);
+				}
+			}
+		}
+		final SparseSequence<TupleSet> ints = new TreeSequence<TupleSet>();
+		for(IndexedEntry<TupleSet> entry : bounds.intBounds()) {
+			ints.put(entry.index(), entry.value().clone().unmodifiableView());
+		}
+		return Instance.viewOf(bounds.universe(), new LazyTuples(this, model), ints);
+	}
+	
+	/**
+	 * If {@code this.solver.solve()} is true, calls {@code visitor.visit(r, index)} for each tuple
+	 * that the current model assigns to each relation {@code r} in {@code this.bounds}.  The 
+	 * visited tuples are exactly those in {@code this.interpret().tuples(r)}, but no tuple sets
+	 * are built.  The tuples of each relation are visited in the increasing order of their indices,
+	 * and relations are visited in the order of {@code this.bounds.relations()}.  The values are
+	 * read directly from {@code this.solver}, so the model must not change while the visitor runs.
+	 * @ensures all r: this.bounds.relations | visits all tuples in this.interpret().tuples(r)
+	 * @throws NullPointerException  visitor = null
+	 * @throws IllegalStateException  this.solver.solve() has not been called or the outcome of the last call 
+	 *        was not <code>true</code>.
+	 * @see #interpret(Relation, TupleVisitor)
+	 */
+	public final void interpret(TupleVisitor visitor) {
+		for(Relation r : bounds.relations()) {
+			interpret(r, visitor);
+		}
+	}
+	
+	/**
+	 * If {@code this.solver.solve()} is true and {@code r} is in {@code this.bounds.relations}, 
+	 * calls {@code visitor.visit(r, index)} for each tuple that the current model assigns to {@code r}, 
+	 * in the increasing order of tuple indices.  Does nothing if {@code r} is not bound by {@code this.bounds}.
+	 * @ensures r in this.bounds.relations => visits all tuples in this.interpret().tuples(r)
+	 * @throws NullPointerException  visitor = null
+	 * @throws IllegalStateException  this.solver.solve() has not been called or the outcome of the last call 
+	 *        was not <code>true</code>.
+	 */
+	public final void interpret(Relation r, TupleVisitor visitor) {
+		if (visitor==null) throw new NullPointerException("visitor=null");
+		final TupleSet upper = bounds.upperBound(r);
+		if (upper==null) return;
+		final IntSet lower = bounds.lowerBound(r).indexView();
+		final IntSet vars = primaryVariables(r);
+		if (vars.isEmpty()) { 
+			for(IntIterator iter = lower.iterator(); iter.hasNext();) {
+				visitor.visit(r, iter.next());
+			}
+		} else {
+			final SATSolver solver = cnf();
+			int lit = vars.min();
+			for(IntIterator iter = upper.indexView().iterator(); iter.hasNext();) {
+				final int index = iter.next();
+				if (lower.contains(index) || solver.valueOf(lit++))
+					visitor.visit(r, index);
+			}
+		}
+	}
+	
+	/**
+	 * Receives the tuples of a model, one at a time, from the 
+	 * {@link Translation#interpret(TupleVisitor)} method.
+	 * @author agent
+	 */
+	public static interface TupleVisitor {
+		/**
+		 * Visits the tuple with the given index in the given relation.  The tuple 
+		 * itself is {@code r.universe.factory().tuple(r.arity(), index)}.
+		 */
+		public abstract void visit(Relation r, int index);
+	}
+	
+	/**
+	 * A map from the relations in a translation's bounds to their values in a fixed model.
+	 * The value of each relation is decoded on its first lookup and cached.  
+	 * @specfield translation: Translation
+	 * @specfield model: IntSet // primary variables that are true in the model
+	 * @author agent
+	 */
+	private static final class LazyTuples extends AbstractMap<Relation, TupleSet> {
+		private final Bounds bounds;
+		private final IntSet model;
+		private final Map<Relation, IntSet> vars;
+		private final Map<Relation, TupleSet> tuples;
+		
+		/**
+		 * Creates a lazy map of the relations in the given translation to their 
+		 * values in the given model.
+		 * @ensures this.translation' = translation && this.model' = model
+		 */
+		LazyTuples(Translation translation, IntSet model) {
+			this.bounds = translation.bounds();
+			this.model = model;
+			this.vars = new IdentityHashMap<Relation, IntSet>();
+			this.tuples = new LinkedHashMap<Relation, TupleSet>();
+			for(Relation r : bounds.relations()) {
+				vars.put(r, translation.primaryVariables(r));
+				tuples.put(r, null);
+			}
+		}
+		
+		/**
+		 * Returns the value of the given relation in this.model, decoding it if necessary.
+		 * @return r in this.translation.bounds.relations => this.translation.interpret().tuples(r) else null
+		 */
+		public TupleSet get(Object key) {
+			TupleSet value = tuples.get(key);
+			if (value==null && tuples.containsKey(key)) {
+				final Relation r = (Relation) key;
+				final TupleSet lower = bounds.lowerBound(r);
+				final IntSet rvars = vars.get(r);
+				if (rvars.isEmpty()) { 
+					value = lower.clone().unmodifiableView();
+				} else { 
+					final IntSet lowerIndices = lower.indexView();
+					final IntSet indices = Ints.bestSet(lower.capacity());
+					indices.addAll(lowerIndices);
+					int lit = rvars.min();
+					for(IntIterator iter = bounds.upperBound(r).indexView().iterator(); iter.hasNext();) {
+						final int index = iter.next();
+						if (!lowerIndices.contains(index) && model.contains(lit++))
+							indices.add(index);
+					}
+					value = bounds.universe().factory().setOf(r.arity(), indices).unmodifiableView();
+				}
+				tuples.put(r, value);
+			}
+			return value;
+		}
+		
+		/** @see java.util.AbstractMap#containsKey(java.lang.Object) */
+		public boolean containsKey(Object key) { return tuples.containsKey(key); }
+		
+		/** @see java.util.AbstractMap#keySet() */
+		public Set<Relation> keySet() { return Collections.unmodifiableSet(tuples.keySet()); }
+		
+		/** @see java.util.AbstractMap#size() */
+		public int size() { return tuples.size(); }
+		
+		/** @see java.util.AbstractMap#entrySet() */
+		public Set<Map.Entry<Relation, TupleSet>> entrySet() {
+			return new AbstractSet<Map.Entry<Relation, TupleSet>>() {
+				public int size() { return tuples.size(); }
+				public Iterator<Map.Entry<Relation, TupleSet>> iterator() {
+					final Iterator<Relation> keys = tuples.keySet().iterator();
+					return new Iterator<Map.Entry<Relation, TupleSet>>() {
+						public boolean hasNext() { return keys.hasNext(); }
+						public Map.Entry<Relation, TupleSet> next() {
+							final Relation r = keys.next();
+							return new AbstractMap.SimpleImmutableEntry<Relation, TupleSet>(r, get(r));
+						}
+						public void remove() { throw new UnsupportedOperationException(); }
+					};
+				}
+			};
+		}
+	}
+	
 	/**
 	 * A {@linkplain Whole whole} translation stores the complete CNF of encoding 
 	 * of a given problem.  Unlike an {@link Incremental incremental} translation, 
@@ -206,23 +412,33 @@ public abstract class Translation {
 		private final Map<Relation, IntSet> primaryVarUsage;
 		private final TranslationLog log;
 		private final int maxPrimaryVar;
+		private final BooleanFormula circuit;
 		
 		/**
-		 * Creates a whole translation using the given bounds, options, solver, var map, and log.
+		 * Creates a whole translation using the given bounds, options, solver, var map, log, and circuit.
 		 * 
 		 * @requires primaryVarUsage.keySet() in { r: bounds.relations | bounds.lower[r] != bounds.upper[r] }
 		 * @requires maxPrimaryVar = max(varUsage[Relation].max)
 		 * @requires all i: varUsage.map[Relation].ints | 1 <= i <= maxPrimaryVar
 		 * @requires varUsage.map[Relation].ints in solver.variables
+		 * @requires circuit != null => solver.clauses = CNF(circuit)
 		 * @ensures this.solver' = solver &&  this.bounds' = bounds &&
-		 *          this.options' = options && this.log' = log && this.vars' = varUsage
+		 *          this.options' = options && this.log' = log && this.vars' = varUsage &&
+		 *          this.circuit' = circuit
+		 * @ensures solver in SATSimplifier => solver.frozen' = solver.frozen + [1..maxPrimaryVar]
 		 */
-		Whole(Bounds bounds, Options options, SATSolver solver, Map<Relation, IntSet> varUsage, int maxPrimaryVar, TranslationLog log) {
+		Whole(Bounds bounds, Options options, SATSolver solver, Map<Relation, IntSet> varUsage, int maxPrimaryVar, TranslationLog log, BooleanFormula circuit) {
 			super(bounds, options);
+			if (solver instanceof SATSimplifier) { 
+				for(int i = 1; i <= maxPrimaryVar; i++) { 
+					((SATSimplifier) solver).freeze(i);
+				}
+			}
 			this.solver = solver;
 			this.log = log;
 			this.maxPrimaryVar = maxPrimaryVar;
 			this.primaryVarUsage = varUsage;
+			this.circuit = circuit;
 		}
 
 		/**
@@ -255,6 +471,34 @@ public abstract class Translation {
 		 * @return translation log for this translation, if one was generated, or null otherwise 
 		 */
 		public TranslationLog log() { return log; }
+		
+		/**
+		 * Returns the circuit from which this.cnf was generated, if it was retained, or null otherwise.
+		 * @return this.circuit
+		 */
+		BooleanFormula circuit() { return circuit; }
+		
+		/**
+		 * Returns the literals over primary variables that describe the current model of {@code this.cnf}.  
+		 * If this translation retained the boolean circuit from which {@code this.cnf} was generated (by setting 
+		 * {@code this.options.minimizeBlockingClauses}), the returned literals form an implicant of that circuit:  
+		 * every assignment that agrees with them satisfies {@code this.cnf}, regardless of the values of the 
+		 * remaining primary variables.  Otherwise, the returned array contains one literal for each primary variable.
+		 * @requires the last call to {@code this.cnf.solve()} returned true
+		 * @return some lits: int[] | 
+		 *           (all lit: lits | 1 <= |lit| <= this.numPrimaryVariables() && this.cnf.valueOf(|lit|) = lit > 0) &&
+		 *           (no this.circuit => #lits = this.numPrimaryVariables())
+		 */
+		public int[] implicant() {
+			if (circuit != null) { 
+				return Justifier.implicant(circuit, solver);
+			}
+			final int[] model = new int[maxPrimaryVar];
+			for(int i = 1; i <= maxPrimaryVar; i++) {
+				model[i-1] = solver.valueOf(i) ? i : -i;
+			}
+			return model;
+		}
 	}
 
 	/**
@@ -298,6 +542,10 @@ public abstract class Translation {
 		 */
 		private final Bool2CNFTranslator incrementer;
 		private final Set<IntSet> symmetries;
+		/**
+		 * @invariant selector = 0 || selector in this.interpreter.factory.components.label
+		 */
+		private int selector;
 		
 		/**
 		 * Creates an Incremental translation using the given bounds, options, symmetries of the original bounds, 
@@ -316,6 +564,23 @@ public abstract class Translation {
 			this.symmetries = originalSymmetries;
 		}
 		
+		/**
+		 * Returns the label of the variable that guards the CNF representation of the formula  
+		 * most recently added to this translation, if that formula was added as a 
+		 * retractable formula and its translation was not trivially true.  Otherwise returns 0.  
+		 * The guarded formula constrains the solutions of this.cnf only when the selector 
+		 * is passed to {@linkplain SATSolver#solve(int[]) this.cnf.solve(int[])} as an assumption.
+		 * @return this.selector
+		 * @see Translator#translateIncremental(kodkod.ast.Formula, Bounds, Incremental, boolean)
+		 */
+		public int selector() { return selector; }
+		
+		/**
+		 * Sets this.selector to the given value.
+		 * @ensures this.selector' = selector
+		 */
+		void setSelector(int selector) { this.selector = selector; }
+		
 		/**
 		 * Returns the symmetries induced by the original bounds.
 		 * @return this.symmetries
@@ -0,0 +1,366 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.BinaryIntExpression;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.ConstantExpression;
+import kodkod.ast.ConstantFormula;
+import kodkod.ast.Decl;
+import kodkod.ast.Decls;
+import kodkod.ast.ExprToIntCast;
+import kodkod.ast.Formula;
+import kodkod.ast.IntComparisonFormula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntToExprCast;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NaryIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.ProjectExpression;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.RelationPredicate;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.UnaryIntExpression;
+import kodkod.ast.Variable;
+import kodkod.ast.visitor.AbstractVoidVisitor;
+import kodkod.engine.bool.CircuitPreprocessor;
+import kodkod.engine.config.Options;
+import kodkod.engine.config.Reporter;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+
+/**
+ * A persistent, content-addressed cache of {@linkplain Translation.Whole whole translations}.  
+ * Each cache entry is a {@linkplain BinaryCNF translation file} in the {@linkplain Options#translationCache() cache directory} 
+ * whose name is a structural fingerprint of a problem: the formula DAG, the bounds, and the options that 
+ * affect translation.  On a hit, the CNF is loaded directly into a fresh solver and the translation 
+ * pipeline is skipped entirely.  The {@linkplain Options#reporter() reporter} is then told about the 
+ * stages whose arguments are stored in or known to the cache:  it receives 
+ * {@link Reporter#detectingSymmetries(Bounds) detectingSymmetries}, {@link Reporter#detectedSymmetries(Set) detectedSymmetries} 
+ * with the stored partitions, and {@link Reporter#translatingToBoolean(Formula, Bounds) translatingToBoolean} 
+ * with the given formula and bounds.  The other stages of the pipeline do not happen, and are not reported.
+ * 
+ * <p>The cache is best-effort:  entries that cannot be read or written are ignored, and the problem is 
+ * translated as if no cache were present.  Entries are written to a temporary file and then moved into 
+ * place, so a cache directory can be shared by concurrent processes.  Translations that carry 
+ * a {@linkplain Translation.Whole#log() log} or a circuit (for {@linkplain Options#minimizeBlockingClauses() 
+ * minimal blocking clauses}) are never cached, and neither are translations that use a 
+ * {@linkplain CircuitPreprocessor circuit preprocessor} without a {@linkplain CircuitPreprocessor#fingerprint() fingerprint}.</p>
+ * 
+ * @author agent
+ */
+final class TranslationCache {
+	/** Version of the fingerprint; changing it invalidates all existing entries. */
+	private static final int VERSION = 3;
+	
+	private TranslationCache() {}
+	
+	/**
+	 * Returns true if translations of problems with the given options can be cached.
+	 * @return some options.translationCache && options.logTranslation = 0 && !options.minimizeBlockingClauses && 
+	 *         no p: options.circuitPreprocessors | p.fingerprint() = null
+	 */
+	static boolean enabled(Options options) { 
+		if (options.translationCache()==null || options.logTranslation()!=0 || options.minimizeBlockingClauses())
+			return false;
+		for(CircuitPreprocessor p : options.circuitPreprocessors()) { 
+			if (p.fingerprint()==null) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the whole translation of the given problem, loading it from options.translationCache 
+	 * if the cache holds an entry for the problem, and storing it there otherwise.  If the translation 
+	 * is loaded from the cache, options.reporter is informed of the stages that are replayed from the entry.
+	 * @requires enabled(options)
+	 * @return some t: Translation.Whole |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
+	 * @see Translator#translate(Formula, Bounds, Options)
+	 */
+	static Translation.Whole translate(Formula formula, Bounds bounds, Options options) { 
+		final File dir = options.translationCache();
+		final File entry = new File(dir, hex(fingerprint(formula, bounds, options)) + ".kkt");
+		
+		if (entry.isFile()) { 
+			try {
+				final Set<IntSet> symmetries = BinaryCNF.symmetries(entry);
+				final Translation.Whole transl = BinaryCNF.read(entry, bounds, options);
+				final Reporter reporter = options.reporter();
+				reporter.detectingSymmetries(bounds);
+				reporter.detectedSymmetries(symmetries);
+				reporter.translatingToBoolean(formula, bounds);
+				return transl;
+			} catch (IOException e) {
+				/* a stale or corrupt entry, which is replaced below */
+			} catch (RuntimeException e) { 
+				/* ditto:  a corrupt entry may also make the reader fail with an unchecked exception */
+			}
+		}
+		
+		if (dir.isDirectory() || dir.mkdirs()) { 
+			File tmp = null;
+			try {
+				tmp = File.createTempFile("kodkod", ".tmp", dir);
+				final Translation.Whole transl = BinaryCNF.translate(formula, bounds, options, tmp);
+				try { 
+					Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) { 
+					tmp.delete();
+				}
+				return transl;
+			} catch (IOException e) { 
+				if (tmp!=null) tmp.delete();
+			}
+		}
+		
+		final Options uncached = options.clone();
+		uncached.setTranslationCache(null);
+		return Translator.translate(formula, bounds, uncached);
+	}
+	
+	/**
+	 * Returns a map from each relation in the given bounds to its position in bounds.relations().
+	 * @return a map from each relation in the given bounds to its position in bounds.relations().
+	 */
+	private static Map<Relation,Integer> positions(Bounds bounds) { 
+		final Map<Relation,Integer> positions = new IdentityHashMap<Relation,Integer>();
+		for(Relation r : bounds.relations()) { 
+			positions.put(r, positions.size());
+		}
+		return positions;
+	}
+	
+	/**
+	 * Returns the hexadecimal representation of the given bytes.
+	 * @return the hexadecimal representation of the given bytes.
+	 */
+	private static String hex(byte[] bytes) { 
+		final StringBuilder s = new StringBuilder(bytes.length*2);
+		for(byte b : bytes) { 
+			s.append(Character.forDigit((b >> 4) & 0xf, 16));
+			s.append(Character.forDigit(b & 0xf, 16));
+		}
+		return s.toString();
+	}
+	
+	/*---------------------- fingerprints ----------------------*/
+	
+	/**
+	 * Returns the SHA-256 digest of a structural serialization of the given problem.  The 
+	 * serialization consists of the universe (the class and string representation of each atom), 
+	 * the bounds (in the iteration order of bounds.relations), the options that affect 
+	 * translation, and a pre-order traversal of the formula DAG in which shared nodes are 
+	 * written once and referenced by number thereafter.  Relations are identified by their 
+	 * position in bounds.relations and variables by the order in which they are first 
+	 * encountered, so distinct leaves with the same name are told apart.
+	 * @return SHA-256 digest of the given problem
+	 */
+	static byte[] fingerprint(Formula formula, Bounds bounds, Options options) { 
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every Java platform implements SHA-256
+		}
+		final Fingerprint print = new Fingerprint(new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}, digest))), positions(bounds));
+		
+		print.token(VERSION);
+		final Universe universe = bounds.universe();
+		print.token(universe.size());
+		for(Object atom : universe) { 
+			print.token(atom.getClass().getName());
+			print.token(String.valueOf(atom));
+		}
+		for(Relation r : bounds.relations()) { 
+			print.token(r.name());
+			print.token(r.arity());
+			print.tokens(bounds.lowerBound(r).indexView());
+			print.tokens(bounds.upperBound(r).indexView());
+		}
+		print.token("ints");
+		for(IndexedEntry<TupleSet> e : bounds.intBounds()) { 
+			print.token(e.index());
+			print.tokens(e.value().indexView());
+		}
+		print.token(options.intEncoding().name());
+		print.token(options.bitwidth());
+		print.token(options.sharing());
+		print.token(options.symmetryBreaking());
+		print.token(options.skolemDepth());
+		print.token(options.closureEncoding().name());
+		print.token(options.cardinalityEncoding().name());
+		print.token(options.cnfEncoding().name());
+		print.token(options.circuitPreprocessors().size());
+		for(CircuitPreprocessor p : options.circuitPreprocessors()) { 
+			print.token(p.fingerprint());
+		}
+		
+		formula.accept(print);
+		print.flush();
+		return digest.digest();
+	}
+	
+	/**
+	 * Writes a structural serialization of the nodes that it visits to a stream.
+	 * @specfield out: DataOutputStream
+	 * @specfield relations: Relation -> lone int
+	 * @specfield nodes: Node -> lone int // numbers of the visited non-leaf nodes
+	 * @specfield variables: Variable -> lone int // numbers of the visited variables
+	 */
+	private static final class Fingerprint extends AbstractVoidVisitor { 
+		private final DataOutputStream out;
+		private final Map<Relation,Integer> relations;
+		private final Map<Node,Integer> nodes = new IdentityHashMap<Node,Integer>();
+		private final Map<Variable,Integer> variables = new IdentityHashMap<Variable,Integer>();
+		
+		Fingerprint(DataOutputStream out, Map<Relation,Integer> relations) { 
+			this.out = out;
+			this.relations = relations;
+		}
+		
+		/** Writes the given int to this.out. */
+		void token(int i) { 
+			try {
+				out.writeInt(i);
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // not reachable:  the underlying stream discards its output
+			}
+		}
+		
+		/** Writes the given string to this.out. */
+		void token(String s) { 
+			try {
+				out.writeUTF(s);
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // not reachable:  the underlying stream discards its output
+			}
+		}
+		
+		/** Writes the size and the elements of the given set to this.out. */
+		void tokens(IntSet ints) { 
+			token(ints.size());
+			for(IntIterator itr = ints.iterator(); itr.hasNext(); ) { 
+				token(itr.next());
+			}
+		}
+		
+		/** Flushes this.out. */
+		void flush() { 
+			try {
+				out.flush();
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // not reachable:  the underlying stream discards its output
+			}
+		}
+		
+		/**
+		 * Writes a back reference to n if it has been visited; otherwise numbers n and writes its type.
+		 * @see kodkod.ast.visitor.AbstractVoidVisitor#visited(kodkod.ast.Node)
+		 */
+		protected boolean visited(Node n) {
+			final Integer id = nodes.get(n);
+			if (id != null) { 
+				token("#");
+				token(id);
+				return true;
+			}
+			nodes.put(n, nodes.size());
+			token(n.getClass().getSimpleName());
+			return false;
+		}
+		
+		public void visit(Relation relation) { 
+			final Integer pos = relations.get(relation);
+			token("relation");
+			token(pos==null ? -1 : pos);
+			token(relation.name());
+			token(relation.arity());
+		}
+		
+		public void visit(Variable variable) { 
+			Integer id = variables.get(variable);
+			if (id==null) { 
+				id = variables.size();
+				variables.put(variable, id);
+			}
+			token("variable");
+			token(id);
+			token(variable.arity());
+		}
+		
+		public void visit(ConstantExpression constExpr) { token(constExpr.name()); }
+		public void visit(IntConstant intConst) { token("int"); token(intConst.value()); }
+		public void visit(ConstantFormula constant) { token(String.valueOf(constant.booleanValue())); }
+		
+		public void visit(Decls decls) { super.visit(decls); token(")"); }
+		public void visit(Decl decl) { token(decl.multiplicity().name()); super.visit(decl); }
+		public void visit(NaryExpression expr) { token(expr.op().name()); super.visit(expr); token(")"); }
+		public void visit(BinaryExpression binExpr) { token(binExpr.op().name()); super.visit(binExpr); }
+		public void visit(UnaryExpression unaryExpr) { token(unaryExpr.op().name()); super.visit(unaryExpr); }
+		public void visit(ProjectExpression project) { super.visit(project); token(")"); }
+		public void visit(IntToExprCast castExpr) { token(castExpr.op().name()); super.visit(castExpr); }
+		public void visit(ExprToIntCast intExpr) { token(intExpr.op().name()); super.visit(intExpr); }
+		public void visit(NaryIntExpression intExpr) { token(intExpr.op().name()); super.visit(intExpr); token(")"); }
+		public void visit(BinaryIntExpression intExpr) { token(intExpr.op().name()); super.visit(intExpr); }
+		public void visit(UnaryIntExpression intExpr) { token(intExpr.op().name()); super.visit(intExpr); }
+		public void visit(IntComparisonFormula intComp) { token(intComp.op().name()); super.visit(intComp); }
+		public void visit(QuantifiedFormula quantFormula) { token(quantFormula.quantifier().name()); super.visit(quantFormula); }
+		public void visit(NaryFormula formula) { token(formula.op().name()); super.visit(formula); token(")"); }
+		public void visit(BinaryFormula binFormula) { token(binFormula.op().name()); super.visit(binFormula); }
+		public void visit(ComparisonFormula compFormula) { token(compFormula.op().name()); super.visit(compFormula); }
+		public void visit(MultiplicityFormula multFormula) { token(multFormula.multiplicity().name()); super.visit(multFormula); }
+		
+		public void visit(RelationPredicate pred) { 
+			token(pred.name().name());
+			if (pred.name()==RelationPredicate.Name.FUNCTION) { 
+				token(((RelationPredicate.Function) pred).targetMult().name());
+			}
+			super.visit(pred);
+		}
+	}
+}
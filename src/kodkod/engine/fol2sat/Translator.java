@@ -46,6 +46,8 @@ import kodkod.engine.bool.BooleanFactory;
 import kodkod.engine.bool.BooleanFormula;
 import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.bool.BooleanValue;
+import kodkod.engine.bool.BooleanVariable;
+import kodkod.engine.bool.CircuitPreprocessor;
 import kodkod.engine.bool.Int;
 import kodkod.engine.bool.Operator;
 import kodkod.engine.config.Options;
@@ -119,7 +121,8 @@ public final class Translator {
 	 * Translates the given formula using the specified bounds and options.
 	 * The CNF representation of the given formula and bounds  is generated so that the magnitude 
 	 * of the literal representing the truth value of a given circuit is strictly larger than the magnitudes of 
-	 * the literals representing the truth values of the circuit's descendants.   
+	 * the literals representing the truth values of the circuit's descendants.  If options.translationCache 
+	 * is set, the translation is loaded from the cache when possible, and stored in it otherwise. 
 	 * @return some t: Translation.Whole |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
 	 * @throws NullPointerException  any of the arguments are null
 	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds.
@@ -127,6 +130,8 @@ public final class Translator {
 	 * be skolemized, or it can be skolemized but options.skolemize is false.
 	 */
 	public static Translation.Whole translate(Formula formula, Bounds bounds, Options options)  {
+		if (TranslationCache.enabled(options))
+			return TranslationCache.translate(formula, bounds, options);
 		return (Translation.Whole) (new Translator(formula,bounds,options)).translate();
 	}
 	
@@ -145,8 +150,29 @@ public final class Translator {
 	 * @throws IllegalArgumentException any of the preconditions on options are violated
 	 */
 	public static Translation.Incremental translateIncremental(Formula formula, Bounds bounds, Options options)  {
+		return translateIncremental(formula, bounds, options, false);
+	}
+	
+	/**
+	 * Translates the given formula using the specified bounds and options in such a way 
+	 * that the resulting translation can be extended with additional formulas and bounds, subject to 
+	 * the same options.  If the {@code retractable} flag is set, the CNF representation of the given formula
+	 * is guarded by a fresh {@linkplain Translation.Incremental#selector() selector} variable, so that the formula only 
+	 * constrains the solutions of the translation when the selector is passed as an 
+	 * {@linkplain SATSolver#solve(int[]) assumption} to the translation's solver.  In that case, 
+	 * the top-level predicates of the given formula are not used to break symmetries, since doing so 
+	 * would be unsound once the formula is retracted.
+	 * @requires options.solver.incremental() && options.logTranslation = 0  
+	 * @return some t: Translation.Incremental |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
+	 * @throws IllegalArgumentException any of the preconditions on options are violated
+	 * @see #translateIncremental(Formula, Bounds, Options)
+	 */
+	public static Translation.Incremental translateIncremental(Formula formula, Bounds bounds, Options options, boolean retractable)  {
 		checkIncrementalOptions(options);	
-		return (Translation.Incremental) (new Translator(formula, bounds, options, true)).translate();
+		return (Translation.Incremental) (new Translator(formula, bounds, options, true, retractable)).translate();
 	}
 	
 	/**
@@ -188,12 +214,32 @@ public final class Translator {
 	 * @throws IllegalArgumentException any of the other preconditions on the arguments are violated
 	 */
 	public static Translation.Incremental translateIncremental(Formula formula, Bounds bounds, Translation.Incremental translation)  {
+		return translateIncremental(formula, bounds, translation, false);
+	}
+	
+	/**
+	 * Updates the given translation with {@code CNF(formula, translation.originalBounds + bounds, translation.options)}, 
+	 * as described in {@linkplain #translateIncremental(Formula, Bounds, Translation.Incremental)}.  If the 
+	 * {@code retractable} flag is set, the CNF representation of the given formula is guarded by a fresh 
+	 * {@linkplain Translation.Incremental#selector() selector} variable, so that the formula only constrains
+	 * the solutions of the returned translation when the selector is passed as an 
+	 * {@linkplain SATSolver#solve(int[]) assumption} to the translation's solver.  Otherwise, the selector of the 
+	 * returned translation is 0.
+	 * @requires translation.cnf.solve() || some translation.cnf.failedAssumptions()
+	 * @return see {@link #translateIncremental(Formula, Bounds, Translation.Incremental)}
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by translation.bounds + bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
+	 * @throws IllegalArgumentException any of the other preconditions on the arguments are violated
+	 * @see #translateIncremental(Formula, Bounds, Translation.Incremental)
+	 */
+	public static Translation.Incremental translateIncremental(Formula formula, Bounds bounds, Translation.Incremental translation, boolean retractable)  {
 		checkIncrementalOptions(translation.options());
 		checkIncrementalBounds(bounds, translation);		
 		if (translation.trivial())  { 
-			return translateIncrementalTrivial(formula, bounds, translation);
+			return translateIncrementalTrivial(formula, bounds, translation, retractable);
 		} else {
-			return translateIncrementalNonTrivial(formula, bounds, translation);
+			return translateIncrementalNonTrivial(formula, bounds, translation, retractable);
 		}	
 	}
 
@@ -204,7 +250,7 @@ public final class Translator {
 	 * @requires transl.cnf.solve()
 	 * @return see {@link #translateIncremental(Formula, Bounds, Options)}
 	 **/
-	private static Translation.Incremental translateIncrementalTrivial(Formula formula, Bounds bounds, Translation.Incremental transl) {
+	private static Translation.Incremental translateIncrementalTrivial(Formula formula, Bounds bounds, Translation.Incremental transl, boolean retractable) {
 		if (!transl.cnf().solve()) 
 			throw new IllegalArgumentException("Expected a satisfiable translation, given " + transl);
 		
@@ -226,14 +272,17 @@ public final class Translator {
 		// re-translate the given formula with respect to tBounds.  note that we don't have to re-translate 
 		// the conjunction of transl.formula and formula since transl.formula is guaranteed to evaluate to 
 		// TRUE with respect to tBounds (since no bindings that were originally in tBounds were changed by the above loop).
-		final Translation.Incremental updated = translateIncremental(formula, tBounds, tOptions);
+		final Translation.Incremental updated = translateIncremental(formula, tBounds, tOptions, retractable);
 		
 		// we can't return the updated translation as is, since we have to make sure that updated.symmetries is set to
 		// transl.symmetries rather than the potentially finer set of symmetries induced by tBounds. note that 
 		// the updated translation currently has updated.originalBounds = tBounds, while updated.bounds is a copy of 
 		// tBounds with possibly additional skolem relations, as well as new bounds for some relations in formula.*components 
 		// due to symmetry breaking.
-		return new Translation.Incremental(updated.bounds(), tOptions, transl.symmetries(), updated.interpreter(), updated.incrementer());
+		final Translation.Incremental result = 
+			new Translation.Incremental(updated.bounds(), tOptions, transl.symmetries(), updated.interpreter(), updated.incrementer());
+		result.setSelector(updated.selector());
+		return result;
 	}
 	
 	/** 
@@ -242,7 +291,7 @@ public final class Translator {
 	 * @requires !transl.trivial()
 	 * @return see {@link #translateIncremental(Formula, Bounds, Options)}
 	 **/
-	private static Translation.Incremental translateIncrementalNonTrivial(Formula formula, Bounds bounds, Translation.Incremental transl) {
+	private static Translation.Incremental translateIncrementalNonTrivial(Formula formula, Bounds bounds, Translation.Incremental transl, boolean retractable) {
 		
 		final Options tOptions = transl.options();
 		final Bounds tBounds = transl.bounds();
@@ -262,14 +311,22 @@ public final class Translator {
 		final LeafInterpreter interpreter = transl.interpreter();
 		interpreter.extend(setDifference(tBounds.relations(), oldRelations), tBounds.lowerBounds(), tBounds.upperBounds());
 		
-		final BooleanValue circuit = FOL2BoolTranslator.translate(annotated, interpreter); 
+		final BooleanValue circuit;
+		if (retractable) { 
+			final BooleanVariable selector = newSelector(interpreter.factory());
+			circuit = interpreter.factory().implies(selector, FOL2BoolTranslator.translate(annotated, interpreter));
+			transl.setSelector(selector.label());
+		} else {
+			circuit = FOL2BoolTranslator.translate(annotated, interpreter); 
+			transl.setSelector(0);
+		}
 	
 		if (circuit==BooleanConstant.FALSE) {
 			// release the old solver and state, and return a fresh trivially false incremental translation.
 			transl.incrementer().solver().free();
 			return new Translation.Incremental(tBounds, tOptions, transl.symmetries(), 
 					LeafInterpreter.empty(tBounds.universe(), tOptions), 
-					Bool2CNFTranslator.translateIncremental(BooleanConstant.FALSE, tOptions.solver()));			
+					Bool2CNFTranslator.translateIncremental(BooleanConstant.FALSE, tOptions.solver(), tOptions.cnfEncoding()));			
 		} else if (circuit==BooleanConstant.TRUE) {
 			// must add any newly allocated primary variables to the solver for interpretation to work correctly 
 			final int maxVar = interpreter.factory().maxVariable();
@@ -285,6 +342,17 @@ public final class Translator {
 		return transl;
 	}
 	
+	/**
+	 * Allocates a fresh selector variable in the given factory.
+	 * @ensures factory.addVariables(1)
+	 * @return factory.variable(factory.maxFormula()')
+	 */
+	private static BooleanVariable newSelector(BooleanFactory factory) { 
+		final int label = factory.maxFormula() + 1;
+		factory.addVariables(1);
+		return factory.variable(label);
+	}
+	
 	/**
 	 * Checks that the given options are suitable for incremental translation.
 	 * @requires options.solver.incremental() && options.logTranslation = 0  
@@ -347,6 +415,7 @@ public final class Translator {
 	 * @specfield bounds: Bounds
 	 * @specfield options: Options
 	 * @specfield incremental: boolean
+	 * @specfield retractable: boolean
 	 */
 	private final Formula originalFormula;
 	private final Bounds originalBounds;
@@ -354,6 +423,9 @@ public final class Translator {
 	private final Options options;
 	private final boolean logging;
 	private final boolean incremental;
+	private final boolean retractable;
+	/** label of the variable that guards the translation of this.originalFormula, if this.retractable; 0 otherwise */
+	private int selector;
 	
 	/**
 	 * Constructs a Translator for the given formula, bounds, options and incremental flag.
@@ -363,15 +435,35 @@ public final class Translator {
 	 * 	this.options' = options and 
 	 *  this.originalBounds' = bounds and 
 	 * 	this.bounds' = bounds.clone() and
-	 *  this.incremental' = incremental 
+	 *  this.incremental' = incremental and
+	 *  this.retractable' = false
 	 */
 	private Translator(Formula formula, Bounds bounds, Options options, boolean incremental) {
+		this(formula, bounds, options, incremental, false);
+	}
+	
+	/**
+	 * Constructs a Translator for the given formula, bounds, options, incremental and retractable flags.
+	 * If the retractable flag is true, then the incremental flag must also be true, and the translator 
+	 * produces an initial {@linkplain Translation.Incremental incremental translation} in which the 
+	 * formula is guarded by a fresh selector variable.
+	 * @requires retractable => incremental
+	 * @ensures this.originalFormula' = formula and 
+	 * 	this.options' = options and 
+	 *  this.originalBounds' = bounds and 
+	 * 	this.bounds' = bounds.clone() and
+	 *  this.incremental' = incremental and
+	 *  this.retractable' = retractable
+	 */
+	private Translator(Formula formula, Bounds bounds, Options options, boolean incremental, boolean retractable) {
+		assert incremental || !retractable;
 		this.originalFormula = formula;
 		this.originalBounds = bounds;
 		this.bounds = bounds.clone();
 		this.options = options;
 		this.logging = options.logTranslation()>0;
 		this.incremental = incremental;
+		this.retractable = retractable;
 	}
 	
 	/**
@@ -404,7 +496,7 @@ public final class Translator {
 			if (!annotated.usesInts()) bounds.ints().clear();
 		}
 		// Detect symmetries.
-		final SymmetryBreaker breaker = new SymmetryBreaker(bounds, options.reporter());
+		final SymmetryBreaker breaker = new SymmetryBreaker(bounds, options);
 		// Optimize formula and bounds by using symmetry information to tighten bounds and 
 		// eliminate top-level predicates, and also by skolemizing.  Then translate the optimize
 		// formula and bounds to a circuit, augment the circuit with a symmetry breaking predicate 
@@ -448,7 +540,11 @@ public final class Translator {
 			}
 			return inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), false));		
 		} else {  			
-			annotated = inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), true).keySet());
+			// the predicates of a retractable formula cannot be used to break symmetries, since the resulting 
+			// tightened bounds would remain in effect after the formula is retracted
+			if (!retractable) {
+				annotated = inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), true).keySet());
+			}
 			return options.skolemDepth()>=0 ? Skolemizer.skolemize(annotated, bounds, options) : annotated;
 		}
 	}
@@ -554,7 +650,12 @@ public final class Translator {
 			circuit.add(breaker.generateSBP(interpreter, options));
 			return toCNF((BooleanFormula)factory.accumulate(circuit), interpreter, log);
 		} else {
-			final BooleanValue circuit = (BooleanValue)FOL2BoolTranslator.translate(annotated, interpreter);
+			BooleanValue circuit = FOL2BoolTranslator.translate(annotated, interpreter, options);
+			if (retractable) { 
+				final BooleanVariable var = newSelector(factory);
+				circuit = factory.implies(var, circuit);
+				selector = var.label();
+			}
 			if (circuit.op()==Operator.CONST) {
 				return trivial((BooleanConstant)circuit, null);
 			} 
@@ -562,6 +663,26 @@ public final class Translator {
 		}
 	}
 	
+	/**
+	 * Applies this.options.circuitPreprocessors to the given circuit, in order, and returns the result.
+	 * Stops early if the circuit is reduced to a constant.
+	 * @requires circuit in factory.components
+	 * @ensures all p: this.options.circuitPreprocessors[int] | this.options.reporter.preprocessedCircuit(p, _, _)
+	 * @return a circuit that is equivalent to the given circuit
+	 */
+	private BooleanValue preprocess(BooleanFormula circuit, BooleanFactory factory) { 
+		BooleanValue processed = circuit;
+		int size = CircuitPreprocessor.size(circuit);
+		for(CircuitPreprocessor preprocessor : options.circuitPreprocessors()) { 
+			processed = preprocessor.apply((BooleanFormula) processed, factory);
+			final int next = CircuitPreprocessor.size(processed);
+			options.reporter().preprocessedCircuit(preprocessor, size, next);
+			size = next;
+			if (processed.op()==Operator.CONST) break;
+		}
+		return processed;
+	}
+	
 	/**
 	 * Translates the given circuit to CNF, adds the clauses to a SATSolver returned
 	 * by options.solver(), and returns a Translation object constructed from the solver
@@ -581,16 +702,27 @@ public final class Translator {
 	 *           t.solver.solve() iff SAT(this.formula, this.bounds, this.options)
 	 */
 	private Translation toCNF(BooleanFormula circuit, LeafInterpreter interpreter, TranslationLog log) {	
+		if (!incremental && log==null && !options.circuitPreprocessors().isEmpty()) { 
+			final BooleanValue processed = preprocess(circuit, interpreter.factory());
+			if (processed.op()==Operator.CONST) 
+				return trivial((BooleanConstant)processed, log);
+			circuit = (BooleanFormula) processed;
+		}
 		options.reporter().translatingToCNF(circuit);
 		final int maxPrimaryVar = interpreter.factory().maxVariable();
 		if (incremental) {
-			final Bool2CNFTranslator incrementer = Bool2CNFTranslator.translateIncremental(circuit, maxPrimaryVar, options.solver());
-			return new Translation.Incremental(completeBounds(), options, SymmetryDetector.partition(originalBounds), interpreter, incrementer);
+			final Bool2CNFTranslator incrementer = Bool2CNFTranslator.translateIncremental(circuit, maxPrimaryVar, options.solver(), options.cnfEncoding());
+			final Translation.Incremental transl = 
+				new Translation.Incremental(completeBounds(), options, SymmetryDetector.partition(originalBounds), interpreter, incrementer);
+			transl.setSelector(selector);
+			return transl;
 		} else {
 			final Map<Relation, IntSet> varUsage = interpreter.vars();
 			interpreter = null; // enable gc
-			final SATSolver cnf = Bool2CNFTranslator.translate((BooleanFormula)circuit, maxPrimaryVar, options.solver());
-			return new Translation.Whole(completeBounds(), options, cnf, varUsage, maxPrimaryVar, log);
+			final SATSolver cnf = Bool2CNFTranslator.translate((BooleanFormula)circuit, maxPrimaryVar, options.solver(), options.cnfEncoding());
+			// retain the circuit only if it is needed for the computation of implicants during enumeration 
+			return new Translation.Whole(completeBounds(), options, cnf, varUsage, maxPrimaryVar, log, 
+					options.minimizeBlockingClauses() ? circuit : null);
 		}
 	}
 	
@@ -611,11 +743,11 @@ public final class Translator {
 			return new Translation.Incremental(completeBounds(), options, 
 					SymmetryDetector.partition(originalBounds), 
 					LeafInterpreter.empty(bounds.universe(), options), // empty interpreter
-					Bool2CNFTranslator.translateIncremental(outcome, options.solver()));
+					Bool2CNFTranslator.translateIncremental(outcome, options.solver(), options.cnfEncoding()));
 		} else {
 			return new Translation.Whole(completeBounds(), options, 
 					Bool2CNFTranslator.translate(outcome, options.solver()), 
-					(Map<Relation,IntSet>)Collections.EMPTY_MAP, 0, log);
+					(Map<Relation,IntSet>)Collections.EMPTY_MAP, 0, log, null);
 		}
 	}
 	
@@ -0,0 +1,723 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A wrapper that simplifies the clauses added to a SAT solver before they are 
+ * passed to the wrapped solver.  The clauses are buffered until the first call to 
+ * {@link #solve()} or {@link #solve(int[])}, and then simplified with unit propagation, 
+ * subsumption, self-subsuming resolution and bounded variable elimination.  Only 
+ * the simplified clauses are passed to the wrapped solver.  Clauses added 
+ * after the first call to solve are passed to the wrapped solver directly.
+ * 
+ * <p>A variable is eliminated by replacing the clauses in which it occurs with their 
+ * resolvents on that variable, provided that this does not increase the number of clauses.  
+ * The clauses of each eliminated variable are kept, so that the values of eliminated 
+ * variables can be computed from a model of the simplified clauses, and so that the variable 
+ * can be restored if a later clause, assumption or call to {@link #freeze(int)} mentions it.  
+ * The simplification is bounded by a fixed budget of steps, so it takes time roughly 
+ * linear in the size of the clauses.</p>
+ * 
+ * @specfield delegate: SATSolver // the wrapped solver
+ * @specfield eliminated: set this.variables - this.frozen
+ * @invariant this.variables = delegate.variables 
+ * @invariant some this.eliminated => [[delegate.clauses]] = [[this.clauses]] with this.eliminated existentially quantified 
+ * @author agent
+ */
+final class CNFSimplifier implements SATSimplifier {
+	/** Maximum length of a resolvent added by variable elimination. */
+	private static final int MAX_RESOLVENT = 20;
+	/** Maximum number of resolvents that are computed when trying to eliminate a variable. */
+	private static final int MAX_PRODUCT = 1024;
+	/** Maximum number of rounds of subsumption and elimination. */
+	private static final int MAX_ROUNDS = 4;
+	/** Maximum number of literal visits performed by simplification. */
+	private static final long BUDGET = 1L << 27;
+	
+	private final SATSolver delegate;
+	/** Clauses added before the first call to solve, or null once they have been simplified. */
+	private List<int[]> pending;
+	/** frozen[v] is true iff v is frozen. */
+	private boolean[] frozen;
+	/** eliminated[v] is the elimination of v, if v is eliminated, and null otherwise. */
+	private Elimination[] eliminated;
+	/** The eliminations performed by this simplifier, in order, including those that were undone. */
+	private final List<Elimination> eliminations;
+	/** extension[v] is the value of an eliminated variable v in the last model found by this solver. */
+	private boolean[] extension;
+	private boolean sat;
+	
+	/**
+	 * Constructs a simplifying wrapper for the given solver.
+	 * @requires no delegate.variables && no delegate.clauses
+	 * @ensures this.delegate' = delegate && no this.frozen' && no this.eliminated'
+	 */
+	CNFSimplifier(SATSolver delegate) {
+		this.delegate = delegate;
+		this.pending = new ArrayList<int[]>();
+		this.frozen = new boolean[1];
+		this.eliminated = new Elimination[1];
+		this.extension = new boolean[1];
+		this.eliminations = new ArrayList<Elimination>();
+		this.sat = false;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfVariables()
+	 */
+	public int numberOfVariables() {
+		return delegate.numberOfVariables();
+	}
+
+	/**
+	 * Returns the number of clauses in this solver.  Before the first call to 
+	 * solve, this is the number of clauses added to this solver.  Afterwards, 
+	 * it is the number of clauses in the wrapped solver.
+	 * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
+	 */
+	public int numberOfClauses() {
+		return pending==null ? delegate.numberOfClauses() : pending.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
+	 */
+	public void addVariables(int numVars) {
+		delegate.addVariables(numVars);
+		final int size = delegate.numberOfVariables() + 1;
+		if (size > frozen.length) { 
+			frozen = Arrays.copyOf(frozen, size);
+			eliminated = Arrays.copyOf(eliminated, size);
+			extension = Arrays.copyOf(extension, size);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 */
+	public boolean addClause(int[] lits) {
+		if (pending != null) { 
+			pending.add(lits.clone());
+			return true;
+		}
+		restore(lits);
+		return delegate.addClause(lits);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSimplifier#freeze(int)
+	 */
+	public void freeze(int variable) {
+		if (variable < 1 || variable > delegate.numberOfVariables())
+			throw new IllegalArgumentException(variable + " !in [1.." + delegate.numberOfVariables() + "]");
+		frozen[variable] = true;
+		restore(new int[]{ variable });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve() throws SATAbortedException {
+		simplify();
+		sat = delegate.solve();
+		if (sat) extend();
+		return sat;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 */
+	public boolean solve(int[] assumptions) throws SATAbortedException {
+		simplify();
+		restore(assumptions);
+		sat = delegate.solve(assumptions);
+		if (sat) extend();
+		return sat;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[], int)
+	 */
+	public boolean solve(int[] assumptions, int limit) throws SATAbortedException {
+		simplify();
+		restore(assumptions);
+		sat = delegate.solve(assumptions, limit);
+		if (sat) extend();
+		return sat;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public int[] failedAssumptions() {
+		return delegate.failedAssumptions();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#valueOf(int)
+	 */
+	public boolean valueOf(int variable) {
+		if (variable > 0 && variable < eliminated.length && eliminated[variable] != null) { 
+			if (!sat) throw new IllegalStateException();
+			return extension[variable];
+		}
+		return delegate.valueOf(variable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#free()
+	 */
+	public void free() {
+		pending = null;
+		eliminations.clear();
+		delegate.free();
+	}
+	
+	/**
+	 * Asks the delegate to stop solving, if it supports cancellation.
+	 * Otherwise does nothing.
+	 */
+	void abort() {
+		PortfolioSolver.abort(delegate);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "Simplifying(" + delegate + ")";
+	}
+	
+	/**
+	 * Simplifies the pending clauses, if any, and passes the result to the delegate.
+	 * @ensures no this.pending'
+	 */
+	private void simplify() { 
+		if (pending == null) return;
+		final List<int[]> clauses = pending;
+		pending = null;
+		(new Simplification(clauses)).run();
+	}
+	
+	/**
+	 * Restores all eliminated variables that occur in the given literals, together 
+	 * with all eliminated variables that occur in their clauses, by passing those clauses 
+	 * to the delegate.
+	 * @ensures no (abs(lits[int]) & this.eliminated')
+	 */
+	private void restore(int[] lits) { 
+		List<Elimination> restored = null;
+		for(int lit : lits) { 
+			final int var = StrictMath.abs(lit);
+			if (var < eliminated.length && eliminated[var] != null) { 
+				if (restored == null) restored = new ArrayList<Elimination>();
+				restored.add(eliminated[var]);
+				eliminated[var] = null;
+			}
+		}
+		if (restored == null) return;
+		for(int i = 0; i < restored.size(); i++) { 
+			for(int[] clause : restored.get(i).clauses) { 
+				for(int lit : clause) { 
+					final int var = StrictMath.abs(lit);
+					if (eliminated[var] != null) { 
+						restored.add(eliminated[var]);
+						eliminated[var] = null;
+					}
+				}
+			}
+		}
+		for(Elimination e : restored) { 
+			for(int[] clause : e.clauses) { 
+				delegate.addClause(clause.clone());
+			}
+		}
+	}
+	
+	/**
+	 * Computes the values of the eliminated variables from the model found by the delegate.  
+	 * The variables are processed in the reverse order of elimination.  An eliminated variable v
+	 * is set to true iff some clause that contains v is not satisfied by its other literals.  
+	 * Since the resolvents on v are satisfied, all clauses that contain -v are then satisfied 
+	 * by their other literals.
+	 * @ensures all v: this.eliminated | this.extension'[v] = the value of v in an extension of the delegate's model
+	 */
+	private void extend() { 
+		for(int i = eliminations.size()-1; i >= 0; i--) { 
+			final Elimination e = eliminations.get(i);
+			if (eliminated[e.var] != e) continue;
+			boolean value = false;
+			for(int[] clause : e.clauses) { 
+				if (clause[0] == e.var && !satisfied(clause, 1)) { 
+					value = true;
+					break;
+				}
+			}
+			extension[e.var] = value;
+		}
+	}
+	
+	/**
+	 * Returns true if one of the literals in clause[start..) is true in the current model.
+	 * @return some i: [start..clause.length) | this.valueOf(abs(clause[i])) = clause[i] > 0
+	 */
+	private boolean satisfied(int[] clause, int start) { 
+		for(int i = start; i < clause.length; i++) { 
+			final int lit = clause[i];
+			if (valueOf(StrictMath.abs(lit)) == lit > 0) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * The elimination of a variable.
+	 * @specfield var: int
+	 * @specfield clauses: set int[] // the clauses that contained var when it was eliminated, with the literal of var first
+	 */
+	private static final class Elimination {
+		final int var;
+		final int[][] clauses;
+		Elimination(int var, int[][] clauses) {
+			this.var = var;
+			this.clauses = clauses;
+		}
+	}
+	
+	/**
+	 * A clause stored by a simplification.
+	 * @specfield lits: set int
+	 */
+	private static final class StoredClause { 
+		int[] lits;
+		int size;
+		/** A bit set of the variables in this.lits, modulo 64. */
+		long signature;
+		boolean removed, queued;
+		
+		StoredClause(int[] lits) { 
+			this.lits = lits;
+			this.size = lits.length;
+			this.removed = this.queued = false;
+			sign();
+		}
+		
+		/** Recomputes this.signature. */
+		void sign() { 
+			signature = 0L;
+			for(int i = 0; i < size; i++) { 
+				signature |= 1L << (StrictMath.abs(lits[i]) & 63);
+			}
+		}
+	}
+	
+	/**
+	 * A single simplification of the pending clauses.
+	 * @author agent
+	 */
+	private final class Simplification { 
+		private final int vars;
+		private final List<StoredClause> clauses;
+		/** occurs[index(lit)] contains the clauses that contain lit, and possibly some removed clauses. */
+		private final List<List<StoredClause>> occurs;
+		/** count[index(lit)] is the number of live clauses that contain lit. */
+		private final int[] count;
+		/** The value of each variable: 1 if true, -1 if false, and 0 if unassigned. */
+		private final byte[] value;
+		/** The literals asserted by the clauses, in the order in which they were found. */
+		private final int[] trail;
+		private int trailSize, propagated;
+		/** marks[index(lit)] is used to compare clauses in linear time. */
+		private final boolean[] marks;
+		private final boolean[] touched;
+		private final ArrayDeque<StoredClause> queue;
+		private long steps;
+		private boolean conflict;
+		
+		/**
+		 * Constructs a simplification for the given clauses.
+		 */
+		Simplification(List<int[]> clauses) { 
+			this.vars = delegate.numberOfVariables();
+			this.clauses = new ArrayList<StoredClause>(clauses.size());
+			this.occurs = new ArrayList<List<StoredClause>>(2*vars+2);
+			for(int i = 2*vars+2; i > 0; i--) { 
+				occurs.add(new ArrayList<StoredClause>(4));
+			}
+			this.count = new int[2*vars+2];
+			this.value = new byte[vars+1];
+			this.trail = new int[vars];
+			this.marks = new boolean[2*vars+2];
+			this.touched = new boolean[vars+1];
+			this.queue = new ArrayDeque<StoredClause>();
+			this.steps = 0;
+			this.conflict = false;
+			for(int i = 0, max = clauses.size(); i < max && !conflict; i++) { 
+				add(clauses.get(i));
+				clauses.set(i, null);
+			}
+		}
+		
+		/**
+		 * Returns the index of the given literal in this.occurs, this.count, and this.marks.
+		 */
+		private int index(int lit) { 
+			return lit > 0 ? lit << 1 : (-lit << 1) | 1;
+		}
+		
+		/**
+		 * Simplifies this.clauses and passes the results to the delegate.
+		 */
+		void run() { 
+			propagate();
+			Arrays.fill(touched, true);
+			for(int round = 0; round < MAX_ROUNDS && !conflict && steps < BUDGET; round++) { 
+				subsume();
+				if (conflict || !eliminate()) break;
+			}
+			if (conflict) { 
+				delegate.expectClauses(1);
+				delegate.addClause(new int[0]);
+				return;
+			}
+			int remaining = trailSize;
+			for(StoredClause c : clauses) { 
+				if (!c.removed) remaining++;
+			}
+			delegate.expectClauses(remaining);
+			for(int i = 0; i < trailSize; i++) { 
+				delegate.addClause(new int[]{ trail[i] });
+			}
+			for(StoredClause c : clauses) { 
+				if (!c.removed) 
+					delegate.addClause(c.size==c.lits.length ? c.lits : Arrays.copyOf(c.lits, c.size));
+			}
+		}
+		
+		/**
+		 * Adds the given clause to this simplification.  Repeated literals are removed, 
+		 * tautologies are ignored, and unit clauses are recorded as assignments.
+		 */
+		private void add(int[] lits) { 
+			int size = 0;
+			boolean tautology = false;
+			for(int lit : lits) { 
+				if (marks[index(-lit)]) { 
+					tautology = true;
+				} else if (!marks[index(lit)]) { 
+					marks[index(lit)] = true;
+					lits[size++] = lit;
+				}
+			}
+			for(int i = 0; i < size; i++) { 
+				marks[index(lits[i])] = false;
+			}
+			if (tautology) { 
+				return;
+			} else if (size == 0) { 
+				conflict = true;
+			} else if (size == 1) { 
+				assign(lits[0]);
+			} else { 
+				final StoredClause c = new StoredClause(size==lits.length ? lits : Arrays.copyOf(lits, size));
+				clauses.add(c);
+				for(int lit : c.lits) { 
+					occurs.get(index(lit)).add(c);
+					count[index(lit)]++;
+				}
+				enqueue(c);
+			}
+		}
+		
+		/**
+		 * Adds the given clause to the subsumption queue, if it is not already on it.
+		 */
+		private void enqueue(StoredClause c) { 
+			if (!c.queued) { 
+				c.queued = true;
+				queue.add(c);
+			}
+		}
+		
+		/**
+		 * Asserts the given literal.
+		 */
+		private void assign(int lit) { 
+			final int var = StrictMath.abs(lit);
+			final byte val = (byte) (lit > 0 ? 1 : -1);
+			if (value[var] == 0) { 
+				value[var] = val;
+				trail[trailSize++] = lit;
+			} else if (value[var] != val) { 
+				conflict = true;
+			}
+		}
+		
+		/**
+		 * Removes the clauses satisfied by the asserted literals, and the 
+		 * falsified literals from the remaining clauses.
+		 */
+		private void propagate() { 
+			while(propagated < trailSize && !conflict) { 
+				final int lit = trail[propagated++];
+				for(StoredClause c : occurs.get(index(lit))) { 
+					if (!c.removed) remove(c);
+				}
+				occurs.get(index(lit)).clear();
+				final List<StoredClause> falsified = occurs.get(index(-lit));
+				for(StoredClause c : falsified.toArray(new StoredClause[falsified.size()])) { 
+					if (!c.removed) strengthen(c, -lit);
+				}
+			}
+		}
+		
+		/**
+		 * Removes the given clause.
+		 */
+		private void remove(StoredClause c) { 
+			c.removed = true;
+			for(int i = 0; i < c.size; i++) { 
+				count[index(c.lits[i])]--;
+				touched[StrictMath.abs(c.lits[i])] = true;
+			}
+		}
+		
+		/**
+		 * Removes the given literal from the given clause.
+		 */
+		private void strengthen(StoredClause c, int lit) { 
+			int i = 0;
+			while(c.lits[i] != lit) { i++; }
+			System.arraycopy(c.lits, i+1, c.lits, i, c.size-i-1);
+			c.size--;
+			c.sign();
+			occurs.get(index(lit)).remove(c);
+			count[index(lit)]--;
+			touched[StrictMath.abs(lit)] = true;
+			if (c.size == 1) { 
+				assign(c.lits[0]);
+			} else { 
+				enqueue(c);
+			}
+		}
+		
+		/**
+		 * Returns the live clauses that contain the given literal, and drops the removed clauses 
+		 * from the literal's occurrence list.
+		 */
+		private List<StoredClause> live(int lit) { 
+			final List<StoredClause> all = occurs.get(index(lit));
+			if (all.size() > count[index(lit)]) { 
+				int j = 0;
+				for(int i = 0, max = all.size(); i < max; i++) { 
+					final StoredClause c = all.get(i);
+					if (!c.removed) all.set(j++, c);
+				}
+				all.subList(j, all.size()).clear();
+			}
+			return all;
+		}
+		
+		/**
+		 * Uses each clause on the subsumption queue to remove the clauses that it subsumes, 
+		 * and to strengthen the clauses with which it can be self-subsumingly resolved.
+		 */
+		private void subsume() { 
+			while(!queue.isEmpty() && !conflict && steps < BUDGET) { 
+				final StoredClause c = queue.poll();
+				c.queued = false;
+				if (c.removed) continue;
+				// the clauses subsumed or strengthened by c contain its least frequent variable 
+				int best = c.lits[0];
+				for(int i = 1; i < c.size; i++) { 
+					final int lit = c.lits[i];
+					if (count[index(lit)] + count[index(-lit)] < count[index(best)] + count[index(-best)]) 
+						best = lit;
+				}
+				for(int i = 0; i < c.size; i++) { 
+					marks[index(c.lits[i])] = true;
+				}
+				for(int lit = best, k = 0; k < 2; lit = -lit, k++) { 
+					final List<StoredClause> candidates = live(lit);
+					for(StoredClause d : candidates.toArray(new StoredClause[candidates.size()])) { 
+						if (d == c || d.removed || d.size < c.size || (c.signature & ~d.signature) != 0) continue;
+						final int flip = subsumes(c, d);
+						if (flip == 0) { 
+							remove(d);
+						} else if (flip != Integer.MIN_VALUE) { 
+							strengthen(d, -flip);
+							if (conflict) break;
+						}
+					}
+				}
+				for(int i = 0; i < c.size; i++) { 
+					marks[index(c.lits[i])] = false;
+				}
+				propagate();
+			}
+		}
+		
+		/**
+		 * Returns 0 if c subsumes d; a literal lit of c if removing -lit from d would 
+		 * make d subsumed by c; and Integer.MIN_VALUE otherwise.
+		 * @requires the literals of c are marked
+		 */
+		private int subsumes(StoredClause c, StoredClause d) { 
+			steps += d.size;
+			int found = 0, flip = 0;
+			for(int i = 0; i < d.size; i++) { 
+				final int lit = d.lits[i];
+				if (marks[index(lit)]) { 
+					found++;
+				} else if (marks[index(-lit)]) { 
+					if (flip != 0) return Integer.MIN_VALUE;
+					flip = -lit;
+					found++;
+				}
+			}
+			return found == c.size ? flip : Integer.MIN_VALUE;
+		}
+		
+		/**
+		 * Tries to eliminate each unfrozen, unassigned variable that has been touched since the 
+		 * last call, in the order of increasing number of occurrences, and returns true if
+		 * some variable was eliminated.
+		 */
+		private boolean eliminate() { 
+			int size = 0;
+			final long[] candidates = new long[vars];
+			for(int var = 1; var <= vars; var++) { 
+				if (touched[var] && !frozen[var] && value[var] == 0 && eliminated[var] == null) { 
+					final long product = (long) count[index(var)] * count[index(-var)];
+					final long cost = product + count[index(var)] + count[index(-var)];
+					if (cost > 0 && product <= MAX_PRODUCT) candidates[size++] = (cost << 32) | var;
+				}
+				touched[var] = false;
+			}
+			Arrays.sort(candidates, 0, size);
+			boolean progress = false;
+			for(int i = 0; i < size && !conflict && steps < BUDGET; i++) { 
+				if (eliminate((int) candidates[i])) { 
+					progress = true;
+					propagate();
+					subsume();
+				}
+			}
+			return progress;
+		}
+		
+		/**
+		 * Eliminates the given variable if the number of its non-tautological resolvents 
+		 * is no greater than the number of clauses in which it occurs, and returns true 
+		 * if the variable was eliminated.
+		 */
+		private boolean eliminate(int var) { 
+			if (value[var] != 0 || eliminated[var] != null) return false;
+			final StoredClause[] pos = live(var).toArray(new StoredClause[0]);
+			final StoredClause[] neg = live(-var).toArray(new StoredClause[0]);
+			if (pos.length + neg.length == 0 || (long) pos.length * neg.length > MAX_PRODUCT) return false;
+			final List<int[]> resolvents = new ArrayList<int[]>();
+			for(StoredClause p : pos) { 
+				for(int i = 0; i < p.size; i++) { 
+					marks[index(p.lits[i])] = true;
+				}
+				boolean bounded = true;
+				for(StoredClause n : neg) { 
+					final int[] resolvent = resolve(p, n, var);
+					if (resolvent == null) continue;
+					if (resolvent.length > MAX_RESOLVENT || resolvents.size() == pos.length + neg.length) { 
+						bounded = false;
+						break;
+					}
+					resolvents.add(resolvent);
+				}
+				for(int i = 0; i < p.size; i++) { 
+					marks[index(p.lits[i])] = false;
+				}
+				if (!bounded) return false;
+			}
+			final int[][] saved = new int[pos.length + neg.length][];
+			for(int i = 0; i < saved.length; i++) { 
+				final StoredClause c = i < pos.length ? pos[i] : neg[i-pos.length];
+				final int pivot = i < pos.length ? var : -var;
+				final int[] clause = Arrays.copyOf(c.lits, c.size);
+				for(int j = 0; j < clause.length; j++) { 
+					if (clause[j] == pivot) { 
+						clause[j] = clause[0];
+						clause[0] = pivot;
+						break;
+					}
+				}
+				saved[i] = clause;
+				remove(c);
+			}
+			final Elimination e = new Elimination(var, saved);
+			eliminated[var] = e;
+			eliminations.add(e);
+			for(int[] resolvent : resolvents) { 
+				add(resolvent);
+			}
+			return true;
+		}
+		
+		/**
+		 * Returns the resolvent of p and n on the given variable, or null if it is a tautology.
+		 * @requires var in p.lits && -var in n.lits
+		 * @requires the literals of p are marked
+		 */
+		private int[] resolve(StoredClause p, StoredClause n, int var) { 
+			steps += n.size;
+			int extra = 0;
+			for(int i = 0; i < n.size; i++) { 
+				final int lit = n.lits[i];
+				if (lit == -var || marks[index(lit)]) continue;
+				if (marks[index(-lit)]) return null;
+				extra++;
+			}
+			final int[] resolvent = new int[p.size - 1 + extra];
+			int j = 0;
+			for(int i = 0; i < p.size; i++) { 
+				if (p.lits[i] != var) resolvent[j++] = p.lits[i];
+			}
+			for(int i = 0; i < n.size; i++) { 
+				final int lit = n.lits[i];
+				if (lit != -var && !marks[index(lit)]) resolvent[j++] = lit;
+			}
+			return resolvent;
+		}
+	}
+}
@@ -28,8 +28,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 
@@ -37,7 +39,17 @@ import java.util.List;
 
 /**
  * An implementation of a wrapper for an external SAT solver, 
- * executed in a separate process.
+ * executed in a separate process.  The solver reads its input either from 
+ * a CNF file, which is written as clauses are added, or from its standard input.
+ * In the latter case, the number of clauses must be declared with {@link #expectClauses(int)} 
+ * before the first clause is added.  The solver is started when the first clause is added, and 
+ * the DIMACS header and the clauses are written to its standard input as they are added, while 
+ * its output is read by a separate thread.
+ * 
+ * <p>The solver process is run once, on the clauses added before the first call to {@link #solve()} 
+ * or {@link #solve(int[])}.  The assumptions passed to the latter are added to that run as unit clauses, 
+ * which, in the streaming mode, must be included in the declared number of clauses.  
+ * Later calls are answered from the outcome of the run when possible, and fail otherwise.</p>
  * @author Emina Torlak
  */
 final class ExternalSolver implements SATSolver {
@@ -47,38 +59,65 @@ final class ExternalSolver implements SATSolver {
 	private final String executable, inTemp;
 	private final String[] options;
 	private final RandomAccessFile cnf;
+	/**
+	 * In streaming mode, the declared number of clauses, or -1 if none has been declared;  the standard 
+	 * input of the solver process, or null if the process has not been started; the bytes bytes[0..pos) 
+	 * that are yet to be written to it;  the thread that reads the output of the process; and the 
+	 * exception, if any, with which that thread failed.
+	 */
+	private int expected;
+	private OutputStream input;
+	private final byte[] bytes;
+	private int pos;
+	private Thread reader;
+	private volatile SATAbortedException outputError;
+	private static final int BLOCK = 1 << 16;
+	private static final int LIMIT = BLOCK - 12; // room for a literal and its separator
 	private final BitSet solution;
+	/** The assumptions under which the solver process was run, or null if it has not been run. */
+	private int[] assumed;
 	private volatile Boolean sat;
 	private volatile int vars, clauses;
+	private volatile Process process;
 
 
 	/**
 	 * Constructs an ExternalSolver that will execute the specified binary
 	 * with the given options on the {@code inTemp} file.  The {@code inTemp} file 
 	 * will be initialized to contain all clauses added to this solver via the 
-	 * {@link #addClause(int[])} method.  The solver is assumed to write its output 
-	 * to standard out.  The {@code deleteTemp} flag indicates whether the temporary 
-	 * files should be deleted when they are no longer needed by this solver.
+	 * {@link #addClause(int[])} method.  If {@code inTemp} is null, the clauses 
+	 * are instead written to the solver's standard input as they are added.  
+	 * The solver is assumed to write its output to standard out.  The {@code deleteTemp} flag indicates 
+	 * whether the temporary files should be deleted when they are no longer needed by this solver.
 	 */
 	ExternalSolver(String executable, String inTemp, boolean deleteTemp, String... options) {
-		RandomAccessFile file = null;
-		try {
-			file = new RandomAccessFile(inTemp, "rw");
-			file.setLength(0);
-		} catch (FileNotFoundException e) {
-			throw new SATAbortedException(e);
-		} catch (IOException e) {
-			close(file);
-			throw new SATAbortedException(e);
+		if (inTemp==null) { 
+			this.expected = -1;
+			this.bytes = new byte[BLOCK];
+			this.pos = 0;
+			this.cnf = null;
+			this.buffer = null;
+		} else {
+			RandomAccessFile file = null;
+			try {
+				file = new RandomAccessFile(inTemp, "rw");
+				file.setLength(0);
+			} catch (FileNotFoundException e) {
+				throw new SATAbortedException(e);
+			} catch (IOException e) {
+				close(file);
+				throw new SATAbortedException(e);
+			}
+			this.cnf = file;
+			// get enough space into the buffer for the cnf header, which will be written last
+			this.buffer = new StringBuilder();
+			for(int i = headerLength(); i > 0; i--) {
+				buffer.append(" ");
+			}
+			buffer.append("\n");
+			this.bytes = null;
 		}
 		this.deleteTemp = deleteTemp;
-		this.cnf = file;
-		// get enough space into the buffer for the cnf header, which will be written last
-		this.buffer = new StringBuilder();
-		for(int i = headerLength(); i > 0; i--) {
-			buffer.append(" ");
-		}
-		buffer.append("\n");
 		this.sat = null;
 		this.solution = new BitSet();
 		this.vars = 0;
@@ -128,28 +167,98 @@ final class ExternalSolver implements SATSolver {
 		}
 	}
 
+	/**
+	 * Writes bytes[0..pos) to the standard input of the solver process.  If the bytes 
+	 * cannot be written, the process is destroyed.
+	 * @requires this.input != null
+	 * @ensures this.pos' = 0
+	 * @throws SATAbortedException  the bytes could not be written
+	 */
+	private final void flushBytes() { 
+		try {
+			input.write(bytes, 0, pos);
+		} catch (IOException e) {
+			abort();
+			close(input);
+			throw new SATAbortedException("Could not write the CNF to " + executable + ".", e);
+		} finally { 
+			pos = 0;
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 * @throws IllegalStateException  this solver streams its clauses, and the number of clauses 
+	 * has not been declared, or this clause exceeds it
 	 */
 	public boolean addClause(int[] lits) {
-		clauses++;
-		if (buffer.length()>capacity) 
-			flush();
-		for(int lit: lits) {
-			buffer.append(lit);
-			buffer.append(" ");
+		if (assumed==null) { // clauses added after the solver has been run are only counted
+			if (cnf==null) { 
+				if (expected < 0) 
+					throw new IllegalStateException("The number of clauses must be declared before they are streamed to " + executable + ".");
+				if (clauses == expected)
+					throw new IllegalStateException("More clauses than the declared " + expected + " added to " + executable + ".");
+				if (input==null) 
+					startStreaming();
+			}
+			write(lits);
 		}
-		buffer.append("0\n");
+		clauses++;
 		return true;
 	}
-
+	
+	/**
+	 * In the streaming mode, records that the given number of clauses, including the unit clauses for the 
+	 * assumptions passed to the first call to {@link #solve(int[])}, will be written to the solver.   
+	 * In the file-based mode, the header is written last, so the count is not needed and ignored.
+	 * @see kodkod.engine.satlab.SATSolver#expectClauses(int)
+	 * @throws IllegalStateException  this solver streams its clauses and has already started the solver
+	 */
+	public void expectClauses(int count) {
+		if (count < 0)
+			throw new IllegalArgumentException("count < 0: " + count);
+		if (cnf==null) { 
+			if (input != null || assumed != null)
+				throw new IllegalStateException("The clauses are already being streamed to " + executable + ".");
+			expected = count;
+		}
+	}
+	
+	/**
+	 * Writes the given clause to the cnf file or to the solver's standard input.
+	 */
+	private void write(int[] lits) { 
+		if (cnf==null) { 
+			for(int lit : lits) { 
+				if (pos > LIMIT) 
+					flushBytes();
+				pos = writeInt(lit, bytes, pos);
+				bytes[pos++] = ' ';
+			}
+			if (pos > LIMIT) 
+				flushBytes();
+			bytes[pos++] = '0';
+			bytes[pos++] = '\n';
+		} else { 
+			if (buffer.length()>capacity) 
+				flush();
+			for(int lit: lits) {
+				buffer.append(lit);
+				buffer.append(" ");
+			}
+			buffer.append("0\n");
+		}
+	}
+	
 	/**
 	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
 	 */
 	public void addVariables(int numVars) {
 		if (numVars < 0)
 			throw new IllegalArgumentException("vars < 0: " + numVars);
+		if (numVars > 0 && input != null) 
+			throw new IllegalStateException("The header has already been streamed to " + executable + ".");
 		vars += numVars;
 	}
 
@@ -157,9 +266,15 @@ final class ExternalSolver implements SATSolver {
 	 * @see kodkod.engine.satlab.SATSolver#free()
 	 */
 	public synchronized void free() {
-		close(cnf);
-		if (deleteTemp) {
-			(new File(inTemp)).delete();
+		if (input != null && assumed == null) { // the solver was started but not run
+			abort();
+			close(input);
+		}
+		if (cnf != null) {
+			close(cnf);
+			if (deleteTemp) {
+				(new File(inTemp)).delete();
+			}
 		}
 	}
 
@@ -204,62 +319,310 @@ final class ExternalSolver implements SATSolver {
 	 * @see kodkod.engine.satlab.SATSolver#solve()
 	 */
 	public boolean solve() throws SATAbortedException {
-		if (sat==null) {
-			flush();
-			Process p = null;
-			BufferedReader out = null;
-			try {
-				cnf.seek(0);
-				cnf.writeBytes("p cnf " + vars + " " + clauses);
-				cnf.close();
-
-				final String[] command = new String[options.length+2];
-				command[0] = executable;
-				System.arraycopy(options, 0, command, 1, options.length);
-				command[command.length-1] = inTemp;
-				p = Runtime.getRuntime().exec(command);
+		return solve(new int[0]);
+	}
+	
+	/**
+	 * Returns true if the given literals are all true in this.solution.
+	 * @requires this.sat = TRUE
+	 */
+	private boolean satisfies(int[] lits) { 
+		for(int lit : lits) { 
+			if (solution.get(StrictMath.abs(lit)-1) != (lit > 0)) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true if the given literals include all literals in this.assumed.
+	 * @requires some this.assumed
+	 */
+	private boolean extendsAssumed(int[] lits) { 
+		final int[] sorted = lits.clone();
+		Arrays.sort(sorted);
+		for(int lit : assumed) { 
+			if (Arrays.binarySearch(sorted, lit) < 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Runs the solver process on this.clauses and the given assumptions, which are added to the cnf as 
+	 * unit clauses, if it has not been run yet.  Otherwise answers the call from the outcome of 
+	 * the earlier run, if possible:  a model of the run is a model under the given assumptions if it 
+	 * satisfies them, and an unsatisfiable run remains unsatisfiable under more assumptions.  
+	 * If the assumptions lead to an unsatisfiable outcome, all of them are reported as failed, since 
+	 * external solvers do not report which assumptions were used.
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 * @throws SATAbortedException  the solver process could not be run, or it was run earlier, and 
+	 * its outcome does not determine the outcome under the given assumptions
+	 */
+	public boolean solve(int[] assumptions) throws SATAbortedException {
+		for(int lit : assumptions) {
+			final int var = StrictMath.abs(lit);
+			if (var < 1 || var > vars)
+				throw new IllegalArgumentException(var + " !in [1.." + vars+"]");
+		}
+		if (assumed==null) { 
+			assumed = assumptions.clone();
+			run();
+		} else if (sat==null) { 
+			throw new SATAbortedException(executable + " was already run and did not produce an outcome.");
+		} else if (sat ? !satisfies(assumptions) : !extendsAssumed(assumptions)) { 
+			throw new SATAbortedException(executable + " was already run, and its outcome does not determine the outcome under " + Arrays.toString(assumptions));
+		}
+		return sat;
+	}
+	
+	/**
+	 * Runs the solver process on this.clauses and the unit clauses in this.assumed, 
+	 * and sets this.sat and this.solution to its outcome.
+	 * @requires no this.sat 
+	 */
+	private void run() throws SATAbortedException {
+		if (cnf==null) { 
+			if (expected < 0) // no clauses have been added
+				expected = assumed.length;
+			if (clauses + assumed.length != expected) { 
+				abort();
+				close(input);
+				throw new SATAbortedException((clauses + assumed.length) + " clauses were added to " + executable + 
+						", but " + expected + " were declared.");
+			}
+			if (input==null) 
+				startStreaming();
+		}
+		for(int lit : assumed) { 
+			write(new int[]{ lit });
+		}
+		try {
+			if (cnf==null) { 
+				flushBytes();
+				input.close();
+				reader.join();
+				final SATAbortedException e = outputError;
+				if (e != null) 
+					throw new SATAbortedException(e.getMessage(), e);
+			} else { 
+				final Process p = start();
+				process = p;
 				new Thread(drain(p.getErrorStream())).start();
-				out = outputReader(p);
-				String line = null;
-				while((line = out.readLine()) != null) {
-					String[] tokens = line.split("\\s");
-					int tlength = tokens.length;
-					if (tlength>0) {
-						if (tokens[0].compareToIgnoreCase("s")==0) {
-							if (tlength==2) {
-								if (tokens[1].compareToIgnoreCase("SATISFIABLE")==0) {
-									sat = Boolean.TRUE;
-									continue;
-								} else if (tokens[1].compareToIgnoreCase("UNSATISFIABLE")==0) {
-									sat = Boolean.FALSE;
-									continue;
-								} 
-							}
-							throw new SATAbortedException("Invalid " + executable + " output. Line: " + line);
-						} else if (tokens[0].compareToIgnoreCase("v")==0) {
-							int last = tlength-1;
-							for(int i = 1; i < last; i++) {
-								updateSolution(Integer.parseInt(tokens[i]));
-							}
-							int lit = Integer.parseInt(tokens[last]);
-							if (lit!=0) updateSolution(lit);
-							else if (sat!=null) break;
-						} // not a solution line or a variable line, so ignore it.
-					}
+				readOutput(p);
+			}
+		} catch (IOException e) {
+			throw new SATAbortedException(e);
+		} catch (InterruptedException e) { 
+			abort();
+			throw new SATAbortedException(e);
+		} finally {
+			process = null;
+			close(cnf);
+			close(input);
+		}
+	}
+	
+	/**
+	 * Reads the output of the given solver process, and sets this.sat and this.solution accordingly.
+	 * @throws SATAbortedException  the output could not be read, or it is invalid, or it does not specify an outcome
+	 */
+	private void readOutput(Process p) throws SATAbortedException { 
+		BufferedReader out = null;
+		try { 
+			out = outputReader(p);
+			String line = null;
+			while((line = out.readLine()) != null) {
+				if (parse(line)) break;
+			}
+			if (sat==null) 
+				throw new SATAbortedException("Invalid " + executable + " output: no line specifying the outcome.");
+		} catch (IOException e) {
+			throw new SATAbortedException(e);
+		} catch (NumberFormatException e) {
+			throw new SATAbortedException("Invalid "+ executable +" output: encountered a non-integer variable token.", e);
+		} finally { 
+			close(out);
+		}
+	}
+	
+	/**
+	 * Writes the cnf header to this.cnf, closes it, and starts the solver on this.inTemp.
+	 * @requires this.cnf != null
+	 * @return the solver process
+	 */
+	private Process start() throws IOException { 
+		flush();
+		cnf.seek(0);
+		cnf.writeBytes("p cnf " + vars + " " + (clauses + assumed.length));
+		cnf.close();
+		final String[] command = new String[options.length+2];
+		command[0] = executable;
+		System.arraycopy(options, 0, command, 1, options.length);
+		command[command.length-1] = inTemp;
+		return Runtime.getRuntime().exec(command);
+	}
+	
+	/**
+	 * Starts the solver without an input file, and a thread that reads its output, 
+	 * and places the cnf header at the start of this.bytes.  
+	 * @requires this.cnf = null && this.expected >= 0 && this.pos = 0
+	 * @ensures this.process' and this.input' are the solver process and its standard input
+	 * @throws SATAbortedException  the solver could not be started
+	 */
+	private void startStreaming() throws SATAbortedException { 
+		final String[] command = new String[options.length+1];
+		command[0] = executable;
+		System.arraycopy(options, 0, command, 1, options.length);
+		final Process p;
+		try {
+			p = Runtime.getRuntime().exec(command);
+		} catch (IOException e) {
+			throw new SATAbortedException(e);
+		}
+		process = p;
+		input = p.getOutputStream();
+		new Thread(drain(p.getErrorStream())).start();
+		reader = new Thread(new Runnable() {
+			public void run() {
+				try { 
+					readOutput(p);
+				} catch (SATAbortedException e) { 
+					outputError = e;
+				}
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+		final byte[] header = ("p cnf " + vars + " " + expected + "\n").getBytes();
+		System.arraycopy(header, 0, bytes, 0, header.length);
+		pos = header.length;
+	}
+	
+	/**
+	 * Writes the decimal representation of the given non-zero integer into the given buffer, 
+	 * starting at the specified position, and returns the position following the last written byte.
+	 * @requires lit != 0 && buf.length >= pos + 11
+	 * @return the position following the last written byte
+	 */
+	private static int writeInt(int lit, byte[] buf, int pos) { 
+		long val = lit;
+		if (val < 0) { 
+			buf[pos++] = '-';
+			val = -val;
+		}
+		int end = pos;
+		for(long v = val; v > 0; v /= 10) { end++; }
+		for(int i = end-1; i >= pos; i--, val /= 10) { 
+			buf[i] = (byte) ('0' + (val % 10));
+		}
+		return end;
+	}
+	
+	/**
+	 * Parses the given line of solver output, updating this.sat and this.solution accordingly.
+	 * Returns true if the line ends the solver's output: i.e., if it terminates the list of 
+	 * variable values, and the outcome has already been read.
+	 * @return true if no more output needs to be read
+	 * @throws SATAbortedException  the line is not a valid output line
+	 * @throws NumberFormatException  a variable line contains a non-integer token
+	 */
+	private boolean parse(String line) { 
+		final int length = line.length();
+		int start = skipSpace(line, 0);
+		if (start==length) return false;
+		int end = skipToken(line, start);
+		if (end-start != 1) return false; // not a solution line or a variable line, so ignore it.
+		final char kind = line.charAt(start);
+		if (kind=='s' || kind=='S') { 
+			start = skipSpace(line, end);
+			end = skipToken(line, start);
+			if (skipSpace(line, end)==length) { 
+				if (line.regionMatches(true, start, "SATISFIABLE", 0, end-start) && end-start==11) { 
+					sat = Boolean.TRUE;
+					return false;
+				} else if (line.regionMatches(true, start, "UNSATISFIABLE", 0, end-start) && end-start==13) { 
+					sat = Boolean.FALSE;
+					return false;
 				}
-				if (sat==null) {
-					throw new SATAbortedException("Invalid " + executable + " output: no line specifying the outcome.");
+			}
+			throw new SATAbortedException("Invalid " + executable + " output. Line: " + line);
+		} else if (kind=='v' || kind=='V') { 
+			for(start = skipSpace(line, end); start < length; start = skipSpace(line, end)) { 
+				end = skipToken(line, start);
+				final int lit = parseInt(line, start, end);
+				if (lit != 0) { 
+					updateSolution(lit);
+				} else if (skipSpace(line, end) < length) { 
+					throw new SATAbortedException("Invalid " + executable + " output: 0 in the middle of a variable line. Line: " + line);
+				} else { 
+					return sat != null;
 				}
-			} catch (IOException e) {
-				throw new SATAbortedException(e);
-			} catch (NumberFormatException e) {
-				throw new SATAbortedException("Invalid "+ executable +" output: encountered a non-integer variable token.", e);
-			} finally {
-				close(cnf);
-				close(out);
 			}
+		} // not a solution line or a variable line, so ignore it.
+		return false;
+	}
+	
+	/**
+	 * Returns the index of the first non-whitespace character in the given line at or after start, or line.length() if none.
+	 * @return the index of the first non-whitespace character in the given line at or after start
+	 */
+	private static int skipSpace(String line, int start) { 
+		final int length = line.length();
+		while(start < length && Character.isWhitespace(line.charAt(start))) { start++; }
+		return start;
+	}
+	
+	/**
+	 * Returns the index of the first whitespace character in the given line at or after start, or line.length() if none.
+	 * @return the index of the first whitespace character in the given line at or after start
+	 */
+	private static int skipToken(String line, int start) { 
+		final int length = line.length();
+		while(start < length && !Character.isWhitespace(line.charAt(start))) { start++; }
+		return start;
+	}
+	
+	/**
+	 * Parses the decimal integer in line[start..end).
+	 * @return the decimal integer in line[start..end)
+	 * @throws NumberFormatException  line[start..end) is not a valid decimal integer
+	 */
+	private static int parseInt(String line, int start, int end) { 
+		boolean negative = false;
+		int i = start;
+		if (i < end && (line.charAt(i)=='-' || line.charAt(i)=='+')) { 
+			negative = line.charAt(i)=='-';
+			i++;
 		}
-		return sat;
+		if (i==end) throw new NumberFormatException(line.substring(start, end));
+		long val = 0;
+		for(; i < end; i++) { 
+			final int digit = line.charAt(i) - '0';
+			if (digit < 0 || digit > 9) throw new NumberFormatException(line.substring(start, end));
+			val = val*10 + digit;
+			if (val > Integer.MAX_VALUE) throw new NumberFormatException(line.substring(start, end));
+		}
+		return (int) (negative ? -val : val);
+	}
+	
+	/**
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public int[] failedAssumptions() {
+		if (!Boolean.FALSE.equals(sat))
+			throw new IllegalStateException();
+		return assumed.clone();
+	}
+	
+	/**
+	 * Destroys the external process started by the current call to {@link #solve()}, or, in 
+	 * the streaming mode, by the clauses added so far, if any.
+	 * The interrupted call terminates with a {@link SATAbortedException}.
+	 * @ensures kills the external solver process, if it is running
+	 */
+	final void abort() {
+		final Process p = process;
+		if (p != null)
+			p.destroy();
 	}
 	
 	/**
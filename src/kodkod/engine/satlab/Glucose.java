@@ -32,7 +32,7 @@ final class Glucose extends NativeSolver {
 	 * Constructs a new Glucose wrapper.
 	 */
 	Glucose() {
-		super(make()); 
+		super(make(), true); 
 	}
 	
 	static {
@@ -69,12 +69,30 @@ final class Glucose extends NativeSolver {
 	 */
 	native boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#addClauses(long, int[], int)
+	 */
+	native int addClauses(long peer, int[] batch, int length);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#solve(long)
 	 */
 	native boolean solve(long peer);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+	 */
+	native boolean solveAssuming(long peer, int[] assumptions);
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#failed(long, int)
+	 */
+	native boolean failed(long peer, int literal);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#valueOf(long, int)
@@ -31,7 +31,7 @@ final class Lingeling extends NativeSolver {
 	 * Constructs a new Lingeling wrapper.
 	 */
 	public Lingeling() {
-		super(make());
+		super(make(), true);
 	}
 	
 	static {
@@ -71,12 +71,30 @@ final class Lingeling extends NativeSolver {
 	 */
 	native boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#addClauses(long, int[], int)
+	 */
+	native int addClauses(long peer, int[] batch, int length);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#solve(long)
 	 */
 	native boolean solve(long peer);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+	 */
+	native boolean solveAssuming(long peer, int[] assumptions);
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#failed(long, int)
+	 */
+	native boolean failed(long peer, int literal);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#valueOf(long, int)
@@ -22,6 +22,8 @@
 package kodkod.engine.satlab;
 
 import java.io.File;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 
 
@@ -39,15 +41,38 @@ abstract class NativeSolver implements SATSolver {
 	private long peer;
 	private Boolean sat;
 	private int clauses, vars;
+	private int[] failed;
+	/**
+	 * Zero-terminated clauses that have been added to this solver but not yet 
+	 * passed to the native peer, or null if clauses are passed to the peer one at a time.
+	 * @invariant batch != null => 0 <= batchLength <= batch.length
+	 */
+	private final int[] batch;
+	private int batchLength;
+	private static final int BATCH = 1 << 16;
 	
 	/**
 	 * Constructs a new wrapper for the given 
-	 * instance of the native solver.
+	 * instance of the native solver.  Each clause added to 
+	 * the wrapper is passed to the native peer immediately.
 	 */
 	NativeSolver(long peer) {
+		this(peer, false);
+	}
+	
+	/**
+	 * Constructs a new wrapper for the given instance of the native solver.  If the 
+	 * {@code batched} flag is true, clauses added to the wrapper are accumulated into a 
+	 * buffer, which is passed to the native peer in a single call to {@link #addClauses(long, int[], int)}
+	 * when it fills up, or when the solver's clauses are needed for solving or counting.
+	 */
+	NativeSolver(long peer, boolean batched) {
 		this.peer = peer;
 		this.clauses = this.vars = 0;
 		this.sat = null;
+		this.failed = null;
+		this.batch = batched ? new int[BATCH] : null;
+		this.batchLength = 0;
 //		System.out.println("created " + peer);
 	}
 	
@@ -89,9 +114,12 @@ abstract class NativeSolver implements SATSolver {
 	
 	/**
 	 * {@inheritDoc}
+	 * Any batched clauses are passed to the native peer first, so that the 
+	 * returned count is exact.
 	 * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
 	 */
 	public final int numberOfClauses() {
+		flush();
 		return clauses;
 	}
 	
@@ -123,10 +151,28 @@ abstract class NativeSolver implements SATSolver {
 	
 	/**
 	 * {@inheritDoc}
+	 * <p>If this solver is batched, a clause that fits into the batch is buffered and counted 
+	 * as added:  true is returned without consulting the native peer.  Unlike an unbatched solver, 
+	 * a batched solver therefore returns true for a clause that the peer discards when the batch is 
+	 * passed to it, so {@link #numberOfClauses()}, which is exact, may be smaller than the number 
+	 * of clauses for which true was returned.  Clauses that do not fit into an empty batch are 
+	 * passed to the peer directly.</p>
 	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
 	 * @see #addClause(long, int[])
 	 */
 	public final boolean addClause(int[] lits) {
+		if (batch != null) { 
+			final int length = lits.length + 1;
+			if (length > batch.length - batchLength) {
+				flush();
+			}
+			if (length <= batch.length) {
+				System.arraycopy(lits, 0, batch, batchLength, lits.length);
+				batchLength += length;
+				batch[batchLength-1] = 0;
+				return true;
+			} // else the clause does not fit into an empty batch, so add it directly
+		}
 		if (addClause(peer, lits)) {
 //			for(int i : lits) {
 //				System.out.print(i + " ");
@@ -139,6 +185,66 @@ abstract class NativeSolver implements SATSolver {
 	}
 	
 	
+	/**
+	 * Adds the zero-terminated clauses stored in {@code clauses[clauses.position()..clauses.limit())}
+	 * to this solver.  If this solver is batched, the clauses are copied into the batch
+	 * in bulk, as many whole clauses at a time as will fit, and each full batch is passed to the native peer.
+	 * @requires clauses.limit() > clauses.position() => clauses.get(clauses.limit()-1) = 0
+	 * @ensures adds the given clauses to this solver
+	 * @ensures clauses.position' = clauses.limit()
+	 */
+	final void addClauses(IntBuffer clauses) {
+		if (batch == null) { 
+			while(clauses.hasRemaining()) 
+				addClause(next(clauses));
+			return;
+		}
+		flush();
+		while(clauses.hasRemaining()) {
+			final int start = clauses.position();
+			final int length = StrictMath.min(batch.length, clauses.remaining());
+			clauses.get(batch, 0, length);
+			int end = length;
+			while(end > 0 && batch[end-1] != 0) { end--; }
+			if (end > 0) {
+				clauses.position(start + end);
+				batchLength = end;
+				flush();
+			} else { // the next clause does not fit into an empty batch, so add it directly
+				clauses.position(start);
+				if (addClause(peer, next(clauses))) 
+					this.clauses++;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the next zero-terminated clause from the given buffer, and returns its literals.
+	 * @requires some i: [clauses.position()..clauses.limit()) | clauses.get(i) = 0
+	 * @ensures clauses.position' = 1 + min{i: [clauses.position()..clauses.limit()) | clauses.get(i) = 0}
+	 * @return literals of the next zero-terminated clause in the given buffer
+	 */
+	private static int[] next(IntBuffer clauses) {
+		int end = clauses.position();
+		while(clauses.get(end) != 0) { end++; }
+		final int[] lits = new int[end - clauses.position()];
+		clauses.get(lits);
+		clauses.get();
+		return lits;
+	}
+	
+	/**
+	 * Passes the batched clauses, if any, to the native peer.
+	 * @ensures this.batchLength' = 0
+	 * @see #addClauses(long, int[], int)
+	 */
+	private final void flush() {
+		if (batchLength > 0) {
+			clauses += addClauses(peer, batch, batchLength);
+			batchLength = 0;
+		}
+	}
+	
 	/**
 	 * Returns a pointer to the C++ peer class (the native instance wrapped by this object).
 	 * @return a pointer to the C++ peer class (the native instance wrapped by this object).
@@ -159,12 +265,56 @@ abstract class NativeSolver implements SATSolver {
 	 * @see #solve(long)
 	 */
 	public final boolean solve() {
+		flush();
+		failed = null;
 		if (sat == Boolean.FALSE)
 			return sat;
 		else
 			return (sat = Boolean.valueOf(solve(peer)));
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 * @see #solveAssuming(long, int[])
+	 * @see #failed(long, int)
+	 */
+	public final boolean solve(int[] assumptions) {
+		for(int lit : assumptions) {
+			validateVariable(StrictMath.abs(lit));
+		}
+		flush();
+		if (sat == Boolean.FALSE) {
+			failed = new int[0];
+			return false;
+		} 
+		if (solveAssuming(peer, assumptions)) {
+			failed = null;
+			sat = Boolean.TRUE;
+			return true;
+		}
+		int size = 0;
+		final int[] out = new int[assumptions.length];
+		for(int lit : assumptions) {
+			if (failed(peer, lit))
+				out[size++] = lit;
+		}
+		failed = Arrays.copyOf(out, size);
+		// the outcome is unconditionally UNSAT iff no assumptions were needed to derive it
+		sat = size==0 ? Boolean.FALSE : null;
+		return false;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public final int[] failedAssumptions() {
+		if (failed == null)
+			throw new IllegalStateException();
+		return failed.clone();
+	}
+	
 
 	/**
 	 * Throws an IllegalArgumentException if variable !in this.variables.
@@ -196,6 +346,7 @@ abstract class NativeSolver implements SATSolver {
 //			System.out.println("freeing " + peer + " " + getClass());
 			free(peer);
 			peer = 0;
+			batchLength = 0;
 		} // already freed
 	}
 	
@@ -237,6 +388,27 @@ abstract class NativeSolver implements SATSolver {
 	 */
 	abstract boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * Ensures that the given native peer logically contains each of the zero-terminated 
+	 * clauses stored in {@code batch[0..length)}, and returns the number of those clauses for which 
+	 * {@link #addClause(long, int[])} would have returned true.  The default implementation 
+	 * calls {@link #addClause(long, int[])} once for each clause; subclasses should override it 
+	 * with a native method that passes the whole batch to the peer in a single call.
+	 * @requires length > 0 && batch[length-1] = 0
+	 * @requires all i: [0..length) | batch[i] != 0 => abs(batch[i]) in this.variables 
+	 * @ensures ensures that the given native peer logically contains the specified clauses
+	 * @return number of clauses for which the peer's clause database changed
+	 */
+	int addClauses(long peer, int[] batch, int length) {
+		int added = 0;
+		for(int start = 0, end = 0; end < length; start = ++end) {
+			while(batch[end] != 0) { end++; }
+			if (addClause(peer, Arrays.copyOfRange(batch, start, end)))
+				added++;
+		}
+		return added;
+	}
+	
 	/**
 	 * Calls the solve method on the given native peer.
 	 * @return true if the clauses in the solver are SAT;
@@ -244,6 +416,25 @@ abstract class NativeSolver implements SATSolver {
 	 */
 	abstract boolean solve(long peer);
 	
+	/**
+	 * Calls the solve method on the given native peer, assuming that each of 
+	 * the given literals is true.
+	 * @requires all i: [0..assumptions.length) | abs(assumptions[i]) in this.variables 
+	 * @return true if the clauses in the solver are SAT under the given assumptions;
+	 * otherwise returns false.
+	 */
+	abstract boolean solveAssuming(long peer, int[] assumptions);
+	
+	/**
+	 * Returns true if the given assumption literal was used by the specified 
+	 * native peer to derive the outcome of the last call to {@link #solveAssuming(long, int[])}.
+	 * @requires the last call to {@link #solveAssuming(long, int[]) solveAssuming(peer, assumptions)} 
+	 * returned UNSATISFIABLE and literal in assumptions
+	 * @return true if the given assumption is among the failed assumptions of the
+	 * last call to  {@link #solveAssuming(long, int[]) solveAssuming(peer, assumptions)}
+	 */
+	abstract boolean failed(long peer, int literal);
+	
 	/**
 	 * Returns the assignment for the given literal
 	 * by the specified native peer
@@ -0,0 +1,240 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A wrapper that stores the clauses added to a SAT solver off the Java heap until 
+ * they are needed for solving.  Clauses are appended, in the order in which they are 
+ * added, to an arena of direct buffers, and passed to the wrapped solver in bulk 
+ * on the next call to {@link #solve()}, {@link #solve(int[])} or {@link #numberOfClauses()}. 
+ * Variables are passed to the wrapped solver immediately.
+ * 
+ * <p>When a Kodkod translation is solved with an off-heap solver, the clauses produced 
+ * by the {@link kodkod.engine.fol2sat.Translator translator} do not reach the 
+ * wrapped solver's clause database until translation is done and the boolean circuit 
+ * from which they were generated is no longer reachable.  The circuit and the 
+ * clause database therefore never need to fit into the heap at the same time.  This holds only 
+ * for {@link NativeSolver native} delegates, which take the pending clauses in bulk and keep 
+ * them in native memory.  Other delegates, such as the sat4j solvers, receive the pending clauses 
+ * one at a time and store them on the heap, so wrapping them saves no heap.</p>
+ * 
+ * @specfield delegate: SATSolver // the wrapped solver
+ * @specfield pending: seq int[] // clauses that have not yet been passed to the delegate
+ * @invariant this.variables = delegate.variables 
+ * @invariant [[this.clauses]] = [[delegate.clauses + pending.elems]]
+ * @author agent
+ */
+final class OffHeapSolver implements SATSolver {
+	/** Number of ints in a regular arena chunk (4 MB). */
+	private static final int CHUNK = 1 << 20;
+	
+	private final SATSolver delegate;
+	/**
+	 * The arena of zero-terminated pending clauses.  Each chunk is written from position 0 
+	 * up to its current position, and no clause straddles two chunks.
+	 */
+	private final List<IntBuffer> arena;
+	/** 
+	 * Reusable clause arrays, indexed by length.  As with the clauses produced by 
+	 * the translator, solvers copy the arrays passed to them if needed.
+	 */
+	private final int[][] clauses;
+	private int pending;
+	
+	/**
+	 * Constructs an off-heap wrapper for the given solver.
+	 * @requires no delegate.variables && no delegate.clauses
+	 * @ensures this.delegate' = delegate && no this.pending'
+	 */
+	OffHeapSolver(SATSolver delegate) {
+		this.delegate = delegate;
+		this.arena = new ArrayList<IntBuffer>();
+		this.clauses = new int[64][];
+		this.pending = 0;
+	}
+	
+	/**
+	 * Returns a fresh direct buffer that can hold the given number of ints.
+	 * @return a fresh direct buffer that can hold the given number of ints
+	 */
+	private static IntBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(capacity << 2).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfVariables()
+	 */
+	public int numberOfVariables() {
+		return delegate.numberOfVariables();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
+	 */
+	public int numberOfClauses() {
+		flush();
+		return delegate.numberOfClauses();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
+	 */
+	public void addVariables(int numVars) {
+		delegate.addVariables(numVars);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>The clause is stored off-heap and counted as added, so true is returned even if the 
+	 * wrapped solver discards the clause when it is passed on.  {@link #numberOfClauses()}, 
+	 * which passes the pending clauses on first, is exact.</p>
+	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 */
+	public boolean addClause(int[] lits) {
+		final int length = lits.length + 1;
+		IntBuffer chunk = arena.isEmpty() ? null : arena.get(arena.size()-1);
+		if (chunk == null || chunk.remaining() < length) {
+			chunk = allocate(StrictMath.max(CHUNK, length));
+			arena.add(chunk);
+		}
+		chunk.put(lits).put(0);
+		pending++;
+		return true;
+	}
+	
+	/**
+	 * Passes the pending clauses, if any, to the delegate, and releases all 
+	 * but the first chunk of the arena.
+	 * @ensures this.delegate.clauses' = this.delegate.clauses + this.pending.elems && no this.pending'
+	 */
+	private void flush() {
+		if (pending == 0) return;
+		delegate.expectClauses(pending);
+		for(IntBuffer chunk : arena) {
+			chunk.flip();
+			if (delegate instanceof NativeSolver) {
+				((NativeSolver) delegate).addClauses(chunk);
+			} else {
+				while(chunk.hasRemaining()) {
+					final int start = chunk.position();
+					int end = start;
+					while(chunk.get(end) != 0) { end++; }
+					final int length = end - start;
+					int[] lits = length < clauses.length ? clauses[length] : null;
+					if (lits == null) {
+						lits = new int[length];
+						if (length < clauses.length) 
+							clauses[length] = lits;
+					}
+					chunk.get(lits);
+					chunk.get(); // skip the terminating zero
+					delegate.addClause(lits);
+				}
+			}
+		}
+		final IntBuffer first = arena.get(0);
+		arena.clear();
+		if (first.capacity() == CHUNK) {
+			first.clear();
+			arena.add(first);
+		}
+		pending = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve() throws SATAbortedException {
+		flush();
+		return delegate.solve();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 */
+	public boolean solve(int[] assumptions) throws SATAbortedException {
+		flush();
+		return delegate.solve(assumptions);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[], int)
+	 */
+	public boolean solve(int[] assumptions, int limit) throws SATAbortedException {
+		flush();
+		return delegate.solve(assumptions, limit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public int[] failedAssumptions() {
+		return delegate.failedAssumptions();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#valueOf(int)
+	 */
+	public boolean valueOf(int variable) {
+		return delegate.valueOf(variable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#free()
+	 */
+	public void free() {
+		arena.clear();
+		pending = 0;
+		delegate.free();
+	}
+	
+	/**
+	 * Asks the delegate to stop solving, if it supports cancellation.
+	 * Otherwise does nothing.
+	 */
+	void abort() {
+		PortfolioSolver.abort(delegate);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "OffHeap(" + delegate + ")";
+	}
+}
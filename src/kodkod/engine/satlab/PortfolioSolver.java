@@ -0,0 +1,320 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A wrapper that races several SAT solvers on the same CNF.  All calls
+ * to {@link #addVariables(int)} and {@link #addClause(int[])} are mirrored
+ * into each member solver, and each call to {@link #solve()} 
+ * (or {@link #solve(int[])}) runs the members concurrently, on separate threads, 
+ * returning the outcome of the first member to finish.  
+ * 
+ * <p>Members that lose a race are retired:  they receive no further clauses, 
+ * are asked to stop (if they support cancellation), and are freed as soon as their 
+ * solving thread terminates.  As a result, subsequent calls to {@link #solve()} 
+ * are handled by the members that won earlier races.  Solvers accessed through 
+ * JNI cannot be stopped once started, so a losing native member keeps running 
+ * on its (daemon) thread until it finishes.</p>
+ * 
+ * <p>Like the other solver wrappers, a portfolio solver is not thread-safe:  its methods 
+ * must not be called concurrently.  The racing threads only access their own members, 
+ * and the state of this solver is updated by the calling thread once a race is decided.</p>
+ * 
+ * @specfield members: set SATSolver // live member solvers
+ * @invariant all m: members | m.variables = this.variables && [[m.clauses]] = [[this.clauses]]
+ * @author agent
+ */
+final class PortfolioSolver implements SATSolver {
+	private final List<SATSolver> members;
+	private SATSolver winner;
+	private Boolean sat;
+	private int vars, clauses;
+	
+	/**
+	 * Constructs a portfolio solver over the given member solvers.
+	 * @requires members.size() > 0
+	 * @requires no m: members | some m.variables 
+	 * @ensures this.members' = members
+	 */
+	PortfolioSolver(List<SATSolver> members) {
+		assert !members.isEmpty();
+		this.members = new ArrayList<SATSolver>(members);
+		this.winner = null;
+		this.sat = null;
+		this.vars = this.clauses = 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfVariables()
+	 */
+	public int numberOfVariables() {
+		return vars;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
+	 */
+	public int numberOfClauses() {
+		return clauses;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
+	 */
+	public void addVariables(int numVars) {
+		if (numVars < 0)
+			throw new IllegalArgumentException("vars < 0: " + numVars);
+		else if (numVars > 0) {
+			vars += numVars;
+			for(SATSolver member : members) {
+				member.addVariables(numVars);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 */
+	public boolean addClause(int[] lits) {
+		boolean changed = false;
+		// members may modify the contents of the array, so all but the last get a copy
+		for(int i = 0, last = members.size()-1; i <= last; i++) {
+			changed |= members.get(i).addClause(i < last ? lits.clone() : lits);
+		}
+		if (changed) {
+			clauses++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Passes the given count to each member.
+	 * @see kodkod.engine.satlab.SATSolver#expectClauses(int)
+	 */
+	public void expectClauses(int count) {
+		for(SATSolver member : members) {
+			member.expectClauses(count);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve() throws SATAbortedException {
+		if (sat == Boolean.FALSE)
+			return sat;
+		return (sat = Boolean.valueOf(race(null)));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 */
+	public boolean solve(int[] assumptions) throws SATAbortedException {
+		for(int lit : assumptions) {
+			final int var = StrictMath.abs(lit);
+			if (var < 1 || var > vars)
+				throw new IllegalArgumentException(var + " !in [1.." + vars+"]");
+		}
+		if (sat == Boolean.FALSE) 
+			return sat;
+		if (race(assumptions)) 
+			return (sat = Boolean.TRUE);
+		// the outcome is unconditionally UNSAT iff no assumptions were needed to derive it
+		sat = winner.failedAssumptions().length==0 ? Boolean.FALSE : null;
+		return false;
+	}
+	
+	/**
+	 * Solves this.clauses under the given assumptions (if any) by racing this.members against each other, 
+	 * and returns the outcome computed by the first member to finish.  The members that 
+	 * lose the race are retired.
+	 * @ensures this.winner' in this.members && this.members' = this.winner'
+	 * @return the outcome computed by the first member to finish
+	 * @throws SATAbortedException  all members failed or the calling thread was interrupted
+	 */
+	private boolean race(int[] assumptions) throws SATAbortedException {
+		if (members.size()==1) { 
+			winner = members.get(0);
+			return assumptions==null ? winner.solve() : winner.solve(assumptions);
+		}
+		
+		final BlockingQueue<Racer> finished = new LinkedBlockingQueue<Racer>();
+		final List<Racer> racers = new ArrayList<Racer>(members.size());
+		for(SATSolver member : members) {
+			final Racer racer = new Racer(member, assumptions, finished);
+			racers.add(racer);
+			final Thread t = new Thread(racer, "kodkod-portfolio-" + member);
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		Racer first = null;
+		RuntimeException failure = null;
+		try {
+			for(int i = racers.size(); i > 0 && first==null; i--) {
+				final Racer racer = finished.take();
+				if (racer.failure==null) 
+					first = racer;
+				else if (failure==null)
+					failure = racer.failure;
+			}
+		} catch (InterruptedException e) {
+			for(Racer racer : racers) 
+				racer.retire();
+			members.clear();
+			throw new SATAbortedException("Portfolio solving interrupted.", e);
+		}
+		
+		if (first==null) { // all members failed
+			for(Racer racer : racers)
+				racer.retire();
+			members.clear();
+			throw new SATAbortedException(failure);
+		}
+		
+		members.clear();
+		members.add(first.solver);
+		for(Racer racer : racers) {
+			if (racer != first) 
+				racer.retire();
+		}
+		winner = first.solver;
+		return first.outcome;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public int[] failedAssumptions() {
+		if (winner == null)
+			throw new IllegalStateException();
+		return winner.failedAssumptions();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#valueOf(int)
+	 */
+	public boolean valueOf(int variable) {
+		if (sat != Boolean.TRUE)
+			throw new IllegalStateException();
+		if (variable < 1 || variable > vars)
+			throw new IllegalArgumentException(variable + " !in [1.." + vars+"]");
+		return winner.valueOf(variable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#free()
+	 */
+	public void free() {
+		for(SATSolver member : members) {
+			member.free();
+		}
+		members.clear();
+		winner = null;
+	}
+	
+	/**
+	 * Asks the given solver to stop solving, if it supports cancellation.
+	 * Otherwise does nothing.
+	 */
+	static void abort(SATSolver solver) {
+		if (solver instanceof SAT4J)
+			((SAT4J) solver).abort();
+		else if (solver instanceof ExternalSolver)
+			((ExternalSolver) solver).abort();
+		else if (solver instanceof OffHeapSolver)
+			((OffHeapSolver) solver).abort();
+		else if (solver instanceof CNFSimplifier)
+			((CNFSimplifier) solver).abort();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "Portfolio" + members;
+	}
+	
+	/**
+	 * Runs a single member solver, reporting its outcome to a shared queue.
+	 * A retired racer frees its solver as soon as the solver is done.
+	 * @author agent
+	 */
+	private static final class Racer implements Runnable {
+		final SATSolver solver;
+		final int[] assumptions;
+		final BlockingQueue<Racer> finished;
+		volatile boolean outcome;
+		volatile RuntimeException failure;
+		private boolean done, retired;
+		
+		Racer(SATSolver solver, int[] assumptions, BlockingQueue<Racer> finished) {
+			this.solver = solver;
+			this.assumptions = assumptions;
+			this.finished = finished;
+			this.done = this.retired = false;
+		}
+		
+		public void run() {
+			try {
+				outcome = assumptions==null ? solver.solve() : solver.solve(assumptions.clone());
+			} catch (RuntimeException e) {
+				failure = e;
+			} finally {
+				synchronized(this) {
+					done = true;
+					if (retired) 
+						solver.free();
+				}
+				finished.add(this);
+			}
+		}
+		
+		/**
+		 * Stops the solver, if possible, and ensures that it will be freed
+		 * once it is done.
+		 */
+		synchronized void retire() {
+			retired = true;
+			if (done) 
+				solver.free();
+			else
+				abort(solver);
+		}
+	}
+}
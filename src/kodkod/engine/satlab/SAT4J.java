@@ -23,10 +23,14 @@ package kodkod.engine.satlab;
 
 import java.util.NoSuchElementException;
 
+import org.sat4j.core.VecInt;
 import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
+import org.sat4j.specs.ISolverService;
 import org.sat4j.specs.IVecInt;
 import org.sat4j.specs.IteratorInt;
+import org.sat4j.tools.SearchListenerAdapter;
 
 /**
  * A wrapper class that provides
@@ -38,8 +42,10 @@ import org.sat4j.specs.IteratorInt;
 final class SAT4J implements SATSolver {
 	private ISolver solver;
 	private final ReadOnlyIVecInt wrapper;
+	private final ConflictListener conflicts;
 	private Boolean sat; 
 	private int vars, clauses;
+	private int[] failed;
 	
 	/**
 	 * Constructs a wrapper for the given instance
@@ -51,7 +57,10 @@ final class SAT4J implements SATSolver {
 			throw new NullPointerException("solver");
 		this.solver = solver;
 		this.wrapper = new ReadOnlyIVecInt();
+		this.conflicts = new ConflictListener();
+		solver.setSearchListener(conflicts);
 		this.sat = null;
+		this.failed = null;
 		this.vars = this.clauses = 0;
 	}
 
@@ -112,6 +121,7 @@ final class SAT4J implements SATSolver {
 	 */
 	public boolean solve() {
 		try {
+			failed = null;
 			if (!Boolean.FALSE.equals(sat))
 				sat = Boolean.valueOf(solver.isSatisfiable());
 			return sat;
@@ -119,6 +129,91 @@ final class SAT4J implements SATSolver {
 			throw new RuntimeException("timed out");
 		} 
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[])
+	 */
+	public boolean solve(int[] assumptions) {
+		try {
+			return solveUnder(assumptions);
+		} catch (org.sat4j.specs.TimeoutException e) {
+			throw new RuntimeException("timed out");
+		} 
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve(int[], int)
+	 */
+	public boolean solve(int[] assumptions, int limit) {
+		if (limit < 1)
+			throw new IllegalArgumentException("limit < 1: " + limit);
+		solver.setTimeoutOnConflicts(limit);
+		try {
+			return solveUnder(assumptions);
+		} catch (org.sat4j.specs.TimeoutException e) {
+			throw new SATAbortedException("conflict limit exceeded", e);
+		} finally {
+			solver.setTimeoutMs(Integer.MAX_VALUE); // the default time-based timeout
+		}
+	}
+	
+	/**
+	 * Solves this.clauses under the given assumptions, with the wrapped solver's current timeout.
+	 * @see #solve(int[])
+	 * @throws org.sat4j.specs.TimeoutException  the wrapped solver timed out or was stopped
+	 */
+	private boolean solveUnder(int[] assumptions) throws org.sat4j.specs.TimeoutException {
+		for(int lit : assumptions) {
+			final int var = StrictMath.abs(lit);
+			if (var < 1 || var > vars)
+				throw new IllegalArgumentException(var + " !in [1.." + vars+"]");
+		}
+		if (Boolean.FALSE.equals(sat)) {
+			failed = new int[0];
+			return false;
+		}
+		conflicts.unconditional = false;
+		if (solver.isSatisfiable(new VecInt(assumptions.clone()))) {
+			failed = null;
+			sat = Boolean.TRUE;
+			return true;
+		}
+		failed = explanation();
+		// the outcome is unconditionally UNSAT iff no assumptions were needed to derive it
+		sat = failed.length==0 ? Boolean.FALSE : null;
+		return false;
+	}
+	
+	/**
+	 * Returns the failed assumptions computed by the last call to this.solver.isSatisfiable(IVecInt), 
+	 * or an empty array if the final conflict of that call did not depend on the assumptions.  In the 
+	 * latter case, sat4j does not compute an explanation, and this.solver.unsatExplanation() 
+	 * either fails or returns the explanation of an earlier call.
+	 * @requires the last call to this.solver.isSatisfiable(IVecInt) returned false
+	 * @return the failed assumptions computed by the last call to this.solver.isSatisfiable(IVecInt).
+	 */
+	private int[] explanation() {
+		if (conflicts.unconditional)
+			return new int[0];
+		final IVecInt explanation = solver.unsatExplanation();
+		if (explanation == null) 
+			return new int[0];
+		final int[] ret = new int[explanation.size()];
+		explanation.copyTo(ret);
+		return ret;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#failedAssumptions()
+	 */
+	public int[] failedAssumptions() {
+		if (failed == null)
+			throw new IllegalStateException();
+		return failed.clone();
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -140,6 +235,37 @@ final class SAT4J implements SATSolver {
 		solver = null;
 	}
 	
+	/**
+	 * Asks the wrapped solver to stop the current call to {@link #solve()}, if any.
+	 * The interrupted call terminates with a runtime exception.
+	 * @ensures stops the wrapped solver, if it is solving
+	 */
+	final void abort() {
+		final ISolver s = solver;
+		if (s != null)
+			s.expireTimeout();
+	}
+	
+	/**
+	 * Records whether the last conflict found by a sat4j solver occurred at decision level 0, 
+	 * before any assumptions were made.  Such a conflict means that the solver's clauses 
+	 * are unsatisfiable regardless of the assumptions.  
+	 * 
+	 * @author agent
+	 */
+	private static final class ConflictListener extends SearchListenerAdapter<ISolverService> {
+		private static final long serialVersionUID = 4087296421618829545L;
+		boolean unconditional = false;
+		
+		public void conflictFound(IConstr confl, int dlevel, int trailLevel) { 
+			unconditional = (dlevel == 0);
+		}
+		
+		public void conflictFound(int p) { 
+			unconditional = false; // the assumption p is falsified
+		}
+	}
+	
 	/**
 	 * A wrapper for an int array that provides
 	 * read-only access to the array via the IVecInt interface. 
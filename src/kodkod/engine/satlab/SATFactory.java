@@ -24,6 +24,7 @@ package kodkod.engine.satlab;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.sat4j.minisat.SolverFactory;
@@ -56,7 +57,7 @@ public abstract class SATFactory {
 			solver.addVariables(1);
 			solver.addClause(new int[]{1});
 			return solver.solve();
-		} catch (RuntimeException|UnsatisfiedLinkError t) {	
+		} catch (RuntimeException|LinkageError t) {	
 			return false;
 		} finally {
 			if (solver!=null) {
@@ -73,6 +74,7 @@ public abstract class SATFactory {
 		public SATSolver instance() { 
 			return new SAT4J(SolverFactory.instance().defaultSolver()); 
 		}
+		public boolean bounded() { return true; }
 		public String toString() { return "DefaultSAT4J"; }
 	};
 	
@@ -85,6 +87,7 @@ public abstract class SATFactory {
 		public SATSolver instance() { 
 			return new SAT4J(SolverFactory.instance().lightSolver()); 
 		}
+		public boolean bounded() { return true; }
 		public String toString() { return "LightSAT4J"; }
 	};
 	
@@ -221,6 +224,8 @@ public abstract class SATFactory {
 			public SATSolver instance() {
 				return new SAT4J(SolverFactory.instance().createSolverByName(solverName));
 			}
+			@Override
+			public boolean bounded() { return true; }
 			public String toString() { return solverName; }
 		};
 	}
@@ -270,6 +275,181 @@ public abstract class SATFactory {
 	}
 	
 	
+	/**
+	 * Returns a SATFactory that produces SATSolver wrappers for the external
+	 * SAT solver specified by the executable parameter, which reads its input from standard in.  
+	 * The solver's input and output formats must conform to the 
+	 * <a href="http://www.satcompetition.org/2011/rules.pdf">SAT competition standards</a>.  The solver
+	 * will be called with the specified options and no input file.  The returned factory is 
+	 * {@link #streaming() streaming}:  the number of clauses must be declared to each solver instance with 
+	 * {@link SATSolver#expectClauses(int)} before the first clause is added.  The instance then starts 
+	 * the solver, writes the DIMACS header to its standard input, and writes each clause after it, in DIMACS 
+	 * format, as the clause is added, so neither a file nor the memory of this process holds the CNF.  
+	 * The {@link kodkod.engine.fol2sat.Translator translator} obtains the number of clauses by translating 
+	 * the circuit twice, first without emitting any clauses.  External solvers are never incremental.
+	 * @return  SATFactory that produces SATSolver wrappers for the specified external
+	 * SAT solver, which receive their input via a pipe
+	 * @see #externalFactory(String, String, String...)
+	 */
+	public static final SATFactory externalStreamingFactory(final String executable, final String... options) {
+		return new SATFactory() {
+
+			@Override
+			public SATSolver instance() {
+				return new ExternalSolver(executable, null, false, options);
+			}
+			
+			@Override
+			public boolean incremental() {
+				return false;
+			}
+			
+			@Override
+			public boolean streaming() {
+				return true;
+			}
+			
+			public String toString() {
+				return (new File(executable)).getName();
+			}
+		};
+	}	
+	/**
+	 * Returns a SATFactory that produces portfolio solvers, which race instances of the 
+	 * given solvers against each other on the same CNF.  Every variable and clause added to a portfolio 
+	 * solver is added to each of its members, and each call to {@link SATSolver#solve() solve} runs
+	 * all (remaining) members concurrently, on separate threads, and returns the outcome computed by the  
+	 * first member to finish.  The remaining members are then stopped, if possible, and discarded, 
+	 * so subsequent calls to  {@link SATSolver#solve() solve} are handled by the winner of the previous race.
+	 * The returned factory is incremental iff all of the given factories are incremental, and it is 
+	 * streaming iff some of them are streaming.  Its solvers are never {@link SATProver provers}.
+	 * @requires factories.length > 0 
+	 * @return a SATFactory that produces portfolio solvers over instances of the given solvers
+	 * @throws NullPointerException  some i: [0..factories.length) | factories[i] = null
+	 * @throws IllegalArgumentException  factories.length = 0
+	 */
+	public static final SATFactory portfolio(final SATFactory... factories) {
+		if (factories.length==0)
+			throw new IllegalArgumentException("Portfolio must contain at least one solver.");
+		final SATFactory[] members = factories.clone();
+		boolean incremental = true, streaming = false;
+		for(SATFactory factory : members) {
+			incremental &= factory.incremental();
+			streaming |= factory.streaming();
+		}
+		final boolean allIncremental = incremental, someStreaming = streaming;
+		return new SATFactory() {
+			@Override
+			public SATSolver instance() {
+				final List<SATSolver> solvers = new ArrayList<SATSolver>(members.length);
+				try {
+					for(SATFactory factory : members) {
+						solvers.add(factory.instance());
+					}
+				} catch (RuntimeException e) {
+					for(SATSolver solver : solvers) 
+						solver.free();
+					throw e;
+				}
+				return new PortfolioSolver(solvers);
+			}
+			
+			@Override
+			public boolean incremental() {
+				return allIncremental;
+			}
+			
+			@Override
+			public boolean streaming() {
+				return someStreaming;
+			}
+			
+			public String toString() {
+				return "Portfolio" + Arrays.toString(members);
+			}
+		};
+	}
+	
+	/**
+	 * Returns a SATFactory that wraps the solvers produced by the given factory so that
+	 * clauses added to them are stored off the Java heap, in an arena of direct buffers, 
+	 * until they are needed for solving or counting.  The pending clauses are then passed to the 
+	 * wrapped solver in bulk, after the boolean circuit from which they were translated is no longer 
+	 * reachable.  This lowers the peak heap use of a translation whose circuit and CNF 
+	 * are both large, but only if the wrapped solvers keep their clauses off the heap as well:  
+	 * native solvers copy the pending clauses from the arena into their own memory in bulk, 
+	 * whereas the sat4j solvers receive them one at a time and store them on the heap.  Wrapping 
+	 * a sat4j factory therefore saves no heap;  it only delays the clause database's arrival on the heap.  
+	 * The returned factory is incremental iff the given factory is incremental. 
+	 * Its solvers are never {@link SATProver provers}.
+	 * @return a SATFactory that produces off-heap wrappers for the solvers produced by the given factory
+	 * @throws NullPointerException  factory = null
+	 * @throws IllegalArgumentException  factory.prover()
+	 */
+	public static final SATFactory offHeap(final SATFactory factory) {
+		if (factory.prover())
+			throw new IllegalArgumentException("Off-heap clause storage is not supported for provers: " + factory);
+		return new SATFactory() {
+			@Override
+			public SATSolver instance() {
+				return new OffHeapSolver(factory.instance());
+			}
+			
+			@Override
+			public boolean incremental() {
+				return factory.incremental();
+			}
+			
+			@Override
+			public boolean bounded() {
+				return factory.bounded();
+			}
+			
+			public String toString() {
+				return "OffHeap(" + factory + ")";
+			}
+		};
+	}
+	
+	/**
+	 * Returns a SATFactory that wraps the solvers produced by the given factory so that 
+	 * the clauses added to them are simplified before they are solved.  The clauses 
+	 * are buffered until the first call to solve, and then simplified with subsumption, 
+	 * self-subsuming resolution and bounded variable elimination.  The returned solvers are 
+	 * {@link SATSimplifier simplifiers}:  the {@link kodkod.engine.fol2sat.Translator translator} 
+	 * freezes the primary variables of each translation, so that the solution to a Kodkod 
+	 * problem can be read from the values of those variables as usual.  
+	 * The returned factory is incremental iff the given factory is incremental. 
+	 * Its solvers are never {@link SATProver provers}.
+	 * @return a SATFactory that produces simplifying wrappers for the solvers produced by the given factory
+	 * @throws NullPointerException  factory = null
+	 * @throws IllegalArgumentException  factory.prover()
+	 */
+	public static final SATFactory simplifying(final SATFactory factory) {
+		if (factory.prover())
+			throw new IllegalArgumentException("CNF simplification is not supported for provers: " + factory);
+		return new SATFactory() {
+			@Override
+			public SATSolver instance() {
+				return new CNFSimplifier(factory.instance());
+			}
+			
+			@Override
+			public boolean incremental() {
+				return factory.incremental();
+			}
+			
+			@Override
+			public boolean bounded() {
+				return factory.bounded();
+			}
+			
+			public String toString() {
+				return "Simplifying(" + factory + ")";
+			}
+		};
+	}
+	
 	/**
 	 * Returns an instance of a SATSolver produced by this factory.
 	 * @return a SATSolver instance
@@ -295,5 +475,27 @@ public abstract class SATFactory {
 	public boolean incremental() {
 		return true;
 	}
+	
+	/**
+	 * Returns true if the solvers returned by this.instance() stream their clauses to another 
+	 * process as the clauses are added, and so need to be told how many clauses they will receive, 
+	 * with {@link SATSolver#expectClauses(int)}, before the first one is added.  
+	 * @return true if the solvers returned by this.instance() need to be told the number of 
+	 * their clauses before the clauses are added
+	 */
+	public boolean streaming() {
+		return false;
+	}
+	
+	/**
+	 * Returns true if the solvers returned by this.instance() can give up on a call to 
+	 * {@link SATSolver#solve(int[], int)} after a given number of conflicts.  Otherwise returns false.
+	 * The sat4j factories are bounded, and so are the {@link #offHeap(SATFactory) off-heap} and 
+	 * {@link #simplifying(SATFactory) simplifying} wrappers of bounded factories.
+	 * @return true if the solvers returned by this.instance() support {@link SATSolver#solve(int[], int)}
+	 */
+	public boolean bounded() {
+		return false;
+	}
 
 }
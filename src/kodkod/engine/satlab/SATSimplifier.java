@@ -0,0 +1,50 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+/**
+ * Provides an interface to a SAT solver that simplifies its clauses before solving.  
+ * A simplifier may eliminate variables from its clauses, but the values that it 
+ * reports for eliminated variables are always consistent with all the clauses that 
+ * were added to it.  Frozen variables are never eliminated, so clients that add 
+ * clauses over a known set of variables between calls to {@link #solve()} should 
+ * freeze those variables first.
+ * 
+ * @specfield variables: set [1..)
+ * @specfield clauses: set Clause
+ * @specfield frozen: set variables
+ * @invariant all i: [2..) | i in variables => i-1 in variables
+ * @invariant all c: clauses | all lit: c.literals | lit in variables || -lit in variables
+ * @invariant all c: clauses | all disj i,j: c.literals | abs(i) != abs(j)
+ * @author agent
+ */
+public interface SATSimplifier extends SATSolver {
+	
+	/**
+	 * Prevents the given variable from being eliminated by this simplifier.
+	 * @requires variable in this.variables
+	 * @ensures this.frozen' = this.frozen + variable
+	 * @throws IllegalArgumentException  variable !in this.variables
+	 */
+	public void freeze(int variable);
+	
+}
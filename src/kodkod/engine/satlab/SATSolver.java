@@ -75,6 +75,21 @@ public interface SATSolver {
 	 */
 	public abstract boolean addClause(int[] lits);
 	
+	/**
+	 * Informs this solver that the given number of clauses will be added to it before the
+	 * next call to {@link #solve()} or {@link #solve(int[])}, and that no variables will be
+	 * added before then.  Solvers that {@linkplain SATFactory#streaming() stream} their clauses
+	 * to another process need this count before the first clause is added;  all other solvers
+	 * ignore it, which is what the default implementation does.
+	 * @requires count >= 0
+	 * @throws IllegalArgumentException  count < 0
+	 * @see SATFactory#streaming()
+	 */
+	public default void expectClauses(int count) {
+		if (count < 0)
+			throw new IllegalArgumentException("count < 0: " + count);
+	}
+	
 	/**
 	 * Returns true if there is a satisfying assignment for this.clauses.
 	 * Otherwise returns false.  If this.clauses are satisfiable, the 
@@ -88,6 +103,60 @@ public interface SATSolver {
 	 */
 	public abstract boolean solve() throws SATAbortedException;
 	
+	/**
+	 * Returns true if there is a satisfying assignment for this.clauses that 
+	 * is consistent with the given assumptions, i.e., that assigns the value true to each literal  
+	 * in the {@code assumptions} array.  Otherwise returns false.  If the outcome is true, 
+	 * the satisfying assignment for a given variable can be obtained by calling {@link #valueOf(int)}.
+	 * If the outcome is false, the subset of the assumptions responsible for the 
+	 * outcome can be obtained by calling {@link #failedAssumptions()}. The assumptions are
+	 * not retained by the solver, so unlike an UNSAT outcome of {@link #solve()}, an 
+	 * UNSAT outcome of this method that depends on some of the assumptions does not prevent 
+	 * further clauses from being added to the solver.
+	 * @requires all i: [0..assumptions.length) | abs(assumptions[i]) in this.variables 
+	 * @return true if this.clauses are satisfiable under the given assumptions; otherwise false.
+	 * @throws NullPointerException  assumptions = null
+	 * @throws IllegalArgumentException  some i: [0..assumptions.length) | abs(assumptions[i]) !in this.variables
+	 * @throws UnsupportedOperationException  this solver cannot solve under assumptions
+	 * @throws SATAbortedException - the call to solve was cancelled or
+	 * could not terminate normally.
+	 * @see #failedAssumptions()
+	 */
+	public abstract boolean solve(int[] assumptions) throws SATAbortedException;
+	
+	/**
+	 * Behaves like {@link #solve(int[])}, except that the search gives up after roughly 
+	 * <code>limit</code> conflicts.  A call that gives up throws a SATAbortedException, and leaves 
+	 * this.clauses unchanged and the solver ready for further calls.  Only the solvers produced by
+	 * {@linkplain SATFactory#bounded() bounded} factories support this method;  all other
+	 * solvers throw an UnsupportedOperationException, which is what the default implementation does.
+	 * @requires all i: [0..assumptions.length) | abs(assumptions[i]) in this.variables
+	 * @requires limit > 0
+	 * @return true if this.clauses are satisfiable under the given assumptions; otherwise false.
+	 * @throws NullPointerException  assumptions = null
+	 * @throws IllegalArgumentException  limit < 1 || some i: [0..assumptions.length) | abs(assumptions[i]) !in this.variables
+	 * @throws UnsupportedOperationException  this solver cannot bound its search
+	 * @throws SATAbortedException - the call ran out of conflicts, was cancelled, or
+	 * could not terminate normally.
+	 * @see SATFactory#bounded()
+	 */
+	public default boolean solve(int[] assumptions, int limit) throws SATAbortedException {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Returns a subset of the assumptions passed to the last call to {@link #solve(int[])} 
+	 * that is sufficient, together with this.clauses, to make the problem unsatisfiable.  
+	 * The returned array is empty if this.clauses are unsatisfiable regardless of the assumptions.
+	 * @requires {@link #solve(int[])} has been called and the outcome of the last call 
+	 * was <code>false</code>
+	 * @return a subset of the assumptions passed to the last call to {@link #solve(int[])} 
+	 * that is sufficient, together with this.clauses, to make the problem unsatisfiable.
+	 * @throws IllegalStateException  {@link #solve(int[]) } has not been called or the 
+	 * outcome of the last call was not <code>false</code>.
+	 */
+	public abstract int[] failedAssumptions();
+	
 	/**
 	 * Returns the boolean value assigned to the given variable by the
 	 * last successful call to {@link #solve()}. 
@@ -70,6 +70,29 @@ public final class Instance implements Cloneable {
 		this.ints = new TreeSequence<TupleSet>();
 	}
 	
+	/**
+	 * Returns an unmodifiable instance over the given universe that is backed by the given
+	 * map and sequence.  The map and sequence are not copied, and their values are read
+	 * only when requested from the returned instance.  This lets clients such as the
+	 * {@linkplain kodkod.engine.fol2sat.Translation#interpretLazily() translation} compute
+	 * the tuples of each relation on first access.  A {@linkplain #clone() clone} of the
+	 * returned instance reads all bindings from the backing map and is modifiable.
+	 * @requires all r: relationTuples.keySet() | r.arity = relationTuples.get(r).arity &&
+	 *           relationTuples.get(r).universe = universe
+	 * @requires all i: intTuples.indices() | intTuples.get(i).arity = 1 && intTuples.get(i).size() = 1 &&
+	 *           intTuples.get(i).universe = universe
+	 * @requires the tuple sets in relationTuples and intTuples are unmodifiable
+	 * @return { i: Instance | i.universe = universe && i.relations = relationTuples.keySet() &&
+	 *           (all r: i.relations | i.tuples[r] = relationTuples.get(r)) &&
+	 *           (all n: intTuples.indices() | i.tuples[n] = intTuples.get(n)) }
+	 * @throws NullPointerException  universe = null || relationTuples = null || intTuples = null
+	 */
+	public static Instance viewOf(Universe universe, Map<Relation, TupleSet> relationTuples, SparseSequence<TupleSet> intTuples) {
+		if (universe==null) throw new NullPointerException("universe=null");
+		if (relationTuples==null) throw new NullPointerException("relationTuples=null");
+		return new Instance(universe, Collections.unmodifiableMap(relationTuples), Ints.unmodifiableSequence(intTuples));
+	}
+
 	/**
 	 * Returns the universe from which the tuples in this instance
 	 * are drawn.
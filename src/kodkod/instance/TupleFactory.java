@@ -255,6 +255,24 @@ public final class TupleFactory {
 		return ret;
 	}
 	
+	/**
+	 * Returns the number of distinct tuples of the given arity that can be 
+	 * drawn from this.universe, or Long.MAX_VALUE if that number 
+	 * cannot be represented as a long.  Tuples and tuple sets of the given 
+	 * arity can be created only if the result is at most Integer.MAX_VALUE.
+	 * @return min(this.universe.size()^arity, Long.MAX_VALUE)
+	 * @throws IllegalArgumentException  arity < 1
+	 */
+	public long capacity(int arity) {
+		if (arity < 1) throw new IllegalArgumentException("arity < 1");
+		long capacity = 1;
+		for(int i = 0; i < arity; i++) {
+			if (capacity > Long.MAX_VALUE / base) return Long.MAX_VALUE;
+			capacity *= base;
+		}
+		return capacity;
+	}
+	
 	/**
 	 * Throws a CapacityExceededException if all tuples of the given arity 
 	 * drawn from this.universe cannot be represented as an integer.
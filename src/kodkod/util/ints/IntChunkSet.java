@@ -0,0 +1,1187 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.util.ints;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An implementation of the IntSet interface based on a compressed, two-level 
+ * bitmap in the style of Roaring bitmaps.  The set is partitioned into chunks 
+ * of 2^16 consecutive integers that share the same high 16 bits.  The low 16 bits 
+ * of the elements in each non-empty chunk are stored in a container that is 
+ * either a sorted array, a bitmap, or a sorted list of runs, depending on which 
+ * representation is most compact for the chunk's contents.  An IntChunkSet can store 
+ * any integer; it takes far less memory than an IntBitSet or an IntTreeSet
+ * when the stored integers are drawn sparsely from a large range.  Bulk 
+ * operations on two chunk sets work chunk by chunk rather than element by element.
+ * 
+ * @specfield ints: set int
+ * @author agent
+ */
+public final class IntChunkSet extends AbstractIntSet implements Cloneable {
+	/* The maximum cardinality of an array container. */
+	private static final int ARRAY_MAX = 4096;
+	/* The number of words in a bitmap container, and its size in bytes. */
+	private static final int WORDS = 1024, BITMAP_BYTES = WORDS << 3;
+	/* The number of integers in a chunk.  */
+	private static final int CHUNK = 1 << 16;
+	
+	/* keys[0..chunks) are the high 16 bits of the integers in this set, in the ascending
+	 * order, and containers[i] holds the low 16 bits of the integers whose high bits are keys[i].
+	 * @invariant all i: [0..chunks) | containers[i].cardinality() > 0
+	 * @invariant size = sum i: [0..chunks) | containers[i].cardinality() */
+	private int[] keys;
+	private Container[] containers;
+	private int chunks, size;
+	
+	/**
+	 * Constructs an empty int set.
+	 * @ensures no this.ints'
+	 */
+	public IntChunkSet() {
+		keys = new int[4];
+		containers = new Container[4];
+		chunks = 0;
+		size = 0;
+	}
+	
+	/**
+	 * Constructs a new int set containing the elements
+	 * in the specified set.
+	 * @ensures this.ints' = s.ints
+	 * @throws NullPointerException  s = null
+	 */
+	public IntChunkSet(IntSet s) {
+		this();
+		addAll(s);
+	}
+	
+	/**
+	 * Returns the high 16 bits of i, as a signed integer.  The keys of
+	 * any two integers are ordered in the same way as the integers themselves.
+	 * @return i >> 16
+	 */
+	private static int key(int i) { return i >> 16; }
+	
+	/**
+	 * Returns the low 16 bits of i.
+	 * @return i & 0xFFFF
+	 */
+	private static int low(int i) { return i & 0xFFFF; }
+	
+	/**
+	 * Returns the integer whose high bits are given by the key and whose low bits are given by low.
+	 * @requires 0 <= low < 2^16
+	 * @return (key << 16) | low
+	 */
+	private static int join(int key, int low) { return (key << 16) | low; }
+	
+	/**
+	 * Searches this.keys for the given key. If the key is found, 
+	 * its position is returned.  Otherwise, -insertionPoint - 1 is returned.  
+	 * @return the position of the given key in this.keys, 
+	 * or -insertionPoint - 1 if the key is not in this.keys.
+	 */
+	private int search(int key) {
+		if (chunks==0 || key > keys[chunks-1])
+			return -chunks-1;
+		else if (key==keys[chunks-1]) 
+			return chunks-1;
+		return Arrays.binarySearch(keys, 0, chunks, key);
+	}
+	
+	/**
+	 * Inserts the given container with the given key at the specified position.
+	 * @requires 0 <= pos <= this.chunks && the insertion preserves the ordering of this.keys
+	 * @ensures inserts the given key/container pair at the given position
+	 */
+	private void insertChunk(int pos, int key, Container c) {
+		if (chunks==keys.length) {
+			final int capacity = chunks + (chunks>>1) + 1;
+			keys = Arrays.copyOf(keys, capacity);
+			containers = Arrays.copyOf(containers, capacity);
+		}
+		System.arraycopy(keys, pos, keys, pos+1, chunks-pos);
+		System.arraycopy(containers, pos, containers, pos+1, chunks-pos);
+		keys[pos] = key;
+		containers[pos] = c;
+		chunks++;
+	}
+	
+	/**
+	 * Removes the chunk at the given position.
+	 * @requires 0 <= pos < this.chunks
+	 * @ensures removes the key/container pair at the given position
+	 */
+	private void deleteChunk(int pos) {
+		chunks--;
+		System.arraycopy(keys, pos+1, keys, pos, chunks-pos);
+		System.arraycopy(containers, pos+1, containers, pos, chunks-pos);
+		containers[chunks] = null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#size()
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntCollection#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size==0;
+	}
+	
+	/**
+	 * Returns true if i is in this set.
+	 * @return i in this.ints
+	 * @see kodkod.util.ints.IntSet#contains(int)
+	 */
+	@Override
+	public boolean contains(int i) {
+		final int pos = search(key(i));
+		return pos >= 0 && containers[pos].contains(low(i));
+	}
+	
+	/**
+	 * Returns the smallest element in this set.
+	 * Throws a NoSuchElementException if this set is empty.
+	 * @return min(this.ints)
+	 * @throws java.util.NoSuchElementException  no this.ints
+	 * @see kodkod.util.ints.IntSet#min()
+	 */
+	@Override
+	public int min() {
+		checkNonEmpty();
+		return join(keys[0], containers[0].ceil(0));
+	}
+	
+	/**
+	 * Returns the largest element in this set.
+	 * Throws a NoSuchElementException if this set is empty.
+	 * @return max(this.ints)
+	 * @throws java.util.NoSuchElementException  no this.ints
+	 * @see kodkod.util.ints.IntSet#max()
+	 */
+	@Override
+	public int max() {
+		checkNonEmpty();
+		return join(keys[chunks-1], containers[chunks-1].floor(CHUNK-1));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#ceil(int)
+	 */
+	public int ceil(int i) {
+		final int key = key(i);
+		int pos = search(key);
+		if (pos >= 0) { 
+			final int low = containers[pos].ceil(low(i));
+			if (low >= 0) return join(key, low);
+			pos++;
+		} else {
+			pos = -pos-1;
+		}
+		if (pos==chunks) throw new NoSuchElementException();
+		return join(keys[pos], containers[pos].ceil(0));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#floor(int)
+	 */
+	public int floor(int i) {
+		final int key = key(i);
+		int pos = search(key);
+		if (pos >= 0) { 
+			final int low = containers[pos].floor(low(i));
+			if (low >= 0) return join(key, low);
+			pos--;
+		} else {
+			pos = -pos-2;
+		}
+		if (pos < 0) throw new NoSuchElementException();
+		return join(keys[pos], containers[pos].floor(CHUNK-1));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#iterator(int, int)
+	 */
+	public IntIterator iterator(int from, int to) {
+		return from <= to ? new AscendingIterator(from, to) : new DescendingIterator(from, to);
+	}
+	
+	/**
+	 * Adds the given integer to this set if not already present
+	 * and returns true.  Otherwise does nothing and returns false.
+	 * @ensures this.ints' = this.ints + i
+	 * @return i in this.ints'
+	 * @see kodkod.util.ints.IntSet#add(int)
+	 */
+	@Override
+	public boolean add(int i) {
+		final int key = key(i), low = low(i);
+		final int pos = search(key);
+		if (pos >= 0) {
+			final Container c = containers[pos];
+			if (c.contains(low)) return false;
+			containers[pos] = c.add(low);
+		} else {
+			final ArrayContainer c = new ArrayContainer(4);
+			c.add(low);
+			insertChunk(-pos-1, key, c);
+		}
+		size++;
+		return true;
+	}
+	
+	/**
+	 * Removes the given integer from this set if already present and
+	 * returns true.  Otherwise does nothing and returns false.
+	 * @ensures this.ints' = this.ints - i
+	 * @return i !in this.ints'
+	 * @see kodkod.util.ints.IntSet#remove(int)
+	 */
+	@Override
+	public boolean remove(int i) {
+		final int low = low(i);
+		final int pos = search(key(i));
+		if (pos >= 0 && containers[pos].contains(low)) {
+			final Container c = containers[pos].remove(low);
+			if (c.cardinality()==0) 
+				deleteChunk(pos);
+			else 
+				containers[pos] = c;
+			size--;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#containsAll(kodkod.util.ints.IntCollection)
+	 */
+	@Override
+	public boolean containsAll(IntCollection other) {
+		if (other instanceof IntChunkSet) {
+			final IntChunkSet s = (IntChunkSet) other;
+			if (size < s.size) return false;
+			for(int i = 0, pos = 0; i < s.chunks; i++) {
+				while(pos < chunks && keys[pos] < s.keys[i]) { pos++; }
+				if (pos==chunks || keys[pos]!=s.keys[i] || !s.containers[i].subsetOf(containers[pos]))
+					return false;
+			}
+			return true;
+		}
+		return super.containsAll(other);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#addAll(kodkod.util.ints.IntCollection)
+	 */
+	@Override
+	public boolean addAll(IntCollection other) {
+		if (other instanceof IntChunkSet) {
+			final IntChunkSet s = (IntChunkSet) other;
+			if (s.isEmpty() || s==this) return false;
+			final int[] rkeys = new int[chunks + s.chunks];
+			final Container[] rcontainers = new Container[rkeys.length];
+			int i = 0, j = 0, n = 0, rsize = 0;
+			while(i < chunks || j < s.chunks) {
+				final Container c;
+				if (j==s.chunks || (i < chunks && keys[i] < s.keys[j])) {
+					rkeys[n] = keys[i];
+					c = containers[i++];
+				} else if (i==chunks || s.keys[j] < keys[i]) {
+					rkeys[n] = s.keys[j];
+					c = s.containers[j++].copy();
+				} else {
+					rkeys[n] = keys[i];
+					c = containers[i++].or(s.containers[j++]);
+				}
+				rcontainers[n++] = c;
+				rsize += c.cardinality();
+			}
+			keys = rkeys;
+			containers = rcontainers;
+			chunks = n;
+			final boolean modified = rsize != size;
+			size = rsize;
+			return modified;
+		}
+		return super.addAll(other);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#retainAll(kodkod.util.ints.IntCollection)
+	 */
+	@Override
+	public boolean retainAll(IntCollection other) {
+		if (other instanceof IntChunkSet) {
+			final IntChunkSet s = (IntChunkSet) other;
+			int n = 0, rsize = 0;
+			for(int i = 0, j = 0; i < chunks; i++) {
+				while(j < s.chunks && s.keys[j] < keys[i]) { j++; }
+				if (j < s.chunks && s.keys[j]==keys[i]) {
+					final Container c = containers[i].and(s.containers[j]);
+					if (c != null) {
+						keys[n] = keys[i];
+						containers[n++] = c;
+						rsize += c.cardinality();
+					}
+				}
+			}
+			return truncate(n, rsize);
+		}
+		return super.retainAll(other);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.util.ints.IntSet#removeAll(kodkod.util.ints.IntCollection)
+	 */
+	@Override
+	public boolean removeAll(IntCollection other) {
+		if (other instanceof IntChunkSet) {
+			final IntChunkSet s = (IntChunkSet) other;
+			int n = 0, rsize = 0;
+			for(int i = 0, j = 0; i < chunks; i++) {
+				while(j < s.chunks && s.keys[j] < keys[i]) { j++; }
+				final Container c = (j < s.chunks && s.keys[j]==keys[i]) ? 
+						containers[i].andNot(s.containers[j]) : containers[i];
+				if (c != null) {
+					keys[n] = keys[i];
+					containers[n++] = c;
+					rsize += c.cardinality();
+				}
+			}
+			return truncate(n, rsize);
+		}
+		return super.removeAll(other);
+	}
+	
+	/**
+	 * Sets the number of chunks in this set to n and its size to rsize, 
+	 * and returns true if the size has changed.
+	 * @requires n <= this.chunks
+	 * @ensures this.chunks' = n && this.size' = rsize
+	 * @return this.size != rsize
+	 */
+	private boolean truncate(int n, int rsize) {
+		Arrays.fill(containers, n, chunks, null);
+		chunks = n;
+		final boolean modified = rsize != size;
+		size = rsize;
+		return modified;
+	}
+	
+	/**
+	 * Removes all elements from this set. 
+	 * @ensures no this.ints'
+	 * @see kodkod.util.ints.IntCollection#clear()
+	 */
+	@Override
+	public void clear() {
+		truncate(0, 0);
+	}
+	
+	/**
+	 * Returns a copy of this int chunk set.  The copy is independent of this 
+	 * IntSet.
+	 * @return a copy of this IntSet.
+	 * @see kodkod.util.ints.IntSet#clone()
+	 */
+	@Override
+	public IntChunkSet clone() {
+		try {
+			final IntChunkSet ret = (IntChunkSet) super.clone();
+			ret.keys = Arrays.copyOf(keys, chunks);
+			ret.containers = new Container[chunks];
+			for(int i = 0; i < chunks; i++) { 
+				ret.containers[i] = containers[i].copy();
+			}
+			return ret;
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError(); // unreachable code
+		}
+	}
+	
+	/**
+	 * Stores common fields and methods for the ascending and descending iterators.
+	 * An iterator keeps a cursor into the container that holds the next element, 
+	 * and repositions the cursor from scratch after a removal.
+	 */
+	private abstract class AbstractIterator implements IntIterator {
+		/* the next element to return, or a value outside the int range if there is none */
+		long next;
+		/* the position of the chunk that holds next, its container, and the position of next in it */
+		int chunk, cursor;
+		Container current;
+		int lastReturned;
+		boolean canRemove = false;
+		
+		/**
+		 * Positions this iterator at the given cursor in the given chunk.
+		 * @requires 0 <= chunk < chunks && cursor is a valid position in containers[chunk]
+		 */
+		final void moveTo(int chunk, int cursor) {
+			this.chunk = chunk;
+			this.cursor = cursor;
+			this.current = containers[chunk];
+			this.next = join(keys[chunk], current.at(cursor));
+		}
+		
+		/**
+		 * Positions this iterator at the first element that it should return after i, inclusive.
+		 */
+		abstract void locate(int i);
+		
+		/**
+		 * Advances this iterator past this.next.
+		 */
+		abstract void advance();
+		
+		public int next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			lastReturned = (int) next;
+			canRemove = true;
+			advance();
+			return lastReturned;
+		}
+		
+		public void remove() {
+			if (!canRemove) throw new IllegalStateException();
+			IntChunkSet.this.remove(lastReturned);
+			if (hasNext()) locate((int) next);
+			canRemove = false;
+		}
+	}
+	
+	/**
+	 * Implementation of an ascending iterator over (a subset of) this set.
+	 */
+	private final class AscendingIterator extends AbstractIterator {
+		private final int to;
+		
+		/**
+		 * Constructs an ascending iterator that returns elements between
+		 * from and to.  
+		 * @requires from <= to 
+		 */
+		AscendingIterator(int from, int to) {
+			this.to = to;
+			locate(from);
+		}
+		
+		void locate(int i) {
+			int pos = search(key(i));
+			if (pos >= 0) {
+				final int c = containers[pos].ceilPos(low(i));
+				if (c >= 0) { 
+					moveTo(pos, c);
+					return;
+				}
+				pos++;
+			} else {
+				pos = -pos-1;
+			}
+			if (pos < chunks) 
+				moveTo(pos, containers[pos].ceilPos(0));
+			else
+				next = Long.MAX_VALUE;
+		}
+		
+		void advance() {
+			final int c = current.nextPos(cursor);
+			if (c >= 0) {
+				cursor = c;
+				next = join(keys[chunk], current.at(c));
+			} else if (chunk+1 < chunks) {
+				moveTo(chunk+1, containers[chunk+1].ceilPos(0));
+			} else {
+				next = Long.MAX_VALUE;
+			}
+		}
+		
+		public boolean hasNext() {
+			return next <= to;
+		}
+	}
+	
+	/**
+	 * Implementation of a descending iterator over (a subset of) this set.
+	 */
+	private final class DescendingIterator extends AbstractIterator {
+		private final int to;
+		
+		/**
+		 * Constructs a descending iterator that returns elements between
+		 * from and to.  
+		 * @requires from >= to 
+		 */
+		DescendingIterator(int from, int to) {
+			this.to = to;
+			locate(from);
+		}
+		
+		void locate(int i) {
+			int pos = search(key(i));
+			if (pos >= 0) {
+				final int c = containers[pos].floorPos(low(i));
+				if (c >= 0) { 
+					moveTo(pos, c);
+					return;
+				}
+				pos--;
+			} else {
+				pos = -pos-2;
+			}
+			if (pos >= 0) 
+				moveTo(pos, containers[pos].floorPos(CHUNK-1));
+			else
+				next = Long.MIN_VALUE;
+		}
+		
+		void advance() {
+			final int c = current.prevPos(cursor);
+			if (c >= 0) {
+				cursor = c;
+				next = join(keys[chunk], current.at(c));
+			} else if (chunk > 0) {
+				moveTo(chunk-1, containers[chunk-1].floorPos(CHUNK-1));
+			} else {
+				next = Long.MIN_VALUE;
+			}
+		}
+		
+		public boolean hasNext() {
+			return next >= to;
+		}
+	}
+	
+	/**
+	 * Returns the smallest i >= from such that the ith bit of the given bitmap is set, 
+	 * or -1 if there is no such bit.
+	 * @requires bits.length = WORDS && 0 <= from 
+	 */
+	private static int nextSetBit(long[] bits, int from) {
+		if (from >= CHUNK) return -1;
+		int w = from >>> 6;
+		long word = bits[w] & (-1L << from);
+		while(word==0) {
+			if (++w==WORDS) return -1;
+			word = bits[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * Returns the smallest i >= from such that the ith bit of the given bitmap is clear, 
+	 * or 2^16 if there is no such bit.
+	 * @requires bits.length = WORDS && 0 <= from 
+	 */
+	private static int nextClearBit(long[] bits, int from) {
+		if (from >= CHUNK) return CHUNK;
+		int w = from >>> 6;
+		long word = ~bits[w] & (-1L << from);
+		while(word==0) {
+			if (++w==WORDS) return CHUNK;
+			word = ~bits[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * Returns the largest i <= from such that the ith bit of the given bitmap is set, 
+	 * or -1 if there is no such bit.
+	 * @requires bits.length = WORDS && 0 <= from < 2^16
+	 */
+	private static int prevSetBit(long[] bits, int from) {
+		int w = from >>> 6;
+		long word = bits[w] & (-1L >>> (63 - (from & 63)));
+		while(word==0) {
+			if (--w < 0) return -1;
+			word = bits[w];
+		}
+		return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+	}
+	
+	/**
+	 * Sets the bits in the closed range [from..to] of the given bitmap.
+	 * @requires bits.length = WORDS && 0 <= from <= to < 2^16
+	 */
+	private static void setRange(long[] bits, int from, int to) {
+		final int w0 = from >>> 6, w1 = to >>> 6;
+		final long first = -1L << from, last = -1L >>> (63 - (to & 63));
+		if (w0==w1) {
+			bits[w0] |= first & last;
+		} else {
+			bits[w0] |= first;
+			Arrays.fill(bits, w0+1, w1, -1L);
+			bits[w1] |= last;
+		}
+	}
+	
+	/**
+	 * Returns the most compact container for the integers whose bits are set in the given 
+	 * bitmap, or null if the bitmap is empty.  The returned container may be backed by the bitmap.
+	 * @requires bits.length = WORDS
+	 * @return no bits => null else some c: Container | c.ints = { i: [0..2^16) | the ith bit of bits is set }
+	 */
+	private static Container best(long[] bits) {
+		int card = 0, runs = 0;
+		long prev = 0;
+		for(long word : bits) {
+			card += Long.bitCount(word);
+			runs += Long.bitCount(word & ~((word << 1) | (prev >>> 63)));
+			prev = word;
+		}
+		if (card==0) return null;
+		final int arrayBytes = card <= ARRAY_MAX ? card << 1 : Integer.MAX_VALUE, runBytes = runs << 2;
+		if (runBytes < arrayBytes && runBytes < BITMAP_BYTES) {
+			final char[] r = new char[runs << 1];
+			for(int k = 0, start = nextSetBit(bits, 0); start >= 0; k += 2) {
+				final int end = nextClearBit(bits, start);
+				r[k] = (char) start;
+				r[k+1] = (char) (end - 1 - start);
+				start = nextSetBit(bits, end);
+			}
+			return new RunContainer(r, runs, card);
+		} else if (arrayBytes <= BITMAP_BYTES) {
+			final char[] a = new char[card];
+			for(int i = 0, v = nextSetBit(bits, 0); v >= 0; v = nextSetBit(bits, v+1)) {
+				a[i++] = (char) v;
+			}
+			return new ArrayContainer(a, card);
+		} else {
+			return new BitmapContainer(bits, card);
+		}
+	}
+	
+	/**
+	 * A set of integers in the range [0..2^16) that stores the low bits
+	 * of the elements in a chunk.  The bulk operations return containers that do not 
+	 * share any state with their arguments, but they may modify and return the receiver.
+	 * @specfield ints: set [0..2^16)
+	 */
+	private static abstract class Container {
+		/**
+		 * Returns the cardinality of this container.
+		 * @return #this.ints
+		 */
+		abstract int cardinality();
+		
+		/**
+		 * Returns true if low is in this container.
+		 * @return low in this.ints
+		 */
+		abstract boolean contains(int low);
+		
+		/**
+		 * Adds low to this container and returns the resulting container, which 
+		 * may be this or a container with a different representation.
+		 * @requires low !in this.ints
+		 * @return some c: Container | c.ints = this.ints + low
+		 */
+		abstract Container add(int low);
+		
+		/**
+		 * Removes low from this container and returns the resulting container, which 
+		 * may be this or a container with a different representation.
+		 * @requires low in this.ints
+		 * @return some c: Container | c.ints = this.ints - low
+		 */
+		abstract Container remove(int low);
+		
+		/**
+		 * Returns the position of the smallest element of this container that is greater than 
+		 * or equal to low, or -1 if there is no such element.  Positions are non-negative 
+		 * integers that are valid until this container is modified.
+		 * @return position of min({i: this.ints | i >= low}), or -1 if there is no such element
+		 */
+		abstract int ceilPos(int low);
+		
+		/**
+		 * Returns the position of the largest element of this container that is less than 
+		 * or equal to low, or -1 if there is no such element.  
+		 * @return position of max({i: this.ints | i <= low}), or -1 if there is no such element
+		 */
+		abstract int floorPos(int low);
+		
+		/**
+		 * Returns the position of the element that follows the one at the given position, 
+		 * or -1 if there is no such element.
+		 * @requires pos is a valid position in this container
+		 */
+		abstract int nextPos(int pos);
+		
+		/**
+		 * Returns the position of the element that precedes the one at the given position, 
+		 * or -1 if there is no such element.
+		 * @requires pos is a valid position in this container
+		 */
+		abstract int prevPos(int pos);
+		
+		/**
+		 * Returns the element at the given position.
+		 * @requires pos is a valid position in this container
+		 */
+		abstract int at(int pos);
+		
+		/**
+		 * Returns the smallest element of this container that is greater than 
+		 * or equal to low, or -1 if there is no such element.
+		 * @return min({i: this.ints | i >= low}), or -1 if there is no such element
+		 */
+		final int ceil(int low) {
+			final int pos = ceilPos(low);
+			return pos < 0 ? -1 : at(pos);
+		}
+		
+		/**
+		 * Returns the largest element of this container that is less than 
+		 * or equal to low, or -1 if there is no such element.
+		 * @return max({i: this.ints | i <= low}), or -1 if there is no such element
+		 */
+		final int floor(int low) {
+			final int pos = floorPos(low);
+			return pos < 0 ? -1 : at(pos);
+		}
+		
+		/**
+		 * Sets the bits of the given bitmap that correspond to the elements of this container.
+		 * @requires bits.length = WORDS
+		 * @ensures all i: this.ints | the ith bit of bits' is set
+		 */
+		abstract void fill(long[] bits);
+		
+		/**
+		 * Returns a copy of this container that shares no state with it.
+		 * @return some c: Container | c.ints = this.ints
+		 */
+		abstract Container copy();
+		
+		/**
+		 * Returns a fresh bitmap representation of this container.
+		 * @return a fresh bitmap that has the ith bit set iff i is in this.ints
+		 */
+		long[] bits() {
+			final long[] bits = new long[WORDS];
+			fill(bits);
+			return bits;
+		}
+		
+		/**
+		 * Returns the union of this and the given container.
+		 * @return some c: Container | c.ints = this.ints + other.ints
+		 */
+		Container or(Container other) {
+			final long[] bits = bits();
+			other.fill(bits);
+			return best(bits);
+		}
+		
+		/**
+		 * Returns the intersection of this and the given container, or null if it is empty.
+		 * @return some this.ints & other.ints => some c: Container | c.ints = this.ints & other.ints else null
+		 */
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) 
+				return other.and(this);
+			final long[] bits = bits(), otherBits = other.bits();
+			for(int w = 0; w < WORDS; w++) { 
+				bits[w] &= otherBits[w];
+			}
+			return best(bits);
+		}
+		
+		/**
+		 * Returns the difference of this and the given container, or null if it is empty.
+		 * @return some this.ints - other.ints => some c: Container | c.ints = this.ints - other.ints else null
+		 */
+		Container andNot(Container other) {
+			final long[] bits = bits(), otherBits = other.bits();
+			for(int w = 0; w < WORDS; w++) { 
+				bits[w] &= ~otherBits[w];
+			}
+			return best(bits);
+		}
+		
+		/**
+		 * Returns true if this container is a subset of the given container.
+		 * @return this.ints in other.ints
+		 */
+		boolean subsetOf(Container other) {
+			if (cardinality() > other.cardinality()) return false;
+			final long[] bits = bits(), otherBits = other.bits();
+			for(int w = 0; w < WORDS; w++) { 
+				if ((bits[w] & ~otherBits[w]) != 0) return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * A container that stores up to ARRAY_MAX elements in a sorted array.
+	 */
+	private static final class ArrayContainer extends Container {
+		private char[] values;
+		private int card;
+		
+		/**
+		 * Constructs an empty container that can hold the given number of elements without growing.
+		 */
+		ArrayContainer(int capacity) {
+			this.values = new char[capacity];
+			this.card = 0;
+		}
+		
+		/**
+		 * Constructs a container backed by the first card elements of the given array.
+		 * @requires values[0..card) are sorted in the ascending order and card <= ARRAY_MAX
+		 */
+		ArrayContainer(char[] values, int card) {
+			this.values = values;
+			this.card = card;
+		}
+		
+		/**
+		 * Searches this.values for low, taking constant time if low is greater than all elements.
+		 * @return the position of low in this.values, or -insertionPoint-1 if low is not in this.values
+		 */
+		private int search(int low) {
+			if (card==0 || low > values[card-1]) 
+				return -card-1;
+			return Arrays.binarySearch(values, 0, card, (char) low);
+		}
+		
+		int cardinality() { return card; }
+		
+		boolean contains(int low) { return search(low) >= 0; }
+		
+		Container add(int low) {
+			if (card==ARRAY_MAX) {
+				final long[] bits = bits();
+				bits[low >>> 6] |= 1L << low;
+				return best(bits);
+			}
+			final int pos = -search(low)-1;
+			if (card==values.length) 
+				values = Arrays.copyOf(values, StrictMath.min(ARRAY_MAX, card + (card>>1) + 1));
+			System.arraycopy(values, pos, values, pos+1, card-pos);
+			values[pos] = (char) low;
+			card++;
+			return this;
+		}
+		
+		Container remove(int low) {
+			final int pos = search(low);
+			System.arraycopy(values, pos+1, values, pos, card-pos-1);
+			card--;
+			return this;
+		}
+		
+		int ceilPos(int low) {
+			final int pos = search(low);
+			if (pos >= 0) return pos;
+			return -pos-1 < card ? -pos-1 : -1;
+		}
+		
+		int floorPos(int low) {
+			final int pos = search(low);
+			return pos >= 0 ? pos : -pos-2;
+		}
+		
+		int nextPos(int pos) { return pos+1 < card ? pos+1 : -1; }
+		
+		int prevPos(int pos) { return pos-1; }
+		
+		int at(int pos) { return values[pos]; }
+		
+		void fill(long[] bits) {
+			for(int i = 0; i < card; i++) {
+				final int v = values[i];
+				bits[v >>> 6] |= 1L << v;
+			}
+		}
+		
+		Container copy() { return new ArrayContainer(Arrays.copyOf(values, card), card); }
+		
+		Container or(Container other) {
+			if (other instanceof ArrayContainer) {
+				final ArrayContainer a = (ArrayContainer) other;
+				if (card + a.card <= ARRAY_MAX) {
+					final char[] r = new char[card + a.card];
+					int i = 0, j = 0, n = 0;
+					while(i < card && j < a.card) {
+						final char x = values[i], y = a.values[j];
+						if (x <= y) { r[n++] = x; i++; if (x==y) j++; }
+						else { r[n++] = y; j++; }
+					}
+					while(i < card) { r[n++] = values[i++]; }
+					while(j < a.card) { r[n++] = a.values[j++]; }
+					return new ArrayContainer(r, n);
+				}
+			}
+			return super.or(other);
+		}
+		
+		Container and(Container other) { return filter(other, true); }
+		
+		Container andNot(Container other) { return filter(other, false); }
+		
+		/**
+		 * Returns a container with the elements of this that are (if keep is true) or are not
+		 * (if keep is false) in the given container, or null if there are no such elements.
+		 */
+		private Container filter(Container other, boolean keep) {
+			final char[] r = new char[card];
+			int n = 0;
+			for(int i = 0; i < card; i++) {
+				if (other.contains(values[i])==keep) 
+					r[n++] = values[i];
+			}
+			return n==0 ? null : new ArrayContainer(r, n);
+		}
+		
+		boolean subsetOf(Container other) {
+			if (card > other.cardinality()) return false;
+			for(int i = 0; i < card; i++) {
+				if (!other.contains(values[i])) return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * A container that stores more than ARRAY_MAX elements in a bitmap of 2^16 bits.
+	 */
+	private static final class BitmapContainer extends Container {
+		private final long[] bits;
+		private int card;
+		
+		/**
+		 * Constructs a container backed by the given bitmap, which has card bits set.
+		 * @requires bits.length = WORDS
+		 */
+		BitmapContainer(long[] bits, int card) {
+			this.bits = bits;
+			this.card = card;
+		}
+		
+		int cardinality() { return card; }
+		
+		boolean contains(int low) { return (bits[low >>> 6] & (1L << low)) != 0; }
+		
+		Container add(int low) {
+			bits[low >>> 6] |= 1L << low;
+			return ++card==CHUNK ? best(bits) : this;
+		}
+		
+		Container remove(int low) {
+			bits[low >>> 6] &= ~(1L << low);
+			return --card <= ARRAY_MAX ? best(bits) : this;
+		}
+		
+		int ceilPos(int low) { return nextSetBit(bits, low); }
+		
+		int floorPos(int low) { return prevSetBit(bits, low); }
+		
+		int nextPos(int pos) { return nextSetBit(bits, pos+1); }
+		
+		int prevPos(int pos) { return pos==0 ? -1 : prevSetBit(bits, pos-1); }
+		
+		int at(int pos) { return pos; }
+		
+		void fill(long[] other) {
+			for(int w = 0; w < WORDS; w++) {
+				other[w] |= bits[w];
+			}
+		}
+		
+		long[] bits() { return bits.clone(); }
+		
+		Container copy() { return new BitmapContainer(bits.clone(), card); }
+	}
+	
+	/**
+	 * A container that stores its elements as a sorted list of disjoint, non-adjacent runs.
+	 */
+	private static final class RunContainer extends Container {
+		/* runs[2k] is the first element of the kth run, and runs[2k+1] is its length minus one */
+		private char[] runs;
+		private int n, card;
+		
+		/**
+		 * Constructs a container backed by the first n runs in the given array, which 
+		 * have card elements in total.
+		 * @requires runs[0..2n) are sorted, disjoint and non-adjacent runs
+		 */
+		RunContainer(char[] runs, int n, int card) {
+			this.runs = runs;
+			this.n = n;
+			this.card = card;
+		}
+		
+		/** @return the first element of the kth run */
+		private int start(int k) { return runs[k<<1]; }
+		
+		/** @return the last element of the kth run */
+		private int end(int k) { return runs[k<<1] + runs[(k<<1)+1]; }
+		
+		/**
+		 * Returns the index of the last run that starts at or before low, or -1 if there is no such run.
+		 * Takes constant time if low is in or after the last run.
+		 */
+		private int search(int low) {
+			if (n > 0 && start(n-1) <= low) return n-1;
+			int lo = 0, hi = n-1;
+			while(lo <= hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (start(mid) <= low) lo = mid + 1;
+				else hi = mid - 1;
+			}
+			return hi;
+		}
+		
+		/**
+		 * Inserts the run [start..end] at the given position.
+		 */
+		private void insertRun(int k, int start, int end) {
+			if ((n+1)<<1 > runs.length) 
+				runs = Arrays.copyOf(runs, StrictMath.max(4, runs.length + (runs.length>>1) + 2));
+			System.arraycopy(runs, k<<1, runs, (k+1)<<1, (n-k)<<1);
+			runs[k<<1] = (char) start;
+			runs[(k<<1)+1] = (char) (end - start);
+			n++;
+		}
+		
+		/**
+		 * Removes the run at the given position.
+		 */
+		private void deleteRun(int k) {
+			System.arraycopy(runs, (k+1)<<1, runs, k<<1, (n-k-1)<<1);
+			n--;
+		}
+		
+		/**
+		 * Returns this container if runs are still the most compact representation for it, 
+		 * or an equivalent array or bitmap container otherwise.
+		 */
+		private Container fit() {
+			final int runBytes = n << 2;
+			if (card==0 || (runBytes < BITMAP_BYTES && (card > ARRAY_MAX || runBytes < card<<1))) 
+				return this;
+			return best(bits());
+		}
+		
+		int cardinality() { return card; }
+		
+		boolean contains(int low) {
+			final int k = search(low);
+			return k >= 0 && low <= end(k);
+		}
+		
+		Container add(int low) {
+			final int k = search(low);
+			final boolean joinsPrev = k >= 0 && end(k)+1==low;
+			final boolean joinsNext = k+1 < n && start(k+1)==low+1;
+			if (joinsPrev && joinsNext) {
+				runs[(k<<1)+1] = (char) (end(k+1) - start(k));
+				deleteRun(k+1);
+			} else if (joinsPrev) {
+				runs[(k<<1)+1]++;
+			} else if (joinsNext) {
+				runs[(k+1)<<1]--;
+				runs[((k+1)<<1)+1]++;
+			} else {
+				insertRun(k+1, low, low);
+			}
+			card++;
+			return fit();
+		}
+		
+		Container remove(int low) {
+			final int k = search(low);
+			final int start = start(k), end = end(k);
+			if (start==end) {
+				deleteRun(k);
+			} else if (low==start) {
+				runs[k<<1]++;
+				runs[(k<<1)+1]--;
+			} else if (low==end) {
+				runs[(k<<1)+1]--;
+			} else {
+				runs[(k<<1)+1] = (char) (low - 1 - start);
+				insertRun(k+1, low+1, end);
+			}
+			card--;
+			return fit();
+		}
+		
+		/* The position of an element is the index of its run in the high bits, and the element itself in the low bits. */
+		
+		int ceilPos(int low) {
+			final int k = search(low);
+			if (k >= 0 && low <= end(k)) return (k<<16) | low;
+			return k+1 < n ? ((k+1)<<16) | start(k+1) : -1;
+		}
+		
+		int floorPos(int low) {
+			final int k = search(low);
+			return k < 0 ? -1 : (k<<16) | StrictMath.min(low, end(k));
+		}
+		
+		int nextPos(int pos) {
+			final int k = pos >>> 16;
+			if ((pos & 0xFFFF) < end(k)) return pos+1;
+			return k+1 < n ? ((k+1)<<16) | start(k+1) : -1;
+		}
+		
+		int prevPos(int pos) {
+			final int k = pos >>> 16;
+			if ((pos & 0xFFFF) > start(k)) return pos-1;
+			return k > 0 ? ((k-1)<<16) | end(k-1) : -1;
+		}
+		
+		int at(int pos) { return pos & 0xFFFF; }
+		
+		void fill(long[] bits) {
+			for(int k = 0; k < n; k++) {
+				setRange(bits, start(k), end(k));
+			}
+		}
+		
+		Container copy() { return new RunContainer(Arrays.copyOf(runs, n<<1), n, card); }
+	}
+}
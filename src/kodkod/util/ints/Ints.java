@@ -147,12 +147,16 @@ public final class Ints {
 	 * that offers the best time/space trade-off for a 
 	 * set that can store all elements in the half open
 	 * range [0..max).  The returned instance may or may
-	 * not admit elements out of the range [0..max).
+	 * not admit elements out of the range [0..max).  Sets 
+	 * with small ranges are backed by bit maps; sets with large 
+	 * ranges are backed by compressed chunks, so that their memory 
+	 * use depends on the number and distribution of their elements
+	 * rather than on the size of the range.
 	 * @return an int set that can store at least the 
 	 * elements in [0..max).
 	 */
 	public static IntSet bestSet(int max) {
-		return max > BITSET_CUTOFF ? new IntTreeSet() : new IntBitSet(max);
+		return max > BITSET_CUTOFF ? new IntChunkSet() : new IntBitSet(max);
 	}
 
 	/**
@@ -0,0 +1,421 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.util.ints;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An implementation of a sparse sequence based on two parallel arrays, one of which 
+ * holds the indices of the sequence in ascending order, and the other of which holds the 
+ * corresponding values.  Unlike an {@linkplain ArraySequence}, this sequence can hold any 
+ * set of indices:  it grows as needed.  Lookup is logarithmic in the size of the sequence.
+ * Adding an entry whose index is greater than all indices in the sequence takes amortized 
+ * constant time, so a sequence that is filled in the ascending order of indices is built in linear time.   
+ * Adding or removing any other entry takes time linear in the number of entries with larger indices.
+ * Iterators over this sequence return the same (mutable) entry from each call to next(), 
+ * so the entries returned by an iterator should not be retained.  This sequence does not
+ * allow null values.
+ * 
+ * @specfield entries: int -> lone (V - null)
+ * @author agent
+ */
+public final class SortedArraySequence<V> extends AbstractSparseSequence<V> implements Cloneable {
+	private int[] indices;
+	private Object[] values;
+	private int size;
+	
+	/**
+	 * Constructs an empty sequence.
+	 * @ensures no this.entries'
+	 */
+	public SortedArraySequence() {
+		this(8);
+	}
+	
+	/**
+	 * Constructs an empty sequence with enough space to 
+	 * hold the given number of entries without growing.
+	 * @ensures no this.entries'
+	 * @throws IllegalArgumentException  capacity < 0
+	 */
+	public SortedArraySequence(int capacity) {
+		if (capacity < 0) 
+			throw new IllegalArgumentException("capacity < 0: " + capacity);
+		this.indices = new int[capacity];
+		this.values = new Object[capacity];
+		this.size = 0;
+	}
+	
+	/**
+	 * Constructs a new sequence with the same index/value mappings
+	 * as the given sequence.
+	 * @ensures this.entries' = s.entries
+	 * @throws NullPointerException  s = null || null in s.entries[int]
+	 */
+	public SortedArraySequence(SparseSequence<? extends V> s) {
+		this(s.size());
+		for(IndexedEntry<? extends V> entry : s) {
+			if (entry.value()==null)
+				throw new NullPointerException();
+			indices[size] = entry.index();
+			values[size++] = entry.value();
+		}
+	}
+	
+	/**
+	 * Copy constructor.
+	 * @ensures constructs a copy of the original sequence.
+	 */
+	private SortedArraySequence(SortedArraySequence<V> original) {
+		this.indices = Arrays.copyOf(original.indices, original.size);
+		this.values = Arrays.copyOf(original.values, original.size);
+		this.size = original.size;
+	}
+	
+	/**
+	 * Returns the value at the given position in this.values.
+	 * @return this.values[position]
+	 */
+	@SuppressWarnings("unchecked")
+	private V valueAt(int position) { 
+		return (V) values[position];
+	}
+	
+	/**  
+	 * Searches this.indices for the specified index using the
+	 * binary search algorithm.  If the index is not found, then
+	 * -insertionPoint - 1 is returned, where insertionPoint is 
+	 * the point at which the given index would be inserted into
+	 * this.indices.  
+	 * @return the position in this.indices where the given index 
+	 * is located, or -insertionPoint - 1 if the index is not in this.entries.int
+	 */
+	private int search(int index) {
+		if (size==0 || index > indices[size-1]) 
+			return -size-1;
+		return Arrays.binarySearch(indices, 0, size, index);
+	}
+	
+	/**
+	 * Inserts the given entry at the given position, growing this.indices 
+	 * and this.values if necessary.
+	 * @requires 0 <= position <= this.size
+	 * @ensures the entry is inserted at the given position and the 
+	 * entries at or after the given position are shifted right by one.
+	 */
+	private void insert(int position, int index, V value) { 
+		if (size==indices.length) { 
+			final int capacity = StrictMath.max(8, size + (size >>> 1));
+			indices = Arrays.copyOf(indices, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		if (position < size) { 
+			System.arraycopy(indices, position, indices, position+1, size-position);
+			System.arraycopy(values, position, values, position+1, size-position);
+		}
+		indices[position] = index;
+		values[position] = value;
+		size++;
+	}
+	
+	/**
+	 * Removes the entry at the given position.
+	 * @requires 0 <= position < this.size
+	 * @return the value at the given position
+	 */
+	private V delete(int position) { 
+		final V old = valueAt(position);
+		final int tail = size - position - 1;
+		if (tail > 0) { 
+			System.arraycopy(indices, position+1, indices, position, tail);
+			System.arraycopy(values, position+1, values, position, tail);
+		}
+		values[--size] = null;
+		return old;
+	}
+	
+	/**
+	 * Returns the number of entries in this sequence.
+	 * @return #this.entries
+	 * @see kodkod.util.ints.SparseSequence#size()
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns true if this sequence is empty; otherwise returns false.
+	 * @return no this.entries
+	 * @see kodkod.util.ints.SparseSequence#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return size==0;
+	}
+	
+	/**
+	 * Removes all entries from this sequences.
+	 * @ensures no this.entries'
+	 * @see kodkod.util.ints.SparseSequence#clear()
+	 */
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+	
+	/**
+	 * Puts the given value at the specified index.  If the 
+	 * sequence already mapped the index to a value, the 
+	 * previous value is replaced with the new one and returned.
+	 *
+	 * @ensures this.entries' = this.entries + index->value
+	 * @return this.entries[index]
+	 * @throws NullPointerException  value = null
+	 * @see kodkod.util.ints.SparseSequence#put(int, Object)
+	 */
+	public V put(int index, V value) {
+		if (value==null)
+			throw new NullPointerException();
+		final int position = search(index);
+		if (position < 0) { 
+			insert(-position-1, index, value);
+			return null;
+		}
+		final V old = valueAt(position);
+		values[position] = value;
+		return old;
+	}
+	
+	/**
+	 * Returns the value to which this sequence maps the given
+	 * index.  If the index is not mapped, null is returned.
+	 * @return this.entries[index]
+	 * @see kodkod.util.ints.SparseSequence#get(int)
+	 */
+	public V get(int index) {
+		final int position = search(index);
+		return position < 0 ? null : valueAt(position);
+	}
+	
+	/**
+	 * Removes the entry with the given index, if it exists, and
+	 * returns the value previously stored at the index.  If the
+	 * sequence had no previous mapping for the index, null is returned.
+	 * @ensures this.entries' = this.entries - index->E
+	 * @return this.entries[index]
+	 * @see kodkod.util.ints.SparseSequence#remove(int)
+	 */
+	public V remove(int index) {
+		final int position = search(index);
+		return position < 0 ? null : delete(position);
+	}
+	
+	/**
+	 * Returns true if this sparse sequence has an entry for the
+	 * given index; otherwise returns false.
+	 * @return some this.entries[index]
+	 * @see kodkod.util.ints.SparseSequence#containsIndex(int)
+	 */
+	public boolean containsIndex(int index) {
+		return search(index) >= 0;
+	}
+	
+	/**
+	 * Returns true if this sequence has an entry with the given value;
+	 * otherwise returns false.
+	 * @return some this.entries.value
+	 * @see kodkod.util.ints.SparseSequence#contains(java.lang.Object)
+	 */
+	public boolean contains(Object value) {
+		for(int i = 0; i < size; i++) { 
+			if (equal(value, values[i]))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns an iterator over the entries in this sequence,
+	 * whose indeces are between from and to.  If from < to, 
+	 * the entries are returned in the ascending order of 
+	 * indeces.  Otherwise, they are returned in the descending
+	 * order of indeces.
+	 * @return an iterator over the entries in this sequence
+	 * whose indeces are between from and to.  Formally, if 
+	 * from < to, then the first and last entries returned
+	 * by the iterator are this.ceil(from) and this.floor(to).
+	 * Otherwise, they are this.floor(from) and this.ceil(to).
+	 * @see kodkod.util.ints.SparseSequence#iterator(int, int)
+	 */
+	public Iterator<IndexedEntry<V>> iterator(int from, int to) {
+		return from <= to ? new AscendingIterator(from, to) : new DescendingIterator(from, to);
+	}
+	
+	/**
+	 * Returns the entry at the given position, or null if the position is out of bounds.
+	 * @return 0 <= position < this.size => new EntryView(this.indices[position], this.values[position]), null
+	 */
+	private IndexedEntry<V> entry(int position) { 
+		return 0 <= position && position < size ? new EntryView<V>(indices[position], valueAt(position)) : null;
+	}
+	
+	/**
+	 * Returns the entry with the smallest index.  If the sequence
+	 * is empty, returns null.
+	 * @return {e: IndexedEntry | e.index = min(this.entries.E) && 
+	 *                            e.value = this.entries[e.index] }
+	 * @see kodkod.util.ints.SparseSequence#first()
+	 */
+	public IndexedEntry<V> first() {
+		return entry(0);
+	}
+	
+	/**
+	 * Returns the entry with the largest index.  If the sequence
+	 * is empty, returns null.
+	 * @return {e: IndexedEntry | e.index = max(this.entries.E) && 
+	 *                            e.value = this.entries[e.index] }
+	 * @see kodkod.util.ints.SparseSequence#last()
+	 */
+	public IndexedEntry<V> last() {
+		return entry(size-1);
+	}
+	
+	/**
+	 * If an entry for the given index exists, it is returned.  Otherwise, 
+	 * successor(index) is returned.
+	 * @return this.containsIndex(index) => 
+	 *          {e: IndexedEntry | e.index = index && e.value = this.entries[index] }, 
+	 *          successor(index)
+	 * @see kodkod.util.ints.SparseSequence#ceil(int)
+	 */
+	public IndexedEntry<V> ceil(int index) {
+		final int position = search(index);
+		return entry(position < 0 ? -position-1 : position);
+	}
+	
+	/**
+	 * If an entry for the given index exists, it is returned.  Otherwise, 
+	 * predecessor(index) is returned.
+	 * @return this.containsIndex(index) => 
+	 *          {e: IndexedEntry | e.index = index && e.value = this.entries[index] }, 
+	 *          predecessor(index)
+	 * @see kodkod.util.ints.SparseSequence#floor(int)
+	 */
+	public IndexedEntry<V> floor(int index) {
+		final int position = search(index);
+		return entry(position < 0 ? -position-2 : position);
+	}
+	
+	/**
+	 * Returns a copy of this sparse sequence.  The copy is independent of this 
+	 * sequence.
+	 * @return a copy of this sparse sequence.
+	 * @see kodkod.util.ints.SparseSequence#clone()
+	 */
+	public SortedArraySequence<V> clone() { 
+		return new SortedArraySequence<V>(this);
+	}
+	
+	/**
+	 * An iterator that traverses this sequence in the ascending order.  
+	 * The iterator is also the view of the entry that it returned last.
+	 * 
+	 * @author agent
+	 */
+	private final class AscendingIterator extends EntryView<V> implements Iterator<IndexedEntry<V>> {
+		int cursor, end;
+		boolean canRemove;
+		
+		/**
+		 * @requires from <= to
+		 */
+		AscendingIterator(int from, int to) {
+			super(Integer.MIN_VALUE, null);
+			final int fromPos = search(from), toPos = search(to);
+			cursor = fromPos < 0 ? -fromPos-1 : fromPos;
+			end = toPos < 0 ? -toPos-1 : toPos+1;
+		}
+		
+		public boolean hasNext() {
+			return cursor < end;
+		}
+
+		public IndexedEntry<V> next() {
+			if (cursor >= end)
+				throw new NoSuchElementException();
+			canRemove = true;
+			final int position = cursor++;
+			return setView(indices[position], valueAt(position));
+		}
+
+		public void remove() {
+			if (!canRemove)
+				throw new IllegalStateException();
+			delete(--cursor);
+			end--;
+			canRemove = false;
+		}
+	}
+	
+	/**
+	 * An iterator that traverses this sequence in the descending order.
+	 * The iterator is also the view of the entry that it returned last.
+	 * 
+	 * @author agent
+	 */
+	private final class DescendingIterator extends EntryView<V> implements Iterator<IndexedEntry<V>> {
+		int cursor;
+		final int end;
+		boolean canRemove;
+		
+		/**
+		 * @requires from >= to
+		 */
+		DescendingIterator(int from, int to) {
+			super(Integer.MIN_VALUE, null);
+			final int fromPos = search(from), toPos = search(to);
+			cursor = fromPos < 0 ? -fromPos-2 : fromPos;
+			end = toPos < 0 ? -toPos-1 : toPos;
+		}
+		
+		public boolean hasNext() {
+			return cursor >= end;
+		}
+
+		public IndexedEntry<V> next() {
+			if (cursor < end)
+				throw new NoSuchElementException();
+			canRemove = true;
+			final int position = cursor--;
+			return setView(indices[position], valueAt(position));
+		}
+
+		public void remove() {
+			if (!canRemove)
+				throw new IllegalStateException();
+			delete(cursor+1);
+			canRemove = false;
+		}
+	}
+}
@@ -15,6 +15,7 @@ import org.junit.runners.Suite;
 	EnumerationTest.class,
 	IntTest.class,
 	NativeSolverTest.class,
+	ExternalSolverTest.class,
 	UCoreTest.class,
 	ReductionAndProofTest.class,
 	IncrementalSolverTest.class,
@@ -4,20 +4,30 @@ import static kodkod.engine.bool.BooleanConstant.FALSE;
 import static kodkod.engine.bool.BooleanConstant.TRUE;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import kodkod.engine.bool.BooleanAccumulator;
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanFormula;
 import kodkod.engine.bool.BooleanValue;
 import kodkod.engine.bool.BooleanVariable;
+import kodkod.engine.bool.CircuitPreprocessor;
 import kodkod.engine.bool.Operator;
 import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -64,6 +74,126 @@ public class BooleanCircuitTest {
 		return COMPOSERS[op.ordinal()].compose(f, v0, v1);
 	}
 	
+	/**
+	 * Builds a fixed set of gates over the variables of the given factory, in an order 
+	 * determined by the given seed, and returns them.
+	 */
+	private BooleanValue[] build(BooleanFactory cf, int seed) {
+		final int n = size*size;
+		final BooleanValue[] ret = new BooleanValue[4*n];
+		for(int k = 0; k < n; k++) {
+			final int idx = (k + seed*37) % n, i = idx / size, j = idx % size;
+			final BooleanValue vi = cf.variable(i+1), vj = cf.variable(j+1), vk = cf.variable((i+j+1) % size + 1);
+			ret[4*idx] = cf.not(cf.and(vi, vj));
+			ret[4*idx+1] = cf.or(cf.not(vi), vj);
+			ret[4*idx+2] = cf.ite(vi, vj, cf.not(vk));
+			ret[4*idx+3] = cf.accumulate(BooleanAccumulator.treeGate(OR, vi, cf.not(vj), vk));
+		}
+		return ret;
+	}
+	
+	@Test
+	public final void testConcurrentFactory() throws InterruptedException {
+		final BooleanFactory cf = BooleanFactory.concurrentFactory(size, new Options());
+		assertTrue(cf.isConcurrent());
+		assertFalse(f.isConcurrent());
+		
+		final BooleanValue[][] results = new BooleanValue[4][];
+		final Thread[] workers = new Thread[results.length];
+		for(int t = 0; t < workers.length; t++) {
+			final int seed = t;
+			workers[t] = new Thread() {
+				public void run() { results[seed] = build(cf, seed); }
+			};
+			workers[t].start();
+		}
+		for(Thread worker : workers) {
+			worker.join();
+		}
+		
+		// all threads see the same gates, and each gate was created exactly once
+		final Set<Integer> labels = new HashSet<Integer>();
+		for(int i = 0; i < results[0].length; i++) {
+			for(int t = 1; t < results.length; t++) {
+				assertSame(results[0][i], results[t][i]);
+			}
+			final int label = StrictMath.abs(results[0][i].label());
+			if (results[0][i].op()!=Operator.CONST && label > size) labels.add(label);
+		}
+		assertEquals(cf.maxFormula()-size, labels.size());
+		
+		// the results are the same as those produced by a sequential factory
+		final BooleanValue[] expected = build(f, 0);
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].op(), results[0][i].op());
+		}
+	}
+	
+	@Test
+	public final void testPreprocessors() {
+		// a & (b | c) = (a & b) | (a & c), and (a & b) | (a & !b) = a
+		final BooleanValue g0 = f.and(v[0], f.or(v[1], v[2]));
+		final BooleanValue g1 = f.or(f.and(v[0], v[1]), f.and(v[0], v[2]));
+		final BooleanValue g2 = f.or(f.and(v[0], v[1]), f.and(v[0], f.not(v[1])));
+		final BooleanValue root = f.and(f.and(f.or(v[3], g0), f.or(v[4], g1)), f.or(v[5], g2));
+		assertTrue(g0 != g1 && g2 != v[0]);
+		
+		final BooleanValue swept = CircuitPreprocessor.SWEEPING.apply((BooleanFormula) root, f);
+		assertSame(f.and(f.and(f.or(v[3], g0), f.or(v[4], g0)), f.or(v[5], v[0])), swept);
+		assertTrue(CircuitPreprocessor.size(swept) < CircuitPreprocessor.size(root));
+		assertSame(swept, CircuitPreprocessor.SWEEPING.apply((BooleanFormula) swept, f));
+		assertSame(swept, CircuitPreprocessor.sweeping(SATFactory.LightSAT4J).apply((BooleanFormula) root, f));
+		try { 
+			CircuitPreprocessor.sweeping(SATFactory.Lingeling);
+			fail();
+		} catch (IllegalArgumentException e) { }
+		
+		// v3 & (!v3 | v4) & (!v4 | v5 | v6) simplifies to v3 & v4 & (v5 | v6)
+		final BooleanValue units = f.and(f.and(v[3], f.or(f.not(v[3]), v[4])), f.or(f.not(v[4]), f.or(v[5], v[6])));
+		assertSame(f.and(f.and(v[3], v[4]), f.or(v[5], v[6])), CircuitPreprocessor.UNITS.apply((BooleanFormula) units, f));
+		assertSame(FALSE, CircuitPreprocessor.UNITS.apply((BooleanFormula) f.and(units, f.not(v[4])), f));
+	}
+	
+	@Test(timeout=60000)
+	public final void testSweepingBudget() {
+		// the pigeonhole formula for 11 pigeons and 10 holes is false, but refuting 
+		// it takes far more conflicts than the sweeper allows per proof
+		final int pigeons = 11, holes = 10;
+		final BooleanFactory pf = BooleanFactory.factory(pigeons*holes + 1, new Options());
+		final SATSolver solver = SATFactory.DefaultSAT4J.instance();
+		solver.addVariables(pigeons*holes);
+		final BooleanAccumulator php = BooleanAccumulator.treeGate(AND);
+		for(int p = 0; p < pigeons; p++) { 
+			final BooleanAccumulator some = BooleanAccumulator.treeGate(OR);
+			final int[] clause = new int[holes];
+			for(int h = 0; h < holes; h++) { 
+				some.add(pf.variable(p*holes + h + 1));
+				clause[h] = p*holes + h + 1;
+			}
+			php.add(pf.accumulate(some));
+			solver.addClause(clause);
+		}
+		for(int h = 0; h < holes; h++) { 
+			for(int p = 0; p < pigeons; p++) { 
+				for(int q = p+1; q < pigeons; q++) { 
+					php.add(pf.or(pf.not(pf.variable(p*holes + h + 1)), pf.not(pf.variable(q*holes + h + 1))));
+					solver.addClause(new int[]{ -(p*holes + h + 1), -(q*holes + h + 1) });
+				}
+			}
+		}
+		
+		try { 
+			solver.solve(new int[0], 100);
+			fail();
+		} catch (SATAbortedException e) { }
+		assertFalse(solver.solve(new int[]{ 1, holes + 1 }, 100));
+		solver.free();
+		
+		final BooleanValue hard = pf.accumulate(php), x = pf.variable(pigeons*holes + 1);
+		final BooleanValue root = pf.or(x, hard);
+		assertSame(root, CircuitPreprocessor.SWEEPING.apply((BooleanFormula) root, pf));
+	}
+	
 	@Test
 	public final void testConstant() {
 		assertSame(TRUE, BooleanConstant.constant(true));
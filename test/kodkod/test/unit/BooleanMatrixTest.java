@@ -11,6 +11,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Random;
 
 import kodkod.engine.bool.BooleanAccumulator;
 import kodkod.engine.bool.BooleanConstant;
@@ -483,4 +484,55 @@ public class BooleanMatrixTest {
 		assertTrue(equivalent(mT324c.override(mT324), mToT));
 
 	}
+
+	/**
+	 * Returns a matrix with the given dimensions, created by the given factory, 
+	 * whose entries are randomly set to TRUE with probability 1/density.
+	 */
+	private static final BooleanMatrix random(BooleanFactory factory, Dimensions d, Random rand, int density) {
+		final BooleanMatrix m = factory.matrix(d);
+		for(int i = 0, max = d.capacity(); i < max; i++) { 
+			if (rand.nextInt(density)==0) m.set(i, TRUE);
+		}
+		return m;
+	}
+	
+	/**
+	 * Returns a copy of the given constant matrix, created by the given factory.
+	 */
+	private static final BooleanMatrix copy(BooleanFactory factory, BooleanMatrix m) {
+		final BooleanMatrix c = factory.matrix(m.dimensions());
+		for(IndexedEntry<BooleanValue> e : m) { c.set(e.index(), e.value()); }
+		return c;
+	}
+	
+	@Test
+	public void testPackedConstantMatrices() {
+		final BooleanFactory cf = BooleanFactory.constantFactory(new Options());
+		final Random rand = new Random(2005);
+		final Dimensions sq = Dimensions.square(67, 2), cube = Dimensions.square(13, 3), line = Dimensions.square(13, 1);
+		
+		for(int round = 0; round < 10; round++) { 
+			final BooleanMatrix a = random(cf, sq, rand, 50), b = random(cf, sq, rand, 3), c = random(cf, sq, rand, 2);
+			final BooleanMatrix fa = copy(f, a), fb = copy(f, b), fc = copy(f, c);
+			
+			assertTrue(equivalent(a.not(), fa.not()));
+			assertTrue(equivalent(a.and(b), fa.and(fb)));
+			assertTrue(equivalent(a.and(b, c), fa.and(fb, fc)));
+			assertTrue(equivalent(a.or(b), fa.or(fb)));
+			assertTrue(equivalent(a.or(b, c), fa.or(fb, fc)));
+			assertTrue(equivalent(b.difference(c), fb.difference(fc)));
+			assertTrue(equivalent(a.dot(b), fa.dot(fb)));
+			assertTrue(equivalent(a.closure(), fa.closure()));
+			assertTrue(equivalent(a.clone(), fa));
+			assertEquals(fa.subset(fb), a.subset(b));
+			assertEquals(fa.and(fb).subset(fb), a.and(b).subset(b));
+			assertEquals(fb.eq(fc), b.eq(c));
+			assertEquals(TRUE, b.eq(b.clone()));
+			
+			final BooleanMatrix m3 = random(cf, cube, rand, 4), m1 = random(cf, line, rand, 2);
+			assertTrue(equivalent(m3.dot(m1), copy(f, m3).dot(copy(f, m1))));
+			assertTrue(equivalent(m1.dot(m3), copy(f, m1).dot(copy(f, m3))));
+		}
+	}
 }
@@ -10,7 +10,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import kodkod.ast.Formula;
 import kodkod.ast.Relation;
@@ -19,6 +22,7 @@ import kodkod.engine.Solver;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.instance.Bounds;
 import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
 import kodkod.instance.Universe;
 
 import org.junit.Test;
@@ -94,5 +98,63 @@ public class EnumerationTest {
 
 	}
 	
+	@Test
+	public final void testProjection() {
+		final Relation r = Relation.unary("r"), s = Relation.unary("s");
+		final Universe u  = new Universe(Arrays.asList("a","b","c"));
+		final TupleFactory f = u.factory();
+		final Bounds b = new Bounds(u);
+		b.bound(r, f.allOf(1));
+		b.bound(s, f.allOf(1));
+		final Formula formula = r.some().and(s.some());
+		solver.options().setSymmetryBreaking(0);
+		
+		// 7 non-empty values of r, each of which is enumerated exactly once
+		final Iterator<Solution> sol = solver.solveAll(formula, b, Collections.singleton(r));
+		final Set<TupleSet> seen = new HashSet<TupleSet>();
+		for(int i = 0; i < 7; i++) {
+			final Solution next = sol.next();
+			assertEquals(Solution.Outcome.SATISFIABLE, next.outcome());
+			assertTrue(seen.add(next.instance().tuples(r)));
+		}
+		assertEquals(Solution.Outcome.UNSATISFIABLE, sol.next().outcome());
+		assertFalse(sol.hasNext());
+		
+		// trivially satisfiable problem with only one value of the projection relation
+		b.boundExactly(r, f.setOf("a"));
+		final Iterator<Solution> trivial = solver.solveAll(r.some(), b, Collections.singleton(r));
+		assertEquals(Solution.Outcome.TRIVIALLY_SATISFIABLE, trivial.next().outcome());
+		assertEquals(Solution.Outcome.TRIVIALLY_UNSATISFIABLE, trivial.next().outcome());
+		assertFalse(trivial.hasNext());
+	}
+	
+	@Test
+	public final void testMinimizedBlockingClauses() {
+		final Relation r = Relation.unary("r");
+		final Universe u  = new Universe(Arrays.asList("a","b","c"));
+		final TupleFactory f = u.factory();
+		final Bounds b = new Bounds(u);
+		b.bound(r, f.allOf(1));
+		final Formula someR = r.some();
+		solver.options().setSymmetryBreaking(0);
+		
+		// without minimization, all 7 non-empty values of r are enumerated
+		Iterator<Solution> sol = solver.solveAll(someR, b);
+		for(int i = 0; i < 7; i++) {
+			assertEquals(Solution.Outcome.SATISFIABLE, sol.next().outcome());
+		}
+		assertEquals(Solution.Outcome.UNSATISFIABLE, sol.next().outcome());
+		assertFalse(sol.hasNext());
+		
+		// with minimization, each solution is blocked by a single literal that makes r non-empty 
+		solver.options().setMinimizeBlockingClauses(true);
+		sol = solver.solveAll(someR, b);
+		for(int i = 0; i < 3; i++) {
+			assertEquals(Solution.Outcome.SATISFIABLE, sol.next().outcome());
+		}
+		assertEquals(Solution.Outcome.UNSATISFIABLE, sol.next().outcome());
+		assertFalse(sol.hasNext());
+	}
+	
 	
 }
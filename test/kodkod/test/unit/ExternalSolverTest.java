@@ -0,0 +1,280 @@
+package kodkod.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.Solver;
+import kodkod.engine.config.Options.CNFEncoding;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.Universe;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the wrappers for external solvers, in both the file-based and the streaming mode,
+ * using a shell script in place of a solver.  The script copies the CNF it receives into
+ * a capture file and prints a canned output.
+ *
+ * @author agent
+ */
+public class ExternalSolverTest {
+	private File script, capture, output;
+
+	@Before
+	public void setUp() throws IOException {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		script = File.createTempFile("kodkod", ".sh");
+		capture = File.createTempFile("kodkod", ".capture");
+		output = File.createTempFile("kodkod", ".output");
+		write(script, "#!/bin/sh\nif [ $# -gt 2 ]; then cat \"$3\" > \"$1\"; else cat > \"$1\"; fi\ncat \"$2\"\n");
+		assertTrue(script.setExecutable(true));
+	}
+
+	@After
+	public void tearDown() {
+		for(File f : new File[]{ script, capture, output }) {
+			if (f != null) f.delete();
+		}
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+	}
+
+	private SATFactory streaming() {
+		return SATFactory.externalStreamingFactory(script.getAbsolutePath(), capture.getAbsolutePath(), output.getAbsolutePath());
+	}
+
+	private SATFactory fileBased() {
+		return SATFactory.externalFactory(script.getAbsolutePath(), null, capture.getAbsolutePath(), output.getAbsolutePath());
+	}
+
+	/**
+	 * Returns a solver from the given factory with three variables and the clauses (1 | 2), !1, and (3 | !2).
+	 */
+	private static SATSolver small(SATFactory factory) {
+		return small(factory, 0);
+	}
+	
+	/**
+	 * Returns a solver from the given factory with three variables and the clauses (1 | 2), !1, and (3 | !2), 
+	 * which has been told to expect the given number of assumptions in addition to these clauses.
+	 */
+	private static SATSolver small(SATFactory factory, int assumptions) {
+		final SATSolver solver = factory.instance();
+		solver.expectClauses(3 + assumptions);
+		solver.addVariables(3);
+		assertTrue(solver.addClause(new int[]{1, 2}));
+		assertTrue(solver.addClause(new int[]{-1}));
+		assertTrue(solver.addClause(new int[]{3, -2}));
+		assertEquals(3, solver.numberOfClauses());
+		return solver;
+	}
+
+	@Test
+	public void testStreamingSat() throws IOException {
+		write(output, "c a comment\ns SATISFIABLE\nv -1 2\nv 3 0\n");
+		final SATSolver solver = small(streaming());
+		assertTrue(solver.solve());
+		assertFalse(solver.valueOf(1));
+		assertTrue(solver.valueOf(2));
+		assertTrue(solver.valueOf(3));
+		assertEquals("p cnf 3 3\n1 2 0\n-1 0\n3 -2 0\n", read(capture));
+		solver.free();
+	}
+
+	@Test
+	public void testStreamingUnsat() throws IOException {
+		write(output, "s UNSATISFIABLE\n");
+		final SATSolver solver = small(streaming());
+		assertFalse(solver.solve());
+		assertEquals("p cnf 3 3\n1 2 0\n-1 0\n3 -2 0\n", read(capture));
+		solver.free();
+	}
+
+	@Test
+	public void testStreamingLargeCNF() throws IOException {
+		write(output, "s UNSATISFIABLE\n");
+		final SATSolver solver = streaming().instance();
+		final int vars = 1000000, clauses = 50000;
+		solver.expectClauses(clauses);
+		solver.addVariables(vars);
+		final StringBuilder expected = new StringBuilder("p cnf " + vars + " " + clauses + "\n");
+		for(int i = 0; i < clauses; i++) {
+			final int[] clause = { -(vars - i), i + 1, (i % 2 == 0 ? 1 : -1) * (i * 7 % vars + 1), vars - 2*i };
+			solver.addClause(clause);
+			for(int lit : clause) { expected.append(lit).append(' '); }
+			expected.append("0\n");
+		}
+		assertFalse(solver.solve());
+		assertEquals(expected.toString(), read(capture));
+		solver.free();
+	}
+
+	@Test
+	public void testFileBased() throws IOException {
+		write(output, "s SATISFIABLE\nv -1 2 3 0\n");
+		final SATSolver solver = small(fileBased());
+		assertTrue(solver.solve());
+		assertFalse(solver.valueOf(1));
+		assertTrue(solver.valueOf(2));
+		assertTrue(solver.valueOf(3));
+		final String[] lines = read(capture).split("\n");
+		assertEquals(4, lines.length);
+		assertEquals("p cnf 3 3", lines[0].trim());
+		assertEquals("1 2 0", lines[1]);
+		assertEquals("-1 0", lines[2]);
+		assertEquals("3 -2 0", lines[3]);
+		solver.free();
+	}
+
+	@Test
+	public void testAssumptions() throws IOException {
+		write(output, "s SATISFIABLE\nv -1 2 3 0\n");
+		SATSolver solver = small(streaming(), 2);
+		assertTrue(solver.solve(new int[]{2, 3}));
+		assertEquals("p cnf 3 5\n1 2 0\n-1 0\n3 -2 0\n2 0\n3 0\n", read(capture));
+		assertEquals(3, solver.numberOfClauses());
+		assertTrue(solver.valueOf(2));
+		// answered from the model of the first run
+		assertTrue(solver.solve(new int[]{-1}));
+		assertTrue(solver.solve());
+		try {
+			solver.solve(new int[]{1});
+			fail();
+		} catch (SATAbortedException e) {
+			// the process cannot be run again
+		}
+		solver.free();
+		
+		write(output, "s UNSATISFIABLE\n");
+		solver = small(fileBased());
+		assertFalse(solver.solve(new int[]{-3}));
+		assertEquals(-3, solver.failedAssumptions()[0]);
+		assertEquals("-3 0", read(capture).split("\n")[4]);
+		// still unsatisfiable under more assumptions
+		assertFalse(solver.solve(new int[]{2, -3}));
+		try {
+			solver.solve();
+			fail();
+		} catch (SATAbortedException e) {
+			// the process cannot be run again
+		}
+		solver.free();
+	}
+	
+	@Test
+	public void testDeclaredClauses() throws IOException {
+		write(output, "s UNSATISFIABLE\n");
+		SATSolver solver = streaming().instance();
+		solver.addVariables(1);
+		try {
+			solver.addClause(new int[]{1});
+			fail();
+		} catch (IllegalStateException e) {
+			// the number of clauses was not declared
+		}
+		solver.free();
+		
+		solver = streaming().instance();
+		solver.expectClauses(1);
+		solver.addVariables(1);
+		solver.addClause(new int[]{1});
+		try {
+			solver.addClause(new int[]{-1});
+			fail();
+		} catch (IllegalStateException e) {
+			// more clauses than declared
+		}
+		solver.free();
+		
+		solver = small(streaming(), 1);
+		try {
+			solver.solve();
+			fail();
+		} catch (SATAbortedException e) {
+			// fewer clauses than declared
+		}
+		solver.free();
+		
+		solver = streaming().instance();
+		assertFalse(solver.solve());
+		assertEquals("p cnf 0 0\n", read(capture));
+		solver.free();
+	}
+	
+	@Test
+	public void testStreamingTranslation() throws IOException {
+		write(output, "s UNSATISFIABLE\n");
+		final Relation r = Relation.unary("r"), s = Relation.binary("s");
+		final Universe u = new Universe("a", "b", "c");
+		final Bounds b = new Bounds(u);
+		b.bound(r, u.factory().allOf(1));
+		b.bound(s, u.factory().allOf(2));
+		final Formula f = r.some().and(s.join(r).in(r)).and(r.join(s).no().or(s.some().not()));
+		final SATFactory[] factories = { streaming(), SATFactory.portfolio(streaming()), 
+				SATFactory.simplifying(streaming()), SATFactory.offHeap(streaming()) };
+		for(SATFactory factory : factories) {
+			for(CNFEncoding encoding : CNFEncoding.values()) {
+				final Solver solver = new Solver();
+				solver.options().setSolver(factory);
+				solver.options().setCNFEncoding(encoding);
+				assertFalse(solver.solve(f, b).sat());
+				final String[] lines = read(capture).split("\n");
+				final String[] header = lines[0].split(" ");
+				assertEquals("p", header[0]);
+				assertEquals(factory + " " + encoding, lines.length - 1, Integer.parseInt(header[3]));
+			}
+		}
+	}
+	
+	/**
+	 * Asserts that solving the small problem aborts when the solver prints the given output,
+	 * in both modes.
+	 */
+	private void assertInvalid(String out) throws IOException {
+		write(output, out);
+		for(SATFactory factory : new SATFactory[]{ streaming(), fileBased() }) {
+			final SATSolver solver = small(factory);
+			try {
+				solver.solve();
+				fail(out);
+			} catch (SATAbortedException e) {
+				// expected
+			} finally {
+				solver.free();
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidOutput() throws IOException {
+		assertInvalid("");                                     // no outcome
+		assertInvalid("c SATISFIABLE\nv -1 2 3 0\n");          // no outcome
+		assertInvalid("s MAYBE\n");                            // unknown outcome
+		assertInvalid("s SATISFIABLE today\n");                // trailing tokens
+		assertInvalid("s SATISFIABLE\nv -1 0 2 3\n");          // 0 in the middle of a variable line
+		assertInvalid("s SATISFIABLE\nv -1 2 x 0\n");          // non-integer token
+		assertInvalid("s SATISFIABLE\nv -1 2 4 0\n");          // variable out of range
+		assertInvalid("s SATISFIABLE\nv -1 2 99999999999 0\n");// integer overflow
+	}
+}
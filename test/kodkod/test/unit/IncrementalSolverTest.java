@@ -42,6 +42,7 @@ import kodkod.engine.Solution;
 import kodkod.engine.Solution.Outcome;
 import kodkod.engine.config.Options;
 import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleFactory;
@@ -63,6 +64,7 @@ import kodkod.test.util.Solvers;
 @RunWith(Parameterized.class)
 public final class IncrementalSolverTest {
 
+	private final SATFactory factory;
 	private final IncrementalSolver solver;
 
 	/**
@@ -71,6 +73,7 @@ public final class IncrementalSolverTest {
 	public IncrementalSolverTest(SATFactory solverOpt) {
 		final Options opt = new Options();
 		opt.setSolver(solverOpt);
+		this.factory = solverOpt;
 		this.solver = IncrementalSolver.solver(opt);
 	}
 
@@ -262,5 +265,61 @@ public final class IncrementalSolverTest {
 		//System.out.println(whole.solve(Formula.and(f[0], f[1], f[2]), b));
 	}
 
+	@Test
+	public void testRetractableAssumptions() {
+		final Bounds b = new Bounds(new Universe("A0", "A1", "A2"));
+		final TupleFactory t = b.universe().factory();
+		final Relation r0 = Relation.unary("r0");
+		final Relation r1 = Relation.unary("r1");
+		b.bound(r0, t.setOf("A0","A1"));
+		b.bound(r1, t.setOf("A1","A2"));
+		final Formula[] f = { r0.some(), 
+				r0.intersection(r1).some(), 
+				r1.no(), 
+				r0.no() };
+
+		checkModel(solver.solve(f[0], b), f[0]);
+
+		b.relations().clear();
+		checkModel(solver.assume(f[1], b), f[0], f[1]);
+		
+		assertEquals(UNSATISFIABLE, solver.assume(f[2], b).outcome());
+		assertTrue(solver.usable());
+		assertTrue(solver.failedAssumptions().contains(f[2]));
+		
+		solver.retract(f[1]);
+		checkModel(solver.solve(), f[0], f[2]);
+		assertTrue(solver.failedAssumptions().isEmpty());
+		
+		solver.retract(f[2]);
+		solver.activate(f[1]);
+		checkModel(solver.solve(), f[0], f[1]);
+		
+		assertEquals(UNSATISFIABLE, solver.solve(f[3], b).outcome());
+		assertFalse(solver.usable());
+	}
+	
+	@Test
+	public void testUnconditionalFailedAssumptions() {
+		// the clauses are unsatisfiable by unit propagation at level 0, before any assumptions are made
+		for(int i = 0; i < 2; i++) { 
+			final SATSolver cnf = factory.instance();
+			cnf.addVariables(5);
+			if (i == 1) { // an earlier conflict that depends on the assumptions
+				cnf.addClause(new int[]{-5, -4});
+				assertFalse(cnf.solve(new int[]{5, 4}));
+				assertEquals(2, cnf.failedAssumptions().length);
+			}
+			cnf.addClause(new int[]{1, 2});
+			cnf.addClause(new int[]{-2});
+			cnf.addClause(new int[]{-1, 3});
+			cnf.addClause(new int[]{-1, -3});
+			assertFalse(cnf.solve(new int[]{4}));
+			assertEquals(0, cnf.failedAssumptions().length);
+			assertFalse(cnf.solve());
+			cnf.free();
+		}
+	}
+
 
 }
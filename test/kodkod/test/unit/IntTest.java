@@ -16,12 +16,14 @@ import static kodkod.ast.operator.IntOperator.SHL;
 import static kodkod.ast.operator.IntOperator.SHR;
 import static kodkod.ast.operator.IntOperator.XOR;
 import static kodkod.engine.config.Options.IntEncoding.TWOSCOMPLEMENT;
+import static kodkod.engine.config.Options.IntEncoding.UNARY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -297,6 +299,75 @@ public class IntTest {
 		
 	}
 	
+	/**
+	 * Tests all arithmetic ops for this.solver.options and range of vals.
+	 * @requires this.solver.options.intEncoding = UNARY 
+	 * @requires vals contains int expressions that represent all 
+	 * integers allowed by this.solver.options, in proper sequence
+	 */
+	private final void testUnaryBinOps(IntExpression[] vals) {
+		final Options options = solver.options();
+		final int bw = options.bitwidth();
+		final IntRange range = options.integers();
+		final int min = range.min(), max = range.max();
+		
+		for(int i = min; i <= max; i++) {
+			IntExpression vi = vals[i-min];
+			for(int j = min; j <= max; j++) {
+				IntExpression vj = vals[j-min];
+				testBinOp(PLUS, vi, vj, i, j, Math.min(i+j, bw), -1);
+				testBinOp(MINUS, vi, vj, i, j, Math.max(i-j, 0), -1);
+				testBinOp(MULTIPLY, vi, vj, i, j, Math.min(i*j, bw), -1);
+				if (j!=0) {
+					testBinOp(DIVIDE, vi, vj, i, j, i/j, -1);
+					testBinOp(MODULO, vi, vj, i, j, i%j, -1);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public final void testConstantUnaryBinOps() {
+		solver.options().setIntEncoding(UNARY);
+		solver.options().setBitwidth(5);
+		testUnaryBinOps(constants());
+	}
+	
+	@Test
+	public final void testNonConstantUnaryBinOps() {
+		solver.options().setIntEncoding(UNARY);
+		solver.options().setBitwidth(4);
+		testUnaryBinOps(nonConstants());
+	}
+	
+	@Test
+	public final void testUnaryComparisonOps() {
+		solver.options().setIntEncoding(UNARY);
+		solver.options().setBitwidth(5);
+		testComparisonOps(constants());
+		solver.options().setBitwidth(4);
+		testComparisonOps(nonConstants());
+	}
+	
+	@Test
+	public final void testCloneEncoding() {
+		for(int bw : new int[]{ 1, 33, 100, 1024 }) { 
+			solver.options().setIntEncoding(UNARY);
+			solver.options().setBitwidth(bw);
+			Options clone = solver.options().clone();
+			assertEquals(UNARY, clone.intEncoding());
+			assertEquals(bw, clone.bitwidth());
+			assertEquals(Ints.range(0, bw), clone.integers());
+			
+			solver.options().setIntEncoding(TWOSCOMPLEMENT);
+			clone = solver.options().clone();
+			assertEquals(TWOSCOMPLEMENT, clone.intEncoding());
+			assertEquals(bw, clone.bitwidth());
+			assertEquals(solver.options().integers(), clone.integers());
+			solver.options().setBitwidth(1);
+		}
+	}
+	
 	@Test
 	public final void testConstant2sComplementComparisonOps() {
 		testComparisonOps(constants());
@@ -443,6 +514,7 @@ public class IntTest {
 	public void testIfIntExpr() {
 		solver.options().setBitwidth(8);
 		testIfIntExpr(TWOSCOMPLEMENT);
+		testIfIntExpr(UNARY);
 	}
 	
 	private void testIntSum(Options.IntEncoding encoding) {
@@ -468,6 +540,97 @@ public class IntTest {
 	public void testIntSum() {
 		solver.options().setBitwidth(8);
 		testIntSum(TWOSCOMPLEMENT);
+		solver.options().setBitwidth(10);
+		testIntSum(UNARY);
+	}
+	
+	/**
+	 * Returns an int expression that evaluates to the given long at bitwidths of 64 or more.
+	 */
+	private static IntExpression constant(long l) { 
+		final int lo = (int) l, hi = (int) ((l - lo) >> 32);
+		return constant(hi).shl(constant(32)).plus(constant(lo));
+	}
+	
+	@Test
+	public void testWideConstantOps() {
+		final Options options = solver.options();
+		options.setBitwidth(64);
+		final Evaluator eval = new Evaluator(new Instance(factory.universe()), options);
+		final long[] vals = { 0, 1, -1, 7, -13, Integer.MAX_VALUE, Integer.MIN_VALUE, 1L<<32, 
+				-(1L<<40) + 3, 123456789012345L, Long.MAX_VALUE, Long.MIN_VALUE };
+		for(long i : vals) { 
+			final IntExpression ei = constant(i);
+			assertEquals(BigInteger.valueOf(i), eval.evaluateBig(ei));
+			assertEquals((int) i, eval.evaluate(ei));
+			assertEquals(BigInteger.valueOf(-i), eval.evaluateBig(ei.negate()));
+			assertEquals(BigInteger.valueOf(~i), eval.evaluateBig(ei.not()));
+			assertEquals(BigInteger.valueOf(Math.abs(i)), eval.evaluateBig(ei.abs()));
+			assertEquals(BigInteger.valueOf(Long.signum(i)), eval.evaluateBig(ei.signum()));
+			for(long j : vals) { 
+				final IntExpression ej = constant(j);
+				assertEquals(BigInteger.valueOf(i+j), eval.evaluateBig(ei.plus(ej)));
+				assertEquals(BigInteger.valueOf(i-j), eval.evaluateBig(ei.minus(ej)));
+				assertEquals(BigInteger.valueOf(i*j), eval.evaluateBig(ei.multiply(ej)));
+				assertEquals(BigInteger.valueOf(i&j), eval.evaluateBig(ei.and(ej)));
+				assertEquals(BigInteger.valueOf(i|j), eval.evaluateBig(ei.or(ej)));
+				assertEquals(BigInteger.valueOf(i^j), eval.evaluateBig(ei.xor(ej)));
+				if (j != 0) { 
+					assertEquals(BigInteger.valueOf(i/j), eval.evaluateBig(ei.divide(ej)));
+					assertEquals(BigInteger.valueOf(i%j), eval.evaluateBig(ei.modulo(ej)));
+				}
+				assertEquals(i < j, eval.evaluate(ei.lt(ej)));
+				assertEquals(i <= j, eval.evaluate(ei.lte(ej)));
+				assertEquals(i == j, eval.evaluate(ei.eq(ej)));
+			}
+			for(int k : new int[]{ 0, 1, 31, 32, 63, 64, 100 }) { 
+				final IntExpression ek = constant(k);
+				assertEquals(BigInteger.valueOf(k < 64 ? i << k : 0), eval.evaluateBig(ei.shl(ek)));
+				assertEquals(BigInteger.valueOf(k < 64 ? i >>> k : 0), eval.evaluateBig(ei.shr(ek)));
+				assertEquals(BigInteger.valueOf(k < 64 ? i >> k : i >> 63), eval.evaluateBig(ei.sha(ek)));
+			}
+		}
+		
+		options.setBitwidth(128);
+		final IntExpression big = constant(1L<<62).multiply(constant(1<<30));
+		assertEquals(BigInteger.ONE.shiftLeft(92), new Evaluator(new Instance(factory.universe()), options).evaluateBig(big));
+		assertEquals(Ints.range(Integer.MIN_VALUE, Integer.MAX_VALUE), options.integers());
+	}
+	
+	@Test
+	public void testWideNonConstantOps() {
+		solver.options().setBitwidth(64);
+		bounds.bound(r1, factory.allOf(1));
+		
+		Solution s = solve(r1.count().multiply(constant(1L<<40)).eq(constant(5L<<40)));
+		assertNotNull(s.instance());
+		assertEquals(5, s.instance().tuples(r1).size());
+		
+		s = solve(r1.count().shl(constant(62)).eq(constant(Long.MIN_VALUE)).and(r1.count().gt(constant(4))));
+		assertNotNull(s.instance());
+		assertEquals(2, s.instance().tuples(r1).size() % 4);
+		
+		s = solve(r1.count().multiply(constant(Long.MAX_VALUE)).lt(constant(0)).and(r1.count().lt(constant(3))));
+		assertNotNull(s.instance());
+		assertEquals(2, s.instance().tuples(r1).size());
+	}
+	
+	@Test
+	public void testWideBitsetCast() {
+		solver.options().setBitwidth(40);
+		final List<Integer> atoms = new ArrayList<Integer>();
+		for(int i = 0; i < 31; i++) { 
+			atoms.add(Integer.valueOf(1<<i));
+		}
+		final Bounds b = new Bounds(new Universe(atoms));
+		final TupleFactory f = b.universe().factory();
+		for(Integer i : atoms) { b.boundExactly(i, f.setOf(i)); }
+		b.bound(r1, f.allOf(1));
+		
+		final int val = (1<<30) | 5;
+		final Solution sol = solver.solve(r1.sum().toBitset().eq(IntConstant.constant(val).toBitset()), b);
+		assertNotNull(sol.instance());
+		assertEquals(val, new Evaluator(sol.instance(), solver.options()).evaluate(r1.sum()));
 	}
 	
 }
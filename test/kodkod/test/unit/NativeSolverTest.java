@@ -22,10 +22,12 @@ import kodkod.engine.Solver;
 import kodkod.engine.satlab.ResolutionTrace;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATProver;
+import kodkod.engine.satlab.SATSimplifier;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.util.ints.Ints;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import kodkod.test.util.Solvers;
@@ -66,6 +68,49 @@ public class NativeSolverTest {
 		}
 	}
 
+	/**
+	 * Checks that clauses are passed to the batched native solvers intact:  a clause 
+	 * that is larger than a batch, enough clauses to fill several batches, and clauses over 
+	 * variables added between batches.  Skipped if no batched native solver is available.
+	 */
+	@Test
+	public void testBatchedClauses() {
+		final List<SATFactory> batched = new ArrayList<SATFactory>();
+		for(SATFactory factory : new SATFactory[] { SATFactory.MiniSat, SATFactory.Glucose, SATFactory.Lingeling }) {
+			if (SATFactory.available(factory)) 
+				batched.add(factory);
+		}
+		Assume.assumeFalse(batched.isEmpty());
+		final int chain = 30000, vars = 70000;
+		for(SATFactory factory : batched) {
+			final SATSolver solver = factory.instance();
+			solver.addVariables(vars);
+			// some variable is true
+			final int[] big = new int[vars];
+			for(int i = 0; i < vars; i++) { big[i] = i+1; }
+			assertTrue(solver.addClause(big));
+			// 1 => 2 => ... => chain, and !chain
+			for(int i = 1; i < chain; i++) {
+				assertTrue(factory.toString(), solver.addClause(new int[]{ -i, i+1 }));
+			}
+			assertTrue(solver.addClause(new int[]{ -chain }));
+			assertEquals(factory.toString(), chain + 1, solver.numberOfClauses());
+			assertTrue(factory.toString(), solver.solve());
+			for(int i = 1; i <= chain; i++) {
+				assertFalse(factory.toString(), solver.valueOf(i));
+			}
+			boolean some = false;
+			for(int i = chain+1; i <= vars; i++) { some |= solver.valueOf(i); }
+			assertTrue(factory.toString(), some);
+			// a fresh variable that forces 1, which is unsatisfiable 
+			solver.addVariables(1);
+			solver.addClause(new int[]{ vars+1 });
+			solver.addClause(new int[]{ -(vars+1), 1 });
+			assertFalse(factory.toString(), solver.solve());
+			solver.free();
+		}
+	}
+
 	@Test
 	public void testProofOfEmptyClauseCNF() {
 		for(SATFactory factory : solvers) {
@@ -216,6 +261,93 @@ public class NativeSolverTest {
 		}
 	}
 	
+	@Test
+	public void testPortfolio() {
+		final SATFactory portfolio = SATFactory.portfolio(solvers.toArray(new SATFactory[solvers.size()]));
+		assertEquals(Outcome.UNSATISFIABLE, solveWith(portfolio));
+	}
+	
+	@Test
+	public void testIncrementalPortfolio() {
+		final SATSolver solver = SATFactory.portfolio(solvers.toArray(new SATFactory[solvers.size()])).instance();
+		solver.addVariables(2);
+		solver.addClause(new int[]{1, 2});
+		assertTrue(solver.solve());
+		solver.addClause(new int[]{-1});
+		assertTrue(solver.solve());
+		assertFalse(solver.valueOf(1));
+		assertTrue(solver.valueOf(2));
+		solver.addClause(new int[]{-2});
+		assertFalse(solver.solve());
+		solver.free();
+	}
+	
+	@Test
+	public void testOffHeap() {
+		for(SATFactory factory : solvers) {
+			if (factory.prover()) continue;
+			assertEquals(Outcome.UNSATISFIABLE, solveWith(SATFactory.offHeap(factory)));
+		}
+	}
+	
+	@Test
+	public void testIncrementalOffHeap() {
+		for(SATFactory factory : solvers) {
+			if (factory.prover() || !factory.incremental()) continue;
+			final SATSolver solver = SATFactory.offHeap(factory).instance();
+			solver.addVariables(3);
+			solver.addClause(new int[]{1, 2});
+			solver.addClause(new int[]{-1, 3});
+			assertTrue(solver.solve());
+			assertEquals(2, solver.numberOfClauses());
+			solver.addClause(new int[]{-1});
+			solver.addClause(new int[]{-3, 2});
+			assertTrue(solver.solve());
+			assertFalse(solver.valueOf(1));
+			assertTrue(solver.valueOf(2));
+			solver.addClause(new int[]{-2});
+			assertFalse(solver.solve());
+			solver.free();
+		}
+	}
+	
+	@Test
+	public void testSimplifying() {
+		for(SATFactory factory : solvers) {
+			if (factory.prover()) continue;
+			assertEquals(Outcome.UNSATISFIABLE, solveWith(SATFactory.simplifying(factory)));
+		}
+	}
+	
+	@Test
+	public void testIncrementalSimplifying() {
+		for(SATFactory factory : solvers) {
+			if (factory.prover() || !factory.incremental()) continue;
+			final SATSimplifier solver = (SATSimplifier) SATFactory.simplifying(factory).instance();
+			solver.addVariables(4);
+			solver.addClause(new int[]{1, 2});
+			solver.addClause(new int[]{-2, 3});
+			solver.addClause(new int[]{-3, 4});
+			solver.addClause(new int[]{2, -2, 4}); // tautology
+			solver.freeze(1);
+			solver.freeze(4);
+			assertTrue(solver.solve());
+			assertTrue(solver.valueOf(1) || solver.valueOf(2));
+			assertTrue(!solver.valueOf(2) || solver.valueOf(3));
+			assertTrue(!solver.valueOf(3) || solver.valueOf(4));
+			// 3 may have been eliminated, in which case it is restored 
+			solver.addClause(new int[]{-3});
+			assertTrue(solver.solve());
+			assertTrue(solver.valueOf(1));
+			assertFalse(solver.valueOf(2));
+			assertFalse(solver.valueOf(3));
+			assertFalse(solver.solve(new int[]{-1}));
+			solver.addClause(new int[]{-1});
+			assertFalse(solver.solve());
+			solver.free();
+		}
+	}
+	
 	private Callable<Outcome> callSolver(final SATFactory factory) { 
 		return new Callable<Outcome>() {
 			public Outcome call() throws Exception {
@@ -1,17 +1,24 @@
 package kodkod.test.unit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
 
 import kodkod.util.ints.ArraySequence;
 import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntChunkSet;
+import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
 import kodkod.util.ints.IntTreeSet;
 import kodkod.util.ints.Ints;
 import kodkod.util.ints.RangeSequence;
+import kodkod.util.ints.SortedArraySequence;
 import kodkod.util.ints.SparseSequence;
 import kodkod.util.ints.TreeSequence;
 
@@ -170,6 +177,167 @@ public class SparseSequenceTest {
 		
 	}
 	
+	@Test
+	public final void testSortedArraySequence() {
+		final Random rand = new Random(1031);
+		final SparseSequence<Integer> s1 = new SortedArraySequence<Integer>(0);
+		for(int i = 0; i < 2000; i++) { 
+			final int index = rand.nextInt(300) - 100;
+			switch(rand.nextInt(4)) { 
+			case 0 : assertEquals(s0.remove(index), s1.remove(index)); break;
+			case 1 : assertEquals(s0.get(index), s1.get(index)); break;
+			default : assertEquals(s0.put(index, i), s1.put(index, i));
+			}
+			assertEquals(s0.size(), s1.size());
+			assertTrue(s0.equals(s1) && s1.equals(s0));
+		}
+		for(int i = 0; i < 200; i++) { 
+			final int from = rand.nextInt(300) - 100, to = rand.nextInt(300) - 100;
+			assertEquals(s0.ceil(from), s1.ceil(from));
+			assertEquals(s0.floor(from), s1.floor(from));
+			final Iterator<IndexedEntry<Integer>> it0 = s0.iterator(from, to), it1 = s1.iterator(from, to);
+			while(it0.hasNext()) { 
+				assertTrue(it1.hasNext());
+				assertEquals(it0.next(), it1.next());
+			}
+			assertFalse(it1.hasNext());
+		}
+		assertEquals(s0.first(), s1.first());
+		assertEquals(s0.last(), s1.last());
+		
+		// appending in order, and removing through ascending and descending iterators
+		final SortedArraySequence<Integer> s2 = new SortedArraySequence<Integer>();
+		for(int i = 0; i < 100; i++) { s2.put(3*i, i); }
+		for(Iterator<IndexedEntry<Integer>> itr = s2.iterator(30, 150); itr.hasNext(); ) { 
+			if (itr.next().value() % 2 == 0) itr.remove();
+		}
+		for(Iterator<IndexedEntry<Integer>> itr = s2.iterator(297, 200); itr.hasNext(); ) { 
+			if (itr.next().value() % 2 == 1) itr.remove();
+		}
+		for(int i = 0; i < 100; i++) { 
+			final boolean removed = (i >= 10 && i <= 50 && i % 2 == 0) || (i >= 67 && i % 2 == 1);
+			assertEquals(removed ? null : Integer.valueOf(i), s2.get(3*i));
+		}
+		final SparseSequence<Integer> s3 = s2.clone();
+		assertTrue(s3.equals(s2));
+		assertNotSame(s3, s2);
+		s3.clear();
+		assertTrue(s3.isEmpty());
+		assertFalse(s2.isEmpty());
+	}
+	
+	/**
+	 * Asserts that the given int set contains exactly the given integers,
+	 * and that it iterates over them in the same order in both directions.
+	 */
+	private static void assertSameInts(NavigableSet<Integer> expected, IntSet actual) {
+		assertEquals(expected.size(), actual.size());
+		final Iterator<Integer> itr0 = expected.iterator();
+		for(IntIterator itr1 = actual.iterator(); itr1.hasNext(); ) {
+			assertEquals(itr0.next().intValue(), itr1.next());
+		}
+		assertFalse(itr0.hasNext());
+		final Iterator<Integer> ditr0 = expected.descendingIterator();
+		for(IntIterator ditr1 = actual.iterator(Integer.MAX_VALUE, Integer.MIN_VALUE); ditr1.hasNext(); ) {
+			assertEquals(ditr0.next().intValue(), ditr1.next());
+		}
+		assertFalse(ditr0.hasNext());
+		if (!expected.isEmpty()) {
+			assertEquals(expected.first().intValue(), actual.min());
+			assertEquals(expected.last().intValue(), actual.max());
+		}
+	}
+	
+	/**
+	 * Returns a random integer drawn sparsely from a wide range, densely from a few chunks, 
+	 * or from a short run, depending on the given mode, so that all kinds of chunk containers get exercised.
+	 */
+	private static int randomInt(Random rand, int mode, int i) {
+		switch(mode) {
+		case 0  : return rand.nextInt(1<<22) - (1<<21);
+		case 1  : return rand.nextInt(3<<16) - (1<<16);
+		default : return (i % 70000) + (rand.nextInt(4)==0 ? rand.nextInt(1<<17) : 0);
+		}
+	}
+	
+	@Test
+	public final void testIntChunkSet() {
+		final Random rand = new Random(2027);
+		for(int mode = 0; mode < 3; mode++) {
+			final NavigableSet<Integer> s0 = new TreeSet<Integer>();
+			final IntChunkSet s1 = new IntChunkSet();
+			for(int i = 0; i < 100000; i++) {
+				final int k = randomInt(rand, mode, i);
+				if (rand.nextInt(5)==0) {
+					assertEquals(s0.remove(k), s1.remove(k));
+				} else {
+					assertEquals(s0.add(k), s1.add(k));
+				}
+				assertEquals(s0.contains(k+1), s1.contains(k+1));
+			}
+			assertSameInts(s0, s1);
+			
+			for(int i = 0; i < 100; i++) {
+				final int from = randomInt(rand, mode, i), to = randomInt(rand, mode, i);
+				final Integer ceil = s0.ceiling(from), floor = s0.floor(from);
+				if (ceil != null) assertEquals(ceil.intValue(), s1.ceil(from));
+				if (floor != null) assertEquals(floor.intValue(), s1.floor(from));
+				final Iterator<Integer> itr0 = from <= to ? s0.subSet(from, true, to, true).iterator() : 
+					s0.subSet(to, true, from, true).descendingIterator();
+				for(IntIterator itr1 = s1.iterator(from, to); itr1.hasNext(); ) {
+					assertEquals(itr0.next().intValue(), itr1.next());
+				}
+				assertFalse(itr0.hasNext());
+			}
+			
+			// removal through ascending and descending iterators
+			final IntSet s2 = s1.clone();
+			for(IntIterator itr = s2.iterator(); itr.hasNext(); ) {
+				final int k = itr.next();
+				if (k % 3 == 0) itr.remove();
+			}
+			for(IntIterator itr = s2.iterator(Integer.MAX_VALUE, 0); itr.hasNext(); ) {
+				final int k = itr.next();
+				if (k % 3 == 1) itr.remove();
+			}
+			final NavigableSet<Integer> s3 = new TreeSet<Integer>();
+			for(int k : s0) { 
+				if (k % 3 != 0 && !(k >= 0 && k % 3 == 1)) s3.add(k);
+			}
+			assertSameInts(s3, s2);
+			assertSameInts(s0, s1);
+			
+			// bulk operations, both between chunk sets and with other kinds of sets
+			final IntSet s4 = new IntChunkSet(), s5 = new IntTreeSet();
+			final NavigableSet<Integer> s6 = new TreeSet<Integer>();
+			for(int i = 0; i < 50000; i++) {
+				final int k = randomInt(rand, (mode + i) % 3, i);
+				s4.add(k); s5.add(k); s6.add(k);
+			}
+			assertTrue(s4.equals(s5) && s5.equals(s4));
+			assertEquals(s5.hashCode(), s4.hashCode());
+			for(IntSet other : new IntSet[] { s4, s5 }) {
+				final NavigableSet<Integer> union = new TreeSet<Integer>(s0), 
+					inter = new TreeSet<Integer>(s0), diff = new TreeSet<Integer>(s0);
+				union.addAll(s6); inter.retainAll(s6); diff.removeAll(s6);
+				final IntSet u = s1.clone(), i = s1.clone(), d = s1.clone();
+				assertTrue(u.addAll(other));
+				assertTrue(i.retainAll(other));
+				assertTrue(d.removeAll(other));
+				assertSameInts(union, u);
+				assertSameInts(inter, i);
+				assertSameInts(diff, d);
+				assertTrue(u.containsAll(other) && u.containsAll(s1) && u.containsAll(i) && u.containsAll(d));
+				assertFalse(i.containsAll(other) || d.containsAll(s1) || d.containsAll(i));
+				assertFalse(u.addAll(other) || i.retainAll(other) || d.removeAll(other));
+			}
+			assertSameInts(s0, s1);
+			s1.clear();
+			assertTrue(s1.isEmpty());
+			assertFalse(s1.iterator().hasNext());
+		}
+	}
+	
 	@Test
 	public final void testIntTreeSet() {
 		IntTreeSet s = new IntTreeSet();
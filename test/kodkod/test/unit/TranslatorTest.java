@@ -9,9 +9,19 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import kodkod.ast.Expression;
@@ -22,17 +32,31 @@ import kodkod.ast.Relation;
 import kodkod.ast.Variable;
 import kodkod.ast.operator.ExprOperator;
 import kodkod.ast.operator.FormulaOperator;
+import kodkod.ast.operator.IntCompOperator;
 import kodkod.ast.operator.IntOperator;
 import kodkod.ast.operator.Multiplicity;
 import kodkod.ast.operator.Quantifier;
+import kodkod.engine.Evaluator;
 import kodkod.engine.Solution;
 import kodkod.engine.Solver;
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.BooleanValue;
+import kodkod.engine.bool.CircuitPreprocessor;
+import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.BinaryCNF;
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.engine.satlab.SATFactory;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.Tuple;
 import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
 import kodkod.instance.Universe;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
 
 import org.junit.Test;
 
@@ -529,5 +553,468 @@ public class TranslatorTest  {
 	public final void testNaryOr() {
 		testNary(FormulaOperator.OR);
 	}
+	
+	@Test
+	public final void testParallelGrounding() {
+		final Variable x = Variable.unary("x"), y = Variable.unary("y");
+		final Relation s = r1[0], r = r2[0];
+		final Formula succ = y.in(x.join(r)).forSome(y.oneOf(s)).forAll(x.oneOf(s));
+		final Formula asym = x.product(y).in(r).implies(y.product(x).in(r).not()).forAll(x.oneOf(s).and(y.oneOf(s)));
+		final Formula sat = Formula.and(s.some(), succ, asym);
+		final Formula unsat = sat.and(x.product(x).in(r).forSome(x.oneOf(s)));
+		
+		final Solver grounder = new Solver();
+		grounder.options().setGroundingThreads(4);
+		final Solution sol = grounder.solve(sat, bounds);
+		assertEquals(Solution.Outcome.SATISFIABLE, sol.outcome());
+		assertTrue(new Evaluator(sol.instance()).evaluate(sat));
+		assertEquals(Solution.Outcome.UNSATISFIABLE, grounder.solve(unsat, bounds).outcome());
+	}
+	
+	@Test
+	public final void testParallelSymmetryBreaking() {
+		final List<String> atoms = new ArrayList<String>(6);
+		for(int i = 0; i < 6; i++) { atoms.add("a" + i); }
+		final TupleFactory f = new Universe(atoms).factory();
+		final Relation s = Relation.unary("s"), t = Relation.unary("t"), r = Relation.binary("r");
+		final Bounds b = new Bounds(f.universe());
+		b.bound(s, f.range(f.tuple("a0"), f.tuple("a2")));
+		b.bound(t, f.range(f.tuple("a2"), f.tuple("a5")));
+		b.bound(r, b.upperBound(s).product(b.upperBound(t)));
+		final Variable x = Variable.unary("x");
+		final Formula fm = Formula.and(s.some(), x.join(r).one().forAll(x.oneOf(s)), s.join(r).in(t), r.join(t).in(s));
+
+		final List<Set<IntSet>> detected = new ArrayList<Set<IntSet>>();
+		final int[] counts = new int[2];
+		final int[] threads = { 1, 4 };
+		for(int i = 0; i < threads.length; i++) { 
+			final Solver enumerator = new Solver();
+			enumerator.options().setSymmetryThreads(threads[i]);
+			enumerator.options().setReporter(new AbstractReporter() {
+				public void detectedSymmetries(Set<IntSet> parts) {
+					detected.add(new HashSet<IntSet>(parts));
+				}
+			});
+			counts[i] = countSolutions(enumerator, fm, b);
+		}
+		assertEquals(2, detected.size());
+		assertEquals(detected.get(0), detected.get(1));
+		assertEquals(3, detected.get(0).size());
+		assertTrue(counts[0] > 0);
+		assertEquals(counts[0], counts[1]);
+	}
+	
+	@Test
+	public final void testClosureEncodings() {
+		final List<Integer> atoms = new ArrayList<Integer>(6);
+		for(int i = 0; i < 6; i++) { atoms.add(i); }
+		final TupleFactory f = new Universe(atoms).factory();
+		final Relation r = Relation.binary("r"), t = Relation.binary("t"), s = Relation.binary("s");
+		final Bounds b = new Bounds(f.universe());
+		// a cycle 0->1->2->0, a cycle 3<->4, a self-loop on 5, and edges between them
+		final TupleSet ru = f.noneOf(2);
+		final int[][] edges = { {0,1}, {1,2}, {2,0}, {2,3}, {3,4}, {4,3}, {4,5}, {0,5}, {5,5}, {1,4} };
+		for(int[] e : edges) { ru.add(f.tuple(2, e[0]*atoms.size() + e[1])); }
+		b.bound(r, ru);
+		b.bound(t, f.allOf(2));
+		b.bound(s, f.allOf(2));
+		final Formula formula = t.eq(r.closure()).and(s.eq(r.reflexiveClosure()));
+		
+		for(Options.ClosureEncoding encoding : Options.ClosureEncoding.values()) { 
+			final Solver enumerator = new Solver();
+			enumerator.options().setSymmetryBreaking(0);
+			enumerator.options().setClosureEncoding(encoding);
+			assertEquals(encoding.toString(), 1 << edges.length, countSolutions(enumerator, formula, b));
+		}
+	}
+	
+	@Test
+	public final void testCardinalityEncodings() {
+		final Relation r = r2[0];
+		final Bounds b = new Bounds(factory.universe());
+		final TupleSet ru = factory.noneOf(2);
+		for(int i = 0; i < 5; i++) { ru.add(factory.tuple(2, i*factory.universe().size() + i + 1)); }
+		b.bound(r, ru);
+		final int[] binomials = { 1, 5, 10, 10, 5, 1 };
+		
+		for(Options.CardinalityEncoding encoding : Options.CardinalityEncoding.values()) { 
+			final Solver enumerator = new Solver();
+			enumerator.options().setSymmetryBreaking(0);
+			enumerator.options().setCardinalityEncoding(encoding);
+			for(int k = -1; k <= 6; k++) { 
+				final IntExpression card = r.count(), constant = IntConstant.constant(k);
+				for(IntCompOperator op : IntCompOperator.values()) { 
+					for(boolean reversed : new boolean[]{ false, true }) { 
+						final Formula f = reversed ? constant.compare(op, card) : card.compare(op, constant);
+						final int count = countSolutions(enumerator, f, b);
+						int expected = 0;
+						for(int n = 0; n < binomials.length; n++) { 
+							final int left = reversed ? k : n, right = reversed ? n : k;
+							final boolean holds;
+							switch(op) { 
+							case EQ  : holds = left == right; break;
+							case LT  : holds = left < right; break;
+							case LTE : holds = left <= right; break;
+							case GT  : holds = left > right; break;
+							default  : holds = left >= right; 
+							}
+							if (holds) expected += binomials[n];
+						}
+						assertEquals(encoding + ": " + f, expected, count);
+					}
+				}
+			}
+		}
+		
+		// cardinalities and constants that overflow the bitwidth must be compared as ADDERS compares them
+		final Relation u = r1[0];
+		final Bounds ub = new Bounds(factory.universe());
+		ub.bound(u, factory.range(factory.tuple(1, 0), factory.tuple(1, 7)));
+		final Options.CardinalityEncoding[] encodings = Options.CardinalityEncoding.values();
+		final Solver[] narrow = new Solver[encodings.length];
+		for(int i = 0; i < encodings.length; i++) { 
+			narrow[i] = new Solver();
+			narrow[i].options().setSymmetryBreaking(0);
+			narrow[i].options().setBitwidth(4);
+			narrow[i].options().setCardinalityEncoding(encodings[i]);
+		}
+		for(int k : new int[]{ -9, 6, 7, 8 }) { 
+			final IntExpression card = u.count(), constant = IntConstant.constant(k);
+			for(IntCompOperator op : IntCompOperator.values()) { 
+				for(boolean reversed : new boolean[]{ false, true }) { 
+					final Formula f = reversed ? constant.compare(op, card) : card.compare(op, constant);
+					final int expected = countSolutions(narrow[0], f, ub);
+					for(int i = 1; i < encodings.length; i++) { 
+						assertEquals(encodings[i] + ": " + f, expected, countSolutions(narrow[i], f, ub));
+					}
+				}
+			}
+		}
+	}
+
+	
+	private static int countSolutions(Solver solver, Formula formula, Bounds bounds) { 
+		int count = 0;
+		for(Iterator<Solution> sols = solver.solveAll(formula, bounds); sols.hasNext(); ) { 
+			final Solution sol = sols.next();
+			if (!sol.sat()) break;
+			count++;
+			assertTrue(new Evaluator(sol.instance()).evaluate(formula));
+		}
+		return count;
+	}
+	
+	@Test
+	public final void testTranslationCache() throws IOException {
+		final File dir = Files.createTempDirectory("kodkod").toFile();
+		try { 
+			final Variable x = Variable.unary("x");
+			final Formula f = x.in(r1[3]).forSome(x.oneOf(r1[0])).and(r1[1].count().gt(IntConstant.constant(1)));
+			final Bounds b = new Bounds(factory.universe());
+			b.bound(r1[0], factory.setOf(0, 1, 2));
+			b.bound(r1[1], factory.setOf(2, 3, 4));
+			b.bound(r1[3], factory.setOf(1, 2));
+			
+			final Solver uncached = new Solver();
+			uncached.options().setSymmetryBreaking(0);
+			uncached.options().setSkolemDepth(-1);
+			final int expected = countSolutions(uncached, f, b);
+			assertEquals(56, expected);
+			
+			final Solver cached = new Solver();
+			final int[] translations = {0, 0, 0};
+			final List<Set<IntSet>> symmetries = new ArrayList<Set<IntSet>>();
+			cached.options().setReporter(new AbstractReporter() {
+				public void optimizingBoundsAndFormula() { translations[0]++; }
+				public void detectingSymmetries(Bounds bounds) { translations[1]++; }
+				public void detectedSymmetries(Set<IntSet> parts) { symmetries.add(parts); }
+				public void translatingToBoolean(Formula formula, Bounds bounds) { translations[2]++; }
+			});
+			cached.options().setSymmetryBreaking(0);
+			cached.options().setTranslationCache(dir);
+			// the first call populates the cache, and the second is answered from it, 
+			// which replays the reports of symmetry detection and of translation to boolean
+			cached.options().setSkolemDepth(-1);
+			for(int i = 0; i < 2; i++) { 
+				assertEquals(expected, countSolutions(cached, f, b));
+				assertEquals(1, dir.listFiles().length);
+				assertEquals(1, translations[0]);
+				assertEquals(i+1, translations[1]);
+				assertEquals(i+1, translations[2]);
+				assertEquals(i+1, symmetries.size());
+			}
+			assertEquals(symmetries.get(0), symmetries.get(1));
+			// the instances of a cached translation include its skolem constants
+			cached.options().setSkolemDepth(0);
+			for(int i = 0; i < 2; i++) { 
+				final Solution sol = cached.solve(f, b);
+				assertTrue(sol.sat());
+				assertEquals(b.relations().size() + 1, sol.instance().relations().size());
+				assertTrue(new Evaluator(sol.instance()).evaluate(f));
+				assertEquals(2, dir.listFiles().length);
+			}
+			
+			// problems that differ only in their bounds or options have separate entries
+			final Bounds b2 = b.clone();
+			b2.bound(r1[3], factory.setOf(5));
+			assertEquals(uncached.solve(f, b2).sat(), cached.solve(f, b2).sat());
+			assertEquals(3, dir.listFiles().length);
+			cached.options().setBitwidth(5);
+			assertTrue(cached.solve(f, b).sat());
+			assertEquals(4, dir.listFiles().length);
+			cached.options().setBitwidth(4);
+			
+			// trivial problems are cached too
+			final Formula t = r1[1].some().or(r1[1].no());
+			for(int i = 0; i < 2; i++) { 
+				assertEquals(Solution.Outcome.TRIVIALLY_SATISFIABLE, cached.solve(t, b).outcome());
+				assertEquals(Solution.Outcome.TRIVIALLY_UNSATISFIABLE, cached.solve(t.not(), b).outcome());
+			}
+			assertEquals(6, dir.listFiles().length);
+			
+			// corrupt entries are ignored and replaced
+			for(File entry : dir.listFiles()) { 
+				final FileOutputStream out = new FileOutputStream(entry);
+				out.write(new byte[]{1, 2, 3});
+				out.close();
+			}
+			cached.options().setSkolemDepth(-1);
+			assertEquals(expected, countSolutions(cached, f, b));
+			assertEquals(expected, countSolutions(cached, f, b));
+			assertEquals(6, dir.listFiles().length);
+			
+			// a preprocessor without a fingerprint disables caching, and sweeping 
+			// preprocessors with different solvers have separate entries
+			cached.options().setCircuitPreprocessors(new CircuitPreprocessor() {
+				public BooleanValue apply(BooleanFormula circuit, BooleanFactory factory) { return circuit; }
+			});
+			assertEquals(expected, countSolutions(cached, f, b));
+			assertEquals(6, dir.listFiles().length);
+			cached.options().setCircuitPreprocessors(CircuitPreprocessor.SWEEPING);
+			assertEquals(expected, countSolutions(cached, f, b));
+			assertEquals(7, dir.listFiles().length);
+			cached.options().setCircuitPreprocessors(CircuitPreprocessor.sweeping(SATFactory.LightSAT4J));
+			assertEquals(expected, countSolutions(cached, f, b));
+			assertEquals(8, dir.listFiles().length);
+		} finally { 
+			for(File entry : dir.listFiles()) { entry.delete(); }
+			dir.delete();
+		}
+	}
+
+	@Test
+	public final void testCNFEncodings() {
+		final Formula f = r2[0].closure().in(r2[1]).and(r3[0].some()).and(r2[1].some().implies(r2[2].lone()));
+		final Bounds small = new Bounds(factory.universe());
+		small.bound(r2[0], factory.setOf(factory.tuple(2, 1), factory.tuple(2, 12), factory.tuple(2, 20)));
+		small.bound(r2[1], factory.setOf(factory.tuple(2, 1), factory.tuple(2, 12), factory.tuple(2, 20), factory.tuple(2, 2), factory.tuple(2, 10)));
+		small.bound(r2[2], factory.setOf(factory.tuple(2, 0), factory.tuple(2, 11)));
+		small.bound(r3[0], factory.setOf(factory.tuple(3, 0)));
+		final Options full = new Options();
+		full.setSymmetryBreaking(0);
+		full.setCNFEncoding(Options.CNFEncoding.TSEITIN);
+		final int tseitin = Translator.translate(f, bounds, full).cnf().numberOfClauses();
+		int count = -1;
+		for(Options.CNFEncoding encoding : Options.CNFEncoding.values()) { 
+			final Solver enumerator = new Solver();
+			enumerator.options().setSymmetryBreaking(0);
+			enumerator.options().setCNFEncoding(encoding);
+			final int clauses = Translator.translate(f, bounds, enumerator.options()).cnf().numberOfClauses();
+			assertTrue(encoding.toString(), clauses <= tseitin);
+			final int solutions = countSolutions(enumerator, f, small);
+			assertTrue(encoding.toString(), solutions > 0);
+			assertTrue(encoding.toString(), count < 0 || count == solutions);
+			count = solutions;
+		}
+		
+		// an incremental extension that negates a gate used positively by an earlier step
+		final Universe universe = new Universe("A0", "A1", "A2");
+		final Relation p = Relation.unary("p"), q = Relation.unary("q");
+		final Bounds b = new Bounds(universe);
+		b.bound(p, universe.factory().allOf(1));
+		b.bound(q, universe.factory().allOf(1));
+		final Formula[] steps = { p.some().and(q.some()).and(p.intersection(q).no()), p.no() };
+		final Map<Options.CNFEncoding, Integer> clauses = new EnumMap<Options.CNFEncoding, Integer>(Options.CNFEncoding.class);
+		for(Options.CNFEncoding encoding : Options.CNFEncoding.values()) { 
+			final Options options = new Options();
+			options.setCNFEncoding(encoding);
+			Translation.Incremental transl = Translator.translateIncremental(steps[0], b, options);
+			assertTrue(encoding.toString(), transl.cnf().solve());
+			clauses.put(encoding, transl.cnf().numberOfClauses());
+			transl = Translator.translateIncremental(steps[1], new Bounds(universe), transl);
+			assertFalse(encoding.toString(), transl.cnf().solve());
+			transl.cnf().free();
+		}
+		assertEquals(clauses.get(Options.CNFEncoding.TSEITIN), clauses.get(Options.CNFEncoding.PLAISTED_GREENBAUM));
+		assertTrue(clauses.get(Options.CNFEncoding.HYBRID) < clauses.get(Options.CNFEncoding.TSEITIN));
+	}
+	
+	@Test
+	public final void testCircuitPreprocessing() {
+		final Variable x = Variable.unary("x");
+		final Formula f = x.join(r2[0]).some().forAll(x.oneOf(r1[0])).and(r2[0].in(r2[1])).and(r2[1].closure().in(r2[0].union(r2[2])));
+		final Bounds small = new Bounds(factory.universe());
+		small.bound(r1[0], factory.setOf(factory.tuple(1, 1), factory.tuple(1, 2)));
+		small.bound(r2[0], factory.setOf(factory.tuple(2, 1), factory.tuple(2, 12), factory.tuple(2, 21), factory.tuple(2, 22)));
+		small.bound(r2[1], factory.setOf(factory.tuple(2, 1), factory.tuple(2, 12), factory.tuple(2, 21), factory.tuple(2, 22), factory.tuple(2, 10)));
+		small.bound(r2[2], factory.setOf(factory.tuple(2, 0), factory.tuple(2, 11)));
+
+		final CircuitPreprocessor[][] configs = {
+				{}, { CircuitPreprocessor.UNITS }, { CircuitPreprocessor.SWEEPING }, { CircuitPreprocessor.REWRITING },
+				{ CircuitPreprocessor.UNITS, CircuitPreprocessor.SWEEPING, CircuitPreprocessor.REWRITING }
+		};
+		final List<CircuitPreprocessor> applied = new ArrayList<CircuitPreprocessor>();
+		int count = -1;
+		for(CircuitPreprocessor[] config : configs) {
+			final Solver enumerator = new Solver();
+			enumerator.options().setSymmetryBreaking(0);
+			enumerator.options().setCircuitPreprocessors(config);
+			enumerator.options().setReporter(new AbstractReporter() {
+				public void preprocessedCircuit(CircuitPreprocessor preprocessor, int before, int after) {
+					assertTrue(preprocessor.toString(), after <= before);
+					applied.add(preprocessor);
+				}
+			});
+			final int solutions = countSolutions(enumerator, f, small);
+			assertTrue(solutions > 0);
+			assertTrue(count < 0 || count == solutions);
+			count = solutions;
+		}
+		assertTrue(applied.contains(CircuitPreprocessor.SWEEPING));
+	}
+
+	@Test
+	public final void testBinaryCNF() throws IOException {
+		final File file = File.createTempFile("kodkod", ".cnf");
+		try { 
+			final Variable x = Variable.unary("x");
+			final Formula f = x.join(r2[0]).some().forAll(x.oneOf(r1[0])).and(r2[0].closure().in(r2[0]).not()).and(r2[1].some());
+			final Options options = new Options();
+			options.setSymmetryBreaking(0);
+			final List<Set<IntSet>> reported = new ArrayList<Set<IntSet>>();
+			options.setReporter(new AbstractReporter() {
+				public void detectedSymmetries(Set<IntSet> parts) { reported.add(parts); }
+			});
+			
+			final Translation.Whole written = BinaryCNF.translate(f, bounds, options, file);
+			assertEquals(1, reported.size());
+			final Translation.Whole read = BinaryCNF.read(file, bounds, options);
+			assertEquals(written.numPrimaryVariables(), read.numPrimaryVariables());
+			assertEquals(written.cnf().numberOfVariables(), read.cnf().numberOfVariables());
+			assertEquals(written.cnf().numberOfClauses(), read.cnf().numberOfClauses());
+			assertEquals(written.bounds().relations().size(), read.bounds().relations().size());
+			for(Relation r : bounds.relations()) { 
+				assertEquals(written.primaryVariables(r), read.primaryVariables(r));
+				assertEquals(written.bounds().upperBound(r), read.bounds().upperBound(r));
+			}
+			assertTrue(written.cnf().solve());
+			assertTrue(read.cnf().solve());
+			assertTrue(new Evaluator(read.interpret()).evaluate(f));
+			
+			final Set<IntSet> symmetries = BinaryCNF.symmetries(file);
+			assertEquals(reported.get(0), symmetries);
+			final IntSet atoms = Ints.bestSet(factory.universe().size());
+			for(IntSet part : symmetries) { 
+				assertTrue(atoms.addAll(part) || part.isEmpty());
+			}
+			assertEquals(factory.universe().size(), atoms.size());
+			
+			// the stored relations must match the given bounds
+			final Bounds other = new Bounds(factory.universe());
+			other.bound(Relation.unary("r"), factory.allOf(1));
+			try { 
+				BinaryCNF.read(file, other, options);
+				fail();
+			} catch (IllegalArgumentException e) { }
+			
+			// unsatisfiable and trivial problems
+			BinaryCNF.translate(r1[0].some().and(r1[0].no()), bounds, options, file);
+			assertFalse(BinaryCNF.read(file, bounds, options).cnf().solve());
+			BinaryCNF.translate(r1[2].eq(r1[2]), bounds, options, file);
+			assertTrue(BinaryCNF.read(file, bounds, options).trivial());
+			
+			// files that are not translation files are rejected
+			final FileOutputStream out = new FileOutputStream(file);
+			out.write(new byte[100]);
+			out.close();
+			try { 
+				BinaryCNF.read(file, bounds, options);
+				fail();
+			} catch (IOException e) { }
+		} finally { 
+			file.delete();
+		}
+	}
+
+	@Test
+	public final void testLazyInterpretation() {
+		final Variable x = Variable.unary("x");
+		final Formula f = x.join(r2[1]).some().forAll(x.oneOf(r1[1])).and(r3[1].some()).and(r2[3].lone());
+		final Bounds small = new Bounds(factory.universe());
+		small.bound(r1[1], factory.setOf(factory.tuple(1, 1)), factory.setOf(factory.tuple(1, 1), factory.tuple(1, 2)));
+		small.bound(r2[1], factory.setOf(factory.tuple(2, 10), factory.tuple(2, 11), factory.tuple(2, 21), factory.tuple(2, 23)));
+		small.bound(r2[3], factory.setOf(factory.tuple(2, 60)), factory.setOf(factory.tuple(2, 60)));
+		small.bound(r3[1], factory.setOf(factory.tuple(3, 123), factory.tuple(3, 345)));
+		final Options options = new Options();
+		options.setSymmetryBreaking(0);
+		
+		final Translation.Whole transl = Translator.translate(f, small, options);
+		final List<Instance> eager = new ArrayList<Instance>(), lazy = new ArrayList<Instance>();
+		while(transl.cnf().solve()) { 
+			final Instance expected = transl.interpret();
+			eager.add(expected);
+			lazy.add(transl.interpretLazily());
+			
+			final Map<Relation, TupleSet> visited = new LinkedHashMap<Relation, TupleSet>();
+			transl.interpret(new Translation.TupleVisitor() {
+				public void visit(Relation r, int index) {
+					TupleSet s = visited.get(r);
+					if (s==null) { 
+						s = factory.noneOf(r.arity());
+						visited.put(r, s);
+					}
+					assertTrue(s.isEmpty() || s.indexView().max() < index);
+					s.add(factory.tuple(r.arity(), index));
+				}
+			});
+			for(Relation r : expected.relations()) { 
+				final TupleSet s = visited.get(r);
+				assertEquals(expected.tuples(r), s==null ? factory.noneOf(r.arity()) : s);
+			}
+			
+			final int[] notModel = transl.implicant();
+			for(int i = 0; i < notModel.length; i++) { notModel[i] = -notModel[i]; }
+			transl.cnf().addClause(notModel);
+		}
+		assertEquals((3*4 + 3*3) * 3, eager.size());
+		for(int i = 0, max = eager.size(); i < max; i++) { 
+			final Instance expected = eager.get(i), actual = lazy.get(i);
+			// lookups decode one relation at a time; iteration and cloning decode the rest
+			assertEquals(expected.tuples(r3[1]), actual.tuples(r3[1]));
+			assertEquals(new ArrayList<Relation>(expected.relations()), new ArrayList<Relation>(actual.relations()));
+			assertEquals(expected.relationTuples(), actual.relationTuples());
+			assertEquals(expected.relationTuples(), actual.clone().relationTuples());
+			assertEquals(expected.intTuples(), actual.intTuples());
+			assertNull(actual.tuples(r1[0]));
+			try { 
+				actual.add(r1[0], factory.allOf(1));
+				fail();
+			} catch (UnsupportedOperationException e) { }
+		}
+		
+		// solveAll produces lazy instances, equal to the eager ones, if the option is set
+		options.setLazyInterpretation(true);
+		final Iterator<Solution> sols = new Solver(options).solveAll(f, small);
+		for(Instance expected : eager) { 
+			final Instance actual = sols.next().instance();
+			assertEquals(expected.relationTuples(), actual.relationTuples());
+			try { 
+				actual.add(r1[0], factory.allOf(1));
+				fail();
+			} catch (UnsupportedOperationException e) { }
+		}
+		assertFalse(sols.next().sat());
+		assertFalse(sols.hasNext());
+	}
 
 }